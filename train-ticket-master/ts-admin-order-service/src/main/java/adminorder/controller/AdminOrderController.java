@@ -35,6 +35,15 @@ public class AdminOrderController {
         return ok(adminOrderService.getAllOrders(headers));
     }
 
+    @CrossOrigin(origins = "*")
+    @GetMapping(path = "/adminorder/page")
+    public HttpEntity getOrderPage(@RequestParam(value = "cursor", required = false) String cursor,
+                                   @RequestParam(value = "size", defaultValue = "20") int size,
+                                   @RequestHeader HttpHeaders headers) {
+        logger.info("[getOrderPage][Get order page][size: {}]", size);
+        return ok(adminOrderService.getOrderPage(cursor, size, headers));
+    }
+
     @PostMapping(value = "/adminorder")
     public HttpEntity addOrder(@RequestBody Order request, @RequestHeader HttpHeaders headers) {
         logger.info("[addOrder][Add new order][AccountID: {}]", request.getAccountId());
@@ -18,6 +18,16 @@ public interface AdminOrderService {
      */
     Response getAllOrders(HttpHeaders headers);
 
+    /**
+     * get a page of the orders of both order services, in (boughtDate, id) order
+     *
+     * @param cursor next cursor of the previous page, null for the first page
+     * @param size page size
+     * @param headers headers
+     * @return Response
+     */
+    Response getOrderPage(String cursor, int size, HttpHeaders headers);
+
     /**
      * delete order by order id, train number
      *
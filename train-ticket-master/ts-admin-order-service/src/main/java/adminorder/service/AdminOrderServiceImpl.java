@@ -1,11 +1,15 @@
 package adminorder.service;
 
 import edu.fudan.common.entity.*;
+import edu.fudan.common.order.OrderShard;
+import edu.fudan.common.order.OrderShardClient;
+import edu.fudan.common.util.KeysetPage;
+import edu.fudan.common.util.OrderCursor;
+import edu.fudan.common.util.OrderPageRequest;
 import edu.fudan.common.util.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -14,8 +18,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 /**
  * @author fdse
@@ -24,153 +27,137 @@ import java.util.List;
 public class AdminOrderServiceImpl implements AdminOrderService {
     @Autowired
     private RestTemplate restTemplate;
+
     @Autowired
+    private OrderShardClient orderShardClient;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AdminOrderServiceImpl.class);
 
-    private String getServiceUrl(String serviceName) {
-        return "http://" + serviceName + ":8080";
-    }
-
     @Override
     public Response getAllOrders(HttpHeaders headers) {
 
         AdminOrderServiceImpl.LOGGER.info("[getAllOrders][Get All Orders: Generate Reponse Begin]");
-        //Get all of the orders
-        ArrayList<Order> orders = new ArrayList<>();
-        //From ts-order-service
-        HttpEntity requestEntity = new HttpEntity(null);
+        //Get all of the orders of every order shard, queried in parallel
+        ArrayList<Order> orders = new ArrayList<>(orderShardClient.getAllOrders(null));
+        //Return orders
+        return new Response<>(1, "Get the orders successfully!", orders);
 
-        String order_service_url = getServiceUrl("ts-order-service");
-        ResponseEntity<Response<ArrayList<Order>>> re = restTemplate.exchange(
-                order_service_url + "/api/v1/orderservice/order",
-                HttpMethod.GET,
-                requestEntity,
-                new ParameterizedTypeReference<Response<ArrayList<Order>>>() {
-                });
-        Response<ArrayList<Order>> result = re.getBody();
-
-        if (result.getStatus() == 1) {
-            AdminOrderServiceImpl.LOGGER.info("[getAllOrders][Get Orders From ts-order-service successfully!]");
-            ArrayList<Order> orders1 = result.getData();
-            orders.addAll(orders1);
-        } else {
-            AdminOrderServiceImpl.LOGGER.error("[getAllOrders][receive response][Get Orders From ts-order-service fail!]");
+    }
+
+    @Override
+    public Response getOrderPage(String cursor, int size, HttpHeaders headers) {
+        OrderPageRequest request;
+        try {
+            request = OrderPageRequest.of(cursor, size);
+        } catch (IllegalArgumentException e) {
+            AdminOrderServiceImpl.LOGGER.warn("[getOrderPage][Get Order Page Fail][Invalid cursor: {}]", cursor);
+            return new Response<>(0, "Invalid cursor.", null);
+        }
+        int pageSize = request.getSize();
+        //Every order shard lists its orders in (boughtDate, id) order, so the same cursor
+        //positions all listings: a page of each after it holds the next page of the merged listing.
+        //A shard missing from the merge would have its orders skipped by the next cursor, so the
+        //page fails with it
+        Map<OrderShard, KeysetPage<Order>> pages;
+        try {
+            pages = orderShardClient.scatter(shard -> getOrderPage(shard.url("/page"), cursor, pageSize));
+        } catch (RuntimeException e) {
+            AdminOrderServiceImpl.LOGGER.error("[getOrderPage][Get Order Page Fail][Order shard failed][{}]", e.toString());
+            return new Response<>(0, "Get the orders failed, an order shard is unavailable.", null);
+        }
+
+        List<List<Order>> listings = new ArrayList<>();
+        boolean hasMore = false;
+        for (KeysetPage<Order> page : pages.values()) {
+            listings.add(page.getItems());
+            hasMore |= page.getNextCursor() != null;
+        }
+        int[] taken = new int[listings.size()];
+        List<Order> items = new ArrayList<>(pageSize);
+        while (items.size() < pageSize) {
+            int next = -1;
+            for (int k = 0; k < listings.size(); k++) {
+                if (taken[k] < listings.get(k).size() && (next < 0
+                        || cursorOf(listings.get(k).get(taken[k])).compareTo(cursorOf(listings.get(next).get(taken[next]))) < 0)) {
+                    next = k;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            items.add(listings.get(next).get(taken[next]++));
         }
-        //From ts-order-other-service
-        HttpEntity requestEntity2 = new HttpEntity(null);
-        String order_other_service_url = getServiceUrl("ts-order-other-service");
-        ResponseEntity<Response<ArrayList<Order>>> re2 = restTemplate.exchange(
-                order_other_service_url + "/api/v1/orderOtherService/orderOther",
+        for (int k = 0; k < listings.size(); k++) {
+            hasMore |= taken[k] < listings.get(k).size();
+        }
+        String nextCursor = hasMore && !items.isEmpty() ? cursorOf(items.get(items.size() - 1)).encode() : null;
+        AdminOrderServiceImpl.LOGGER.info("[getOrderPage][Get Order Page][shards: {}, taken: {}, last page: {}]",
+                pages.keySet(), Arrays.toString(taken), nextCursor == null);
+        return new Response<>(1, "Get the orders successfully!", new KeysetPage<>(items, nextCursor));
+    }
+
+    private KeysetPage<Order> getOrderPage(String url, String cursor, int size) {
+        String query = url + "?size=" + size + (cursor == null || cursor.isEmpty() ? "" : "&cursor=" + cursor);
+        ResponseEntity<Response<KeysetPage<Order>>> re = restTemplate.exchange(
+                query,
                 HttpMethod.GET,
-                requestEntity2,
-                new ParameterizedTypeReference<Response<ArrayList<Order>>>() {
+                new HttpEntity(null),
+                new ParameterizedTypeReference<Response<KeysetPage<Order>>>() {
                 });
-        result = re2.getBody();
-
-        if (result.getStatus() == 1) {
-            AdminOrderServiceImpl.LOGGER.info("[getAllOrders][Get Orders From ts-order-other-service successfully!]");
-            ArrayList<Order> orders1 = (ArrayList<Order>) result.getData();
-            orders.addAll(orders1);
-        } else {
-            AdminOrderServiceImpl.LOGGER.error("[getAllOrders][receive response][Get Orders From ts-order-other-service fail!]");
+        Response<KeysetPage<Order>> result = re.getBody();
+        if (result == null || result.getStatus() != 1 || result.getData() == null) {
+            AdminOrderServiceImpl.LOGGER.error("[getOrderPage][receive response][Get Order Page fail][url: {}]", url);
+            throw new IllegalStateException("Order page of " + url + " not received");
         }
-        //Return orders
-        return new Response<>(1, "Get the orders successfully!", orders);
+        return result.getData();
+    }
 
+    private static OrderCursor cursorOf(Order order) {
+        return new OrderCursor(order.getBoughtDate(), order.getId());
     }
 
     @Override
     public Response deleteOrder(String orderId, String trainNumber, HttpHeaders headers) {
-        Response deleteOrderResult;
-        if (trainNumber.startsWith("G") || trainNumber.startsWith("D")) {
-            AdminOrderServiceImpl.LOGGER.info("[deleteOrder][Delete Order][orderId: {}, trainNumber: {}]", orderId, trainNumber);
-            HttpEntity requestEntity = new HttpEntity(null);
-            String order_service_url = getServiceUrl("ts-order-service");
-            ResponseEntity<Response> re = restTemplate.exchange(
-                     order_service_url + "/api/v1/orderservice/order/" + orderId,
-                    HttpMethod.DELETE,
-                    requestEntity,
-                    Response.class);
-            deleteOrderResult = re.getBody();
-
-        } else {
-            AdminOrderServiceImpl.LOGGER.info("[deleteOrder][Delete Order Other][trainNumber doesn't starts With G or D]");
-            HttpEntity requestEntity = new HttpEntity(null);
-            String order_other_service_url = getServiceUrl("ts-order-other-service");
-            ResponseEntity<Response> re = restTemplate.exchange(
-                    order_other_service_url + "/api/v1/orderOtherService/orderOther/" + orderId,
-                    HttpMethod.DELETE,
-                    requestEntity,
-                    Response.class);
-            deleteOrderResult = re.getBody();
-
-        }
-        return deleteOrderResult;
+        OrderShard shard = orderShardClient.route(trainNumber);
+        AdminOrderServiceImpl.LOGGER.info("[deleteOrder][Delete Order][orderId: {}, trainNumber: {}, shard: {}]", orderId, trainNumber, shard);
+        HttpEntity requestEntity = new HttpEntity(null);
+        ResponseEntity<Response> re = restTemplate.exchange(
+                shard.url("/" + orderId),
+                HttpMethod.DELETE,
+                requestEntity,
+                Response.class);
+        return re.getBody();
 
     }
 
     @Override
     public Response updateOrder(Order request, HttpHeaders headers) {
 
-        Response updateOrderResult;
         LOGGER.info("[updateOrder][UPDATE ORDER INFO][request info: {}]", request.toString());
-        if (request.getTrainNumber().startsWith("G") || request.getTrainNumber().startsWith("D")) {
-
-            AdminOrderServiceImpl.LOGGER.info("[updateOrder][Update Order][trainNumber starts With G or D]");
-            HttpEntity requestEntity = new HttpEntity(request, headers);
-            String order_service_url = getServiceUrl("ts-order-service");
-            ResponseEntity<Response> re = restTemplate.exchange(
-                    order_service_url + "/api/v1/orderservice/order/admin",
-                    HttpMethod.PUT,
-                    requestEntity,
-                    Response.class);
-            updateOrderResult = re.getBody();
-
-        } else {
-            AdminOrderServiceImpl.LOGGER.info("[updateOrder][Add New Order Other][trainNumber doesn't starts With G or D]");
-            HttpEntity requestEntity = new HttpEntity(request, headers);
-            String order_other_service_url = getServiceUrl("ts-order-other-service");
-            ResponseEntity<Response> re = restTemplate.exchange(
-                    order_other_service_url + "/api/v1/orderOtherService/orderOther/admin",
-                    HttpMethod.PUT,
-                    requestEntity,
-                    Response.class);
-            updateOrderResult = re.getBody();
-
-        }
-        return updateOrderResult;
+        OrderShard shard = orderShardClient.route(request.getTrainNumber());
+        AdminOrderServiceImpl.LOGGER.info("[updateOrder][Update Order][trainNumber: {}, shard: {}]", request.getTrainNumber(), shard);
+        HttpEntity requestEntity = new HttpEntity(request, headers);
+        ResponseEntity<Response> re = restTemplate.exchange(
+                shard.url("/admin"),
+                HttpMethod.PUT,
+                requestEntity,
+                Response.class);
+        return re.getBody();
     }
 
     @Override
     public Response addOrder(Order request, HttpHeaders headers) {
 
-        Response addOrderResult;
         LOGGER.info("[addOrder][ADD ORDER][request info: {}]", request.toString());
-        if (request.getTrainNumber().startsWith("G") || request.getTrainNumber().startsWith("D")) {
-            AdminOrderServiceImpl.LOGGER.info("[addOrder][Add New Order][trainNumber starts With G or D]");
-            HttpEntity requestEntity = new HttpEntity(request, headers);
-            String order_service_url = getServiceUrl("ts-order-service");
-            ResponseEntity<Response> re = restTemplate.exchange(
-                    order_service_url + "/api/v1/orderservice/order/admin",
-                    HttpMethod.POST,
-                    requestEntity,
-                    Response.class);
-            addOrderResult = re.getBody();
-
-        } else {
-            AdminOrderServiceImpl.LOGGER.info("[addOrder][Add New Order Other][trainNumber doesn't starts With G or D]");
-            HttpEntity requestEntity = new HttpEntity(request, headers);
-            String order_other_service_url = getServiceUrl("ts-order-other-service");
-            ResponseEntity<Response> re = restTemplate.exchange(
-                     order_other_service_url + "/api/v1/orderOtherService/orderOther/admin",
-                    HttpMethod.POST,
-                    requestEntity,
-                    Response.class);
-            addOrderResult = re.getBody();
-
-        }
-        return addOrderResult;
+        OrderShard shard = orderShardClient.route(request.getTrainNumber());
+        AdminOrderServiceImpl.LOGGER.info("[addOrder][Add New Order][trainNumber: {}, shard: {}]", request.getTrainNumber(), shard);
+        HttpEntity requestEntity = new HttpEntity(request, headers);
+        ResponseEntity<Response> re = restTemplate.exchange(
+                shard.url("/admin"),
+                HttpMethod.POST,
+                requestEntity,
+                Response.class);
+        return re.getBody();
 
     }
 
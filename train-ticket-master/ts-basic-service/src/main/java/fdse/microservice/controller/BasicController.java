@@ -53,4 +53,22 @@ public class BasicController {
         return ok(service.queryForStationId(stationName, headers));
     }
 
+    @DeleteMapping(value = "/basic/cache")
+    public HttpEntity invalidateReferenceData(@RequestHeader HttpHeaders headers) {
+        logger.info("[invalidateReferenceData][Invalidate all reference data]");
+        return ok(service.invalidateReferenceData(null, null, headers));
+    }
+
+    @DeleteMapping(value = "/basic/cache/{region}")
+    public HttpEntity invalidateReferenceData(@PathVariable String region, @RequestHeader HttpHeaders headers) {
+        logger.info("[invalidateReferenceData][Invalidate reference data][region: {}]", region);
+        return ok(service.invalidateReferenceData(region, null, headers));
+    }
+
+    @DeleteMapping(value = "/basic/cache/{region}/{key}")
+    public HttpEntity invalidateReferenceData(@PathVariable String region, @PathVariable String key, @RequestHeader HttpHeaders headers) {
+        logger.info("[invalidateReferenceData][Invalidate reference data][region: {}, key: {}]", region, key);
+        return ok(service.invalidateReferenceData(region, key, headers));
+    }
+
 }
@@ -32,4 +32,14 @@ public interface BasicService {
      * @return Response
      */
     Response queryForStationId(String stationName, HttpHeaders headers);
+
+    /**
+     * drop cached reference data so the next query reloads it
+     *
+     * @param region cache region (stations, trainTypes, routes, priceConfigs), null for all
+     * @param key entry of the region, null for the whole region
+     * @param  headers headers
+     * @return Response
+     */
+    Response invalidateReferenceData(String region, String key, HttpHeaders headers);
 }
@@ -1,10 +1,10 @@
 package fdse.microservice.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
 import edu.fudan.common.entity.*;
-import edu.fudan.common.util.JsonUtils;
+import edu.fudan.common.util.ResponseTypes;
 import edu.fudan.common.util.Response;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,10 +12,14 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * @author fdse
@@ -26,16 +30,65 @@ public class BasicServiceImpl implements BasicService {
     @Autowired
     private RestTemplate restTemplate;
 
-
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BasicServiceImpl.class);
 
+    /**
+     * time budget of all lookups of one queryForTravel
+     */
+    private static final long TRAVEL_QUERY_DEADLINE = 3000;
+
+    /**
+     * bounded; when the queue is full the request thread does the lookup itself
+     */
+    private static final ExecutorService executorService = new ThreadPoolExecutor(16, 16, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(512), new CustomizableThreadFactory("BasicLookupThreadPool-"), new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private static final double DEFAULT_BASIC_PRICE_RATE = 0.75;
+    private static final double DEFAULT_FIRST_CLASS_PRICE_RATE = 1;
+
     private String getServiceUrl(String serviceName) {
         return "http://" + serviceName + ":8080";
     }
 
     @Override
     public Response queryForTravel(Travel info, HttpHeaders headers) {
+        String start = info.getStartPlace();
+        String end = info.getEndPlace();
+        String trainTypeName = info.getTrip().getTrainTypeName();
+        String routeId = info.getTrip().getRouteId();
+
+        //The lookups are independent, so the ones missing from the cache run concurrently
+        Map<String, Long> timings = new ConcurrentHashMap<>();
+        long deadline = System.currentTimeMillis() + TRAVEL_QUERY_DEADLINE;
+        Future<Boolean> startExist = lookup("startStation", referenceDataCache.stations(), start,
+                () -> checkStationExists(start, headers) ? Boolean.TRUE : null, timings);
+        Future<Boolean> endExist = lookup("endStation", referenceDataCache.stations(), end,
+                () -> checkStationExists(end, headers) ? Boolean.TRUE : null, timings);
+        Future<TrainType> trainType = lookup("trainType", referenceDataCache.trainTypes(), trainTypeName,
+                () -> queryTrainTypeByName(trainTypeName, headers), timings);
+        Future<Route> route = lookup("route", referenceDataCache.routes(), routeId,
+                () -> getRouteByRouteId(routeId, headers), timings);
+        Future<PriceConfig> priceConfig = lookup("priceConfig", referenceDataCache.priceConfigs(), ReferenceDataCache.priceConfigKey(routeId, trainTypeName),
+                () -> queryPriceConfigByRouteIdAndTrainType(routeId, trainTypeName, headers), timings);
+        try {
+            return queryForTravel(info, startExist, endExist, trainType, route, priceConfig, deadline);
+        } catch (TimeoutException e) {
+            BasicServiceImpl.LOGGER.warn("[queryForTravel][Deadline exceeded][deadline: {}ms, finished lookups: {}]", TRAVEL_QUERY_DEADLINE, timings);
+            return new Response<>(0, "Query for travel timed out", null);
+        } finally {
+            //Lookups no longer needed after a short-circuit are dropped if they have not started yet
+            for (Future<?> lookup : Arrays.asList(startExist, endExist, trainType, route, priceConfig)) {
+                lookup.cancel(false);
+            }
+            BasicServiceImpl.LOGGER.info("[queryForTravel][Lookup timings][timings(ms): {}]", timings);
+        }
+    }
+
+    private Response queryForTravel(Travel info, Future<Boolean> startExist, Future<Boolean> endExist, Future<TrainType> trainTypeLookup,
+                                    Future<Route> routeLookup, Future<PriceConfig> priceConfigLookup, long deadline) throws TimeoutException {
         Response response = new Response<>();
         TravelResult result = new TravelResult();
         result.setStatus(true);
@@ -43,19 +96,16 @@ public class BasicServiceImpl implements BasicService {
         response.setMsg("Success");
         String start = info.getStartPlace();
         String end = info.getEndPlace();
-        boolean startingPlaceExist = checkStationExists(start, headers);
-        boolean endPlaceExist = checkStationExists(end, headers);
-        if (!startingPlaceExist || !endPlaceExist) {
-            result.setStatus(false);
-            response.setStatus(0);
-            response.setMsg("Start place or end place not exist!");
-            if (!startingPlaceExist)
-                BasicServiceImpl.LOGGER.warn("[queryForTravel][Start place not exist][start place: {}]", info.getStartPlace());
-            if (!endPlaceExist)
-                BasicServiceImpl.LOGGER.warn("[queryForTravel][End place not exist][end place: {}]", info.getEndPlace());
+        if (await(startExist, deadline) == null) {
+            BasicServiceImpl.LOGGER.warn("[queryForTravel][Start place not exist][start place: {}]", info.getStartPlace());
+            return new Response<>(0, "Start place or end place not exist!", null);
+        }
+        if (await(endExist, deadline) == null) {
+            BasicServiceImpl.LOGGER.warn("[queryForTravel][End place not exist][end place: {}]", info.getEndPlace());
+            return new Response<>(0, "Start place or end place not exist!", null);
         }
 
-        TrainType trainType = queryTrainTypeByName(info.getTrip().getTrainTypeName(), headers);
+        TrainType trainType = await(trainTypeLookup, deadline);
         if (trainType == null) {
             BasicServiceImpl.LOGGER.warn("[queryForTravel][traintype doesn't exist][trainTypeName: {}]", info.getTrip().getTrainTypeName());
             result.setStatus(false);
@@ -67,7 +117,7 @@ public class BasicServiceImpl implements BasicService {
         }
 
         String routeId = info.getTrip().getRouteId();
-        Route route = getRouteByRouteId(routeId, headers);
+        Route route = await(routeLookup, deadline);
         if(route == null){
             result.setStatus(false);
             response.setStatus(0);
@@ -93,23 +143,15 @@ public class BasicServiceImpl implements BasicService {
             LOGGER.error("[queryForTravel]route info not valid: ",route);
             return response;
         }
-        PriceConfig priceConfig = queryPriceConfigByRouteIdAndTrainType(routeId, trainType.getName(), headers);
-        HashMap<String, String> prices = new HashMap<>();
-        try {
+        PriceConfig priceConfig = await(priceConfigLookup, deadline);
+        HashMap<String, String> prices = null;
+        if (priceConfig != null) {
             BasicServiceImpl.LOGGER.info("[queryForTravel][calculate price]");
-            int distance = 0;
-            distance = route.getDistances().get(indexEnd) - route.getDistances().get(indexStart);
-            /**
-             * We need the price Rate and distance (starting station).
-             */
-            double priceForEconomyClass = distance * priceConfig.getBasicPriceRate();
-            double priceForConfortClass = distance * priceConfig.getFirstClassPriceRate();
-            prices.put("economyClass", "" + priceForEconomyClass);
-            prices.put("confortClass", "" + priceForConfortClass);
-        }catch (Exception e){
-                BasicServiceImpl.LOGGER.error("[queryForTravel][catch price exception]");
-                prices.put("economyClass", "95.0");
-                prices.put("confortClass", "120.0");
+            prices = fareTable(route, trainType.getName(), priceConfig).prices(indexStart, indexEnd);
+        }
+        if (prices == null) {
+            BasicServiceImpl.LOGGER.error("[queryForTravel][No price config or route distances][routeId: {}, trainType: {}]", routeId, trainType.getName());
+            prices = defaultPrices();
         }
         result.setRoute(route);
         result.setPrices(prices);
@@ -181,20 +223,32 @@ public class BasicServiceImpl implements BasicService {
         //List<String> invalidTrips = new ArrayList<>();
 
         // check if station exist to exclude invalid travel info
-        Map<String, String> stationMap = checkStationsExists(new ArrayList<>(stationNames), headers);
+        Map<String, Boolean> stationMap = cachedAll(referenceDataCache.stations(), stationNames, names -> {
+            Map<String, String> stationIds = checkStationsExists(names, headers);
+            if (stationIds == null) {
+                return null;
+            }
+            Map<String, Boolean> exists = new HashMap<>();
+            for (Map.Entry<String, String> s : stationIds.entrySet()) {
+                if (s.getValue() != null) {
+                    exists.put(s.getKey(), Boolean.TRUE);
+                }
+            }
+            return exists;
+        });
         if(stationMap == null) {
             response.setStatus(0);
             response.setMsg("all stations don't exist");
             return response;
         }
-        for(Map.Entry<String, String> s : stationMap.entrySet()){
-            if(s.getValue() == null ){
+        for(String stationName : stationNames){
+            if(stationMap.get(stationName) == null ){
                 // station not exist
-                if(startTrips.get(s.getKey()) != null){
-                    avaTrips.removeAll(startTrips.get(s.getKey()));
+                if(startTrips.get(stationName) != null){
+                    avaTrips.removeAll(startTrips.get(stationName));
                 }
-                if(endTrips.get(s.getKey()) != null){
-                    avaTrips.removeAll(endTrips.get(s.getKey()));
+                if(endTrips.get(stationName) != null){
+                    avaTrips.removeAll(endTrips.get(stationName));
                 }
             }
         }
@@ -206,16 +260,22 @@ public class BasicServiceImpl implements BasicService {
         }
 
         // check if train_type exist
-        List<TrainType> tts = queryTrainTypeByNames(new ArrayList<>(trainTypeNames), headers);
-        if(tts == null){
+        Map<String, TrainType> trainTypeMap = cachedAll(referenceDataCache.trainTypes(), trainTypeNames, names -> {
+            List<TrainType> tts = queryTrainTypeByNames(names, headers);
+            if (tts == null) {
+                return null;
+            }
+            Map<String, TrainType> byName = new HashMap<>();
+            for (TrainType t : tts) {
+                byName.put(t.getName(), t);
+            }
+            return byName;
+        });
+        if(trainTypeMap == null){
             response.setStatus(0);
             response.setMsg("all train_type don't exist");
             return response;
         }
-        Map<String, TrainType> trainTypeMap = new HashMap<>();
-        for(TrainType t: tts){
-            trainTypeMap.put(t.getName(), t);
-        }
         for(Map.Entry<String, List<String>> typeTrip: typeTrips.entrySet()){
             String ttype = typeTrip.getKey();
             if(trainTypeMap.get(ttype) == null){
@@ -229,16 +289,22 @@ public class BasicServiceImpl implements BasicService {
         }
 
         // check if route exist to exclude invalid travel info
-        List<Route> routes = getRoutesByRouteIds(new ArrayList<>(routeIds), headers);
-        if(routes == null) {
+        Map<String, Route> routeMap = cachedAll(referenceDataCache.routes(), routeIds, ids -> {
+            List<Route> routes = getRoutesByRouteIds(ids, headers);
+            if (routes == null) {
+                return null;
+            }
+            Map<String, Route> byId = new HashMap<>();
+            for (Route r : routes) {
+                byId.put(r.getId(), r);
+            }
+            return byId;
+        });
+        if(routeMap == null) {
             response.setStatus(0);
             response.setMsg("all routes don't exist");
             return response;
         }
-        Map<String, Route> routeMap = new HashMap<>();
-        for(Route r: routes){
-            routeMap.put(r.getId(), r);
-        }
         for(Map.Entry<String, List<String>> routeTrip: routeTrips.entrySet()){
             String routeId = routeTrip.getKey();
             if(routeMap.get(routeId) == null){
@@ -263,13 +329,17 @@ public class BasicServiceImpl implements BasicService {
             return response;
         }
 
-        List<String> routeIdAndTypes = new ArrayList<>();
+        Set<String> routeIdAndTypes = new HashSet<>();
         for(String tripNumber: avaTrips){
             String routeId = tripInfos.get(tripNumber).getTrip().getRouteId();
             String trainType = tripInfos.get(tripNumber).getTrip().getTrainTypeName();
-            routeIdAndTypes.add(routeId+":"+trainType);
+            routeIdAndTypes.add(ReferenceDataCache.priceConfigKey(routeId, trainType));
+        }
+        Map<String, PriceConfig> pcMap = cachedAll(referenceDataCache.priceConfigs(), routeIdAndTypes,
+                keys -> queryPriceConfigByRouteIdsAndTrainTypes(keys, headers));
+        if (pcMap == null) {
+            pcMap = new HashMap<>();
         }
-        Map<String, PriceConfig> pcMap = queryPriceConfigByRouteIdsAndTrainTypes(routeIdAndTypes, headers);
 
         Map<String, TravelResult> trMap = new HashMap<>();
         for(String tripNumber: avaTrips){
@@ -278,31 +348,12 @@ public class BasicServiceImpl implements BasicService {
             String routeId = info.getTrip().getRouteId();
             Route route = routeMap.get(routeId);
 
-            int indexStart = route.getStations().indexOf(info.getStartPlace());
-            int indexEnd = route.getStations().indexOf(info.getEndPlace());
-
-            double basicPriceRate = 0.75;
-            double firstPriceRate = 1;
-            PriceConfig priceConfig = pcMap.get(routeId+":"+trainType);
-            if(priceConfig != null){
-                basicPriceRate = priceConfig.getBasicPriceRate();
-                firstPriceRate = priceConfig.getFirstClassPriceRate();
-            }
-
-            HashMap<String, String> prices = new HashMap<>();
-            try {
-                int distance = 0;
-                distance = route.getDistances().get(indexEnd) - route.getDistances().get(indexStart);
-                /**
-                 * We need the price Rate and distance (starting station).
-                 */
-                double priceForEconomyClass = distance * basicPriceRate;
-                double priceForConfortClass = distance * firstPriceRate;
-                prices.put("economyClass", "" + priceForEconomyClass);
-                prices.put("confortClass", "" + priceForConfortClass);
-            }catch (Exception e){
-                prices.put("economyClass", "95.0");
-                prices.put("confortClass", "120.0");
+            PriceConfig priceConfig = pcMap.get(ReferenceDataCache.priceConfigKey(routeId, trainType));
+            FareTable fareTable = fareTable(route, trainType, priceConfig);
+            HashMap<String, String> prices = fareTable.prices(
+                    fareTable.indexOf(info.getStartPlace()), fareTable.indexOf(info.getEndPlace()));
+            if (prices == null) {
+                prices = defaultPrices();
             }
 
 
@@ -367,6 +418,118 @@ public class BasicServiceImpl implements BasicService {
         return response;
     }
 
+    @Override
+    public Response invalidateReferenceData(String region, String key, HttpHeaders headers) {
+        if (region == null) {
+            referenceDataCache.invalidateAll();
+        } else if (!referenceDataCache.invalidate(region, key)) {
+            BasicServiceImpl.LOGGER.warn("[invalidateReferenceData][Unknown cache region][region: {}]", region);
+            return new Response<>(0, "Unknown cache region: " + region, null);
+        }
+        BasicServiceImpl.LOGGER.info("[invalidateReferenceData][Reference data invalidated][region: {}, key: {}]", region, key);
+        return new Response<>(1, "Success", null);
+    }
+
+    /**
+     * A cached value is returned at once; a miss is loaded on the lookup executor and its
+     * time reported under the dependency name.
+     */
+    private <V> Future<V> lookup(String dependency, Cache<String, V> cache, String key, Supplier<V> loader, Map<String, Long> timings) {
+        if (key == null || cache.asMap().containsKey(key)) {
+            return CompletableFuture.completedFuture(cached(cache, key, loader));
+        }
+        return executorService.submit(() -> {
+            long begin = System.nanoTime();
+            try {
+                return cached(cache, key, loader);
+            } finally {
+                long elapsed = System.nanoTime() - begin;
+                timings.put(dependency, TimeUnit.NANOSECONDS.toMillis(elapsed));
+                Metrics.timer("basic.travel.lookup", "dependency", dependency).record(elapsed, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    private <V> V await(Future<V> future, long deadline) throws TimeoutException {
+        try {
+            return future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Cached value of key, loaded on a miss; null results are returned but not cached.
+     */
+    private <V> V cached(Cache<String, V> cache, String key, Supplier<V> loader) {
+        if (key == null) {
+            return loader.get();
+        }
+        V value = cache.getIfPresent(key);
+        if (value == null) {
+            value = loader.get();
+            if (value != null) {
+                cache.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Cached values of keys; the missing ones are loaded in one batch call. Returns null only
+     * when nothing was cached and the batch call failed, like the batch call itself.
+     */
+    private <V> Map<String, V> cachedAll(Cache<String, V> cache, Collection<String> keys, Function<List<String>, Map<String, V>> loader) {
+        Map<String, V> values = new HashMap<>(cache.getAllPresent(keys));
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            if (key != null && !values.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return values;
+        }
+        Map<String, V> loaded = loader.apply(missing);
+        if (loaded == null) {
+            return values.isEmpty() ? null : values;
+        }
+        for (Map.Entry<String, V> entry : loaded.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                cache.put(entry.getKey(), entry.getValue());
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Fare table of the route and train type, rebuilt when the cached route or price config
+     * it was built from has been reloaded. Routes without a price config use the default rates.
+     */
+    private FareTable fareTable(Route route, String trainType, PriceConfig priceConfig) {
+        String key = ReferenceDataCache.priceConfigKey(route.getId(), trainType);
+        FareTable fareTable = referenceDataCache.fareTables().getIfPresent(key);
+        if (fareTable == null || !fareTable.isBuiltFrom(route, priceConfig)) {
+            fareTable = FareTable.build(route, priceConfig, DEFAULT_BASIC_PRICE_RATE, DEFAULT_FIRST_CLASS_PRICE_RATE);
+            referenceDataCache.fareTables().put(key, fareTable);
+        }
+        return fareTable;
+    }
+
+    private HashMap<String, String> defaultPrices() {
+        HashMap<String, String> prices = new HashMap<>();
+        prices.put("economyClass", "95.0");
+        prices.put("confortClass", "120.0");
+        return prices;
+    }
+
     public Map<String,String> checkStationsExists(List<String> stationNames, HttpHeaders headers) {
         BasicServiceImpl.LOGGER.info("[checkStationsExists][Check Stations Exists][stationNames: {}]", stationNames);
         HttpEntity requestEntity = new HttpEntity(stationNames, null);
@@ -443,50 +606,46 @@ public class BasicServiceImpl implements BasicService {
         BasicServiceImpl.LOGGER.info("[queryTrainTypeByNames][Query Train Type][Train Type names: {}]", trainTypeNames);
         HttpEntity requestEntity = new HttpEntity(trainTypeNames, null);
         String train_service_url=getServiceUrl("ts-train-service");
-        ResponseEntity<Response> re = restTemplate.exchange(
+        ResponseEntity<Response<List<TrainType>>> re = restTemplate.exchange(
                 train_service_url + "/api/v1/trainservice/trains/byNames",
                 HttpMethod.POST,
                 requestEntity,
-                Response.class);
+                ResponseTypes.listOf(TrainType.class));
         Response<List<TrainType>>  response = re.getBody();
         if(response.getStatus() == 0){
             return null;
         }
-        List<TrainType> tts = Arrays.asList(JsonUtils.conveterObject(response.getData(), TrainType[].class));
-        return tts;
+        return response.getData();
     }
 
     public TrainType queryTrainTypeByName(String trainTypeName, HttpHeaders headers) {
         BasicServiceImpl.LOGGER.info("[queryTrainTypeByName][Query Train Type][Train Type name: {}]", trainTypeName);
         HttpEntity requestEntity = new HttpEntity(null);
         String train_service_url=getServiceUrl("ts-train-service");
-        ResponseEntity<Response> re = restTemplate.exchange(
+        ResponseEntity<Response<TrainType>> re = restTemplate.exchange(
                 train_service_url + "/api/v1/trainservice/trains/byName/" + trainTypeName,
                 HttpMethod.GET,
                 requestEntity,
-                Response.class);
-        Response  response = re.getBody();
-
-        return JsonUtils.conveterObject(response.getData(), TrainType.class);
+                ResponseTypes.of(TrainType.class));
+        return re.getBody().getData();
     }
 
     private List<Route> getRoutesByRouteIds(List<String> routeIds, HttpHeaders headers) {
         BasicServiceImpl.LOGGER.info("[getRoutesByRouteIds][Get Route By Ids][Route IDs: {}]", routeIds);
         HttpEntity requestEntity = new HttpEntity(routeIds, null);
         String route_service_url=getServiceUrl("ts-route-service");
-        ResponseEntity<Response> re = restTemplate.exchange(
+        ResponseEntity<Response<List<Route>>> re = restTemplate.exchange(
                 route_service_url + "/api/v1/routeservice/routes/byIds/",
                 HttpMethod.POST,
                 requestEntity,
-                Response.class);
+                ResponseTypes.listOf(Route.class));
         Response<List<Route>> result = re.getBody();
         if ( result.getStatus() == 0) {
             BasicServiceImpl.LOGGER.warn("[getRoutesByRouteIds][Get Route By Ids Failed][Fail msg: {}]", result.getMsg());
             return null;
         } else {
             BasicServiceImpl.LOGGER.info("[getRoutesByRouteIds][Get Route By Ids][Success]");
-            List<Route> routes = Arrays.asList(JsonUtils.conveterObject(result.getData(), Route[].class));;
-            return routes;
+            return result.getData();
         }
     }
 
@@ -494,18 +653,18 @@ public class BasicServiceImpl implements BasicService {
         BasicServiceImpl.LOGGER.info("[getRouteByRouteId][Get Route By Id][Route ID: {}]", routeId);
         HttpEntity requestEntity = new HttpEntity(null);
         String route_service_url=getServiceUrl("ts-route-service");
-        ResponseEntity<Response> re = restTemplate.exchange(
+        ResponseEntity<Response<Route>> re = restTemplate.exchange(
                 route_service_url + "/api/v1/routeservice/routes/" + routeId,
                 HttpMethod.GET,
                 requestEntity,
-                Response.class);
-        Response result = re.getBody();
+                ResponseTypes.of(Route.class));
+        Response<Route> result = re.getBody();
         if ( result.getStatus() == 0) {
             BasicServiceImpl.LOGGER.warn("[getRouteByRouteId][Get Route By Id Failed][Fail msg: {}]", result.getMsg());
             return null;
         } else {
             BasicServiceImpl.LOGGER.info("[getRouteByRouteId][Get Route By Id][Success]");
-            return JsonUtils.conveterObject(result.getData(), Route.class);
+            return result.getData();
         }
     }
 
@@ -513,42 +672,34 @@ public class BasicServiceImpl implements BasicService {
         BasicServiceImpl.LOGGER.info("[queryPriceConfigByRouteIdAndTrainType][Query For Price Config][RouteId: {} ,TrainType: {}]", routeId, trainType);
         HttpEntity requestEntity = new HttpEntity(null, null);
         String price_service_url=getServiceUrl("ts-price-service");
-        ResponseEntity<Response> re = restTemplate.exchange(
+        ResponseEntity<Response<PriceConfig>> re = restTemplate.exchange(
                 price_service_url + "/api/v1/priceservice/prices/" + routeId + "/" + trainType,
                 HttpMethod.GET,
                 requestEntity,
-                Response.class);
-        Response result = re.getBody();
+                ResponseTypes.of(PriceConfig.class));
+        Response<PriceConfig> result = re.getBody();
 
         BasicServiceImpl.LOGGER.info("[queryPriceConfigByRouteIdAndTrainType][Response Resutl to String][result: {}]", result.toString());
-        return  JsonUtils.conveterObject(result.getData(), PriceConfig.class);
+        return result.getData();
     }
 
     private Map<String, PriceConfig> queryPriceConfigByRouteIdsAndTrainTypes(List<String> routeIdsTypes, HttpHeaders headers) {
         BasicServiceImpl.LOGGER.info("[queryPriceConfigByRouteIdsAndTrainTypes][Query For Price Config][RouteId and TrainType: {}]", routeIdsTypes);
         HttpEntity requestEntity = new HttpEntity(routeIdsTypes, null);
         String price_service_url=getServiceUrl("ts-price-service");
-        ResponseEntity<Response> re = restTemplate.exchange(
+        ResponseEntity<Response<Map<String, PriceConfig>>> re = restTemplate.exchange(
                 price_service_url + "/api/v1/priceservice/prices/byRouteIdsAndTrainTypes",
                 HttpMethod.POST,
                 requestEntity,
-                Response.class);
+                ResponseTypes.mapOf(PriceConfig.class));
         Response<Map<String, PriceConfig>> result = re.getBody();
 
-        Map<String, PriceConfig> pcMap;
         if ( result.getStatus() == 0) {
             BasicServiceImpl.LOGGER.warn("[queryPriceConfigByRouteIdsAndTrainTypes][Get Price Config by routeId and trainType Failed][Fail msg: {}]", result.getMsg());
             return null;
         } else {
-            ObjectMapper mapper = new ObjectMapper();
-            try{
-                pcMap = mapper.readValue(JsonUtils.object2Json(result.getData()), new TypeReference<Map<String, PriceConfig>>(){});
-            }catch(Exception e) {
-                BasicServiceImpl.LOGGER.warn("[queryPriceConfigByRouteIdsAndTrainTypes][Get Price Config by routeId and trainType Failed][Fail msg: {}]", e.getMessage());
-                return null;
-            }
             BasicServiceImpl.LOGGER.info("[queryPriceConfigByRouteIdsAndTrainTypes][Get Price Config by routeId and trainType][Success][priceConfigs: {}]", result.getData());
-            return pcMap;
+            return result.getData();
         }
     }
 
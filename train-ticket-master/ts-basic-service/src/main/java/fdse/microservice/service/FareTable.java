@@ -0,0 +1,97 @@
+package fdse.microservice.service;
+
+import edu.fudan.common.entity.PriceConfig;
+import edu.fudan.common.entity.Route;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fares of one (route, train type). Route distances are cumulative from the first station,
+ * so the fare between two stations is the difference of two array entries times a rate.
+ *
+ * A table remembers the route and price config it was built from; when the reference data
+ * cache reloads either of them the table no longer matches and is rebuilt.
+ *
+ * @author fdse
+ */
+public class FareTable {
+
+    private final Route route;
+    private final PriceConfig priceConfig;
+
+    private final Map<String, Integer> stationIndex;
+    private final int[] distances;
+    private final double basicPriceRate;
+    private final double firstClassPriceRate;
+
+    private FareTable(Route route, PriceConfig priceConfig, double basicPriceRate, double firstClassPriceRate) {
+        this.route = route;
+        this.priceConfig = priceConfig;
+        this.basicPriceRate = basicPriceRate;
+        this.firstClassPriceRate = firstClassPriceRate;
+
+        List<String> stations = route.getStations() == null ? Collections.emptyList() : route.getStations();
+        this.stationIndex = new HashMap<>();
+        for (int i = 0; i < stations.size(); i++) {
+            // a station visited twice is priced from its first stop, like indexOf
+            stationIndex.putIfAbsent(stations.get(i), i);
+        }
+        this.distances = toArray(route.getDistances(), stations.size());
+    }
+
+    private static int[] toArray(List<Integer> routeDistances, int size) {
+        if (routeDistances == null || routeDistances.size() < size) {
+            return null;
+        }
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            Integer distance = routeDistances.get(i);
+            if (distance == null) {
+                return null;
+            }
+            result[i] = distance;
+        }
+        return result;
+    }
+
+    /**
+     * Build the table of a route priced by the given config, or by the default rates when
+     * the route has no config.
+     */
+    public static FareTable build(Route route, PriceConfig priceConfig, double defaultBasicPriceRate, double defaultFirstClassPriceRate) {
+        if (priceConfig == null) {
+            return new FareTable(route, null, defaultBasicPriceRate, defaultFirstClassPriceRate);
+        }
+        return new FareTable(route, priceConfig, priceConfig.getBasicPriceRate(), priceConfig.getFirstClassPriceRate());
+    }
+
+    public boolean isBuiltFrom(Route route, PriceConfig priceConfig) {
+        return this.route == route && this.priceConfig == priceConfig;
+    }
+
+    /**
+     * @return the position of the station in the route, -1 when the route does not stop there
+     */
+    public int indexOf(String station) {
+        Integer index = stationIndex.get(station);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Economy and comfort class fares between two route positions, or null when the route
+     * has no usable distances.
+     */
+    public HashMap<String, String> prices(int indexStart, int indexEnd) {
+        if (distances == null) {
+            return null;
+        }
+        int distance = distances[indexEnd] - distances[indexStart];
+        HashMap<String, String> prices = new HashMap<>(4);
+        prices.put("economyClass", String.valueOf(distance * basicPriceRate));
+        prices.put("confortClass", String.valueOf(distance * firstClassPriceRate));
+        return prices;
+    }
+}
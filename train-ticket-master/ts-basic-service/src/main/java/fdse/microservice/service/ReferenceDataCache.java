@@ -0,0 +1,126 @@
+package fdse.microservice.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import edu.fudan.common.entity.PriceConfig;
+import edu.fudan.common.entity.Route;
+import edu.fudan.common.entity.TrainType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local cache of the reference data a travel query needs: existing station names, train
+ * types by name, routes by id, and price configs and fare tables by "routeId:trainType".
+ *
+ * Only positive lookups are cached, so a station or route created after a miss is found on
+ * the next query. Entries expire after EXPIRE_MINUTES, or earlier through invalidate.
+ * Hit and miss counts are published as the actuator cache metrics.
+ *
+ * @author fdse
+ */
+@Component
+public class ReferenceDataCache implements MeterBinder {
+
+    public static final String STATIONS = "stations";
+    public static final String TRAIN_TYPES = "trainTypes";
+    public static final String ROUTES = "routes";
+    public static final String PRICE_CONFIGS = "priceConfigs";
+    public static final String FARE_TABLES = "fareTables";
+
+    private static final int MAXIMUM_SIZE = 10000;
+    private static final int EXPIRE_MINUTES = 10;
+
+    private final Cache<String, Boolean> stations = newCache();
+    private final Cache<String, TrainType> trainTypes = newCache();
+    private final Cache<String, Route> routes = newCache();
+    private final Cache<String, PriceConfig> priceConfigs = newCache();
+    private final Cache<String, FareTable> fareTables = newCache();
+
+    private static <V> Cache<String, V> newCache() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterWrite(EXPIRE_MINUTES, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    public Cache<String, Boolean> stations() {
+        return stations;
+    }
+
+    public Cache<String, TrainType> trainTypes() {
+        return trainTypes;
+    }
+
+    public Cache<String, Route> routes() {
+        return routes;
+    }
+
+    public Cache<String, PriceConfig> priceConfigs() {
+        return priceConfigs;
+    }
+
+    public Cache<String, FareTable> fareTables() {
+        return fareTables;
+    }
+
+    public static String priceConfigKey(String routeId, String trainType) {
+        return routeId + ":" + trainType;
+    }
+
+    public void invalidateAll() {
+        stations.invalidateAll();
+        trainTypes.invalidateAll();
+        routes.invalidateAll();
+        priceConfigs.invalidateAll();
+        fareTables.invalidateAll();
+    }
+
+    /**
+     * Drop one entry, or the whole region when key is null.
+     *
+     * @return false when the region is unknown
+     */
+    public boolean invalidate(String region, String key) {
+        Cache<String, ?> cache = region(region);
+        if (cache == null) {
+            return false;
+        }
+        if (key == null) {
+            cache.invalidateAll();
+        } else {
+            cache.invalidate(key);
+        }
+        return true;
+    }
+
+    private Cache<String, ?> region(String region) {
+        switch (region) {
+            case STATIONS:
+                return stations;
+            case TRAIN_TYPES:
+                return trainTypes;
+            case ROUTES:
+                return routes;
+            case PRICE_CONFIGS:
+                return priceConfigs;
+            case FARE_TABLES:
+                return fareTables;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, stations, "basic." + STATIONS);
+        GuavaCacheMetrics.monitor(registry, trainTypes, "basic." + TRAIN_TYPES);
+        GuavaCacheMetrics.monitor(registry, routes, "basic." + ROUTES);
+        GuavaCacheMetrics.monitor(registry, priceConfigs, "basic." + PRICE_CONFIGS);
+        GuavaCacheMetrics.monitor(registry, fareTables, "basic." + FARE_TABLES);
+    }
+}
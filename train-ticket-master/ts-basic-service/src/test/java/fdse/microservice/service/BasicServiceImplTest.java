@@ -12,9 +12,12 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.UUID;
 
@@ -33,6 +36,7 @@ public class BasicServiceImplTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(basicServiceImpl, "referenceDataCache", new ReferenceDataCache());
     }
 
     @Test
@@ -125,4 +129,71 @@ public class BasicServiceImplTest {
         Assert.assertNull(result);
     }
 
+    @Test
+    public void testQueryForTravelCached() {
+        Trip trip = new Trip();
+        trip.setTripId(new TripId("G1234"));
+        trip.setRouteId("route_id");
+        trip.setTrainTypeName("GaoTieOne");
+        Travel info = new Travel();
+        info.setTrip(trip);
+        info.setStartPlace("shanghai");
+        info.setEndPlace("nanjing");
+        mockExchange("stationservice", new Response<>(1, null, "station_id"));
+        mockExchange("trainservice", new Response<>(1, null, new TrainType("GaoTieOne", 10, 20)));
+        mockExchange("routeservice", new Response<>(1, null,
+                new Route("route_id", Arrays.asList("shanghai", "nanjing"), Arrays.asList(0, 300), "shanghai", "nanjing")));
+        mockExchange("priceservice", new Response<>(1, null, new PriceConfig(UUID.randomUUID(), "GaoTieOne", "route_id", 1.0, 2.0)));
+
+        Response first = basicServiceImpl.queryForTravel(info, headers);
+        Response second = basicServiceImpl.queryForTravel(info, headers);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals("300.0", ((TravelResult) second.getData()).getPrices().get("economyClass"));
+        //two stations, train type, route and price config are fetched once
+        verifyExchanges(2, 3);
+
+        basicServiceImpl.invalidateReferenceData(ReferenceDataCache.ROUTES, "route_id", headers);
+        basicServiceImpl.queryForTravel(info, headers);
+        verifyExchanges(2, 4);
+    }
+
+    @Test
+    public void testQueryForTravelStationNotExist() {
+        Trip trip = new Trip();
+        trip.setTripId(new TripId("G1234"));
+        trip.setRouteId("route_id");
+        trip.setTrainTypeName("GaoTieOne");
+        Travel info = new Travel();
+        info.setTrip(trip);
+        info.setStartPlace("shanghai");
+        info.setEndPlace("nanjing");
+        mockExchange("stationservice", new Response<>(0, "Not exists", null));
+        mockExchange("trainservice", new Response<>(1, null, new TrainType("GaoTieOne", 10, 20)));
+        mockExchange("routeservice", new Response<>(1, null, new Route()));
+        mockExchange("priceservice", new Response<>(1, null, null));
+
+        Response result = basicServiceImpl.queryForTravel(info, headers);
+        Assert.assertEquals(new Response<>(0, "Start place or end place not exist!", null), result);
+    }
+
+    private void mockExchange(String service, Response response) {
+        Mockito.when(restTemplate.exchange(
+                Mockito.contains(service),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class))).thenReturn(new ResponseEntity<>(response, HttpStatus.OK));
+        Mockito.when(restTemplate.exchange(
+                Mockito.contains(service),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class))).thenReturn(new ResponseEntity(response, HttpStatus.OK));
+    }
+
+    private void verifyExchanges(int stationCalls, int typedCalls) {
+        Mockito.verify(restTemplate, Mockito.times(stationCalls)).exchange(
+                Mockito.anyString(), Mockito.any(HttpMethod.class), Mockito.any(HttpEntity.class), Mockito.eq(Response.class));
+        Mockito.verify(restTemplate, Mockito.times(typedCalls)).exchange(
+                Mockito.anyString(), Mockito.any(HttpMethod.class), Mockito.any(HttpEntity.class), Mockito.any(ParameterizedTypeReference.class));
+    }
+
 }
@@ -0,0 +1,44 @@
+package fdse.microservice.service;
+
+import edu.fudan.common.entity.PriceConfig;
+import edu.fudan.common.entity.Route;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+
+@RunWith(JUnit4.class)
+public class FareTableTest {
+
+    private Route route = new Route("route_id", Arrays.asList("shanghai", "suzhou", "nanjing"), Arrays.asList(0, 100, 300), "shanghai", "nanjing");
+
+    private PriceConfig priceConfig = new PriceConfig(UUID.randomUUID(), "GaoTieOne", "route_id", 0.5, 2.0);
+
+    @Test
+    public void testPrices() {
+        FareTable fareTable = FareTable.build(route, priceConfig, 0.75, 1);
+        HashMap<String, String> prices = fareTable.prices(fareTable.indexOf("suzhou"), fareTable.indexOf("nanjing"));
+        Assert.assertEquals("100.0", prices.get("economyClass"));
+        Assert.assertEquals("400.0", prices.get("confortClass"));
+        Assert.assertEquals(-1, fareTable.indexOf("beijing"));
+        Assert.assertTrue(fareTable.isBuiltFrom(route, priceConfig));
+        Assert.assertFalse(fareTable.isBuiltFrom(route, null));
+    }
+
+    @Test
+    public void testDefaultRates() {
+        FareTable fareTable = FareTable.build(route, null, 0.75, 1);
+        Assert.assertEquals("225.0", fareTable.prices(0, 2).get("economyClass"));
+        Assert.assertEquals("300.0", fareTable.prices(0, 2).get("confortClass"));
+    }
+
+    @Test
+    public void testMissingDistances() {
+        Route broken = new Route("route_id", Arrays.asList("shanghai", "suzhou", "nanjing"), Arrays.asList(0, 100), "shanghai", "nanjing");
+        Assert.assertNull(FareTable.build(broken, priceConfig, 0.75, 1).prices(0, 1));
+    }
+}
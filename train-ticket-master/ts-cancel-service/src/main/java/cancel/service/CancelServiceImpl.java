@@ -5,6 +5,7 @@ import edu.fudan.common.entity.OrderStatus;
 import edu.fudan.common.entity.Order;
 import edu.fudan.common.entity.SeatClass;
 import edu.fudan.common.entity.User;
+import edu.fudan.common.order.OrderShardClient;
 import edu.fudan.common.util.Response;
 import edu.fudan.common.util.StringUtils;
 import org.slf4j.Logger;
@@ -31,6 +32,9 @@ public class CancelServiceImpl implements CancelService {
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    private OrderShardClient orderShardClient;
+
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CancelServiceImpl.class);
 
@@ -43,10 +47,10 @@ public class CancelServiceImpl implements CancelService {
     @Override
     public Response cancelOrder(String orderId, String loginId, HttpHeaders headers) {
 
-        Response<Order> orderResult = getOrderByIdFromOrder(orderId, headers);
+        Response<Order> orderResult = orderShardClient.getOrderById(orderId, getAuthorizationHeadersFrom(headers));
         if (orderResult.getStatus() == 1) {
-            CancelServiceImpl.LOGGER.info("[cancelOrder][Cancel Order, Order found G|H]");
             Order order =  orderResult.getData();
+            CancelServiceImpl.LOGGER.info("[cancelOrder][Cancel Order, Order found][orderId: {}, trainNumber: {}]", orderId, order.getTrainNumber());
             if (order.getStatus() == OrderStatus.NOTPAID.getCode()
                     || order.getStatus() == OrderStatus.PAID.getCode() || order.getStatus() == OrderStatus.CHANGE.getCode()) {
 
@@ -98,43 +102,8 @@ public class CancelServiceImpl implements CancelService {
                 return new Response<>(0, orderStatusCancelNotPermitted, null);
             }
         } else {
-
-            Response<Order> orderOtherResult = getOrderByIdFromOrderOther(orderId, headers);
-            if (orderOtherResult.getStatus() == 1) {
-                CancelServiceImpl.LOGGER.info("[cancelOrder][Cancel Order, Order found Z|K|Other]");
-
-                Order order =   orderOtherResult.getData();
-                if (order.getStatus() == OrderStatus.NOTPAID.getCode()
-                        || order.getStatus() == OrderStatus.PAID.getCode() || order.getStatus() == OrderStatus.CHANGE.getCode()) {
-
-                    CancelServiceImpl.LOGGER.info("[cancelOrder][Cancel Order, Order status ok]");
-
-//                    order.setStatus(OrderStatus.CANCEL.getCode());
-                    Response changeOrderResult = cancelFromOtherOrder(order, headers);
-
-                    if (changeOrderResult.getStatus() == 1) {
-                        CancelServiceImpl.LOGGER.info("[cancelOrder][Cancel Order Success]");
-                        //Draw back money
-                        String money = calculateRefund(order);
-                        boolean status = drawbackMoney(money, loginId, headers);
-                        if (status) {
-                            CancelServiceImpl.LOGGER.info("[cancelOrder][Draw Back Money Success]");
-                        } else {
-                            CancelServiceImpl.LOGGER.error("[cancelOrder][Draw Back Money Failed][loginId: {}, orderId: {}]", loginId, orderId);
-                        }
-                        return new Response<>(1, "Success.", null);
-                    } else {
-                        CancelServiceImpl.LOGGER.error("[cancelOrder][Cancel Order Failed][orderId: {}, Reason: {}]", orderId, changeOrderResult.getMsg());
-                        return new Response<>(0, "Fail.Reason:" + changeOrderResult.getMsg(), null);
-                    }
-                } else {
-                    CancelServiceImpl.LOGGER.warn("[cancelOrder][Cancel Order, Order Status Not Permitted][loginId: {}, orderId: {}]", loginId, orderId);
-                    return new Response<>(0, orderStatusCancelNotPermitted, null);
-                }
-            } else {
-                CancelServiceImpl.LOGGER.warn("[cancelOrder][Cancel Order, Order Not Found][loginId: {}, orderId: {}]", loginId, orderId);
-                return new Response<>(0, "Order Not Found.", null);
-            }
+            CancelServiceImpl.LOGGER.warn("[cancelOrder][Cancel Order, Order Not Found][loginId: {}, orderId: {}]", loginId, orderId);
+            return new Response<>(0, "Order Not Found.", null);
         }
     }
 
@@ -154,7 +123,7 @@ public class CancelServiceImpl implements CancelService {
     @Override
     public Response calculateRefund(String orderId, HttpHeaders headers) {
 
-        Response<Order> orderResult = getOrderByIdFromOrder(orderId, headers);
+        Response<Order> orderResult = orderShardClient.getOrderById(orderId, getAuthorizationHeadersFrom(headers));
         if (orderResult.getStatus() == 1) {
             Order order =   orderResult.getData();
             if (order.getStatus() == OrderStatus.NOTPAID.getCode()
@@ -171,27 +140,8 @@ public class CancelServiceImpl implements CancelService {
                 return new Response<>(0, "Order Status Cancel Not Permitted, Refound error", null);
             }
         } else {
-
-            Response<Order> orderOtherResult = getOrderByIdFromOrderOther(orderId, headers);
-            if (orderOtherResult.getStatus() == 1) {
-                Order order =   orderOtherResult.getData();
-                if (order.getStatus() == OrderStatus.NOTPAID.getCode()
-                        || order.getStatus() == OrderStatus.PAID.getCode()) {
-                    if (order.getStatus() == OrderStatus.NOTPAID.getCode()) {
-                        CancelServiceImpl.LOGGER.info("[calculateRefund][Cancel Order, Refund Price From Order Other Service.Not Paid][orderId: {}]", orderId);
-                        return new Response<>(1, "Success, Refound 0", "0");
-                    } else {
-                        CancelServiceImpl.LOGGER.info("[Cancel Order][Refund Price From Order Other Service.Paid][orderId: {}]", orderId);
-                        return new Response<>(1, "Success", calculateRefund(order));
-                    }
-                } else {
-                    CancelServiceImpl.LOGGER.warn("[Cancel Order][Refund Price, Order Other. Cancel Not Permitted][orderId: {}]", orderId);
-                    return new Response<>(0, orderStatusCancelNotPermitted, null);
-                }
-            } else {
-                CancelServiceImpl.LOGGER.error("[Cancel Order][Refund Price][Order not found][orderId: {}]", orderId);
-                return new Response<>(0, "Order Not Found", null);
-            }
+            CancelServiceImpl.LOGGER.error("[Cancel Order][Refund Price][Order not found][orderId: {}]", orderId);
+            return new Response<>(0, "Order Not Found", null);
         }
     }
 
@@ -239,9 +189,8 @@ public class CancelServiceImpl implements CancelService {
         // add authorization header
         HttpHeaders newHeaders = getAuthorizationHeadersFrom(headers);
         HttpEntity requestEntity = new HttpEntity(order, newHeaders);
-        String order_service_url = getServiceUrl("ts-order-service");
         ResponseEntity<Response> re = restTemplate.exchange(
-                order_service_url + "/api/v1/orderservice/order",
+                orderShardClient.route(order.getTrainNumber()).getBaseUrl(),
                 HttpMethod.PUT,
                 requestEntity,
                 Response.class);
@@ -258,21 +207,6 @@ public class CancelServiceImpl implements CancelService {
     }
 
 
-    private Response cancelFromOtherOrder(Order order, HttpHeaders headers) {
-        CancelServiceImpl.LOGGER.info("[cancelFromOtherOrder][Change Order Status]");
-        order.setStatus(OrderStatus.CANCEL.getCode());
-        HttpHeaders newHeaders = getAuthorizationHeadersFrom(headers);
-        HttpEntity requestEntity = new HttpEntity(order, newHeaders);
-        String order_other_service_url = getServiceUrl("ts-order-other-service");
-        ResponseEntity<Response> re = restTemplate.exchange(
-                order_other_service_url + "/api/v1/orderOtherService/orderOther",
-                HttpMethod.PUT,
-                requestEntity,
-                Response.class);
-
-        return re.getBody();
-    }
-
     public boolean drawbackMoney(String money, String userId, HttpHeaders headers) {
         CancelServiceImpl.LOGGER.info("[drawbackMoney][Draw Back Money]");
 
@@ -303,32 +237,4 @@ public class CancelServiceImpl implements CancelService {
         return re.getBody();
     }
 
-    private Response<Order> getOrderByIdFromOrder(String orderId, HttpHeaders headers) {
-        CancelServiceImpl.LOGGER.info("[getOrderByIdFromOrder][Get Order][orderId: {}]", orderId);
-        HttpHeaders newHeaders = getAuthorizationHeadersFrom(headers);
-        HttpEntity requestEntity = new HttpEntity(newHeaders);
-        String order_service_url = getServiceUrl("ts-order-service");
-        ResponseEntity<Response<Order>> re = restTemplate.exchange(
-                order_service_url + "/api/v1/orderservice/order/" + orderId,
-                HttpMethod.GET,
-                requestEntity,
-                new ParameterizedTypeReference<Response<Order>>() {
-                });
-        return re.getBody();
-    }
-
-    private Response<Order> getOrderByIdFromOrderOther(String orderId, HttpHeaders headers) {
-        CancelServiceImpl.LOGGER.info("[getOrderByIdFromOrderOther][Get Order][orderId: {}]", orderId);
-        HttpHeaders newHeaders = getAuthorizationHeadersFrom(headers);
-        HttpEntity requestEntity = new HttpEntity(newHeaders);
-        String order_other_service_url = getServiceUrl("ts-order-other-service");
-        ResponseEntity<Response<Order>> re = restTemplate.exchange(
-                order_other_service_url + "/api/v1/orderOtherService/orderOther/" + orderId,
-                HttpMethod.GET,
-                requestEntity,
-                new ParameterizedTypeReference<Response<Order>>() {
-                });
-        return re.getBody();
-    }
-
 }
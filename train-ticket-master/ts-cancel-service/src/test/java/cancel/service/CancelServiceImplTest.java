@@ -1,5 +1,7 @@
 package cancel.service;
 
+import edu.fudan.common.config.OrderShardProperties;
+import edu.fudan.common.order.OrderShardClient;
 import edu.fudan.common.entity.NotifyInfo;
 import edu.fudan.common.entity.Order;
 import edu.fudan.common.entity.User;
@@ -15,6 +17,7 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 
 @RunWith(JUnit4.class)
@@ -32,6 +35,7 @@ public class CancelServiceImplTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(cancelServiceImpl, "orderShardClient", new OrderShardClient(restTemplate, new OrderShardProperties()));
     }
 
     @Test
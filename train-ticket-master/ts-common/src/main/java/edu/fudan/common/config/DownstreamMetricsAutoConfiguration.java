@@ -0,0 +1,45 @@
+package edu.fudan.common.config;
+
+import edu.fudan.common.metrics.DownstreamEndpoint;
+import edu.fudan.common.metrics.DownstreamMetricsInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Adds the DownstreamMetricsInterceptor to every RestTemplate built from the
+ * RestTemplateBuilder and publishes the "downstream" actuator endpoint over its meters.
+ * "ts.downstream-metrics.enabled: false" turns both off.
+ *
+ * @author fdse
+ */
+@Configuration
+@AutoConfigureAfter(CompositeMeterRegistryAutoConfiguration.class)
+@ConditionalOnBean(MeterRegistry.class)
+@ConditionalOnProperty(prefix = "ts.downstream-metrics", name = "enabled", matchIfMissing = true)
+public class DownstreamMetricsAutoConfiguration {
+
+    @Bean
+    public DownstreamMetricsInterceptor downstreamMetricsInterceptor(MeterRegistry registry,
+                                                                     @Value("${spring.application.name:unknown}") String caller) {
+        return new DownstreamMetricsInterceptor(registry, caller);
+    }
+
+    @Bean
+    public RestTemplateCustomizer downstreamMetricsCustomizer(DownstreamMetricsInterceptor downstreamMetricsInterceptor) {
+        return restTemplate -> restTemplate.getInterceptors().add(downstreamMetricsInterceptor);
+    }
+
+    @Bean
+    @ConditionalOnAvailableEndpoint
+    public DownstreamEndpoint downstreamEndpoint(MeterRegistry registry) {
+        return new DownstreamEndpoint(registry);
+    }
+}
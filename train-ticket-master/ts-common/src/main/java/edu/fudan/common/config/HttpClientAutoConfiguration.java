@@ -0,0 +1,98 @@
+package edu.fudan.common.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backs every RestTemplate built from the RestTemplateBuilder with one pooled, keep-alive
+ * Apache HttpClient, so calls between services reuse connections instead of opening one per
+ * request. Pool usage is published as the "http.client.pool.*" actuator metrics.
+ *
+ * Settings are described in HttpClientProperties; "ts.http-client.enabled: false" goes back
+ * to the builder's default request factory.
+ *
+ * @author fdse
+ */
+@Configuration
+@ConditionalOnClass(CloseableHttpClient.class)
+@ConditionalOnProperty(prefix = "ts.http-client", name = "enabled", matchIfMissing = true)
+@EnableConfigurationProperties(HttpClientProperties.class)
+public class HttpClientAutoConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpClientAutoConfiguration.class);
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public PoolingHttpClientConnectionManager pooledConnectionManager(HttpClientProperties properties) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(properties.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(properties.getMaxPerRoute());
+        connectionManager.setValidateAfterInactivity(properties.getValidateAfterInactivity());
+        HttpClientAutoConfiguration.LOGGER.info("[pooledConnectionManager][Create pool][maxTotal: {}, maxPerRoute: {}]",
+                properties.getMaxTotal(), properties.getMaxPerRoute());
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public CloseableHttpClient pooledHttpClient(PoolingHttpClientConnectionManager connectionManager,
+                                                HttpClientProperties properties) {
+        long keepAlive = properties.getKeepAlive();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? serverKeepAlive : keepAlive;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Bean
+    public RestTemplateCustomizer pooledRequestFactoryCustomizer(CloseableHttpClient pooledHttpClient,
+                                                                 PoolingHttpClientConnectionManager connectionManager,
+                                                                 HttpClientProperties properties) {
+        PooledClientHttpRequestFactory requestFactory = new PooledClientHttpRequestFactory(pooledHttpClient, connectionManager, properties);
+        return restTemplate -> restTemplate.setRequestFactory(requestFactory);
+    }
+
+    @Bean
+    public MeterBinder pooledConnectionMetrics(PoolingHttpClientConnectionManager connectionManager) {
+        return registry -> bindPoolMetrics(registry, connectionManager);
+    }
+
+    private static void bindPoolMetrics(MeterRegistry registry, PoolingHttpClientConnectionManager connectionManager) {
+        Gauge.builder("http.client.pool.leased", connectionManager, m -> m.getTotalStats().getLeased())
+                .description("connections in use")
+                .register(registry);
+        Gauge.builder("http.client.pool.pending", connectionManager, m -> m.getTotalStats().getPending())
+                .description("requests waiting for a connection")
+                .register(registry);
+        Gauge.builder("http.client.pool.available", connectionManager, m -> m.getTotalStats().getAvailable())
+                .description("idle connections kept alive")
+                .register(registry);
+        Gauge.builder("http.client.pool.max", connectionManager, m -> m.getTotalStats().getMax())
+                .description("maximum connections over all routes")
+                .register(registry);
+        Gauge.builder("http.client.pool.routes", connectionManager, m -> m.getRoutes().size())
+                .description("downstream routes with pooled connections")
+                .register(registry);
+    }
+}
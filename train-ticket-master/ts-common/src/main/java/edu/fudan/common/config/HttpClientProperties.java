@@ -0,0 +1,167 @@
+package edu.fudan.common.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of the pooled HTTP client behind every RestTemplate, under "ts.http-client".
+ * Limits and timeouts can be overridden per downstream service, keyed by the host name the
+ * service is called with, for example:
+ *
+ * <pre>
+ * ts.http-client.services.ts-basic-service.max-connections: 100
+ * ts.http-client.services.ts-basic-service.read-timeout: 3000
+ * </pre>
+ *
+ * Times are in milliseconds; a timeout of 0 is none.
+ *
+ * @author fdse
+ */
+@ConfigurationProperties(prefix = "ts.http-client")
+public class HttpClientProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * connections over all downstream services
+     */
+    private int maxTotal = 400;
+
+    /**
+     * connections to one downstream service without its own max-connections
+     */
+    private int maxPerRoute = 50;
+
+    private int connectTimeout = 2000;
+
+    /**
+     * 0 waits for an answer as long as it takes, as RestTemplate did before the pooled client:
+     * seat dispatch, order creation, fault injection and the admin full listings may run long.
+     * Calls known to be quick get a bound through their service's read-timeout.
+     */
+    private int readTimeout = 0;
+
+    /**
+     * how long a request waits for a pooled connection before failing
+     */
+    private int connectionRequestTimeout = 2000;
+
+    /**
+     * idle time after which a connection is closed when the server sent no Keep-Alive header
+     */
+    private long keepAlive = 30000;
+
+    /**
+     * idle time before a pooled connection is checked before reuse
+     */
+    private int validateAfterInactivity = 2000;
+
+    private Map<String, Service> services = new HashMap<>();
+
+    public static class Service {
+
+        private Integer maxConnections;
+
+        private Integer connectTimeout;
+
+        private Integer readTimeout;
+
+        public Integer getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(Integer maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public Integer getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Integer connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Integer getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(Integer readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public void setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    public void setValidateAfterInactivity(int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
+    public Map<String, Service> getServices() {
+        return services;
+    }
+
+    public void setServices(Map<String, Service> services) {
+        this.services = services;
+    }
+}
@@ -0,0 +1,29 @@
+package edu.fudan.common.config;
+
+import edu.fudan.common.order.OrderShardClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnSingleCandidate;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Provides the OrderShardClient over the RestTemplate of the service, routed by the shard map
+ * in OrderShardProperties.
+ *
+ * @author fdse
+ */
+@Configuration
+@ConditionalOnSingleCandidate(RestTemplate.class)
+@ConditionalOnProperty(prefix = "ts.order-shards", name = "enabled", matchIfMissing = true)
+@EnableConfigurationProperties(OrderShardProperties.class)
+public class OrderShardAutoConfiguration {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public OrderShardClient orderShardClient(RestTemplate restTemplate, OrderShardProperties properties) {
+        return new OrderShardClient(restTemplate, properties);
+    }
+}
@@ -0,0 +1,140 @@
+package edu.fudan.common.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shard map of the order store, under "ts.order-shards". Each shard is an order service
+ * holding the orders of the trains whose number starts with one of its train prefixes; the
+ * one shard without prefixes holds every other train. Without shards configured, G and D
+ * trains are in ts-order-service and all others in ts-order-other-service:
+ *
+ * <pre>
+ * ts.order-shards.shards[0].name: ts-order-service
+ * ts.order-shards.shards[0].url: http://ts-order-service:8080
+ * ts.order-shards.shards[0].path: /api/v1/orderservice/order
+ * ts.order-shards.shards[0].train-prefixes: G,D
+ * ts.order-shards.shards[1].name: ts-order-other-service
+ * ts.order-shards.shards[1].url: http://ts-order-other-service:8080
+ * ts.order-shards.shards[1].path: /api/v1/orderOtherService/orderOther
+ * </pre>
+ *
+ * Times are in milliseconds.
+ *
+ * @author fdse
+ */
+@ConfigurationProperties(prefix = "ts.order-shards")
+public class OrderShardProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * how long a query over all shards waits for the slowest shard
+     */
+    private long timeout = 10000;
+
+    /**
+     * threads querying shards in parallel
+     */
+    private int threads = 16;
+
+    private List<Shard> shards = new ArrayList<>();
+
+    public static class Shard {
+
+        private String name;
+
+        private String url;
+
+        /**
+         * base path of the order API of the shard
+         */
+        private String path;
+
+        private List<String> trainPrefixes = new ArrayList<>();
+
+        public Shard() {
+        }
+
+        public Shard(String name, String url, String path, List<String> trainPrefixes) {
+            this.name = name;
+            this.url = url;
+            this.path = path;
+            this.trainPrefixes = trainPrefixes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public List<String> getTrainPrefixes() {
+            return trainPrefixes;
+        }
+
+        public void setTrainPrefixes(List<String> trainPrefixes) {
+            this.trainPrefixes = trainPrefixes;
+        }
+    }
+
+    public static List<Shard> defaultShards() {
+        return Arrays.asList(
+                new Shard("ts-order-service", "http://ts-order-service:8080", "/api/v1/orderservice/order", Arrays.asList("G", "D")),
+                new Shard("ts-order-other-service", "http://ts-order-other-service:8080", "/api/v1/orderOtherService/orderOther", Collections.emptyList()));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public List<Shard> getShards() {
+        return shards.isEmpty() ? defaultShards() : shards;
+    }
+
+    public void setShards(List<Shard> shards) {
+        this.shards = shards;
+    }
+}
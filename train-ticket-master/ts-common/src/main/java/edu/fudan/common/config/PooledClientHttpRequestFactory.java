@@ -0,0 +1,83 @@
+package edu.fudan.common.config;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Request factory on the shared pooled client that applies the timeouts and connection
+ * limit of the downstream service a request goes to.
+ *
+ * The pool limits connections per route, which includes the port, so the limit of a
+ * configured service is set on its route the first time that route is seen.
+ *
+ * @author fdse
+ */
+public class PooledClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final HttpClientProperties properties;
+
+    private final RequestConfig defaultConfig;
+    private final Map<String, RequestConfig> serviceConfigs = new ConcurrentHashMap<>();
+    private final Set<HttpRoute> limitedRoutes = ConcurrentHashMap.newKeySet();
+
+    public PooledClientHttpRequestFactory(HttpClient httpClient, PoolingHttpClientConnectionManager connectionManager,
+                                          HttpClientProperties properties) {
+        super(httpClient);
+        this.connectionManager = connectionManager;
+        this.properties = properties;
+        this.defaultConfig = requestConfig(properties.getConnectTimeout(), properties.getReadTimeout());
+        for (Map.Entry<String, HttpClientProperties.Service> entry : properties.getServices().entrySet()) {
+            HttpClientProperties.Service service = entry.getValue();
+            serviceConfigs.put(entry.getKey(), requestConfig(
+                    service.getConnectTimeout() != null ? service.getConnectTimeout() : properties.getConnectTimeout(),
+                    service.getReadTimeout() != null ? service.getReadTimeout() : properties.getReadTimeout()));
+        }
+    }
+
+    private RequestConfig requestConfig(int connectTimeout, int readTimeout) {
+        return RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(properties.getConnectionRequestTimeout())
+                .build();
+    }
+
+    @Override
+    protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+        String host = uri.getHost();
+        HttpClientContext context = HttpClientContext.create();
+        if (host == null) {
+            context.setRequestConfig(defaultConfig);
+            return context;
+        }
+        context.setRequestConfig(serviceConfigs.getOrDefault(host, defaultConfig));
+        HttpClientProperties.Service service = properties.getServices().get(host);
+        if (service != null && service.getMaxConnections() != null) {
+            HttpRoute route = new HttpRoute(new HttpHost(host, port(uri), uri.getScheme()));
+            if (limitedRoutes.add(route)) {
+                connectionManager.setMaxPerRoute(route, service.getMaxConnections());
+            }
+        }
+        return context;
+    }
+
+    private static int port(URI uri) {
+        if (uri.getPort() > 0) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+}
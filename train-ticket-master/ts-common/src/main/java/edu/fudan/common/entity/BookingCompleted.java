@@ -0,0 +1,35 @@
+package edu.fudan.common.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A booking whose order and seat are committed, with the steps still to be done for it:
+ * the assurance, food order, consign and notification of the order.
+ *
+ * @author fdse
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookingCompleted {
+
+    private Order order;
+
+    /**
+     * index of the assurance type, 0 for no assurance
+     */
+    private int assurance;
+
+    /**
+     * null for no food
+     */
+    private FoodOrder foodOrder;
+
+    /**
+     * null for no consign
+     */
+    private Consign consign;
+
+}
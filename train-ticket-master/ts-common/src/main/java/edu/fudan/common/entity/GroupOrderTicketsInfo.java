@@ -0,0 +1,48 @@
+package edu.fudan.common.entity;
+
+import edu.fudan.common.util.StringUtils;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A booking of one trip for several passengers, one order per contacts.
+ *
+ * @author fdse
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GroupOrderTicketsInfo {
+    private String accountId;
+
+    private List<String> contactsIds;
+
+    private String tripId;
+
+    private int seatType;
+
+    private String date;
+
+    private String from;
+
+    private String to;
+
+    /**
+     * index of the assurance type bought for every passenger, 0 for no assurance
+     */
+    private int assurance;
+
+    public String getFrom() {
+        return StringUtils.String2Lower(this.from);
+    }
+
+    public String getTo() {
+        return StringUtils.String2Lower(this.to);
+    }
+
+}
@@ -0,0 +1,51 @@
+package edu.fudan.common.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Change of an order, published by the order services to the topic exchange EXCHANGE with the
+ * routing key of its type. An event carries the state of the order after the change, so
+ * consumers can keep a read model of the orders without calling the order services.
+ *
+ * Events are delivered at least once. The message id is unique per event and the SEQUENCE_HEADER
+ * increases with every event of a source, so consumers can drop duplicates and events older
+ * than the state they already applied.
+ *
+ * @author fdse
+ */
+@Data
+@NoArgsConstructor
+public class OrderEvent {
+
+    public static final String EXCHANGE = "ts.order.events";
+
+    public static final String SEQUENCE_HEADER = "sequence";
+
+    private OrderEventType type;
+
+    /**
+     * service the order belongs to
+     */
+    private String source;
+
+    private String orderId;
+
+    private String accountId;
+
+    private String trainNumber;
+
+    private String travelDate;
+
+    private int seatClass;
+
+    private int seatNumber;
+
+    private String from;
+
+    private String to;
+
+    private int status;
+
+    private long occurredAt;
+}
@@ -0,0 +1,34 @@
+package edu.fudan.common.entity;
+
+/**
+ * @author fdse
+ */
+public enum OrderEventType {
+
+    /**
+     * order created
+     */
+    CREATED       ("order.created"),
+    /**
+     * status of the order changed
+     */
+    STATUS_CHANGED("order.status-changed"),
+    /**
+     * other details of the order changed
+     */
+    UPDATED       ("order.updated"),
+    /**
+     * order deleted
+     */
+    DELETED       ("order.deleted");
+
+    private String routingKey;
+
+    OrderEventType(String routingKey) {
+        this.routingKey = routingKey;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+}
@@ -0,0 +1,72 @@
+package edu.fudan.common.entity;
+
+import lombok.Data;
+
+import java.util.*;
+
+/**
+ * Sold tickets of one train and date in columns: ticket i is seat seatNo[i] of class
+ * seatClass[i] from stations[from[i]] to stations[to[i]]. Station names are sent once
+ * instead of once per ticket, which keeps the payload of the seat queries small.
+ *
+ * @author fdse
+ */
+@Data
+public class SoldTickets {
+
+    private List<String> stations;
+
+    private int[] seatNo;
+
+    private int[] from;
+
+    private int[] to;
+
+    private int[] seatClass;
+
+    public SoldTickets() {
+        this.stations = new ArrayList<>();
+        this.seatNo = new int[0];
+        this.from = new int[0];
+        this.to = new int[0];
+        this.seatClass = new int[0];
+    }
+
+    public static SoldTickets of(Collection<Ticket> tickets) {
+        SoldTickets result = new SoldTickets();
+        int size = tickets.size();
+        result.seatNo = new int[size];
+        result.from = new int[size];
+        result.to = new int[size];
+        result.seatClass = new int[size];
+        Map<String, Integer> stationIndex = new HashMap<>();
+        int i = 0;
+        for (Ticket ticket : tickets) {
+            result.seatNo[i] = ticket.getSeatNo();
+            result.from[i] = result.indexOf(stationIndex, ticket.getStartStation());
+            result.to[i] = result.indexOf(stationIndex, ticket.getDestStation());
+            result.seatClass[i] = ticket.getSeatClass();
+            i++;
+        }
+        return result;
+    }
+
+    private int indexOf(Map<String, Integer> stationIndex, String station) {
+        return stationIndex.computeIfAbsent(station, s -> {
+            stations.add(s);
+            return stations.size() - 1;
+        });
+    }
+
+    public int size() {
+        return seatNo.length;
+    }
+
+    public List<Ticket> toTickets() {
+        List<Ticket> tickets = new ArrayList<>(seatNo.length);
+        for (int i = 0; i < seatNo.length; i++) {
+            tickets.add(new Ticket(seatNo[i], stations.get(from[i]), stations.get(to[i]), seatClass[i]));
+        }
+        return tickets;
+    }
+}
@@ -14,6 +14,11 @@ public class Ticket {
 
     private String destStation;
 
+    /**
+     * seat class code of the ticket, 0 when unknown
+     */
+    private int seatClass;
+
     public Ticket(){
         //Default Constructor
     }
@@ -23,4 +28,11 @@ public class Ticket {
         this.startStation = startStation;
         this.destStation = destStation;
     }
+
+    public Ticket(int seatNo, String startStation, String destStation, int seatClass) {
+        this.seatNo = seatNo;
+        this.startStation = startStation;
+        this.destStation = destStation;
+        this.seatClass = seatClass;
+    }
 }
@@ -20,4 +20,13 @@ public class TripAllDetail {
 
     private Trip trip;
 
+    /**
+     * route, train type and prices of the trip the tickets were computed from
+     */
+    private TravelResult travelResult;
+
+    public TripAllDetail(boolean status, String message, TripResponse tripResponse, Trip trip) {
+        this(status, message, tripResponse, trip, null);
+    }
+
 }
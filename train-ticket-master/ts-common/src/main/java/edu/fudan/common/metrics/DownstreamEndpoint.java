@@ -0,0 +1,76 @@
+package edu.fudan.common.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Actuator endpoint "/actuator/downstream" listing every edge this service calls, slowest
+ * total time first, with its call count, latency percentiles, errors and payload sizes.
+ *
+ * @author fdse
+ */
+@Endpoint(id = "downstream")
+public class DownstreamEndpoint {
+
+    private final MeterRegistry registry;
+
+    public DownstreamEndpoint(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> edges() {
+        Map<String, Map<String, Object>> edges = new HashMap<>();
+        for (Timer timer : registry.find(DownstreamMetricsInterceptor.LATENCY).timers()) {
+            Map<String, Object> edge = edge(edges, timer.getId().getTags());
+            edge.merge("count", timer.count(), (a, b) -> (Long) a + (Long) b);
+            edge.merge("totalMs", timer.totalTime(TimeUnit.MILLISECONDS), (a, b) -> (Double) a + (Double) b);
+            edge.merge("maxMs", timer.max(TimeUnit.MILLISECONDS), (a, b) -> Math.max((Double) a, (Double) b));
+            // percentiles are kept per outcome, report those of the successful calls
+            if ("SUCCESS".equals(timer.getId().getTag("outcome")) || !edge.containsKey("p50Ms")) {
+                for (ValueAtPercentile percentile : timer.takeSnapshot().percentileValues()) {
+                    edge.put("p" + Math.round(percentile.percentile() * 100) + "Ms", percentile.value(TimeUnit.MILLISECONDS));
+                }
+            }
+        }
+        for (Counter counter : registry.find(DownstreamMetricsInterceptor.ERRORS).counters()) {
+            edge(edges, counter.getId().getTags()).merge("errors", (long) counter.count(), (a, b) -> (Long) a + (Long) b);
+        }
+        for (DistributionSummary summary : registry.find(DownstreamMetricsInterceptor.REQUEST_SIZE).summaries()) {
+            edge(edges, summary.getId().getTags()).put("meanRequestBytes", summary.mean());
+        }
+        for (DistributionSummary summary : registry.find(DownstreamMetricsInterceptor.RESPONSE_SIZE).summaries()) {
+            edge(edges, summary.getId().getTags()).put("meanResponseBytes", summary.mean());
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>(edges.values());
+        for (Map<String, Object> edge : result) {
+            long count = (Long) edge.getOrDefault("count", 0L);
+            edge.put("meanMs", count == 0 ? 0.0 : (Double) edge.getOrDefault("totalMs", 0.0) / count);
+        }
+        result.sort((a, b) -> Double.compare((Double) b.getOrDefault("totalMs", 0.0), (Double) a.getOrDefault("totalMs", 0.0)));
+        return result;
+    }
+
+    private static Map<String, Object> edge(Map<String, Map<String, Object>> edges, List<Tag> tags) {
+        Map<String, Object> key = new LinkedHashMap<>();
+        for (String name : new String[]{DownstreamMetricsInterceptor.CALLER, DownstreamMetricsInterceptor.TARGET,
+                DownstreamMetricsInterceptor.METHOD, DownstreamMetricsInterceptor.URI_TAG}) {
+            for (Tag tag : tags) {
+                if (tag.getKey().equals(name)) {
+                    key.put(name, tag.getValue());
+                }
+            }
+        }
+        return edges.computeIfAbsent(key.toString(), k -> key);
+    }
+}
@@ -0,0 +1,134 @@
+package edu.fudan.common.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Records latency, errors and payload sizes of every call one service makes to another.
+ *
+ * Meters are tagged with the calling service, the target host, the method and the path
+ * reduced to the resource it calls, so "/api/v1/orderservice/order/5ad7750b-..." and every
+ * other order id count as one edge, and so do the verify codes, user names and station names
+ * callers put into paths. Latencies go into percentile histograms so the downstream endpoint
+ * can report p50/p95/p99 per edge.
+ *
+ * @author fdse
+ */
+public class DownstreamMetricsInterceptor implements ClientHttpRequestInterceptor {
+
+    public static final String LATENCY = "http.client.downstream";
+    public static final String ERRORS = "http.client.downstream.errors";
+    public static final String REQUEST_SIZE = "http.client.downstream.request.size";
+    public static final String RESPONSE_SIZE = "http.client.downstream.response.size";
+
+    public static final String CALLER = "caller";
+    public static final String TARGET = "target";
+    public static final String METHOD = "method";
+    public static final String URI_TAG = "uri";
+
+    /**
+     * an api version segment, after which come the service and resource segments
+     */
+    private static final Pattern API_VERSION = Pattern.compile("v[0-9]+");
+
+    /**
+     * a segment of the resource prefix that still holds data: anything with a digit or an
+     * encoded character
+     */
+    private static final Pattern VARIABLE_SEGMENT = Pattern.compile(".*[0-9%].*");
+
+    private final MeterRegistry registry;
+    private final String caller;
+
+    public DownstreamMetricsInterceptor(MeterRegistry registry, String caller) {
+        this.registry = registry;
+        this.caller = caller;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        Tags tags = Tags.of(CALLER, caller,
+                TARGET, target(request.getURI()),
+                METHOD, request.getMethodValue(),
+                URI_TAG, normalize(request.getURI().getPath()));
+        long start = System.nanoTime();
+        String outcome = "SUCCESS";
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            int status = response.getRawStatusCode();
+            if (status >= 400) {
+                outcome = status >= 500 ? "SERVER_ERROR" : "CLIENT_ERROR";
+                errors(tags, String.valueOf(status));
+            }
+            long contentLength = response.getHeaders().getContentLength();
+            if (contentLength >= 0) {
+                DistributionSummary.builder(RESPONSE_SIZE).baseUnit("bytes").tags(tags).register(registry).record(contentLength);
+            }
+            return response;
+        } catch (IOException | RuntimeException e) {
+            outcome = "IO_ERROR";
+            errors(tags, e.getClass().getSimpleName());
+            throw e;
+        } finally {
+            Timer.builder(LATENCY)
+                    .tags(tags)
+                    .tag("outcome", outcome)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            DistributionSummary.builder(REQUEST_SIZE).baseUnit("bytes").tags(tags).register(registry).record(body.length);
+        }
+    }
+
+    private void errors(Tags tags, String error) {
+        Counter.builder(ERRORS).tags(tags).tag("error", error).register(registry).increment();
+    }
+
+    private static String target(URI uri) {
+        return uri.getHost() == null ? "none" : uri.getHost();
+    }
+
+    /**
+     * The path with every segment after its resource prefix replaced by "{var}", "/" when
+     * empty. The prefix of "/api/v1/{service}/{resource}/..." is its first four segments, that
+     * of any other path its first segment, so the number of uri tags is bounded by the
+     * resources of the services whatever callers put into the rest of the path.
+     */
+    public static String normalize(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        StringBuilder result = new StringBuilder(path.length());
+        int prefix = 1;
+        int index = 0;
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            boolean version = index == 1 && "api".equals(result.substring(1)) && API_VERSION.matcher(segment).matches();
+            if (version) {
+                prefix = 4;
+            }
+            boolean variable = index >= prefix || !version && VARIABLE_SEGMENT.matcher(segment).matches();
+            result.append('/').append(variable ? "{var}" : segment);
+            index++;
+        }
+        return result.length() == 0 ? "/" : result.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package edu.fudan.common.order;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One order service of the shard map.
+ *
+ * @author fdse
+ */
+public class OrderShard {
+
+    private final String name;
+
+    private final String baseUrl;
+
+    private final List<String> trainPrefixes;
+
+    public OrderShard(String name, String url, String path, List<String> trainPrefixes) {
+        this.name = name;
+        this.baseUrl = url + (path == null ? "" : path);
+        this.trainPrefixes = trainPrefixes == null ? Collections.emptyList() : Collections.unmodifiableList(trainPrefixes);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * url of the order API of this shard, for example "http://ts-order-service:8080/api/v1/orderservice/order"
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * url of a path below the order API, for example url("/" + orderId)
+     */
+    public String url(String path) {
+        return baseUrl + path;
+    }
+
+    public List<String> getTrainPrefixes() {
+        return trainPrefixes;
+    }
+
+    /**
+     * whether this shard holds the trains no other shard has a prefix for
+     */
+    public boolean isDefault() {
+        return trainPrefixes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
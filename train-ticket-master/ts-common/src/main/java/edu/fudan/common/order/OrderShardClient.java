@@ -0,0 +1,301 @@
+package edu.fudan.common.order;
+
+import edu.fudan.common.config.OrderShardProperties;
+import edu.fudan.common.entity.Order;
+import edu.fudan.common.entity.OrderSecurity;
+import edu.fudan.common.util.KeysetPage;
+import edu.fudan.common.util.OrderPageRequest;
+import edu.fudan.common.util.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Client of the order store, which is split over several order services by train number.
+ *
+ * Calls about one train go to the shard holding it: route(trainNumber).url(path) is the url
+ * of a path of that shard's order API. Queries over all orders run on every shard in parallel
+ * and wait for the slowest one up to the configured timeout; a shard failing or running past
+ * it fails the whole query, so a result never silently misses a shard. Lookups of one order
+ * only need the shard holding it and ignore the failures of the others.
+ *
+ * @author fdse
+ */
+public class OrderShardClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderShardClient.class);
+
+    private final RestTemplate restTemplate;
+
+    private final List<OrderShard> shards;
+
+    private final OrderShard defaultShard;
+
+    private final long timeout;
+
+    private final ExecutorService executorService;
+
+    public OrderShardClient(RestTemplate restTemplate, OrderShardProperties properties) {
+        this.restTemplate = restTemplate;
+        this.shards = Collections.unmodifiableList(properties.getShards().stream()
+                .map(s -> new OrderShard(s.getName(), s.getUrl(), s.getPath(), s.getTrainPrefixes()))
+                .collect(Collectors.toList()));
+        List<OrderShard> defaults = shards.stream().filter(OrderShard::isDefault).collect(Collectors.toList());
+        if (defaults.size() != 1) {
+            throw new IllegalArgumentException("Exactly one order shard must have no train prefixes, found: " + defaults);
+        }
+        this.defaultShard = defaults.get(0);
+        this.timeout = properties.getTimeout();
+        this.executorService = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(512), new CustomizableThreadFactory("OrderShardThreadPool-"), new ThreadPoolExecutor.CallerRunsPolicy());
+        OrderShardClient.LOGGER.info("[OrderShardClient][Order shards][shards: {}, default: {}]",
+                shards.stream().map(s -> s.getName() + s.getTrainPrefixes()).collect(Collectors.toList()), defaultShard);
+    }
+
+    public List<OrderShard> getShards() {
+        return shards;
+    }
+
+    /**
+     * The shard holding the orders of a train: the one with the longest prefix of the train
+     * number, else the default shard.
+     */
+    public OrderShard route(String trainNumber) {
+        OrderShard route = defaultShard;
+        int length = 0;
+        if (trainNumber != null) {
+            for (OrderShard shard : shards) {
+                for (String prefix : shard.getTrainPrefixes()) {
+                    if (prefix.length() > length && trainNumber.startsWith(prefix)) {
+                        route = shard;
+                        length = prefix.length();
+                    }
+                }
+            }
+        }
+        return route;
+    }
+
+    /**
+     * Runs a call against every shard in parallel.
+     *
+     * @return the result of each shard, in the order of the shard map
+     * @throws ResourceAccessException if a shard did not answer within the timeout
+     */
+    public <T> Map<OrderShard, T> scatter(Function<OrderShard, T> call) {
+        Map<OrderShard, T> results = new LinkedHashMap<>();
+        if (shards.size() == 1) {
+            results.put(defaultShard, call.apply(defaultShard));
+            return results;
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        Map<OrderShard, Future<T>> futures = new LinkedHashMap<>();
+        for (OrderShard shard : shards) {
+            futures.put(shard, executorService.submit(() -> call.apply(shard)));
+        }
+        try {
+            for (Map.Entry<OrderShard, Future<T>> future : futures.entrySet()) {
+                results.put(future.getKey(), await(future.getKey(), future.getValue(), deadline));
+            }
+        } finally {
+            // only the calls still running when one failed or timed out
+            futures.values().forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+
+    /**
+     * The order with an id from whichever shard holds it, as soon as that shard answered. The
+     * other shards failing or timing out does not matter once the order is found.
+     *
+     * @throws RuntimeException the failure of a shard if no other shard has the order, as it
+     *                          may be in the failed one
+     */
+    public Response<Order> getOrderById(String orderId, HttpHeaders headers) {
+        HttpEntity requestEntity = new HttpEntity(headers);
+        CompletionService<Response<Order>> completionService = new ExecutorCompletionService<>(executorService);
+        Map<Future<Response<Order>>, OrderShard> futures = new HashMap<>();
+        for (OrderShard shard : shards) {
+            futures.put(completionService.submit(() -> restTemplate.exchange(
+                    shard.url("/" + orderId),
+                    HttpMethod.GET,
+                    requestEntity,
+                    new ParameterizedTypeReference<Response<Order>>() {
+                    }).getBody()), shard);
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        RuntimeException failure = null;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Future<Response<Order>> future = completionService.poll(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    OrderShardClient.LOGGER.warn("[getOrderById][Order shard timed out][orderId: {}, timeout: {}ms]", orderId, timeout);
+                    if (failure == null) {
+                        failure = new ResourceAccessException("Order shards did not answer within " + timeout + "ms");
+                    }
+                    break;
+                }
+                OrderShard shard = futures.get(future);
+                try {
+                    Response<Order> response = future.get();
+                    if (response != null && response.getStatus() == 1) {
+                        OrderShardClient.LOGGER.info("[getOrderById][Order found][orderId: {}, shard: {}]", orderId, shard);
+                        return response;
+                    }
+                } catch (ExecutionException e) {
+                    OrderShardClient.LOGGER.warn("[getOrderById][Get order from shard fail][orderId: {}, shard: {}][{}]", orderId, shard, e.getCause().toString());
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            futures.keySet().forEach(future -> future.cancel(true));
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        OrderShardClient.LOGGER.warn("[getOrderById][Order not found in any shard][orderId: {}]", orderId);
+        return new Response<>(0, "Order Not Found.", null);
+    }
+
+    /**
+     * All orders of all shards; a shard answering with a failure is logged and left out.
+     */
+    public List<Order> getAllOrders(HttpHeaders headers) {
+        HttpEntity requestEntity = new HttpEntity(headers);
+        return gatherOrders("getAllOrders", shard -> restTemplate.exchange(
+                shard.getBaseUrl(),
+                HttpMethod.GET,
+                requestEntity,
+                new ParameterizedTypeReference<Response<List<Order>>>() {
+                }).getBody());
+    }
+
+    /**
+     * Every order of every shard, read page by page from the order page listing of each shard in
+     * turn. Unlike getAllOrders, which only gets what the order services list in one answer,
+     * nothing is left out, so it may take long and is meant for background jobs.
+     *
+     * @throws IllegalStateException if a shard did not answer with one of its pages, for callers
+     *                               to whom a partial list is wrong rather than incomplete
+     */
+    public List<Order> requireAllOrders(HttpHeaders headers) {
+        HttpEntity requestEntity = new HttpEntity(headers);
+        List<Order> orders = new ArrayList<>();
+        for (OrderShard shard : shards) {
+            String cursor = null;
+            do {
+                String url = shard.url("/page") + "?size=" + OrderPageRequest.MAX_SIZE + (cursor == null ? "" : "&cursor=" + cursor);
+                Response<KeysetPage<Order>> response = restTemplate.exchange(
+                        url,
+                        HttpMethod.GET,
+                        requestEntity,
+                        new ParameterizedTypeReference<Response<KeysetPage<Order>>>() {
+                        }).getBody();
+                if (response == null || response.getStatus() != 1 || response.getData() == null) {
+                    OrderShardClient.LOGGER.error("[requireAllOrders][Get order page fail][shard: {}, response: {}]", shard, response);
+                    throw new IllegalStateException("Order shard " + shard + " did not return a page of its orders");
+                }
+                orders.addAll(response.getData().getItems());
+                cursor = response.getData().getNextCursor();
+            } while (cursor != null);
+        }
+        return orders;
+    }
+
+    /**
+     * All orders of an account over all shards; a shard answering with a failure is logged and
+     * left out.
+     */
+    public List<Order> getOrdersByAccount(String accountId, HttpHeaders headers) {
+        Map<String, Object> query = new HashMap<>();
+        query.put("loginId", accountId);
+        HttpEntity requestEntity = new HttpEntity(query, headers);
+        return gatherOrders("getOrdersByAccount", shard -> restTemplate.exchange(
+                shard.url("/query"),
+                HttpMethod.POST,
+                requestEntity,
+                new ParameterizedTypeReference<Response<List<Order>>>() {
+                }).getBody());
+    }
+
+    /**
+     * Orders of an account in the hour before checkDate and its valid orders, summed over all
+     * shards.
+     *
+     * @throws IllegalStateException if a shard did not answer with its counts, as a sum without
+     *                               it would understate them
+     */
+    public OrderSecurity getSecurityInfo(Date checkDate, String accountId, HttpHeaders headers) {
+        HttpEntity requestEntity = new HttpEntity(headers);
+        Map<OrderShard, Response<OrderSecurity>> results = scatter(shard -> restTemplate.exchange(
+                shard.url("/security/" + checkDate + "/" + accountId),
+                HttpMethod.GET,
+                requestEntity,
+                new ParameterizedTypeReference<Response<OrderSecurity>>() {
+                }).getBody());
+        OrderSecurity total = new OrderSecurity(0, 0);
+        for (Map.Entry<OrderShard, Response<OrderSecurity>> result : results.entrySet()) {
+            Response<OrderSecurity> response = result.getValue();
+            if (response == null || response.getStatus() != 1 || response.getData() == null) {
+                OrderShardClient.LOGGER.error("[getSecurityInfo][Get Order Info For Security fail][shard: {}, response: {}]", result.getKey(), response);
+                throw new IllegalStateException("Order shard " + result.getKey() + " did not return the order info for security");
+            }
+            OrderSecurity security = response.getData();
+            OrderShardClient.LOGGER.info("[getSecurityInfo][Order Info For Security][shard: {}, Last One Hour: {}, Total Valid Order: {}]",
+                    result.getKey(), security.getOrderNumInLastOneHour(), security.getOrderNumOfValidOrder());
+            total.setOrderNumInLastOneHour(total.getOrderNumInLastOneHour() + security.getOrderNumInLastOneHour());
+            total.setOrderNumOfValidOrder(total.getOrderNumOfValidOrder() + security.getOrderNumOfValidOrder());
+        }
+        return total;
+    }
+
+    public void close() {
+        executorService.shutdownNow();
+    }
+
+    private List<Order> gatherOrders(String query, Function<OrderShard, Response<List<Order>>> call) {
+        List<Order> orders = new ArrayList<>();
+        for (Map.Entry<OrderShard, Response<List<Order>>> result : scatter(call).entrySet()) {
+            Response<List<Order>> response = result.getValue();
+            if (response != null && response.getStatus() == 1 && response.getData() != null) {
+                orders.addAll(response.getData());
+            } else {
+                OrderShardClient.LOGGER.error("[{}][Get Orders From shard fail][shard: {}]", query, result.getKey());
+            }
+        }
+        return orders;
+    }
+
+    private <T> T await(OrderShard shard, Future<T> future, long deadline) {
+        try {
+            return future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            OrderShardClient.LOGGER.warn("[await][Order shard timed out][shard: {}, timeout: {}ms]", shard, timeout);
+            throw new ResourceAccessException("Order shard " + shard + " did not answer within " + timeout + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
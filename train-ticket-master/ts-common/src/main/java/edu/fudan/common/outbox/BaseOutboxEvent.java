@@ -0,0 +1,30 @@
+package edu.fudan.common.outbox;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * An order event waiting in the outbox to be published. Each order service maps it to its own
+ * outbox table with an entity extending this class.
+ *
+ * @author fdse
+ */
+@Data
+@NoArgsConstructor
+@MappedSuperclass
+public abstract class BaseOutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 64, nullable = false)
+    private String routingKey;
+
+    @Column(length = 2048, nullable = false)
+    private String payload;
+
+    private long createdAt;
+}
@@ -0,0 +1,22 @@
+package edu.fudan.common.outbox;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.NoRepositoryBean;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+
+/**
+ * @author fdse
+ */
+@NoRepositoryBean
+public interface BaseOutboxRepository<E extends BaseOutboxEvent> extends JpaRepository<E, Long> {
+
+    // Oldest events first, locked so that the relays of several replicas never publish the same event
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM #{#entityName} e ORDER BY e.id")
+    List<E> findPending(Pageable pageable);
+}
@@ -0,0 +1,51 @@
+package edu.fudan.common.outbox;
+
+import edu.fudan.common.entity.OrderEvent;
+import edu.fudan.common.entity.OrderEventType;
+import edu.fudan.common.util.JsonUtils;
+import org.springframework.beans.BeanUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.function.Supplier;
+
+/**
+ * Records order events in the outbox table. It must be called in the transaction that changes
+ * the order, so an event is stored if and only if its change is committed; OutboxRelay
+ * publishes them afterwards.
+ *
+ * @author fdse
+ */
+public class OrderOutbox<E extends BaseOutboxEvent> {
+
+    private final BaseOutboxRepository<E> outboxRepository;
+
+    private final Supplier<E> newOutboxEvent;
+
+    private final String source;
+
+    public OrderOutbox(BaseOutboxRepository<E> outboxRepository, Supplier<E> newOutboxEvent, String source) {
+        this.outboxRepository = outboxRepository;
+        this.newOutboxEvent = newOutboxEvent;
+        this.source = source;
+    }
+
+    /**
+     * @param order order entity of the service, its properties are copied to the event properties
+     *              of the same name
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(OrderEventType type, String orderId, Object order) {
+        OrderEvent event = new OrderEvent();
+        BeanUtils.copyProperties(order, event);
+        event.setType(type);
+        event.setSource(source);
+        event.setOrderId(orderId);
+        event.setOccurredAt(System.currentTimeMillis());
+        E outboxEvent = newOutboxEvent.get();
+        outboxEvent.setRoutingKey(type.getRoutingKey());
+        outboxEvent.setPayload(JsonUtils.object2Json(event));
+        outboxEvent.setCreatedAt(event.getOccurredAt());
+        outboxRepository.save(outboxEvent);
+    }
+}
@@ -0,0 +1,97 @@
+package edu.fudan.common.outbox;
+
+import edu.fudan.common.entity.OrderEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Publishes the events of the outbox to RabbitMQ in order, deleting them once the broker
+ * confirmed them. An event is published again if the relay fails between the confirm and the
+ * commit, so delivery is at least once.
+ *
+ * @author fdse
+ */
+public class OutboxRelay {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final BaseOutboxRepository<? extends BaseOutboxEvent> outboxRepository;
+
+    private final RabbitTemplate rabbitTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final String source;
+
+    private final int batchSize;
+
+    private final long confirmTimeoutMillis;
+
+    public OutboxRelay(BaseOutboxRepository<? extends BaseOutboxEvent> outboxRepository, RabbitTemplate rabbitTemplate,
+                       PlatformTransactionManager transactionManager, String source,
+                       int batchSize, long confirmTimeoutMillis) {
+        this.outboxRepository = outboxRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.source = source;
+        this.batchSize = batchSize;
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // no gap locks: the locked batch must not block the outbox inserts of order writes
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    }
+
+    @Scheduled(fixedDelayString = "${order.outbox.relay.interval-millis:500}")
+    public void relay() {
+        try {
+            Integer published;
+            do {
+                published = transactionTemplate.execute(status -> publishBatch(outboxRepository));
+            } while (published != null && published == batchSize);
+        } catch (RuntimeException e) {
+            OutboxRelay.LOGGER.warn("[relay][Publish order events fail][retry later][{}]", e.toString());
+        }
+    }
+
+    private <E extends BaseOutboxEvent> int publishBatch(BaseOutboxRepository<E> repository) {
+        List<E> events = repository.findPending(PageRequest.of(0, batchSize));
+        if (events.isEmpty()) {
+            return 0;
+        }
+        rabbitTemplate.invoke(operations -> {
+            for (E event : events) {
+                operations.send(OrderEvent.EXCHANGE, event.getRoutingKey(), toMessage(event));
+            }
+            operations.waitForConfirmsOrDie(confirmTimeoutMillis);
+            return null;
+        });
+        repository.deleteInBatch(events);
+        OutboxRelay.LOGGER.info("[relay][Publish order events][size: {}, last sequence: {}]",
+                events.size(), events.get(events.size() - 1).getId());
+        return events.size();
+    }
+
+    private Message toMessage(BaseOutboxEvent event) {
+        return MessageBuilder.withBody(event.getPayload().getBytes(StandardCharsets.UTF_8))
+                .setContentType(MessageProperties.CONTENT_TYPE_JSON)
+                .setContentEncoding(StandardCharsets.UTF_8.name())
+                .setMessageId(source + "-" + event.getId())
+                .setHeader(OrderEvent.SEQUENCE_HEADER, event.getId())
+                .setTimestamp(new Date(event.getCreatedAt()))
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .build();
+    }
+}
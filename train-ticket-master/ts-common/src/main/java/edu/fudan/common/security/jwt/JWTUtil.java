@@ -2,6 +2,9 @@ package edu.fudan.common.security.jwt;
 
 import edu.fudan.common.exception.TokenException;
 import io.jsonwebtoken.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -12,10 +15,12 @@ import org.springframework.security.core.userdetails.UserDetails;
 
 import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServletRequest;
-import java.util.Base64;
-import java.util.Collection;
-import java.util.Date;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -31,59 +36,147 @@ public class JWTUtil {
     private static String secretKey = Base64.getEncoder().encodeToString("secret".getBytes());
 
 
+    /**
+     * Tokens whose signature was already verified, keyed by the SHA-256 digest of the token,
+     * so a session's repeated requests skip parsing and HMAC verification. An entry lives
+     * until the token expires or at most CACHE_TTL_MILLIS.
+     */
+    private static final Map<String, VerifiedToken> VERIFIED_TOKENS = new ConcurrentHashMap<>();
+    private static final int CACHE_MAXIMUM_SIZE = 10000;
+    private static final long CACHE_TTL_MILLIS = 5 * 60 * 1000L;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final Counter CACHE_HITS = Metrics.counter("jwt.token.cache", "result", "hit");
+    private static final Counter CACHE_MISSES = Metrics.counter("jwt.token.cache", "result", "miss");
+    private static final Timer VERIFICATION = Metrics.timer("jwt.token.verification");
+
+    static {
+        Metrics.gauge("jwt.token.cache.size", VERIFIED_TOKENS, Map::size);
+    }
+
+    private static class VerifiedToken {
+        private final String username;
+        private final List<SimpleGrantedAuthority> authorities;
+        private final long expiresAt;
+
+        VerifiedToken(String username, List<SimpleGrantedAuthority> authorities, long expiresAt) {
+            this.username = username;
+            this.authorities = authorities;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     public static Authentication getJWTAuthentication(ServletRequest request) {
         String token = getTokenFromHeader((HttpServletRequest) request);
-        if (token != null && validateToken(token)) {
-
-            UserDetails userDetails = new UserDetails() {
-                @Override
-                public Collection<? extends GrantedAuthority> getAuthorities() {
-                    return getRole(token).stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList());
-                }
-
-                @Override
-                public String getPassword() {
-                    return "";
-                }
-
-                @Override
-                public String getUsername() {
-                    return getUserName(token);
-                }
-
-                @Override
-                public boolean isAccountNonExpired() {
-                    return true;
-                }
-
-                @Override
-                public boolean isAccountNonLocked() {
-                    return true;
-                }
-
-                @Override
-                public boolean isCredentialsNonExpired() {
-                    return true;
-                }
-
-                @Override
-                public boolean isEnabled() {
-                    return true;
-                }
-            };
-            // send to spring security
-            return new UsernamePasswordAuthenticationToken(userDetails, "", userDetails.getAuthorities());
+        if (token == null) {
+            return null;
         }
-        return null;
+        VerifiedToken verified = verify(token);
+        if (verified == null) {
+            return null;
+        }
+        String username = verified.username;
+        List<SimpleGrantedAuthority> authorities = verified.authorities;
+
+        UserDetails userDetails = new UserDetails() {
+            @Override
+            public Collection<? extends GrantedAuthority> getAuthorities() {
+                return authorities;
+            }
+
+            @Override
+            public String getPassword() {
+                return "";
+            }
+
+            @Override
+            public String getUsername() {
+                return username;
+            }
+
+            @Override
+            public boolean isAccountNonExpired() {
+                return true;
+            }
+
+            @Override
+            public boolean isAccountNonLocked() {
+                return true;
+            }
+
+            @Override
+            public boolean isCredentialsNonExpired() {
+                return true;
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+        };
+        // send to spring security
+        return new UsernamePasswordAuthenticationToken(userDetails, "", authorities);
     }
 
-    private static String getUserName(String token) {
-        return getClaims(token).getBody().getSubject();
+    /**
+     * The user and roles of a valid token, from the cache or by parsing it once.
+     *
+     * @return null when the token has expired
+     */
+    private static VerifiedToken verify(String token) {
+        String digest = digest(token);
+        long now = System.currentTimeMillis();
+        VerifiedToken verified = VERIFIED_TOKENS.get(digest);
+        if (verified != null) {
+            if (verified.expiresAt > now) {
+                CACHE_HITS.increment();
+                return verified;
+            }
+            VERIFIED_TOKENS.remove(digest);
+        }
+        CACHE_MISSES.increment();
+
+        long start = System.nanoTime();
+        Claims claims;
+        try {
+            claims = validateToken(token);
+        } finally {
+            VERIFICATION.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (claims == null) {
+            return null;
+        }
+        List<String> roles = (List<String>) claims.get("roles", List.class);
+        List<SimpleGrantedAuthority> authorities = roles == null ? Collections.emptyList()
+                : Collections.unmodifiableList(roles.stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList()));
+        verified = new VerifiedToken(claims.getSubject(), authorities,
+                Math.min(claims.getExpiration().getTime(), now + CACHE_TTL_MILLIS));
+        cache(digest, verified, now);
+        return verified;
     }
 
-    private static List<String> getRole(String token) {
-        Jws<Claims> claimsJws = getClaims(token);
-        return (List<String>) (claimsJws.getBody().get("roles", List.class));
+    private static void cache(String digest, VerifiedToken verified, long now) {
+        if (VERIFIED_TOKENS.size() >= CACHE_MAXIMUM_SIZE) {
+            VERIFIED_TOKENS.values().removeIf(v -> v.expiresAt <= now);
+            if (VERIFIED_TOKENS.size() >= CACHE_MAXIMUM_SIZE) {
+                // every entry is still live, start over rather than grow without bound
+                VERIFIED_TOKENS.clear();
+            }
+        }
+        VERIFIED_TOKENS.put(digest, verified);
+    }
+
+    private static String digest(String token) {
+        MessageDigest sha256 = SHA_256.get();
+        sha256.reset();
+        return Base64.getEncoder().encodeToString(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
     }
 
     private static String getTokenFromHeader(HttpServletRequest request) {
@@ -94,10 +187,13 @@ public class JWTUtil {
         return null;
     }
 
-    private static boolean validateToken(String token) {
+    /**
+     * @return the claims of a token with a valid signature, null when it has expired
+     */
+    private static Claims validateToken(String token) {
         try {
-            Jws<Claims> claimsJws = getClaims(token);
-            return !claimsJws.getBody().getExpiration().before(new Date());
+            Claims claims = getClaims(token).getBody();
+            return claims.getExpiration().before(new Date()) ? null : claims;
         } catch (ExpiredJwtException e) {
             LOGGER.error("[validateToken][getClaims][Token expired][ExpiredJwtException: {} ]" , e);
             throw new TokenException("Token expired");
@@ -116,6 +212,22 @@ public class JWTUtil {
         }
     }
 
+    /**
+     * A token signed with the key tokens are verified with, for a service calling others on its
+     * own behalf.
+     */
+    static String createToken(String subject, List<String> roles, long validityMillis) {
+        Claims claims = Jwts.claims().setSubject(subject);
+        claims.put("roles", roles);
+        Date now = new Date();
+        return Jwts.builder()
+                .setClaims(claims)
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + validityMillis))
+                .signWith(SignatureAlgorithm.HS256, secretKey)
+                .compact();
+    }
+
     private static Jws<Claims> getClaims(String token) {
         return Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token);
     }
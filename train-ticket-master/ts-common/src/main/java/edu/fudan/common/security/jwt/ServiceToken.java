@@ -0,0 +1,58 @@
+package edu.fudan.common.security.jwt;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The bearer token a service authenticates with when it calls other services on its own
+ * behalf, for work done outside a user request such as a queued booking, so no user token has
+ * to be kept with the work. It is renewed before it expires.
+ *
+ * @author fdse
+ */
+public class ServiceToken {
+
+    private static final long VALIDITY_MILLIS = 60 * 60 * 1000L;
+
+    private static final long RENEW_BEFORE_MILLIS = 5 * 60 * 1000L;
+
+    private final String service;
+
+    private final List<String> roles;
+
+    private volatile String token;
+
+    private volatile long renewAt;
+
+    /**
+     * @param roles the roles the service calls with, e.g. ROLE_USER
+     */
+    public ServiceToken(String service, String... roles) {
+        this.service = service;
+        this.roles = Collections.unmodifiableList(Arrays.asList(roles));
+    }
+
+    public String authorization() {
+        if (token == null || System.currentTimeMillis() >= renewAt) {
+            synchronized (this) {
+                if (token == null || System.currentTimeMillis() >= renewAt) {
+                    token = JWTUtil.createToken(service, roles, VALIDITY_MILLIS);
+                    renewAt = System.currentTimeMillis() + VALIDITY_MILLIS - RENEW_BEFORE_MILLIS;
+                }
+            }
+        }
+        return "Bearer " + token;
+    }
+
+    /**
+     * Headers of a call made with the service token.
+     */
+    public HttpHeaders headers() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.AUTHORIZATION, authorization());
+        return headers;
+    }
+}
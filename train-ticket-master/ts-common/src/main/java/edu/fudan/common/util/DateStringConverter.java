@@ -0,0 +1,35 @@
+package edu.fudan.common.util;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.sql.Date;
+
+/**
+ * Stores a "yyyy-MM-dd" string property in a DATE column, as DateTimeStringConverter does for
+ * date-times, so a date reads back as the date it was written as. A time of day is dropped.
+ *
+ * Strings are read as DateUtils does; null and empty strings are stored as NULL, and strings
+ * that are not dates are rejected.
+ *
+ * @author fdse
+ */
+@Converter
+public class DateStringConverter implements AttributeConverter<String, Date> {
+
+    @Override
+    public Date convertToDatabaseColumn(String attribute) {
+        if (attribute == null || attribute.isEmpty()) {
+            return null;
+        }
+        Long time = DateUtils.toEpochMilliOrNull(attribute);
+        if (time == null) {
+            throw new IllegalArgumentException("Not a date: " + attribute);
+        }
+        return Date.valueOf(DateUtils.formatDate(time));
+    }
+
+    @Override
+    public String convertToEntityAttribute(Date column) {
+        return column == null ? null : column.toLocalDate().toString();
+    }
+}
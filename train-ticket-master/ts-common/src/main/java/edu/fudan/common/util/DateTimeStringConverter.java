@@ -0,0 +1,36 @@
+package edu.fudan.common.util;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.sql.Timestamp;
+
+/**
+ * Stores a "yyyy-MM-dd HH:mm:ss" string property in a DATETIME column, so entities keep the
+ * string dates of the REST contract while the database compares and indexes real times.
+ * Query parameters compared with such a property are converted the same way.
+ *
+ * Strings are read as DateUtils does; null and empty strings are stored as NULL, and strings
+ * that are not dates are rejected instead of being stored as the epoch.
+ *
+ * @author fdse
+ */
+@Converter
+public class DateTimeStringConverter implements AttributeConverter<String, Timestamp> {
+
+    @Override
+    public Timestamp convertToDatabaseColumn(String attribute) {
+        if (attribute == null || attribute.isEmpty()) {
+            return null;
+        }
+        Long time = DateUtils.toEpochMilliOrNull(attribute);
+        if (time == null) {
+            throw new IllegalArgumentException("Not a date: " + attribute);
+        }
+        return new Timestamp(time);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Timestamp column) {
+        return column == null ? null : DateUtils.format(column.getTime());
+    }
+}
@@ -0,0 +1,125 @@
+package edu.fudan.common.util;
+
+import java.text.ParsePosition;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+
+/**
+ * Thread-safe date handling for the "yyyy-MM-dd HH:mm:ss" and "yyyy-MM-dd" strings the
+ * services exchange. The formatters are immutable and shared, and comparisons work on epoch
+ * milliseconds so hot loops need no Date or formatter per value.
+ *
+ * Parsing follows the former SimpleDateFormat behaviour: strings longer than ten characters
+ * are date-times, fields may have fewer digits, trailing text is ignored, fields out of range
+ * roll over into the next ones ("2013-13-04" is 2014-01-04), and anything unparseable is the
+ * epoch. Callers that must tell the epoch from garbage use
+ * toEpochMilliOrNull.
+ *
+ * @author fdse
+ */
+public class DateUtils {
+
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final DateTimeFormatter DATE_TIME_PARSER = DateTimeFormatter.ofPattern("yyyy-M-d H:m:s")
+            .withResolverStyle(ResolverStyle.LENIENT);
+
+    private static final DateTimeFormatter DATE_PARSER = DateTimeFormatter.ofPattern("yyyy-M-d")
+            .withResolverStyle(ResolverStyle.LENIENT);
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * returned by epochMilli for strings that cannot be parsed
+     */
+    private static final long UNPARSEABLE = Long.MIN_VALUE;
+
+    private DateUtils() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @return the string as milliseconds since the epoch in the system time zone, 0 when it
+     * cannot be parsed
+     */
+    public static long toEpochMilli(String str) {
+        long time = epochMilli(str);
+        return time == UNPARSEABLE ? 0 : time;
+    }
+
+    /**
+     * @return the string as milliseconds since the epoch in the system time zone, null when it
+     * cannot be parsed
+     */
+    public static Long toEpochMilliOrNull(String str) {
+        long time = epochMilli(str);
+        return time == UNPARSEABLE ? null : time;
+    }
+
+    private static long epochMilli(String str) {
+        if (str == null) {
+            return UNPARSEABLE;
+        }
+        try {
+            LocalDateTime dateTime;
+            if (str.length() > 10) {
+                TemporalAccessor parsed = DATE_TIME_PARSER.parse(str, new ParsePosition(0));
+                dateTime = LocalDateTime.from(parsed);
+            } else {
+                TemporalAccessor parsed = DATE_PARSER.parse(str, new ParsePosition(0));
+                dateTime = LocalDate.from(parsed).atStartOfDay();
+            }
+            return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (RuntimeException e) {
+            // DateTimeParseException
+            return UNPARSEABLE;
+        }
+    }
+
+    public static Date parse(String str) {
+        return new Date(toEpochMilli(str));
+    }
+
+    public static String format(Date date) {
+        return format(date.getTime());
+    }
+
+    public static String format(long epochMilli) {
+        return DATE_TIME_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.systemDefault()));
+    }
+
+    /**
+     * @return the day of the time as "yyyy-MM-dd" in the system time zone
+     */
+    public static String formatDate(long epochMilli) {
+        return DATE_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.systemDefault()));
+    }
+
+    /**
+     * @return the first millisecond of the current day in the system time zone
+     */
+    public static long startOfToday() {
+        return LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Whether the day of the date is today or later, ignoring the time of day.
+     */
+    public static boolean isTodayOrLater(String date) {
+        return toEpochMilli(date) >= startOfToday();
+    }
+
+    /**
+     * Whether the date lies strictly between start and end, both in epoch milliseconds.
+     */
+    public static boolean isBetween(String date, long start, long end) {
+        long time = toEpochMilli(date);
+        return time > start && time < end;
+    }
+}
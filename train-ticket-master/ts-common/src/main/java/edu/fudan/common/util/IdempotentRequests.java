@@ -0,0 +1,144 @@
+package edu.fudan.common.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-process store of the requests in flight and the results of completed ones, by
+ * request key, so a repeated request is answered without being executed again.
+ *
+ * A request arriving while one with its key is executing waits for that execution and gets
+ * its result. A result the caller chose to keep answers repeats for ttl-millis; any other
+ * result, or a failure, forgets the key so that a retry executes again. The least recently
+ * used keys are dropped beyond the maximum size.
+ *
+ * @author fdse
+ */
+public class IdempotentRequests<V> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotentRequests.class);
+
+    private final String name;
+
+    private final long ttlMillis;
+
+    private final Counter executed;
+
+    private final Counter replayed;
+
+    private final Counter coalesced;
+
+    /**
+     * least recently used first; guarded by itself
+     */
+    private final Map<String, Entry<V>> entries;
+
+    private static final class Entry<V> {
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        /**
+         * 0 while the request is executing
+         */
+        volatile long completedAt;
+    }
+
+    public IdempotentRequests(String name, int maximumSize, long ttlMillis) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.executed = Metrics.counter("idempotent.requests", "name", name, "result", "executed");
+        this.replayed = Metrics.counter("idempotent.requests", "name", name, "result", "replayed");
+        this.coalesced = Metrics.counter("idempotent.requests", "name", name, "result", "coalesced");
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                return size() > maximumSize;
+            }
+        };
+        Metrics.gauge("idempotent.requests.size", Tags.of("name", name), this, IdempotentRequests::size);
+    }
+
+    /**
+     * The result of the request with a key: the kept result of an earlier execution, the result
+     * of the execution in flight, or else the result of executing it now.
+     *
+     * @param keep whether a result answers repeats of the request
+     */
+    public V execute(String key, Supplier<V> call, Predicate<V> keep) {
+        Entry<V> entry;
+        boolean owner = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.completedAt != 0 && System.currentTimeMillis() - entry.completedAt > ttlMillis) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry<>();
+                entries.put(key, entry);
+                owner = true;
+            }
+        }
+        if (!owner) {
+            if (entry.completedAt != 0) {
+                replayed.increment();
+                IdempotentRequests.LOGGER.info("[execute][Repeated request][{}][key: {}]", name, key);
+            } else {
+                coalesced.increment();
+                IdempotentRequests.LOGGER.info("[execute][Request already in flight][{}][key: {}]", name, key);
+            }
+            return await(entry);
+        }
+
+        executed.increment();
+        V result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            forget(key, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+        if (keep.test(result)) {
+            entry.completedAt = System.currentTimeMillis();
+        } else {
+            forget(key, entry);
+        }
+        entry.result.complete(result);
+        return result;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void forget(String key, Entry<V> entry) {
+        synchronized (entries) {
+            entries.remove(key, entry);
+        }
+    }
+
+    private V await(Entry<V> entry) {
+        try {
+            return entry.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package edu.fudan.common.util;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
@@ -14,10 +15,25 @@ public class JsonUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JsonUtils.class);
 
+    /**
+     * ObjectMapper is thread-safe once configured and expensive to build, so every
+     * conversion shares this one
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     private JsonUtils() {
         throw new IllegalStateException("Utility class");
     }
 
+    /**
+     * <p>
+     * The shared mapper; callers must not reconfigure it
+     * </p>
+     */
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
     /**
      * <p>
      * Object to JSON string
@@ -26,8 +42,7 @@ public class JsonUtils {
     public static String object2Json(Object obj) {
         String result = null;
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            result = objectMapper.writeValueAsString(obj);
+            result = MAPPER.writeValueAsString(obj);
         } catch (IOException e) {
             JsonUtils.LOGGER.error("[object2Json][writeValueAsString][IOException: {}]", e.getMessage());
         }
@@ -36,9 +51,7 @@ public class JsonUtils {
 
 
     public static Map object2Map(Object obj) {
-        String object2Json = object2Json(obj);
-        Map<?, ?> result = jsonToMap(object2Json);
-        return result;
+        return conveterObject(obj, Map.class);
     }
 
     /**
@@ -58,8 +71,7 @@ public class JsonUtils {
     public static <T> T json2Object(String json, Class<T> cls) {
         T result = null;
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            result = objectMapper.readValue(json, cls);
+            result = MAPPER.readValue(json, cls);
         } catch (NullPointerException e) {
             JsonUtils.LOGGER.error("[json2Object][objectMapper.readValue][NullPointerException: {}]",e.getMessage());
         } catch (IOException e) {
@@ -69,9 +81,32 @@ public class JsonUtils {
         return result;
     }
 
-
+    /**
+     * <p>
+     * Convert an object, typically the LinkedHashMap data of a Response, to the given type
+     * through the token tree, without producing a JSON string in between
+     * </p>
+     */
     public static <T> T conveterObject(Object srcObject, Class<T> destObjectType) {
-        String jsonContent = object2Json(srcObject);
-        return json2Object(jsonContent, destObjectType);
+        try {
+            return MAPPER.convertValue(srcObject, destObjectType);
+        } catch (IllegalArgumentException e) {
+            JsonUtils.LOGGER.error("[conveterObject][objectMapper.convertValue][IllegalArgumentException: {}]", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * <p>
+     * Convert an object to a generic type such as Map&lt;String, TravelResult&gt;
+     * </p>
+     */
+    public static <T> T conveterObject(Object srcObject, TypeReference<T> destObjectType) {
+        try {
+            return MAPPER.convertValue(srcObject, destObjectType);
+        } catch (IllegalArgumentException e) {
+            JsonUtils.LOGGER.error("[conveterObject][objectMapper.convertValue][IllegalArgumentException: {}]", e.getMessage());
+            return null;
+        }
     }
 }
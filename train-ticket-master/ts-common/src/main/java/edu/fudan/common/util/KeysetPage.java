@@ -0,0 +1,37 @@
+package edu.fudan.common.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset (cursor) paginated listing. nextCursor is passed back to get the
+ * following page and is null on the last page.
+ *
+ * @author fdse
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class KeysetPage<T> {
+
+    private List<T> items;
+
+    private String nextCursor;
+
+    /**
+     * Page of the first size rows of a query that fetched up to size + 1 rows, the extra
+     * row only telling whether another page follows.
+     */
+    public static <T> KeysetPage<T> of(List<T> rows, int size, Function<T, String> cursorOf) {
+        if (rows.size() <= size) {
+            return new KeysetPage<>(new ArrayList<>(rows), null);
+        }
+        List<T> items = new ArrayList<>(rows.subList(0, size));
+        return new KeysetPage<>(items, cursorOf.apply(items.get(size - 1)));
+    }
+}
@@ -0,0 +1,59 @@
+package edu.fudan.common.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+
+/**
+ * Position in the order listings, which are sorted by (boughtDate, id) with orders without a
+ * bought date first. Sent to clients as an opaque url safe string.
+ *
+ * @author fdse
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OrderCursor implements Comparable<OrderCursor> {
+
+    private static final Comparator<OrderCursor> ORDER = Comparator
+            .comparing(OrderCursor::getBoughtDate, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(OrderCursor::getId);
+
+    private static final char SEPARATOR = '|';
+
+    private String boughtDate;
+
+    private String id;
+
+    public String encode() {
+        String key = (boughtDate == null ? "" : boughtDate) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor an encoded cursor, null or empty for the first page
+     * @return the cursor, null for the first page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static OrderCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = key.lastIndexOf(SEPARATOR);
+        if (separator < 0 || separator == key.length() - 1) {
+            throw new IllegalArgumentException("Malformed order cursor: " + cursor);
+        }
+        String boughtDate = key.substring(0, separator);
+        return new OrderCursor(boughtDate.isEmpty() ? null : boughtDate, key.substring(separator + 1));
+    }
+
+    @Override
+    public int compareTo(OrderCursor other) {
+        return ORDER.compare(this, other);
+    }
+}
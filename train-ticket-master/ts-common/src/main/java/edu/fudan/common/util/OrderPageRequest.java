@@ -0,0 +1,40 @@
+package edu.fudan.common.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A request for a page of an order listing: the cursor it starts after and its size, kept
+ * between 1 and MAX_SIZE.
+ *
+ * @author fdse
+ */
+@Data
+@AllArgsConstructor
+public class OrderPageRequest {
+
+    public static final int MAX_SIZE = 100;
+
+    /**
+     * null for the first page
+     */
+    private OrderCursor after;
+
+    private int size;
+
+    /**
+     * @param cursor an encoded cursor, null or empty for the first page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static OrderPageRequest of(String cursor, int size) {
+        return new OrderPageRequest(OrderCursor.decode(cursor), Math.max(1, Math.min(size, MAX_SIZE)));
+    }
+
+    public String getAfterBoughtDate() {
+        return after == null ? null : after.getBoughtDate();
+    }
+
+    public String getAfterId() {
+        return after == null ? null : after.getId();
+    }
+}
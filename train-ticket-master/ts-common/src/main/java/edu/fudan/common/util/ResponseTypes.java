@@ -0,0 +1,47 @@
+package edu.fudan.common.util;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.ResolvableType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed RestTemplate response types, so a call site gets Response data as the entity it
+ * expects instead of a LinkedHashMap it has to convert.
+ *
+ * <pre>
+ * restTemplate.exchange(url, HttpMethod.GET, requestEntity, ResponseTypes.of(Route.class))
+ * </pre>
+ *
+ * @author fdse
+ */
+public class ResponseTypes {
+
+    private ResponseTypes() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Response&lt;T&gt;
+     */
+    public static <T> ParameterizedTypeReference<Response<T>> of(Class<T> dataType) {
+        return ParameterizedTypeReference.forType(ResolvableType.forClassWithGenerics(Response.class, dataType).getType());
+    }
+
+    /**
+     * Response&lt;List&lt;T&gt;&gt;
+     */
+    public static <T> ParameterizedTypeReference<Response<List<T>>> listOf(Class<T> elementType) {
+        ResolvableType list = ResolvableType.forClassWithGenerics(List.class, elementType);
+        return ParameterizedTypeReference.forType(ResolvableType.forClassWithGenerics(Response.class, list).getType());
+    }
+
+    /**
+     * Response&lt;Map&lt;String, V&gt;&gt;
+     */
+    public static <V> ParameterizedTypeReference<Response<Map<String, V>>> mapOf(Class<V> valueType) {
+        ResolvableType map = ResolvableType.forClassWithGenerics(Map.class, ResolvableType.forClass(String.class), ResolvableType.forClass(valueType));
+        return ParameterizedTypeReference.forType(ResolvableType.forClassWithGenerics(Response.class, map).getType());
+    }
+}
@@ -0,0 +1,37 @@
+package edu.fudan.common.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DownstreamMetricsInterceptorTest {
+
+    @Test
+    public void testNormalizeKeepsResourcePrefix() {
+        Assert.assertEquals("/api/v1/orderservice/order/{var}",
+                DownstreamMetricsInterceptor.normalize("/api/v1/orderservice/order/5ad7750b-a68b-49c0-a8c0-32776b067703"));
+        Assert.assertEquals("/api/v1/orderservice/order",
+                DownstreamMetricsInterceptor.normalize("/api/v1/orderservice/order/"));
+        Assert.assertEquals("/api/v1/orderservice/order/{var}/{var}/{var}",
+                DownstreamMetricsInterceptor.normalize("/api/v1/orderservice/order/security/2013-05-04/account_id"));
+    }
+
+    @Test
+    public void testNormalizeLetterOnlyValues() {
+        //verify codes, user names and station names without digits are still values
+        Assert.assertEquals(DownstreamMetricsInterceptor.normalize("/api/v1/verifycode/verify/abcd"),
+                DownstreamMetricsInterceptor.normalize("/api/v1/verifycode/verify/wxyz"));
+        Assert.assertEquals("/api/v1/stationservice/stations/{var}/{var}",
+                DownstreamMetricsInterceptor.normalize("/api/v1/stationservice/stations/id/shanghai"));
+    }
+
+    @Test
+    public void testNormalizeOtherPaths() {
+        Assert.assertEquals("/", DownstreamMetricsInterceptor.normalize(""));
+        Assert.assertEquals("/", DownstreamMetricsInterceptor.normalize("/"));
+        Assert.assertEquals("/fault/{var}", DownstreamMetricsInterceptor.normalize("/fault/slow-sql"));
+        Assert.assertEquals("/{var}/{var}", DownstreamMetricsInterceptor.normalize("/12345/abc"));
+    }
+}
@@ -0,0 +1,210 @@
+package edu.fudan.common.order;
+
+import edu.fudan.common.config.OrderShardProperties;
+import edu.fudan.common.entity.Order;
+import edu.fudan.common.util.KeysetPage;
+import edu.fudan.common.util.Response;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@RunWith(JUnit4.class)
+public class OrderShardClientTest {
+
+    private static final String ORDER_PAGE = "http://ts-order-service:8080/api/v1/orderservice/order/page?size=100";
+
+    private static final String OTHER_PAGE = "http://ts-order-other-service:8080/api/v1/orderOtherService/orderOther/page?size=100";
+
+    private static final String ORDER_BY_ID = "http://ts-order-service:8080/api/v1/orderservice/order/order_id";
+
+    private static final String OTHER_BY_ID = "http://ts-order-other-service:8080/api/v1/orderOtherService/orderOther/order_id";
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private OrderShardClient orderShardClient;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        OrderShardProperties properties = new OrderShardProperties();
+        properties.setTimeout(500);
+        orderShardClient = new OrderShardClient(restTemplate, properties);
+    }
+
+    @After
+    public void tearDown() {
+        orderShardClient.close();
+    }
+
+    @Test
+    public void testRoute() {
+        Assert.assertEquals("ts-order-service", orderShardClient.route("G1234").getName());
+        Assert.assertEquals("ts-order-service", orderShardClient.route("D1345").getName());
+        Assert.assertEquals("ts-order-other-service", orderShardClient.route("Z1234").getName());
+        Assert.assertEquals("ts-order-other-service", orderShardClient.route(null).getName());
+    }
+
+    @Test
+    public void testRouteLongestPrefix() {
+        OrderShardProperties properties = new OrderShardProperties();
+        List<OrderShardProperties.Shard> shards = new ArrayList<>(OrderShardProperties.defaultShards());
+        shards.add(new OrderShardProperties.Shard("ts-order-g1-service", "http://ts-order-g1-service:8080", "/api/v1/orderservice/order", Collections.singletonList("G1")));
+        properties.setShards(shards);
+        OrderShardClient client = new OrderShardClient(restTemplate, properties);
+        try {
+            Assert.assertEquals("ts-order-g1-service", client.route("G1234").getName());
+            Assert.assertEquals("ts-order-service", client.route("G2234").getName());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testScatter() {
+        Map<OrderShard, String> results = orderShardClient.scatter(OrderShard::getName);
+        Assert.assertEquals(Arrays.asList("ts-order-service", "ts-order-other-service"), new ArrayList<>(results.values()));
+    }
+
+    @Test(expected = ResourceAccessException.class)
+    public void testScatterTimeout() {
+        orderShardClient.scatter(shard -> {
+            if (shard.isDefault()) {
+                sleep(5000);
+            }
+            return shard.getName();
+        });
+    }
+
+    @Test(expected = HttpServerErrorException.class)
+    public void testScatterFailure() {
+        orderShardClient.scatter(shard -> {
+            if (shard.isDefault()) {
+                throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            return shard.getName();
+        });
+    }
+
+    @Test
+    public void testGetOrderByIdFailingShardIgnored() {
+        Response<Order> found = new Response<>(1, "Success", newOrders(1).get(0));
+        mockGet(ORDER_BY_ID, found);
+        mockGetFailure(OTHER_BY_ID, new ResourceAccessException("Connection refused"));
+        Assert.assertSame(found, orderShardClient.getOrderById("order_id", null));
+    }
+
+    @Test
+    public void testGetOrderByIdSlowShardIgnored() {
+        Response<Order> found = new Response<>(1, "Success", newOrders(1).get(0));
+        mockGet(ORDER_BY_ID, found);
+        Mockito.when(restTemplate.exchange(
+                Mockito.eq(OTHER_BY_ID),
+                Mockito.eq(HttpMethod.GET),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class)))
+                .thenAnswer(invocation -> {
+                    sleep(5000);
+                    return new ResponseEntity<>(new Response<>(0, "Order Not Found.", null), HttpStatus.OK);
+                });
+        long start = System.currentTimeMillis();
+        Assert.assertSame(found, orderShardClient.getOrderById("order_id", null));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testGetOrderByIdNotFound() {
+        mockGet(ORDER_BY_ID, new Response<>(0, "Order Not Found.", null));
+        mockGet(OTHER_BY_ID, new Response<>(0, "Order Not Found.", null));
+        Response<Order> response = orderShardClient.getOrderById("order_id", null);
+        Assert.assertEquals(0, (int) response.getStatus());
+        Assert.assertNull(response.getData());
+    }
+
+    @Test(expected = ResourceAccessException.class)
+    public void testGetOrderByIdNotFoundWithFailingShard() {
+        //the order may be in the failed shard
+        mockGet(ORDER_BY_ID, new Response<>(0, "Order Not Found.", null));
+        mockGetFailure(OTHER_BY_ID, new ResourceAccessException("Connection refused"));
+        orderShardClient.getOrderById("order_id", null);
+    }
+
+    @Test
+    public void testRequireAllOrdersReadsEveryPage() {
+        List<Order> first = newOrders(100);
+        List<Order> second = newOrders(12);
+        mockGet(ORDER_PAGE, new Response<>(1, null, new KeysetPage<>(first, "cursor_1")));
+        mockGet(ORDER_PAGE + "&cursor=cursor_1", new Response<>(1, null, new KeysetPage<>(second, null)));
+        //an empty shard answers with an empty last page
+        mockGet(OTHER_PAGE, new Response<>(1, null, new KeysetPage<>(Collections.emptyList(), null)));
+        List<Order> orders = orderShardClient.requireAllOrders(null);
+        Assert.assertEquals(112, orders.size());
+        Assert.assertEquals(first.get(0).getId(), orders.get(0).getId());
+        Assert.assertEquals(second.get(11).getId(), orders.get(111).getId());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRequireAllOrdersFailsOnFailedPage() {
+        mockGet(ORDER_PAGE, new Response<>(1, null, new KeysetPage<>(newOrders(100), "cursor_1")));
+        mockGet(ORDER_PAGE + "&cursor=cursor_1", new Response<>(0, "Invalid cursor.", null));
+        mockGet(OTHER_PAGE, new Response<>(1, null, new KeysetPage<>(Collections.emptyList(), null)));
+        orderShardClient.requireAllOrders(null);
+    }
+
+    private void mockGet(String url, Response<?> response) {
+        Mockito.when(restTemplate.exchange(
+                Mockito.eq(url),
+                Mockito.eq(HttpMethod.GET),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class)))
+                .thenReturn(new ResponseEntity<>(response, HttpStatus.OK));
+    }
+
+    private void mockGetFailure(String url, RuntimeException failure) {
+        Mockito.when(restTemplate.exchange(
+                Mockito.eq(url),
+                Mockito.eq(HttpMethod.GET),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class)))
+                .thenThrow(failure);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<Order> newOrders(int count) {
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Order order = new Order();
+            order.setId(UUID.randomUUID().toString());
+            orders.add(order);
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,72 @@
+package edu.fudan.common.outbox;
+
+import edu.fudan.common.entity.Order;
+import edu.fudan.common.entity.OrderEvent;
+import edu.fudan.common.entity.OrderEventType;
+import edu.fudan.common.util.JsonUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(JUnit4.class)
+public class OrderOutboxTest {
+
+    @Mock
+    private BaseOutboxRepository<OutboxRelayTest.TestOutboxEvent> outboxRepository;
+
+    private OrderOutbox<OutboxRelayTest.TestOutboxEvent> orderOutbox;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        orderOutbox = new OrderOutbox<>(outboxRepository, OutboxRelayTest.TestOutboxEvent::new, "ts-test-service");
+    }
+
+    @Test
+    public void testRecord() {
+        Order order = new Order();
+        order.setId("order_id");
+        order.setAccountId("account_id");
+        order.setTrainNumber("G1234");
+        order.setTravelDate("2022-10-05");
+        order.setSeatClass(2);
+        order.setSeatNumber(15);
+        order.setFrom("shanghai");
+        order.setTo("beijing");
+        order.setStatus(1);
+        orderOutbox.record(OrderEventType.CREATED, order.getId(), order);
+
+        ArgumentCaptor<OutboxRelayTest.TestOutboxEvent> saved = ArgumentCaptor.forClass(OutboxRelayTest.TestOutboxEvent.class);
+        Mockito.verify(outboxRepository).save(saved.capture());
+        Assert.assertEquals(OrderEventType.CREATED.getRoutingKey(), saved.getValue().getRoutingKey());
+        OrderEvent event = JsonUtils.json2Object(saved.getValue().getPayload(), OrderEvent.class);
+        Assert.assertEquals(OrderEventType.CREATED, event.getType());
+        Assert.assertEquals("ts-test-service", event.getSource());
+        Assert.assertEquals("order_id", event.getOrderId());
+        Assert.assertEquals("account_id", event.getAccountId());
+        Assert.assertEquals("G1234", event.getTrainNumber());
+        Assert.assertEquals("2022-10-05", event.getTravelDate());
+        Assert.assertEquals(2, event.getSeatClass());
+        Assert.assertEquals(15, event.getSeatNumber());
+        Assert.assertEquals("shanghai", event.getFrom());
+        Assert.assertEquals("beijing", event.getTo());
+        Assert.assertEquals(1, event.getStatus());
+        Assert.assertEquals(event.getOccurredAt(), saved.getValue().getCreatedAt());
+    }
+
+    @Test
+    public void testRecordJoinsOrderTransaction() throws NoSuchMethodException {
+        Transactional transactional = OrderOutbox.class
+                .getMethod("record", OrderEventType.class, String.class, Object.class)
+                .getAnnotation(Transactional.class);
+        Assert.assertEquals(Propagation.MANDATORY, transactional.propagation());
+    }
+}
@@ -0,0 +1,141 @@
+package edu.fudan.common.outbox;
+
+import edu.fudan.common.entity.OrderEvent;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import javax.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class OutboxRelayTest {
+
+    @Mock
+    private BaseOutboxRepository<TestOutboxEvent> outboxRepository;
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    @Mock
+    private RabbitOperations operations;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    private OutboxRelay outboxRelay;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(transactionManager.getTransaction(Mockito.any(TransactionDefinition.class))).thenReturn(transactionStatus);
+        Mockito.when(rabbitTemplate.invoke(Mockito.any())).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(operations));
+        outboxRelay = new OutboxRelay(outboxRepository, rabbitTemplate, transactionManager, "ts-test-service", 2, 1000);
+    }
+
+    @Test
+    public void testRelayUntilBatchNotFull() {
+        List<TestOutboxEvent> first = newEvents(1, 2);
+        List<TestOutboxEvent> second = newEvents(3, 1);
+        Mockito.when(outboxRepository.findPending(Mockito.any(Pageable.class))).thenReturn(first, second);
+        outboxRelay.relay();
+        Mockito.verify(operations, Mockito.times(3)).send(Mockito.eq(OrderEvent.EXCHANGE), Mockito.eq("order.created"), Mockito.any(Message.class));
+        Mockito.verify(outboxRepository).deleteInBatch(first);
+        Mockito.verify(outboxRepository).deleteInBatch(second);
+        Mockito.verify(outboxRepository, Mockito.times(2)).findPending(Mockito.any(Pageable.class));
+        Mockito.verify(transactionManager, Mockito.times(2)).commit(transactionStatus);
+    }
+
+    @Test
+    public void testEmptyOutbox() {
+        Mockito.when(outboxRepository.findPending(Mockito.any(Pageable.class))).thenReturn(Collections.emptyList());
+        outboxRelay.relay();
+        Mockito.verifyNoInteractions(rabbitTemplate);
+        Mockito.verify(outboxRepository, Mockito.never()).deleteInBatch(Mockito.any());
+    }
+
+    @Test
+    public void testDeleteOnlyAfterConfirm() throws Exception {
+        List<TestOutboxEvent> events = newEvents(1, 1);
+        Mockito.when(outboxRepository.findPending(Mockito.any(Pageable.class))).thenReturn(events);
+        outboxRelay.relay();
+        InOrder inOrder = Mockito.inOrder(operations, outboxRepository);
+        inOrder.verify(operations).send(Mockito.anyString(), Mockito.anyString(), Mockito.any(Message.class));
+        inOrder.verify(operations).waitForConfirmsOrDie(1000);
+        inOrder.verify(outboxRepository).deleteInBatch(events);
+    }
+
+    @Test
+    public void testUnconfirmedBatchKept() throws Exception {
+        Mockito.when(outboxRepository.findPending(Mockito.any(Pageable.class))).thenReturn(newEvents(1, 2));
+        Mockito.doThrow(new AmqpTimeoutException("no confirm")).when(operations).waitForConfirmsOrDie(1000);
+        outboxRelay.relay();
+        Mockito.verify(outboxRepository, Mockito.never()).deleteInBatch(Mockito.any());
+        //the batch is unlocked and published again by the next run
+        Mockito.verify(transactionManager).rollback(transactionStatus);
+        Mockito.verify(transactionManager, Mockito.never()).commit(transactionStatus);
+    }
+
+    @Test
+    public void testBatchLockedInReadCommittedTransaction() throws Exception {
+        Mockito.when(outboxRepository.findPending(Mockito.any(Pageable.class))).thenReturn(Collections.emptyList());
+        outboxRelay.relay();
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        Mockito.verify(transactionManager).getTransaction(definition.capture());
+        Assert.assertEquals(TransactionDefinition.ISOLATION_READ_COMMITTED, definition.getValue().getIsolationLevel());
+        Lock lock = BaseOutboxRepository.class.getMethod("findPending", Pageable.class).getAnnotation(Lock.class);
+        Assert.assertEquals(LockModeType.PESSIMISTIC_WRITE, lock.value());
+    }
+
+    @Test
+    public void testMessage() {
+        Mockito.when(outboxRepository.findPending(Mockito.any(Pageable.class))).thenReturn(newEvents(7, 1));
+        outboxRelay.relay();
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(operations).send(Mockito.eq(OrderEvent.EXCHANGE), Mockito.eq("order.created"), message.capture());
+        Assert.assertEquals("ts-test-service-7", message.getValue().getMessageProperties().getMessageId());
+        Assert.assertEquals(7L, (long) message.getValue().getMessageProperties().getHeaders().get(OrderEvent.SEQUENCE_HEADER));
+        Assert.assertEquals(7000L, message.getValue().getMessageProperties().getTimestamp().getTime());
+        Assert.assertEquals(MessageDeliveryMode.PERSISTENT, message.getValue().getMessageProperties().getDeliveryMode());
+        Assert.assertEquals("{\"id\":7}", new String(message.getValue().getBody()));
+    }
+
+    private static List<TestOutboxEvent> newEvents(long firstId, int count) {
+        List<TestOutboxEvent> events = new ArrayList<>(count);
+        for (long id = firstId; id < firstId + count; id++) {
+            TestOutboxEvent event = new TestOutboxEvent();
+            event.setId(id);
+            event.setRoutingKey("order.created");
+            event.setPayload("{\"id\":" + id + "}");
+            event.setCreatedAt(id * 1000);
+            events.add(event);
+        }
+        return events;
+    }
+
+    static class TestOutboxEvent extends BaseOutboxEvent {
+    }
+}
@@ -0,0 +1,93 @@
+package edu.fudan.common.security.jwt;
+
+import edu.fudan.common.exception.TokenException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class JWTUtilTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private Map<String, ?> verifiedTokens;
+
+    @Before
+    public void setUp() {
+        verifiedTokens = (Map<String, ?>) ReflectionTestUtils.getField(JWTUtil.class, "VERIFIED_TOKENS");
+        verifiedTokens.clear();
+    }
+
+    @Test
+    public void testVerifiedTokenCached() {
+        String token = JWTUtil.createToken("user_1", Collections.singletonList("ROLE_USER"), HOUR);
+        Authentication first = JWTUtil.getJWTAuthentication(request(token));
+        Authentication second = JWTUtil.getJWTAuthentication(request(token));
+        Assert.assertEquals("user_1", ((UserDetails) second.getPrincipal()).getUsername());
+        Assert.assertEquals("ROLE_USER", second.getAuthorities().iterator().next().getAuthority());
+        //the second request got the roles of the first one's verification
+        Assert.assertSame(((UserDetails) first.getPrincipal()).getAuthorities(), ((UserDetails) second.getPrincipal()).getAuthorities());
+        Assert.assertEquals(1, verifiedTokens.size());
+    }
+
+    @Test
+    public void testCachedAtMostTtl() {
+        long now = System.currentTimeMillis();
+        String token = JWTUtil.createToken("user_1", Collections.singletonList("ROLE_USER"), HOUR);
+        JWTUtil.getJWTAuthentication(request(token));
+        Object verified = verifiedTokens.values().iterator().next();
+        long expiresAt = (long) ReflectionTestUtils.getField(verified, "expiresAt");
+        Assert.assertTrue(expiresAt < now + HOUR);
+        Assert.assertTrue(expiresAt <= System.currentTimeMillis() + (long) ReflectionTestUtils.getField(JWTUtil.class, "CACHE_TTL_MILLIS"));
+    }
+
+    @Test
+    public void testTokenExpiringWithinTtlNotServedFromCache() throws InterruptedException {
+        //the expiration is in whole seconds, so the token lives one to two seconds
+        String token = JWTUtil.createToken("user_1", Collections.singletonList("ROLE_USER"), 2000);
+        Assert.assertNotNull(JWTUtil.getJWTAuthentication(request(token)));
+        Thread.sleep(2500);
+        try {
+            JWTUtil.getJWTAuthentication(request(token));
+            Assert.fail();
+        } catch (TokenException e) {
+            Assert.assertEquals("Token expired", e.getMessage());
+        }
+        Assert.assertTrue(verifiedTokens.isEmpty());
+    }
+
+    @Test
+    public void testFullCacheStartsOver() {
+        int maximumSize = (int) ReflectionTestUtils.getField(JWTUtil.class, "CACHE_MAXIMUM_SIZE");
+        for (int i = 0; i < maximumSize; i++) {
+            JWTUtil.getJWTAuthentication(request(JWTUtil.createToken("user_" + i, Collections.singletonList("ROLE_USER"), HOUR)));
+        }
+        Assert.assertEquals(maximumSize, verifiedTokens.size());
+        //no entry has expired, so all are dropped for the new one
+        String token = JWTUtil.createToken("user_new", Collections.singletonList("ROLE_USER"), HOUR);
+        Authentication authentication = JWTUtil.getJWTAuthentication(request(token));
+        Assert.assertEquals("user_new", ((UserDetails) authentication.getPrincipal()).getUsername());
+        Assert.assertEquals(1, verifiedTokens.size());
+    }
+
+    @Test
+    public void testNoToken() {
+        Assert.assertNull(JWTUtil.getJWTAuthentication(new MockHttpServletRequest()));
+        Assert.assertTrue(verifiedTokens.isEmpty());
+    }
+
+    private static MockHttpServletRequest request(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+}
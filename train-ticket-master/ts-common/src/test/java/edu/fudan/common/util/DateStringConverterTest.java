@@ -0,0 +1,32 @@
+package edu.fudan.common.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DateStringConverterTest {
+
+    private DateStringConverter converter = new DateStringConverter();
+
+    @Test
+    public void testDateReadsBackAsDate() {
+        Assert.assertEquals("2022-10-05", converter.convertToEntityAttribute(converter.convertToDatabaseColumn("2022-10-05")));
+        Assert.assertEquals("2022-10-05", converter.convertToEntityAttribute(converter.convertToDatabaseColumn("2022-10-5")));
+        //a time of day is dropped
+        Assert.assertEquals("2022-10-05", converter.convertToEntityAttribute(converter.convertToDatabaseColumn("2022-10-05 09:30:00")));
+    }
+
+    @Test
+    public void testEmptyStoredAsNull() {
+        Assert.assertNull(converter.convertToDatabaseColumn(null));
+        Assert.assertNull(converter.convertToDatabaseColumn(""));
+        Assert.assertNull(converter.convertToEntityAttribute(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotADateRejected() {
+        converter.convertToDatabaseColumn("not a date");
+    }
+}
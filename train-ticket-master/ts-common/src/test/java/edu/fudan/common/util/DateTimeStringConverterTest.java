@@ -0,0 +1,33 @@
+package edu.fudan.common.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.sql.Timestamp;
+
+@RunWith(JUnit4.class)
+public class DateTimeStringConverterTest {
+
+    private DateTimeStringConverter converter = new DateTimeStringConverter();
+
+    @Test
+    public void testRoundTrip() {
+        Timestamp column = converter.convertToDatabaseColumn("2013-05-04 09:30:00");
+        Assert.assertEquals(DateUtils.toEpochMilli("2013-05-04 09:30:00"), column.getTime());
+        Assert.assertEquals("2013-05-04 09:30:00", converter.convertToEntityAttribute(column));
+    }
+
+    @Test
+    public void testEmptyStoredAsNull() {
+        Assert.assertNull(converter.convertToDatabaseColumn(null));
+        Assert.assertNull(converter.convertToDatabaseColumn(""));
+        Assert.assertNull(converter.convertToEntityAttribute(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotADateRejected() {
+        converter.convertToDatabaseColumn("not a date");
+    }
+}
@@ -0,0 +1,57 @@
+package edu.fudan.common.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and formatting order dates: a new SimpleDateFormat per call, as StringUtils did,
+ * against the shared java.time formatters of DateUtils. Run main, the GC profiler reports
+ * the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateUtilsBenchmark {
+
+    private String dateTime = "2013-05-04 09:00:00";
+
+    private Date date = new Date(1367629200000L);
+
+    @Benchmark
+    public long parseSimpleDateFormat() throws ParseException {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(dateTime).getTime();
+    }
+
+    @Benchmark
+    public long parseDateUtils() {
+        return DateUtils.toEpochMilli(dateTime);
+    }
+
+    @Benchmark
+    public String formatSimpleDateFormat() {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(date);
+    }
+
+    @Benchmark
+    public String formatDateUtils() {
+        return DateUtils.format(date);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DateUtilsBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,75 @@
+package edu.fudan.common.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+@RunWith(JUnit4.class)
+public class DateUtilsTest {
+
+    @Test
+    public void testFormatParseRoundTrip() {
+        String date = "2013-05-04 09:30:05";
+        Assert.assertEquals(date, DateUtils.format(DateUtils.toEpochMilli(date)));
+        Assert.assertEquals(date, DateUtils.format(DateUtils.parse(date)));
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        Assert.assertEquals(now, DateUtils.toEpochMilli(DateUtils.format(now)));
+    }
+
+    @Test
+    public void testParseAsSimpleDateFormat() throws ParseException {
+        SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        Assert.assertEquals(dateTimeFormat.parse("2013-05-04 09:30:05").getTime(), DateUtils.toEpochMilli("2013-05-04 09:30:05"));
+        //fields with fewer digits
+        Assert.assertEquals(dateTimeFormat.parse("2013-5-4 9:30:5").getTime(), DateUtils.toEpochMilli("2013-5-4 9:30:5"));
+        //trailing text is ignored
+        Assert.assertEquals(dateTimeFormat.parse("2013-05-04 09:30:05.0").getTime(), DateUtils.toEpochMilli("2013-05-04 09:30:05.0"));
+        //ten characters or less is a date
+        Assert.assertEquals(dateFormat.parse("2013-05-04").getTime(), DateUtils.toEpochMilli("2013-05-04"));
+        Assert.assertEquals(dateFormat.parse("2013-5-4").getTime(), DateUtils.toEpochMilli("2013-5-4"));
+        //fields out of range roll over
+        Assert.assertEquals(dateTimeFormat.parse("2013-13-04 09:30:05").getTime(), DateUtils.toEpochMilli("2013-13-04 09:30:05"));
+        Assert.assertEquals(dateTimeFormat.parse("2013-05-04 25:30:05").getTime(), DateUtils.toEpochMilli("2013-05-04 25:30:05"));
+        Assert.assertEquals(dateFormat.parse("2013-02-30").getTime(), DateUtils.toEpochMilli("2013-02-30"));
+        Assert.assertEquals("2014-01-04 09:30:05", DateUtils.format(DateUtils.toEpochMilli("2013-13-04 09:30:05")));
+    }
+
+    @Test
+    public void testInvalidIsEpoch() {
+        Assert.assertEquals(0, DateUtils.toEpochMilli(null));
+        Assert.assertEquals(0, DateUtils.toEpochMilli(""));
+        Assert.assertEquals(0, DateUtils.toEpochMilli("not a date"));
+        Assert.assertEquals(0, DateUtils.toEpochMilli("2013-05-04 09:30"));
+        Assert.assertEquals(new Date(0), DateUtils.parse("not a date"));
+    }
+
+    @Test
+    public void testInvalidIsNull() {
+        Assert.assertNull(DateUtils.toEpochMilliOrNull(null));
+        Assert.assertNull(DateUtils.toEpochMilliOrNull("not a date"));
+        Assert.assertEquals(Long.valueOf(DateUtils.toEpochMilli("2013-05-04")), DateUtils.toEpochMilliOrNull("2013-05-04"));
+    }
+
+    @Test
+    public void testIsTodayOrLater() {
+        long now = System.currentTimeMillis();
+        Assert.assertTrue(DateUtils.isTodayOrLater(DateUtils.format(now)));
+        Assert.assertTrue(DateUtils.isTodayOrLater(DateUtils.format(DateUtils.startOfToday())));
+        Assert.assertFalse(DateUtils.isTodayOrLater(DateUtils.format(DateUtils.startOfToday() - 1000)));
+        Assert.assertFalse(DateUtils.isTodayOrLater("not a date"));
+    }
+
+    @Test
+    public void testIsBetween() {
+        long time = DateUtils.toEpochMilli("2013-05-04 09:30:05");
+        Assert.assertTrue(DateUtils.isBetween("2013-05-04 09:30:05", time - 1, time + 1));
+        Assert.assertFalse(DateUtils.isBetween("2013-05-04 09:30:05", time, time + 1));
+        Assert.assertFalse(DateUtils.isBetween("2013-05-04 09:30:05", time - 1, time));
+    }
+}
@@ -0,0 +1,86 @@
+package edu.fudan.common.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.fudan.common.entity.Route;
+import edu.fudan.common.entity.TrainType;
+import edu.fudan.common.entity.TravelResult;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting Response data (a LinkedHashMap once RestTemplate has read it untyped) to an
+ * entity: the former new ObjectMapper + JSON string round trip against the shared mapper's
+ * convertValue. Run main, the GC profiler reports the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonUtilsBenchmark {
+
+    private Map travelResultData;
+
+    private Map routeData;
+
+    @Setup
+    public void setUp() {
+        Route route = new Route("route_id",
+                Arrays.asList("shanghai", "suzhou", "wuxi", "changzhou", "zhenjiang", "nanjing"),
+                Arrays.asList(0, 84, 126, 165, 237, 301), "shanghai", "nanjing");
+        TravelResult travelResult = new TravelResult();
+        travelResult.setStatus(true);
+        travelResult.setPercent(1.0);
+        travelResult.setTrainType(new TrainType("GaoTieOne", 250, 250, 300));
+        travelResult.setRoute(route);
+        Map<String, String> prices = new HashMap<>();
+        prices.put("economyClass", "225.75");
+        prices.put("confortClass", "301.0");
+        travelResult.setPrices(prices);
+
+        travelResultData = JsonUtils.mapper().convertValue(travelResult, Map.class);
+        routeData = JsonUtils.mapper().convertValue(route, Map.class);
+    }
+
+    private static <T> T stringRoundTrip(Object data, Class<T> type) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        return objectMapper.readValue(objectMapper.writeValueAsString(data), type);
+    }
+
+    @Benchmark
+    public TravelResult travelResultStringRoundTrip() throws IOException {
+        return stringRoundTrip(travelResultData, TravelResult.class);
+    }
+
+    @Benchmark
+    public TravelResult travelResultConvertValue() {
+        return JsonUtils.conveterObject(travelResultData, TravelResult.class);
+    }
+
+    @Benchmark
+    public Route routeStringRoundTrip() throws IOException {
+        return stringRoundTrip(routeData, Route.class);
+    }
+
+    @Benchmark
+    public Route routeConvertValue() {
+        return JsonUtils.conveterObject(routeData, Route.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonUtilsBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
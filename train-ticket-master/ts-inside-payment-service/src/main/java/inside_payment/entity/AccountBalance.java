@@ -0,0 +1,42 @@
+package inside_payment.entity;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+
+/**
+ * Balance of an account as its ledger sums it: the money put in minus every payment.
+ *
+ * @author fdse
+ */
+@Data
+@Entity
+@Table(name = "inside_balance")
+public class AccountBalance {
+
+    @Valid
+    @NotNull
+    @Id
+    @Column(length = 36)
+    private String userId;
+
+    @Valid
+    @NotNull
+    @Column(precision = 19, scale = 4)
+    private BigDecimal balance;
+
+    /**
+     * null until the row is first saved
+     */
+    @Version
+    private Long version;
+
+    public AccountBalance() {
+        this.userId = "";
+        this.balance = BigDecimal.ZERO;
+    }
+
+}
@@ -0,0 +1,21 @@
+package inside_payment.repository;
+
+import inside_payment.entity.AccountBalance;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.List;
+
+/**
+ * @author fdse
+ */
+public interface BalanceRepository extends CrudRepository<AccountBalance, String> {
+
+    /**
+     * user ids of all balances
+     *
+     * @return List<String>
+     */
+    @Query("SELECT b.userId FROM AccountBalance b")
+    List<String> findAllUserIds();
+}
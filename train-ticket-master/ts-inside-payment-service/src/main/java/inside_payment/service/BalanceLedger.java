@@ -0,0 +1,172 @@
+package inside_payment.service;
+
+import inside_payment.entity.AccountBalance;
+import inside_payment.entity.Money;
+import inside_payment.entity.Payment;
+import inside_payment.repository.AddMoneyRepository;
+import inside_payment.repository.BalanceRepository;
+import inside_payment.repository.PaymentRepository;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.function.Function;
+
+/**
+ * Keeps the balance row of every account next to the ledger it sums: the money put in
+ * (inside_money) minus every payment (inside_payment). Each ledger insert changes the row in
+ * the same transaction; two transactions changing the same row are caught by its version and
+ * the later one runs again, so a balance check reads one row instead of the whole ledger.
+ *
+ * The row of an account of before the balance table is built from its ledger on first use.
+ *
+ * @author fdse
+ */
+@Component
+public class BalanceLedger {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BalanceLedger.class);
+
+    /**
+     * attempts of a ledger write whose balance row kept being changed concurrently
+     */
+    static final int MAX_ATTEMPTS = 5;
+
+    private final AddMoneyRepository addMoneyRepository;
+
+    private final PaymentRepository paymentRepository;
+
+    private final BalanceRepository balanceRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public BalanceLedger(AddMoneyRepository addMoneyRepository, PaymentRepository paymentRepository,
+                         BalanceRepository balanceRepository, PlatformTransactionManager transactionManager) {
+        this.addMoneyRepository = addMoneyRepository;
+        this.paymentRepository = paymentRepository;
+        this.balanceRepository = balanceRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Inserts money put into an account and credits it to the balance.
+     */
+    public Money record(Money money) {
+        BigDecimal amount = new BigDecimal(money.getMoney());
+        return write("record", money.getUserId(), balance -> {
+            Money saved = addMoneyRepository.save(money);
+            balance.setBalance(balance.getBalance().add(amount));
+            return saved;
+        });
+    }
+
+    /**
+     * Inserts a payment and debits it from the balance.
+     *
+     * @param fromBalance whether the payment is paid out of the balance, so it must cover it;
+     *                    payments made outside are debited as well, the ledger counts every payment
+     * @throws IllegalStateException if the payment is paid out of the balance and it is too low
+     */
+    public Payment pay(Payment payment, boolean fromBalance) {
+        BigDecimal price = new BigDecimal(payment.getPrice());
+        return write("pay", payment.getUserId(), balance -> {
+            if (fromBalance && balance.getBalance().compareTo(price) < 0) {
+                BalanceLedger.LOGGER.warn("[pay][Balance not enough][userId: {}, balance: {}, price: {}]", payment.getUserId(), balance.getBalance(), price);
+                throw new IllegalStateException("Balance Not Enough");
+            }
+            Payment saved = paymentRepository.save(payment);
+            balance.setBalance(balance.getBalance().subtract(price));
+            return saved;
+        });
+    }
+
+    /**
+     * Whether the balance of an account covers an amount.
+     */
+    public boolean covers(String userId, String amount) {
+        return balanceOf(userId).compareTo(new BigDecimal(amount)) >= 0;
+    }
+
+    public BigDecimal balanceOf(String userId) {
+        return transactionTemplate.execute(status -> load(userId).getBalance());
+    }
+
+    /**
+     * Checks the balance row of an account against its ledger, setting it to the ledger sum
+     * when they differ. Row and ledger are read in one transaction, so a payment committed in
+     * between is either in both or in neither.
+     *
+     * @return whether the row matched the ledger
+     */
+    public boolean reconcile(String userId) {
+        return transactionTemplate.execute(status -> {
+            AccountBalance balance = load(userId);
+            BigDecimal ledger = ledgerBalance(userId);
+            if (balance.getBalance().compareTo(ledger) == 0) {
+                return true;
+            }
+            BalanceLedger.LOGGER.error("[reconcile][Balance differs from ledger][userId: {}, balance: {}, ledger: {}]", userId, balance.getBalance(), ledger);
+            Metrics.counter("inside.payment.balance.mismatch").increment();
+            balance.setBalance(ledger);
+            balanceRepository.save(balance);
+            return false;
+        });
+    }
+
+    /**
+     * Runs a ledger insert with the change of the balance row it causes in one transaction,
+     * again while the row was changed or created by a concurrent transaction.
+     */
+    private <V> V write(String operation, String userId, Function<AccountBalance, V> change) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    AccountBalance balance = load(userId);
+                    V result = change.apply(balance);
+                    balanceRepository.save(balance);
+                    return result;
+                });
+            } catch (OptimisticLockingFailureException | DataIntegrityViolationException e) {
+                Metrics.counter("inside.payment.balance.conflicts", "operation", operation).increment();
+                if (attempt >= MAX_ATTEMPTS) {
+                    BalanceLedger.LOGGER.error("[{}][Balance changed concurrently][giving up][userId: {}, attempts: {}]", operation, userId, attempt);
+                    throw e;
+                }
+                BalanceLedger.LOGGER.info("[{}][Balance changed concurrently][retry][userId: {}, attempt: {}]", operation, userId, attempt);
+            }
+        }
+    }
+
+    /**
+     * The balance row of an account, built from its ledger when it has none yet; the caller
+     * saves a built row.
+     */
+    private AccountBalance load(String userId) {
+        return balanceRepository.findById(userId).orElseGet(() -> {
+            AccountBalance balance = new AccountBalance();
+            balance.setUserId(userId);
+            balance.setBalance(ledgerBalance(userId));
+            BalanceLedger.LOGGER.info("[load][Build balance from ledger][userId: {}, balance: {}]", userId, balance.getBalance());
+            return balance;
+        });
+    }
+
+    private BigDecimal ledgerBalance(String userId) {
+        BigDecimal balance = BigDecimal.ZERO;
+        for (Money money : addMoneyRepository.findByUserId(userId)) {
+            balance = balance.add(new BigDecimal(money.getMoney()));
+        }
+        for (Payment payment : paymentRepository.findByUserId(userId)) {
+            balance = balance.subtract(new BigDecimal(payment.getPrice()));
+        }
+        return balance;
+    }
+}
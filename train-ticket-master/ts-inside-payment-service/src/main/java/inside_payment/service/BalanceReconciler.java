@@ -0,0 +1,48 @@
+package inside_payment.service;
+
+import inside_payment.repository.BalanceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Periodically checks every balance row against the ledger it is kept from, correcting the
+ * rows that drifted from it.
+ *
+ * @author fdse
+ */
+@Component
+@ConditionalOnProperty(name = "inside-payment.balance.reconcile.enabled", matchIfMissing = true)
+public class BalanceReconciler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BalanceReconciler.class);
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @Autowired
+    private BalanceLedger balanceLedger;
+
+    @Scheduled(initialDelayString = "${inside-payment.balance.reconcile.interval-millis:3600000}",
+            fixedDelayString = "${inside-payment.balance.reconcile.interval-millis:3600000}")
+    public void reconcile() {
+        List<String> userIds = balanceRepository.findAllUserIds();
+        int mismatches = 0;
+        for (String userId : userIds) {
+            try {
+                if (!balanceLedger.reconcile(userId)) {
+                    mismatches++;
+                }
+            } catch (RuntimeException e) {
+                //a payment changed the balance meanwhile, it is checked again next time
+                BalanceReconciler.LOGGER.warn("[reconcile][Reconcile balance fail][userId: {}, error: {}]", userId, e.toString());
+            }
+        }
+        BalanceReconciler.LOGGER.info("[reconcile][Balances reconciled][balances: {}, mismatches: {}]", userIds.size(), mismatches);
+    }
+}
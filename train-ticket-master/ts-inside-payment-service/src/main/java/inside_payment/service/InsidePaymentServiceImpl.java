@@ -2,6 +2,7 @@ package inside_payment.service;
 
 import edu.fudan.common.entity.OrderStatus;
 import edu.fudan.common.entity.Order;
+import edu.fudan.common.order.OrderShardClient;
 import edu.fudan.common.util.Response;
 import inside_payment.entity.*;
 import inside_payment.repository.AddMoneyRepository;
@@ -36,6 +37,12 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
     @Autowired
     public RestTemplate restTemplate;
 
+    @Autowired
+    private OrderShardClient orderShardClient;
+
+    @Autowired
+    private BalanceLedger balanceLedger;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(InsidePaymentServiceImpl.class);
 
     private String getServiceUrl(String serviceName) {
@@ -47,14 +54,7 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
 
         String userId = info.getUserId();
 
-        String requestOrderURL = "";
-        String order_service_url = getServiceUrl("ts-order-service");
-        String order_other_service_url = getServiceUrl("ts-order-other-service");
-        if (info.getTripId().startsWith("G") || info.getTripId().startsWith("D")) {
-            requestOrderURL =  order_service_url + "/api/v1/orderservice/order/" + info.getOrderId();
-        } else {
-            requestOrderURL = order_other_service_url + "/api/v1/orderOtherService/orderOther/" + info.getOrderId();
-        }
+        String requestOrderURL = orderShardClient.route(info.getTripId()).url("/" + info.getOrderId());
         HttpEntity requestGetOrderResults = new HttpEntity(headers);
         ResponseEntity<Response<Order>> reGetOrderResults = restTemplate.exchange(
                 requestOrderURL,
@@ -80,25 +80,7 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
             Payment newPay2;
 
             //判断一下账户余额够不够，不够要去站外支付
-            List<Payment> payments = paymentRepository.findByUserId(userId);
-            List<Money> addMonies = addMoneyRepository.findByUserId(userId);
-            Iterator<Payment> paymentsIterator = payments.iterator();
-            Iterator<Money> addMoniesIterator = addMonies.iterator();
-
-            BigDecimal totalExpand = new BigDecimal("0");
-            while (paymentsIterator.hasNext()) {
-                Payment p = paymentsIterator.next();
-                totalExpand = totalExpand.add(new BigDecimal(p.getPrice()));
-            }
-            totalExpand = totalExpand.add(new BigDecimal(order.getPrice()));
-
-            BigDecimal money = new BigDecimal("0");
-            while (addMoniesIterator.hasNext()) {
-                Money addMoney = addMoniesIterator.next();
-                money = money.add(new BigDecimal(addMoney.getMoney()));
-            }
-
-            if (totalExpand.compareTo(money) > 0) {
+            if (!balanceLedger.covers(userId, order.getPrice())) {
                 //站外支付
                 Payment outsidePaymentInfo = new Payment();
                 outsidePaymentInfo.setOrderId(info.getOrderId());
@@ -119,7 +101,7 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
                 InsidePaymentServiceImpl.LOGGER.info("[Inside Payment Service.pay][outside Pay][Out pay result: {}]", outsidePaySuccess.toString());
                 if (outsidePaySuccess.getStatus() == 1) {
                     payment.setType(PaymentType.O);
-                    Payment newPay = paymentRepository.save(payment);
+                    Payment newPay = balanceLedger.pay(payment, false);
                     setOrderStatus(info.getTripId(), info.getOrderId(), headers);
                     return new Response<>(1, "Payment Success " +    outsidePaySuccess.getMsg(), newPay);
                 } else {
@@ -127,9 +109,15 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
                     return new Response<>(0, "Payment Failed:  " +  outsidePaySuccess.getMsg(), null);
                 }
             } else {
-                setOrderStatus(info.getTripId(), info.getOrderId(), headers);
                 payment.setType(PaymentType.P);
-                newPay2 = paymentRepository.save(payment);
+                try {
+                    newPay2 = balanceLedger.pay(payment, true);
+                } catch (IllegalStateException e) {
+                    //a concurrent payment of the account spent the balance since it was checked
+                    LOGGER.warn("[Inside Payment Service.pay][Balance not enough][orderId: {}]", info.getOrderId());
+                    return new Response<>(0, "Payment Failed, Balance Not Enough", null);
+                }
+                setOrderStatus(info.getTripId(), info.getOrderId(), headers);
             }
             LOGGER.info("[Inside Payment Service.pay][Payment success][orderId: {}]", info.getOrderId());
             return new Response<>(1, "Payment Success", newPay2);
@@ -148,7 +136,7 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
             addMoney.setMoney(info.getMoney());
             addMoney.setUserId(info.getUserId());
             addMoney.setType(MoneyType.A);
-            Money mn = addMoneyRepository.save(addMoney);
+            Money mn = balanceLedger.record(addMoney);
             return new Response<>(1, "Create Account Success", mn);
         } else {
             LOGGER.error("[createAccount][Create Account Failed][Account already Exists][userId: {}]", info.getUserId());
@@ -163,7 +151,7 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
             addMoney.setUserId(userId);
             addMoney.setMoney(money);
             addMoney.setType(MoneyType.A);
-            Money mn = addMoneyRepository.save(addMoney);
+            Money mn = balanceLedger.record(addMoney);
             return new Response<>(1, "Add Money Success", mn);
         } else {
             LOGGER.error("Add Money Failed, userId: {}", userId);
@@ -212,24 +200,7 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
     }
 
     public String queryAccount(String userId, HttpHeaders headers) {
-        List<Payment> payments = paymentRepository.findByUserId(userId);
-        List<Money> addMonies = addMoneyRepository.findByUserId(userId);
-        Iterator<Payment> paymentsIterator = payments.iterator();
-        Iterator<Money> addMoniesIterator = addMonies.iterator();
-
-        BigDecimal totalExpand = new BigDecimal("0");
-        while (paymentsIterator.hasNext()) {
-            Payment p = paymentsIterator.next();
-            totalExpand.add(new BigDecimal(p.getPrice()));
-        }
-
-        BigDecimal money = new BigDecimal("0");
-        while (addMoniesIterator.hasNext()) {
-            Money addMoney = addMoniesIterator.next();
-            money.add(new BigDecimal(addMoney.getMoney()));
-        }
-
-        return money.subtract(totalExpand).toString();
+        return balanceLedger.balanceOf(userId).toString();
     }
 
     @Override
@@ -250,7 +221,7 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
             addMoney.setUserId(userId);
             addMoney.setMoney(money);
             addMoney.setType(MoneyType.D);
-            Money mn = addMoneyRepository.save(addMoney);
+            Money mn = balanceLedger.record(addMoney);
             return new Response<>(1, "Draw Back Money Success", mn);
         } else {
             LOGGER.error("[drawBack][Draw Back Money Failed][addMoneyRepository.findByUserId null][userId: {}]", userId);
@@ -270,25 +241,7 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
 
         Payment pm2;
 
-        List<Payment> payments = paymentRepository.findByUserId(userId);
-        List<Money> addMonies = addMoneyRepository.findByUserId(userId);
-        Iterator<Payment> paymentsIterator = payments.iterator();
-        Iterator<Money> addMoniesIterator = addMonies.iterator();
-
-        BigDecimal totalExpand = new BigDecimal("0");
-        while (paymentsIterator.hasNext()) {
-            Payment p = paymentsIterator.next();
-            totalExpand.add(new BigDecimal(p.getPrice()));
-        }
-        totalExpand.add(new BigDecimal(info.getPrice()));
-
-        BigDecimal money = new BigDecimal("0");
-        while (addMoniesIterator.hasNext()) {
-            Money addMoney = addMoniesIterator.next();
-            money.add(new BigDecimal(addMoney.getMoney()));
-        }
-
-        if (totalExpand.compareTo(money) > 0) {
+        if (!balanceLedger.covers(userId, info.getPrice())) {
             //站外支付
             Payment outsidePaymentInfo = new Payment();
             outsidePaymentInfo.setOrderId(info.getOrderId());
@@ -306,7 +259,7 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
 
             if (outsidePaySuccess.getStatus() == 1) {
                 payment.setType(PaymentType.E);
-                Payment pm = paymentRepository.save(payment);
+                Payment pm = balanceLedger.pay(payment, false);
                 return new Response<>(1, "Pay Difference Success", pm);
             } else {
                 LOGGER.error("[payDifference][Pay Difference Failed][outsidePaySuccess status not 1][orderId: {}]", info.getOrderId());
@@ -314,7 +267,12 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
             }
         } else {
             payment.setType(PaymentType.E);
-            pm2 = paymentRepository.save(payment);
+            try {
+                pm2 = balanceLedger.pay(payment, true);
+            } catch (IllegalStateException e) {
+                LOGGER.warn("[payDifference][Pay Difference Failed][Balance not enough][orderId: {}]", info.getOrderId());
+                return new Response<>(0, "Pay Difference Failed", null);
+            }
         }
         return new Response<>(1, "Pay Difference Success", pm2);
     }
@@ -334,30 +292,13 @@ public class InsidePaymentServiceImpl implements InsidePaymentService {
 
         //order paid and not collected
         int orderStatus = 1;
-        Response result;
-        if (tripId.startsWith("G") || tripId.startsWith("D")) {
-
-            HttpEntity requestEntityModifyOrderStatusResult = new HttpEntity(headers);
-            String order_service_url = getServiceUrl("ts-order-service");
-            ResponseEntity<Response> reModifyOrderStatusResult = restTemplate.exchange(
-                    order_service_url + "/api/v1/orderservice/order/status/" + orderId + "/" + orderStatus,
-                    HttpMethod.GET,
-                    requestEntityModifyOrderStatusResult,
-                    Response.class);
-            result = reModifyOrderStatusResult.getBody();
-
-        } else {
-            HttpEntity requestEntityModifyOrderStatusResult = new HttpEntity(headers);
-            String order_other_service_url = getServiceUrl("ts-order-other-service");
-            ResponseEntity<Response> reModifyOrderStatusResult = restTemplate.exchange(
-                    order_other_service_url + "/api/v1/orderOtherService/orderOther/status/" + orderId + "/" + orderStatus,
-                    HttpMethod.GET,
-                    requestEntityModifyOrderStatusResult,
-                    Response.class);
-            result = reModifyOrderStatusResult.getBody();
-
-        }
-        return result;
+        HttpEntity requestEntityModifyOrderStatusResult = new HttpEntity(headers);
+        ResponseEntity<Response> reModifyOrderStatusResult = restTemplate.exchange(
+                orderShardClient.route(tripId).url("/status/" + orderId + "/" + orderStatus),
+                HttpMethod.GET,
+                requestEntityModifyOrderStatusResult,
+                Response.class);
+        return reModifyOrderStatusResult.getBody();
     }
 
     @Override
@@ -0,0 +1,18 @@
+-- Tables as Hibernate created them with ddl-auto: update. Existing databases are
+-- baselined at version 0, so this is a no-op there.
+CREATE TABLE IF NOT EXISTS inside_payment (
+    id       VARCHAR(36)  NOT NULL,
+    order_id VARCHAR(36),
+    price    VARCHAR(255),
+    type     VARCHAR(255),
+    user_id  VARCHAR(36),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS inside_money (
+    id      VARCHAR(36)  NOT NULL,
+    money   VARCHAR(255),
+    type    VARCHAR(255),
+    user_id VARCHAR(36),
+    PRIMARY KEY (id)
+);
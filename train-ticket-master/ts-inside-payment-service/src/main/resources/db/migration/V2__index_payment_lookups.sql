@@ -0,0 +1,6 @@
+-- Balance of a user: findByUserId on both tables for every payment and balance query.
+CREATE INDEX idx_inside_payment_user_id ON inside_payment (user_id);
+CREATE INDEX idx_inside_money_user_id ON inside_money (user_id);
+
+-- Payments of an order: findByOrderId.
+CREATE INDEX idx_inside_payment_order_id ON inside_payment (order_id);
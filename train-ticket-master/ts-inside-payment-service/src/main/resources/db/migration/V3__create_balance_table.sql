@@ -0,0 +1,8 @@
+-- Balance of every account, updated with each insert into inside_money and inside_payment.
+-- Accounts of before this table get their row from the ledger when first used.
+CREATE TABLE inside_balance (
+    user_id VARCHAR(36)    NOT NULL,
+    balance DECIMAL(19, 4) NOT NULL,
+    version BIGINT         NOT NULL,
+    PRIMARY KEY (user_id)
+);
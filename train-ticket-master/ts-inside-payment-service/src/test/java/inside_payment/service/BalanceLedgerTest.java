@@ -0,0 +1,129 @@
+package inside_payment.service;
+
+import inside_payment.entity.AccountBalance;
+import inside_payment.entity.Money;
+import inside_payment.entity.Payment;
+import inside_payment.repository.AddMoneyRepository;
+import inside_payment.repository.BalanceRepository;
+import inside_payment.repository.PaymentRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Optional;
+
+@RunWith(JUnit4.class)
+public class BalanceLedgerTest {
+
+    @Mock
+    private AddMoneyRepository addMoneyRepository;
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private BalanceRepository balanceRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private BalanceLedger balanceLedger;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        balanceLedger = new BalanceLedger(addMoneyRepository, paymentRepository, balanceRepository, transactionManager);
+    }
+
+    @Test
+    public void testPayBuildsBalanceFromLedger() {
+        Mockito.when(balanceRepository.findById("user_id")).thenReturn(Optional.empty());
+        Mockito.when(addMoneyRepository.findByUserId("user_id")).thenReturn(Collections.singletonList(money("2.0")));
+        Mockito.when(paymentRepository.findByUserId("user_id")).thenReturn(Collections.singletonList(payment("0.5")));
+        Payment payment = payment("1.0");
+        Mockito.when(paymentRepository.save(payment)).thenReturn(payment);
+
+        Assert.assertSame(payment, balanceLedger.pay(payment, true));
+        Assert.assertEquals(0, new BigDecimal("0.5").compareTo(savedBalance().getBalance()));
+    }
+
+    @Test
+    public void testPayBalanceNotEnough() {
+        Mockito.when(balanceRepository.findById("user_id")).thenReturn(Optional.of(balance("1.0")));
+        try {
+            balanceLedger.pay(payment("2.0"), true);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Balance Not Enough", e.getMessage());
+        }
+        Mockito.verify(paymentRepository, Mockito.never()).save(Mockito.any(Payment.class));
+        //a payment made outside is recorded whatever the balance
+        balanceLedger.pay(payment("2.0"), false);
+        Assert.assertEquals(0, new BigDecimal("-1.0").compareTo(savedBalance().getBalance()));
+    }
+
+    @Test
+    public void testPayRetriedWhenBalanceChangedConcurrently() {
+        Mockito.when(balanceRepository.findById("user_id"))
+                .thenReturn(Optional.of(balance("3.0")))
+                .thenReturn(Optional.of(balance("1.5")));
+        Mockito.when(balanceRepository.save(Mockito.any(AccountBalance.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(AccountBalance.class, "user_id"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        balanceLedger.pay(payment("1.0"), true);
+        //the second attempt debits the balance the concurrent payment left
+        Mockito.verify(balanceRepository, Mockito.times(2)).save(Mockito.any(AccountBalance.class));
+        Mockito.verify(transactionManager, Mockito.times(1)).rollback(Mockito.any());
+        Assert.assertEquals(0, new BigDecimal("0.5").compareTo(savedBalance().getBalance()));
+    }
+
+    @Test
+    public void testReconcileCorrectsDrift() {
+        Mockito.when(balanceRepository.findById("user_id")).thenReturn(Optional.of(balance("5.0")));
+        Mockito.when(addMoneyRepository.findByUserId("user_id")).thenReturn(Collections.singletonList(money("2.0")));
+        Mockito.when(paymentRepository.findByUserId("user_id")).thenReturn(Collections.emptyList());
+
+        Assert.assertFalse(balanceLedger.reconcile("user_id"));
+        Assert.assertEquals(0, new BigDecimal("2.0").compareTo(savedBalance().getBalance()));
+        Assert.assertTrue(balanceLedger.reconcile("user_id"));
+    }
+
+    private AccountBalance savedBalance() {
+        ArgumentCaptor<AccountBalance> saved = ArgumentCaptor.forClass(AccountBalance.class);
+        Mockito.verify(balanceRepository, Mockito.atLeastOnce()).save(saved.capture());
+        return saved.getValue();
+    }
+
+    private static AccountBalance balance(String amount) {
+        AccountBalance balance = new AccountBalance();
+        balance.setUserId("user_id");
+        balance.setBalance(new BigDecimal(amount));
+        balance.setVersion(1L);
+        return balance;
+    }
+
+    private static Money money(String amount) {
+        Money money = new Money();
+        money.setUserId("user_id");
+        money.setMoney(amount);
+        return money;
+    }
+
+    private static Payment payment(String price) {
+        Payment payment = new Payment();
+        payment.setUserId("user_id");
+        payment.setPrice(price);
+        return payment;
+    }
+}
@@ -1,5 +1,7 @@
 package inside_payment.service;
 
+import edu.fudan.common.config.OrderShardProperties;
+import edu.fudan.common.order.OrderShardClient;
 import edu.fudan.common.entity.Order;
 import edu.fudan.common.util.Response;
 import inside_payment.entity.*;
@@ -16,6 +18,7 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.ArrayList;
@@ -38,12 +41,16 @@ public class InsidePaymentServiceImplTest {
     @Mock
     private RestTemplate restTemplate;
 
+    @Mock
+    private BalanceLedger balanceLedger;
+
     private HttpHeaders headers = new HttpHeaders();
     HttpEntity httpEntity = new HttpEntity(headers);
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(insidePaymentServiceImpl, "orderShardClient", new OrderShardClient(restTemplate, new OrderShardProperties()));
     }
 
     @Test
@@ -61,13 +68,7 @@ public class InsidePaymentServiceImplTest {
                 new ParameterizedTypeReference<Response<Order>>() {
                 })).thenReturn(re);
 
-        List<Payment> payments = new ArrayList<>();
-        List<Money> monies = new ArrayList<>();
-        Money money = new Money();
-        money.setMoney("2.0");
-        monies.add(money);
-        Mockito.when(paymentRepository.findByUserId(Mockito.anyString())).thenReturn(payments);
-        Mockito.when(addMoneyRepository.findByUserId(Mockito.anyString())).thenReturn(monies);
+        Mockito.when(balanceLedger.covers("user_id", "1.0")).thenReturn(true);
         //mock setOrderStatus()
         Response response2 = new Response(1, "", null);
         ResponseEntity<Response> re2 = new ResponseEntity<>(response2, HttpStatus.OK);
@@ -76,7 +77,7 @@ public class InsidePaymentServiceImplTest {
                 HttpMethod.GET,
                 httpEntity,
                 Response.class)).thenReturn(re2);
-        Mockito.when(paymentRepository.save(Mockito.any(Payment.class))).thenReturn(null);
+        Mockito.when(balanceLedger.pay(Mockito.any(Payment.class), Mockito.eq(true))).thenReturn(null);
         Response result = insidePaymentServiceImpl.pay(info, headers);
         Assert.assertEquals(new Response<>(1, "Payment Success", null), result);
     }
@@ -160,14 +161,8 @@ public class InsidePaymentServiceImplTest {
     @Test
     public void testPayDifference() {
         PaymentInfo info = new PaymentInfo("user_id", "order_id", "G", "1.0");
-        List<Payment> payments = new ArrayList<>();
-        List<Money> monies = new ArrayList<>();
-        Money money = new Money();
-        money.setMoney("2.0");
-        monies.add(money);
-        Mockito.when(paymentRepository.findByUserId(Mockito.anyString())).thenReturn(payments);
-        Mockito.when(addMoneyRepository.findByUserId(Mockito.anyString())).thenReturn(monies);
-        Mockito.when(paymentRepository.save(Mockito.any(Payment.class))).thenReturn(null);
+        Mockito.when(balanceLedger.covers("user_id", "1.0")).thenReturn(true);
+        Mockito.when(balanceLedger.pay(Mockito.any(Payment.class), Mockito.eq(true))).thenReturn(null);
         Response result = insidePaymentServiceImpl.payDifference(info, headers);
         Assert.assertEquals(new Response<>(1, "Pay Difference Success", null), result);
     }
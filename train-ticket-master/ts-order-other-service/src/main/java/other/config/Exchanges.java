@@ -0,0 +1,15 @@
+package other.config;
+
+import edu.fudan.common.entity.OrderEvent;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class Exchanges {
+
+    @Bean
+    public TopicExchange orderEventsExchange() {
+        return new TopicExchange(OrderEvent.EXCHANGE);
+    }
+}
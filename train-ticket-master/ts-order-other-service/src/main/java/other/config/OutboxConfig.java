@@ -0,0 +1,35 @@
+package other.config;
+
+import edu.fudan.common.outbox.OrderOutbox;
+import edu.fudan.common.outbox.OutboxRelay;
+import other.entity.OutboxEvent;
+import other.repository.OutboxRepository;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * @author fdse
+ */
+@Configuration
+public class OutboxConfig {
+
+    static final String SOURCE = "ts-order-other-service";
+
+    @Bean
+    public OrderOutbox<OutboxEvent> orderOutbox(OutboxRepository outboxRepository) {
+        return new OrderOutbox<>(outboxRepository, OutboxEvent::new, SOURCE);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "order.outbox.relay.enabled", matchIfMissing = true)
+    public OutboxRelay outboxRelay(OutboxRepository outboxRepository, RabbitTemplate rabbitTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${order.outbox.relay.batch-size:100}") int batchSize,
+                                   @Value("${order.outbox.relay.confirm-timeout-millis:5000}") long confirmTimeoutMillis) {
+        return new OutboxRelay(outboxRepository, rabbitTemplate, transactionManager, SOURCE, batchSize, confirmTimeoutMillis);
+    }
+}
@@ -43,6 +43,14 @@ public class OrderOtherController {
         return ok(orderService.getSoldTickets(seatRequest, headers));
     }
 
+    @PostMapping(value = "/orderOther/tickets/compact")
+    public HttpEntity getCompactTicketListByDateAndTripId(@RequestBody Seat seatRequest,
+                                                          @RequestParam(value = "seatClass", required = false) Integer seatClass,
+                                                          @RequestHeader HttpHeaders headers) {
+        OrderOtherController.LOGGER.info("[getSoldTicketsCompact][Get Sold Ticket][Travel Date: {}, seatClass: {}]", seatRequest.getTravelDate(), seatClass);
+        return ok(orderService.getSoldTicketsCompact(seatRequest, seatClass, headers));
+    }
+
     @CrossOrigin(origins = "*")
     @PostMapping(path = "/orderOther")
     public HttpEntity createNewOrder(@RequestBody Order createOrder, @RequestHeader HttpHeaders headers) {
@@ -66,6 +74,16 @@ public class OrderOtherController {
 
     }
 
+    @CrossOrigin(origins = "*")
+    @PostMapping(path = "/orderOther/query/page")
+    public HttpEntity queryOrderPage(@RequestBody QueryInfo qi,
+                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                     @RequestParam(value = "size", defaultValue = "20") int size,
+                                     @RequestHeader HttpHeaders headers) {
+        OrderOtherController.LOGGER.info("[queryOrderPage][Query Order Page][for LoginId :{}, size: {}]", qi.getLoginId(), size);
+        return ok(orderService.queryOrderPage(qi, qi.getLoginId(), cursor, size, headers));
+    }
+
     @CrossOrigin(origins = "*")
     @PostMapping(path = "/orderOther/refresh")
     public HttpEntity queryOrdersForRefresh(@RequestBody QueryInfo qi,
@@ -151,4 +169,13 @@ public class OrderOtherController {
         return ok(orderService.getAllOrders(headers));
     }
 
+    @CrossOrigin(origins = "*")
+    @GetMapping(path = "/orderOther/page")
+    public HttpEntity findOrderPage(@RequestParam(value = "cursor", required = false) String cursor,
+                                    @RequestParam(value = "size", defaultValue = "20") int size,
+                                    @RequestHeader HttpHeaders headers) {
+        OrderOtherController.LOGGER.info("[getOrderPage][Find Order Page][size: {}]", size);
+        return ok(orderService.getOrderPage(cursor, size, headers));
+    }
+
 }
@@ -1,11 +1,15 @@
 package other.repository;
 
+import edu.fudan.common.entity.Ticket;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.CrudRepository;
 import other.entity.Order;
 import org.springframework.stereotype.Repository;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -42,6 +46,42 @@ public interface OrderOtherRepository extends CrudRepository<Order, String> {
 //    @Query("{ 'accountId' : ?0 }")
     ArrayList<Order> findByAccountId(String accountId);
 
+    /**
+     * keyset condition of the paged listings: orders after (:afterDate, :afterId) in
+     * (boughtDate, id) order, orders without a bought date first; a null :afterId is the first page
+     */
+    String AFTER_KEY = "(:afterId IS NULL " +
+            "OR (:afterDate IS NULL AND (o.boughtDate IS NOT NULL OR o.id > :afterId)) " +
+            "OR o.boughtDate > :afterDate OR (o.boughtDate = :afterDate AND o.id > :afterId))";
+
+    /**
+     * find a page of all orders after a key
+     *
+     * @param afterDate bought date of the last order of the previous page
+     * @param afterId id of the last order of the previous page, null for the first page
+     * @param pageable page size
+     * @return List<Order>
+     */
+    @Query("SELECT o FROM Order o WHERE " + AFTER_KEY + " ORDER BY o.boughtDate, o.id")
+    List<Order> findPageAfter(@Param("afterDate") String afterDate,
+                              @Param("afterId") String afterId,
+                              Pageable pageable);
+
+    /**
+     * find a page of the orders of an account after a key
+     *
+     * @param accountId account id
+     * @param afterDate bought date of the last order of the previous page
+     * @param afterId id of the last order of the previous page, null for the first page
+     * @param pageable page size
+     * @return List<Order>
+     */
+    @Query("SELECT o FROM Order o WHERE o.accountId = :accountId AND " + AFTER_KEY + " ORDER BY o.boughtDate, o.id")
+    List<Order> findByAccountIdAfter(@Param("accountId") String accountId,
+                                     @Param("afterDate") String afterDate,
+                                     @Param("afterId") String afterId,
+                                     Pageable pageable);
+
     /**
      * find orders by travel date and train number
      *
@@ -52,6 +92,21 @@ public interface OrderOtherRepository extends CrudRepository<Order, String> {
 //    @Query("{ 'travelDate' : ?0 , trainNumber : ?1 }")
     ArrayList<Order> findByTravelDateAndTrainNumber(String travelDate, String trainNumber);
 
+    /**
+     * seat, stations and class of the sold tickets only, for the seat queries
+     *
+     * @param travelDate travel date
+     * @param trainNumber train number
+     * @param seatClass seat class, null for every class; tickets without a seat class match any class
+     * @return List<Ticket>
+     */
+    @Query("SELECT new edu.fudan.common.entity.Ticket(o.seatNumber, o.from, o.to, o.seatClass) FROM Order o " +
+           "WHERE o.travelDate = :travelDate AND o.trainNumber = :trainNumber " +
+           "AND (:seatClass IS NULL OR o.seatClass = :seatClass OR o.seatClass = 0)")
+    List<Ticket> findSoldTickets(@Param("travelDate") String travelDate,
+                                 @Param("trainNumber") String trainNumber,
+                                 @Param("seatClass") Integer seatClass);
+
     /**
      * delete order by id
      *
@@ -0,0 +1,12 @@
+package other.repository;
+
+import edu.fudan.common.outbox.BaseOutboxRepository;
+import other.entity.OutboxEvent;
+import org.springframework.stereotype.Repository;
+
+/**
+ * @author fdse
+ */
+@Repository
+public interface OutboxRepository extends BaseOutboxRepository<OutboxEvent> {
+}
@@ -39,8 +39,14 @@ public interface OrderOtherService {
 
     Response getAllOrders(HttpHeaders headers);
 
+    Response getOrderPage(String cursor, int size, HttpHeaders headers);
+
+    Response queryOrderPage(QueryInfo qi, String accountId, String cursor, int size, HttpHeaders headers);
+
     Response getSoldTickets(Seat seatRequest, HttpHeaders headers);
 
+    Response getSoldTicketsCompact(Seat seatRequest, Integer seatClass, HttpHeaders headers);
+
     Response queryOrders(QueryInfo qi, String accountId, HttpHeaders headers);
 
     Response queryOrdersForRefresh(QueryInfo qi, String accountId, HttpHeaders headers);
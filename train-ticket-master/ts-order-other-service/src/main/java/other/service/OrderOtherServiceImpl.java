@@ -1,11 +1,17 @@
 package other.service;
 
 import edu.fudan.common.entity.*;
+import edu.fudan.common.outbox.OrderOutbox;
+import edu.fudan.common.util.DateUtils;
+import edu.fudan.common.util.KeysetPage;
+import edu.fudan.common.util.OrderCursor;
+import edu.fudan.common.util.OrderPageRequest;
 import edu.fudan.common.util.Response;
 import edu.fudan.common.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -17,8 +23,10 @@ import other.entity.OrderAlterInfo;
 import other.repository.OrderOtherRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * @author fdse
@@ -29,6 +37,9 @@ public class OrderOtherServiceImpl implements OrderOtherService {
     @Autowired
     private OrderOtherRepository orderOtherRepository;
 
+    @Autowired
+    private OrderOutbox<OutboxEvent> orderOutbox;
+
     @Autowired
     private RestTemplate restTemplate;
 
@@ -57,12 +68,13 @@ public class OrderOtherServiceImpl implements OrderOtherService {
                 ticket.setSeatNo(tempOrder.getSeatNumber());
                 ticket.setStartStation(tempOrder.getFrom());
                 ticket.setDestStation(tempOrder.getTo());
+                ticket.setSeatClass(tempOrder.getSeatClass());
                 ticketSet.add(ticket);
             }
 
             LeftTicketInfo leftTicketInfo = new LeftTicketInfo();
             leftTicketInfo.setSoldTickets(ticketSet);
-            OrderOtherServiceImpl.LOGGER.info("[getSoldTickets][Left ticket info][info is: {}]", leftTicketInfo.toString());
+            OrderOtherServiceImpl.LOGGER.info("[getSoldTickets][Left ticket info][size: {}]", ticketSet.size());
 
             return new Response<>(1, success, leftTicketInfo);
         } else {
@@ -72,6 +84,15 @@ public class OrderOtherServiceImpl implements OrderOtherService {
         }
     }
 
+    @Override
+    public Response getSoldTicketsCompact(Seat seatRequest, Integer seatClass, HttpHeaders headers) {
+        List<Ticket> tickets = orderOtherRepository.findSoldTickets(seatRequest.getTravelDate(),
+                seatRequest.getTrainNumber(), seatClass);
+        OrderOtherServiceImpl.LOGGER.info("[getSoldTicketsCompact][Sold tickets][travelDate: {}, trainNumber: {}, seatClass: {}, size: {}]",
+                seatRequest.getTravelDate(), seatRequest.getTrainNumber(), seatClass, tickets.size());
+        return new Response<>(1, success, SoldTickets.of(tickets));
+    }
+
     @Override
     public Response findOrderById(String id, HttpHeaders headers) {
         Optional<Order> op = orderOtherRepository.findById(id);
@@ -86,6 +107,7 @@ public class OrderOtherServiceImpl implements OrderOtherService {
     }
 
     @Override
+    @Transactional
     public Response create(Order order, HttpHeaders headers) {
         OrderOtherServiceImpl.LOGGER.info("[create][Create Order][Ready Create Order]");
         ArrayList<Order> accountOrders = orderOtherRepository.findByAccountId(order.getAccountId());
@@ -95,16 +117,19 @@ public class OrderOtherServiceImpl implements OrderOtherService {
         } else {
 //            order.setId(UUID.randomUUID().toString());
             order=orderOtherRepository.save(order);
+            orderOutbox.record(OrderEventType.CREATED, order.getId(), order);
             OrderOtherServiceImpl.LOGGER.info("[create][Order Create Success][OrderId:{},Price: {}]",order.getId(),order.getPrice());
             return new Response<>(1, success, order);
         }
     }
 
     @Override
+    @Transactional
     public void initOrder(Order order, HttpHeaders headers) {
         Optional<Order> op = orderOtherRepository.findById(order.getId());
         if (!op.isPresent()) {
             Order newOrder = orderOtherRepository.save(order);
+            orderOutbox.record(OrderEventType.CREATED, newOrder.getId(), newOrder);
             OrderOtherServiceImpl.LOGGER.info("[initOrder][Init Order Success][OrderId: {}]", newOrder.getId());
         } else {
             Order orderTemp = op.get();
@@ -114,6 +139,7 @@ public class OrderOtherServiceImpl implements OrderOtherService {
 
 
     @Override
+    @Transactional
     public Response alterOrder(OrderAlterInfo oai, HttpHeaders headers) {
 
         String oldOrderId = oai.getPreviousOrderId();
@@ -144,56 +170,12 @@ public class OrderOtherServiceImpl implements OrderOtherService {
         OrderOtherServiceImpl.LOGGER.info("[queryOrders][Step 1][Get Orders Number of Account][size: {}]", list.size());
         //2.Check is these orders fit the requirement/
         if (qi.isEnableStateQuery() || qi.isEnableBoughtDateQuery() || qi.isEnableTravelDateQuery()) {
+            Predicate<Order> requirement = queryRequirement(qi);
             ArrayList<Order> finalList = new ArrayList<>();
             for (Order tempOrder : list) {
-                boolean statePassFlag = false;
-                boolean boughtDatePassFlag = false;
-                boolean travelDatePassFlag = false;
-                //3.Check order state requirement.
-                if (qi.isEnableStateQuery()) {
-                    if (tempOrder.getStatus() != qi.getState()) {
-                        statePassFlag = false;
-                    } else {
-                        statePassFlag = true;
-                    }
-                } else {
-                    statePassFlag = true;
-                }
-                OrderOtherServiceImpl.LOGGER.info("[queryOrders][Step 2][Check Status Fits End]");
-                //4.Check order travel date requirement.
-                Date boughtDate = StringUtils.String2Date(tempOrder.getBoughtDate());
-                Date travelDate = StringUtils.String2Date(tempOrder.getTravelDate());
-                Date travelDateEnd = StringUtils.String2Date(qi.getTravelDateEnd());
-                Date boughtDateStart = StringUtils.String2Date(qi.getBoughtDateStart());
-                Date boughtDateEnd = StringUtils.String2Date(qi.getBoughtDateEnd());
-                if (qi.isEnableTravelDateQuery()) {
-                    if (travelDate.before(travelDateEnd) &&
-                            travelDate.after(boughtDateStart)) {
-                        travelDatePassFlag = true;
-                    } else {
-                        travelDatePassFlag = false;
-                    }
-                } else {
-                    travelDatePassFlag = true;
-                }
-                OrderOtherServiceImpl.LOGGER.info("[queryOrders][Step 2][Check Travel Date End]");
-                //5.Check order bought date requirement.
-                if (qi.isEnableBoughtDateQuery()) {
-                    if (boughtDate.before(boughtDateEnd) &&
-                            boughtDate.after(boughtDateStart)) {
-                        boughtDatePassFlag = true;
-                    } else {
-                        boughtDatePassFlag = false;
-                    }
-                } else {
-                    boughtDatePassFlag = true;
-                }
-                OrderOtherServiceImpl.LOGGER.info("[queryOrders][Step 2][Check Bought Date End]");
-                //6.check if all requirement fits.
-                if (statePassFlag && boughtDatePassFlag && travelDatePassFlag) {
+                if (requirement.test(tempOrder)) {
                     finalList.add(tempOrder);
                 }
-                OrderOtherServiceImpl.LOGGER.info("[queryOrders][Step 2][Check All Requirement End]");
             }
             OrderOtherServiceImpl.LOGGER.info("[queryOrders][Get order num][size:{}]", finalList.size());
             return new Response<>(1, "Get order num", finalList);
@@ -203,6 +185,32 @@ public class OrderOtherServiceImpl implements OrderOtherService {
         }
     }
 
+    /**
+     * The state, travel date and bought date requirements of a query. The travel date range
+     * starts at the bought date start, as it always has.
+     */
+    private Predicate<Order> queryRequirement(QueryInfo qi) {
+        long travelDateEnd = DateUtils.toEpochMilli(qi.getTravelDateEnd());
+        long boughtDateStart = DateUtils.toEpochMilli(qi.getBoughtDateStart());
+        long boughtDateEnd = DateUtils.toEpochMilli(qi.getBoughtDateEnd());
+        return order -> {
+            if (qi.isEnableStateQuery() && order.getStatus() != qi.getState()) {
+                return false;
+            }
+            if (qi.isEnableTravelDateQuery()) {
+                long travelDate = DateUtils.toEpochMilli(order.getTravelDate());
+                if (travelDate >= travelDateEnd || travelDate <= boughtDateStart) {
+                    return false;
+                }
+            }
+            if (qi.isEnableBoughtDateQuery()) {
+                long boughtDate = DateUtils.toEpochMilli(order.getBoughtDate());
+                return boughtDate < boughtDateEnd && boughtDate > boughtDateStart;
+            }
+            return true;
+        };
+    }
+
     @Override
     public Response queryOrdersForRefresh(QueryInfo qi, String accountId, HttpHeaders headers) {
         ArrayList<Order> orders = queryOrders(qi, accountId, headers).getData();
@@ -233,6 +241,7 @@ public class OrderOtherServiceImpl implements OrderOtherService {
     }
 
     @Override
+    @Transactional
     public Response saveChanges(Order order, HttpHeaders headers) {
         Optional<Order> op = orderOtherRepository.findById(order.getId());
         if (!op.isPresent() ) {
@@ -240,6 +249,7 @@ public class OrderOtherServiceImpl implements OrderOtherService {
             return new Response<>(0, orderNotFound, null);
         } else {
             Order oldOrder = op.get();
+            OrderEventType eventType = oldOrder.getStatus() == order.getStatus() ? OrderEventType.UPDATED : OrderEventType.STATUS_CHANGED;
             oldOrder.setAccountId(order.getAccountId());
             oldOrder.setBoughtDate(order.getBoughtDate());
             oldOrder.setTravelDate(order.getTravelDate());
@@ -258,12 +268,14 @@ public class OrderOtherServiceImpl implements OrderOtherService {
             oldOrder.setContactsDocumentNumber(order.getContactsDocumentNumber());
 
             orderOtherRepository.save(oldOrder);
+            orderOutbox.record(eventType, oldOrder.getId(), oldOrder);
             OrderOtherServiceImpl.LOGGER.info("[saveChanges][Modify Order Success][OrderId: {}]",order.getId());
             return new Response<>(1, success, oldOrder);
         }
     }
 
     @Override
+    @Transactional
     public Response cancelOrder(String accountId, String orderId, HttpHeaders headers) {
 
         Optional<Order> op = orderOtherRepository.findById(orderId);
@@ -274,6 +286,7 @@ public class OrderOtherServiceImpl implements OrderOtherService {
             Order oldOrder = op.get();
             oldOrder.setStatus(OrderStatus.CANCEL.getCode());
             orderOtherRepository.save(oldOrder);
+            orderOutbox.record(OrderEventType.STATUS_CHANGED, oldOrder.getId(), oldOrder);
             OrderOtherServiceImpl.LOGGER.info("[cancelOrder][Cancel Order Success][OrderId: {}]",oldOrder.getId());
             return new Response<>(1, success, oldOrder);
         }
@@ -328,6 +341,50 @@ public class OrderOtherServiceImpl implements OrderOtherService {
     }
 
     @Override
+    public Response getOrderPage(String cursor, int size, HttpHeaders headers) {
+        OrderPageRequest request;
+        try {
+            request = OrderPageRequest.of(cursor, size);
+        } catch (IllegalArgumentException e) {
+            OrderOtherServiceImpl.LOGGER.warn("[getOrderPage][Find order page Fail][Invalid cursor: {}]", cursor);
+            return new Response<>(0, "Invalid cursor.", null);
+        }
+        List<Order> rows = orderOtherRepository.findPageAfter(request.getAfterBoughtDate(),
+                request.getAfterId(), PageRequest.of(0, request.getSize() + 1));
+        KeysetPage<Order> page = KeysetPage.of(rows, request.getSize(), OrderOtherServiceImpl::cursorOf);
+        OrderOtherServiceImpl.LOGGER.info("[getOrderPage][Find order page][size: {}, last page: {}]",
+                page.getItems().size(), page.getNextCursor() == null);
+        return new Response<>(1, success, page);
+    }
+
+    @Override
+    public Response queryOrderPage(QueryInfo qi, String accountId, String cursor, int size, HttpHeaders headers) {
+        OrderPageRequest request;
+        try {
+            request = OrderPageRequest.of(cursor, size);
+        } catch (IllegalArgumentException e) {
+            OrderOtherServiceImpl.LOGGER.warn("[queryOrderPage][Query order page Fail][Invalid cursor: {}]", cursor);
+            return new Response<>(0, "Invalid cursor.", null);
+        }
+        List<Order> rows = orderOtherRepository.findByAccountIdAfter(accountId, request.getAfterBoughtDate(),
+                request.getAfterId(), PageRequest.of(0, request.getSize() + 1));
+        KeysetPage<Order> page = KeysetPage.of(rows, request.getSize(), OrderOtherServiceImpl::cursorOf);
+        //The dates are stored as strings here, so the requirements are checked on the page and
+        //a page may hold fewer orders than asked for; only a null next cursor ends the listing
+        if (qi.isEnableStateQuery() || qi.isEnableBoughtDateQuery() || qi.isEnableTravelDateQuery()) {
+            page.getItems().removeIf(queryRequirement(qi).negate());
+        }
+        OrderOtherServiceImpl.LOGGER.info("[queryOrderPage][Query order page][accountId: {}, size: {}, last page: {}]",
+                accountId, page.getItems().size(), page.getNextCursor() == null);
+        return new Response<>(1, "Get order num", page);
+    }
+
+    private static String cursorOf(Order order) {
+        return new OrderCursor(order.getBoughtDate(), order.getId()).encode();
+    }
+
+    @Override
+    @Transactional
     public Response modifyOrder(String orderId, int status, HttpHeaders headers) {
         Optional<Order> op = orderOtherRepository.findById(orderId);
         if (!op.isPresent()) {
@@ -337,6 +394,7 @@ public class OrderOtherServiceImpl implements OrderOtherService {
             Order order = op.get();
             order.setStatus(status);
             orderOtherRepository.save(order);
+            orderOutbox.record(OrderEventType.STATUS_CHANGED, order.getId(), order);
             OrderOtherServiceImpl.LOGGER.info("[modifyOrder][Modify order Success][OrderId: {}]",orderId);
             return new Response<>(1, success, order);
         }
@@ -356,6 +414,7 @@ public class OrderOtherServiceImpl implements OrderOtherService {
     }
 
     @Override
+    @Transactional
     public Response payOrder(String orderId, HttpHeaders headers) {
         Optional<Order> op = orderOtherRepository.findById(orderId);
         if (!op.isPresent()) {
@@ -365,6 +424,7 @@ public class OrderOtherServiceImpl implements OrderOtherService {
             Order order = op.get();
             order.setStatus(OrderStatus.PAID.getCode());
             orderOtherRepository.save(order);
+            orderOutbox.record(OrderEventType.STATUS_CHANGED, order.getId(), order);
             OrderOtherServiceImpl.LOGGER.info("[payOrder][Pay order Success][OrderId: {}]",orderId);
             return new Response<>(1, success, order);
         }
@@ -393,15 +453,14 @@ public class OrderOtherServiceImpl implements OrderOtherService {
         Calendar ca = Calendar.getInstance();
         ca.setTime(dateFrom);
         ca.add(Calendar.HOUR_OF_DAY, -1);
-        dateFrom = ca.getTime();
+        long from = ca.getTimeInMillis();
         for (Order order : orders) {
             if (order.getStatus() == OrderStatus.NOTPAID.getCode() ||
                     order.getStatus() == OrderStatus.PAID.getCode() ||
                     order.getStatus() == OrderStatus.COLLECTED.getCode()) {
                 countTotalValidOrder += 1;
             }
-            Date boughtDate = StringUtils.String2Date(order.getBoughtDate());
-            if (boughtDate.after(dateFrom)) {
+            if (DateUtils.toEpochMilli(order.getBoughtDate()) > from) {
                 countOrderInOneHour += 1;
             }
         }
@@ -411,6 +470,7 @@ public class OrderOtherServiceImpl implements OrderOtherService {
     }
 
     @Override
+    @Transactional
     public Response deleteOrder(String orderId, HttpHeaders headers) {
         String orderUuid = UUID.fromString(orderId).toString();
         Optional<Order> op = orderOtherRepository.findById(orderUuid);
@@ -420,12 +480,14 @@ public class OrderOtherServiceImpl implements OrderOtherService {
         } else {
             Order order = op.get();
             orderOtherRepository.deleteById(orderUuid);
+            orderOutbox.record(OrderEventType.DELETED, order.getId(), order);
             OrderOtherServiceImpl.LOGGER.info("[deleteOrder][Delete order Success][OrderId: {}]",orderId);
             return new Response<>(1, success, order);
         }
     }
 
     @Override
+    @Transactional
     public Response addNewOrder(Order order, HttpHeaders headers) {
         OrderOtherServiceImpl.LOGGER.info("[addNewOrder][Admin Add Order][Ready to Add Order]");
         ArrayList<Order> accountOrders = orderOtherRepository.findByAccountId(order.getAccountId());
@@ -434,12 +496,14 @@ public class OrderOtherServiceImpl implements OrderOtherService {
             return new Response<>(0, "Order already exist", null);
         } else {
             Order newOrder = orderOtherRepository.save(order);
+            orderOutbox.record(OrderEventType.CREATED, newOrder.getId(), newOrder);
             OrderOtherServiceImpl.LOGGER.info("[addNewOrder][Admin Add Order Success][OrderId:{} , Price:{}]",newOrder.getId(),newOrder.getPrice());
             return new Response<>(1, success, newOrder);
         }
     }
 
     @Override
+    @Transactional
     public Response updateOrder(Order order, HttpHeaders headers) {
         LOGGER.info("[updateOrder][Admin Update Order][Order Info:{}]",order.toString());
 
@@ -449,6 +513,7 @@ public class OrderOtherServiceImpl implements OrderOtherService {
             return new Response<>(0, orderNotFound, null);
         } else {
             Order oldOrder = op.get();
+            OrderEventType eventType = oldOrder.getStatus() == order.getStatus() ? OrderEventType.UPDATED : OrderEventType.STATUS_CHANGED;
             //OrderOtherServiceImpl.LOGGER.info("{}", oldOrder.toString());
             oldOrder.setAccountId(order.getAccountId());
             oldOrder.setBoughtDate(order.getBoughtDate());
@@ -466,6 +531,7 @@ public class OrderOtherServiceImpl implements OrderOtherService {
             oldOrder.setContactsDocumentNumber(order.getContactsDocumentNumber());
             oldOrder.setDocumentType(order.getDocumentType());
             orderOtherRepository.save(oldOrder);
+            orderOutbox.record(eventType, oldOrder.getId(), oldOrder);
             OrderOtherServiceImpl.LOGGER.info("[updateOrder][Admin Update Order Success][OrderId:{}]",oldOrder.getId());
             return new Response<>(1, success, oldOrder);
         }
@@ -0,0 +1,6 @@
+-- Sold tickets of a train on a day: findByTravelDateAndTrainNumber, called for every seat
+-- query of the non high speed trains.
+CREATE INDEX idx_orders_other_travel_date_train_number ON orders_other (travel_date, train_number);
+
+-- Orders of an account: findByAccountId for queryOrders and the security checks.
+CREATE INDEX idx_orders_other_account_id_bought_date ON orders_other (account_id, bought_date);
@@ -0,0 +1,3 @@
+-- Keyset pages of the admin order listing: ORDER BY bought_date, id from the cursor on.
+-- InnoDB secondary indexes end with the primary key, so this also orders by id.
+CREATE INDEX idx_orders_other_bought_date ON orders_other (bought_date);
@@ -2,6 +2,9 @@ package other.service;
 
 import edu.fudan.common.entity.OrderSecurity;;
 import edu.fudan.common.entity.Seat;
+import edu.fudan.common.outbox.OrderOutbox;
+import edu.fudan.common.util.KeysetPage;
+import edu.fudan.common.util.OrderCursor;
 import edu.fudan.common.util.Response;
 import other.entity.Order;
 import other.entity.OrderAlterInfo;
@@ -15,12 +18,14 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.*;
 import org.springframework.web.client.RestTemplate;
 import other.entity.*;
 import other.repository.OrderOtherRepository;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -36,6 +41,9 @@ public class OrderOtherServiceImplTest {
     @Mock
     private OrderOtherRepository orderOtherRepository;
 
+    @Mock
+    private OrderOutbox<OutboxEvent> orderOutbox;
+
     @Mock
     private RestTemplate restTemplate;
 
@@ -373,4 +381,47 @@ public class OrderOtherServiceImplTest {
         Assert.assertEquals("Success", result.getMsg());
     }
 
+    @Test
+    public void testGetOrderPage() {
+        Order first = pageOrder("2024-01-01 10:00:00", 1);
+        Order second = pageOrder("2024-01-02 10:00:00", 1);
+        Order third = pageOrder("2024-01-03 10:00:00", 1);
+        OrderCursor after = new OrderCursor("2023-12-31 10:00:00", UUID.randomUUID().toString());
+        Mockito.when(orderOtherRepository.findPageAfter(after.getBoughtDate(), after.getId(), PageRequest.of(0, 3)))
+                .thenReturn(Arrays.asList(first, second, third));
+        Response<KeysetPage<Order>> result = orderOtherServiceImpl.getOrderPage(after.encode(), 2, headers);
+        Assert.assertEquals(Arrays.asList(first, second), result.getData().getItems());
+        Assert.assertEquals(new OrderCursor(second.getBoughtDate(), second.getId()),
+                OrderCursor.decode(result.getData().getNextCursor()));
+    }
+
+    @Test
+    public void testGetOrderPageInvalidCursor() {
+        Response result = orderOtherServiceImpl.getOrderPage("not a cursor", 2, headers);
+        Assert.assertEquals(new Response<>(0, "Invalid cursor.", null), result);
+    }
+
+    @Test
+    public void testQueryOrderPage() {
+        Order paid = pageOrder("2024-01-01 10:00:00", 1);
+        Order cancelled = pageOrder("2024-01-02 10:00:00", 4);
+        String accountId = UUID.randomUUID().toString();
+        Mockito.when(orderOtherRepository.findByAccountIdAfter(accountId, null, null, PageRequest.of(0, 3)))
+                .thenReturn(Arrays.asList(paid, cancelled));
+        QueryInfo qi = new QueryInfo();
+        qi.setEnableStateQuery(true);
+        qi.setState(1);
+        Response<KeysetPage<Order>> result = orderOtherServiceImpl.queryOrderPage(qi, accountId, null, 2, headers);
+        Assert.assertEquals(Arrays.asList(paid), result.getData().getItems());
+        Assert.assertNull(result.getData().getNextCursor());
+    }
+
+    private Order pageOrder(String boughtDate, int status) {
+        Order order = new Order();
+        order.setId(UUID.randomUUID().toString());
+        order.setBoughtDate(boughtDate);
+        order.setStatus(status);
+        return order;
+    }
+
 }
@@ -13,6 +13,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 import static org.springframework.http.ResponseEntity.ok;
 
 /**
@@ -61,6 +63,20 @@ public class OrderController {
         return ok(orderService.getSoldTickets(seatRequest, headers));
     }
 
+    @PostMapping(value = "/order/tickets/compact")
+    public HttpEntity getCompactTicketListByDateAndTripId(@RequestBody Seat seatRequest,
+                                                          @RequestParam(value = "seatClass", required = false) Integer seatClass,
+                                                          @RequestHeader HttpHeaders headers) {
+        if (aiopsFaultEnabled) {
+            LOGGER.error("[AIOPS Fault Injection][getCompactTicketListByDateAndTripId] Returning 500 error for AIOPS testing");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("AIOOPS故障注入：服务暂时不可用");
+        }
+
+        OrderController.LOGGER.info("[getSoldTicketsCompact][Get Sold Ticket][Travel Date: {}, seatClass: {}]", seatRequest.getTravelDate(), seatClass);
+        return ok(orderService.getSoldTicketsCompact(seatRequest, seatClass, headers));
+    }
+
     @CrossOrigin(origins = "*")
     @PostMapping(path = "/order")
     public HttpEntity createNewOrder(@RequestBody Order createOrder, @RequestHeader HttpHeaders headers) {
@@ -75,6 +91,19 @@ public class OrderController {
         return ok(orderService.create(createOrder, headers));
     }
 
+    @CrossOrigin(origins = "*")
+    @PostMapping(path = "/order/batch")
+    public HttpEntity createNewOrders(@RequestBody List<Order> createOrders, @RequestHeader HttpHeaders headers) {
+        if (aiopsFaultEnabled) {
+            LOGGER.error("[AIOPS Fault Injection][createNewOrders] Returning 500 error for AIOPS testing");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("AIOOPS故障注入：服务暂时不可用");
+        }
+
+        OrderController.LOGGER.info("[createNewOrders][Create Orders][size: {}]", createOrders.size());
+        return ok(orderService.createBatch(createOrders, headers));
+    }
+
     @CrossOrigin(origins = "*")
     @PostMapping(path = "/order/admin")
     public HttpEntity addcreateNewOrder(@RequestBody Order order, @RequestHeader HttpHeaders headers) {
@@ -96,6 +125,16 @@ public class OrderController {
         return ok(orderService.queryOrders(qi, qi.getLoginId(), headers));
     }
 
+    @CrossOrigin(origins = "*")
+    @PostMapping(path = "/order/query/page")
+    public HttpEntity queryOrderPage(@RequestBody OrderInfo qi,
+                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                     @RequestParam(value = "size", defaultValue = "20") int size,
+                                     @RequestHeader HttpHeaders headers) {
+        OrderController.LOGGER.info("[queryOrderPage][Query Order Page][for LoginId :{}, size: {}]", qi.getLoginId(), size);
+        return ok(orderService.queryOrderPage(qi, qi.getLoginId(), cursor, size, headers));
+    }
+
     @CrossOrigin(origins = "*")
     @PostMapping(path = "/order/refresh")
     public HttpEntity queryOrdersForRefresh(@RequestBody OrderInfo qi,
@@ -191,4 +230,13 @@ public class OrderController {
         return ok(orderService.getAllOrders(headers));
     }
 
+    @CrossOrigin(origins = "*")
+    @GetMapping(path = "/order/page")
+    public HttpEntity findOrderPage(@RequestParam(value = "cursor", required = false) String cursor,
+                                    @RequestParam(value = "size", defaultValue = "20") int size,
+                                    @RequestHeader HttpHeaders headers) {
+        OrderController.LOGGER.info("[getOrderPage][Find Order Page][size: {}]", size);
+        return ok(orderService.getOrderPage(cursor, size, headers));
+    }
+
 }
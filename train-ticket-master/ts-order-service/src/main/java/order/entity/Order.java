@@ -3,6 +3,8 @@ package order.entity;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import edu.fudan.common.entity.OrderStatus;
 import edu.fudan.common.entity.SeatClass;
+import edu.fudan.common.util.DateStringConverter;
+import edu.fudan.common.util.DateTimeStringConverter;
 import edu.fudan.common.util.StringUtils;
 import lombok.Data;
 import lombok.ToString;
@@ -29,12 +31,13 @@ public class Order {
     @GeneratedValue(generator = "jpa-uuid")
     private String id;
 
+    @Convert(converter = DateTimeStringConverter.class)
     private String boughtDate;
 
-
+    @Convert(converter = DateStringConverter.class)
     private String travelDate;
 
-
+    @Convert(converter = DateTimeStringConverter.class)
     private String travelTime;
 
     /**
@@ -70,6 +73,12 @@ public class Order {
 
     private String price;
 
+    /**
+     * bumped by every update, so cached copies and concurrent writers can tell a changed order
+     */
+    @Version
+    private long version;
+
 
 
     public Order(){
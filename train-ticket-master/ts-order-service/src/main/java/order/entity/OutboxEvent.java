@@ -0,0 +1,16 @@
+package order.entity;
+
+import edu.fudan.common.outbox.BaseOutboxEvent;
+
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * An order event waiting in the outbox to be published
+ *
+ * @author fdse
+ */
+@Table(name = "order_outbox")
+@Entity
+public class OutboxEvent extends BaseOutboxEvent {
+}
@@ -1,10 +1,14 @@
 package order.repository;
 
+import edu.fudan.common.entity.Ticket;
 import order.entity.Order;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Optional;
@@ -17,6 +21,12 @@ import java.util.List;
 @Repository
 public interface OrderRepository extends JpaRepository<Order, String> {
 
+    // Keyset condition of the paged listings: orders after (:afterDate, :afterId) in
+    // (boughtDate, id) order, orders without a bought date first; a null :afterId is the first page
+    String AFTER_KEY = "(:afterId IS NULL " +
+            "OR (:afterDate IS NULL AND (o.boughtDate IS NOT NULL OR o.id > :afterId)) " +
+            "OR o.boughtDate > :afterDate OR (o.boughtDate = :afterDate AND o.id > :afterId))";
+
     @Override
     Optional<Order> findById(String id);
 
@@ -25,18 +35,39 @@ public interface OrderRepository extends JpaRepository<Order, String> {
 
     ArrayList<Order> findByAccountId(String accountId);
 
+    // Version of an order without loading the row, to check a cached copy; null if deleted
+    @Query("SELECT o.version FROM Order o WHERE o.id = :id")
+    Long findVersionById(@Param("id") String id);
+
+    // Status transition that only applies while the order is still at the version it was read at;
+    // returns 0 if another writer changed the order first
+    @Transactional
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :status, o.version = o.version + 1 WHERE o.id = :id AND o.version = :version")
+    int updateStatus(@Param("id") String id, @Param("status") int status, @Param("version") long version);
+
     ArrayList<Order> findByTravelDateAndTrainNumber(String travelDate, String trainNumber);
     
+    // Seat, stations and class of the sold tickets only, for the seat queries;
+    // a null seat class returns every class, tickets without a seat class match any class
+    @Query("SELECT new edu.fudan.common.entity.Ticket(o.seatNumber, o.from, o.to, o.seatClass) FROM Order o " +
+           "WHERE o.travelDate = :travelDate AND o.trainNumber = :trainNumber " +
+           "AND (:seatClass IS NULL OR o.seatClass = :seatClass OR o.seatClass = 0)")
+    List<Ticket> findSoldTickets(@Param("travelDate") String travelDate,
+                                 @Param("trainNumber") String trainNumber,
+                                 @Param("seatClass") Integer seatClass);
+
     // New method for checking duplicate orders
     ArrayList<Order> findByAccountIdAndTrainNumberAndTravelDate(String accountId, String trainNumber, String travelDate);
     
-    // Method for filtered queries
+    // Method for filtered queries, bounds are exclusive and a null bound is not checked;
+    // the dates are DATETIME columns so the comparisons are range scans
     @Query("SELECT o FROM Order o WHERE o.accountId = :accountId " +
            "AND (:status IS NULL OR o.status = :status) " +
-           "AND (:boughtDateStart IS NULL OR o.boughtDate >= :boughtDateStart) " +
-           "AND (:boughtDateEnd IS NULL OR o.boughtDate <= :boughtDateEnd) " +
-           "AND (:travelDateStart IS NULL OR o.travelDate >= :travelDateStart) " +
-           "AND (:travelDateEnd IS NULL OR o.travelDate <= :travelDateEnd)")
+           "AND (:boughtDateStart IS NULL OR o.boughtDate > :boughtDateStart) " +
+           "AND (:boughtDateEnd IS NULL OR o.boughtDate < :boughtDateEnd) " +
+           "AND (:travelDateStart IS NULL OR o.travelDate > :travelDateStart) " +
+           "AND (:travelDateEnd IS NULL OR o.travelDate < :travelDateEnd)")
     ArrayList<Order> findOrdersWithFilters(
             @Param("accountId") String accountId,
             @Param("status") Integer status,
@@ -45,6 +76,30 @@ public interface OrderRepository extends JpaRepository<Order, String> {
             @Param("travelDateStart") String travelDateStart,
             @Param("travelDateEnd") String travelDateEnd);
     
+    @Query("SELECT o FROM Order o WHERE " + AFTER_KEY + " ORDER BY o.boughtDate, o.id")
+    List<Order> findPageAfter(@Param("afterDate") String afterDate,
+                              @Param("afterId") String afterId,
+                              Pageable pageable);
+
+    // findOrdersWithFilters one keyset page at a time
+    @Query("SELECT o FROM Order o WHERE o.accountId = :accountId " +
+           "AND (:status IS NULL OR o.status = :status) " +
+           "AND (:boughtDateStart IS NULL OR o.boughtDate > :boughtDateStart) " +
+           "AND (:boughtDateEnd IS NULL OR o.boughtDate < :boughtDateEnd) " +
+           "AND (:travelDateStart IS NULL OR o.travelDate > :travelDateStart) " +
+           "AND (:travelDateEnd IS NULL OR o.travelDate < :travelDateEnd) " +
+           "AND " + AFTER_KEY + " ORDER BY o.boughtDate, o.id")
+    List<Order> findOrdersWithFiltersAfter(
+            @Param("accountId") String accountId,
+            @Param("status") Integer status,
+            @Param("boughtDateStart") String boughtDateStart,
+            @Param("boughtDateEnd") String boughtDateEnd,
+            @Param("travelDateStart") String travelDateStart,
+            @Param("travelDateEnd") String travelDateEnd,
+            @Param("afterDate") String afterDate,
+            @Param("afterId") String afterId,
+            Pageable pageable);
+
     // Methods for counting
     @Query("SELECT COUNT(o) FROM Order o WHERE o.accountId = :accountId AND o.boughtDate > :boughtDate")
     int countOrdersAfterTime(@Param("accountId") String accountId, @Param("boughtDate") String boughtDate);
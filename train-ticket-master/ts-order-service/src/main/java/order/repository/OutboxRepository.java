@@ -0,0 +1,12 @@
+package order.repository;
+
+import edu.fudan.common.outbox.BaseOutboxRepository;
+import order.entity.OutboxEvent;
+import org.springframework.stereotype.Repository;
+
+/**
+ * @author fdse
+ */
+@Repository
+public interface OutboxRepository extends BaseOutboxRepository<OutboxEvent> {
+}
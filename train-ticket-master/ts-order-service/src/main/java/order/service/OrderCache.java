@@ -0,0 +1,236 @@
+package order.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import order.entity.Order;
+import order.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Bounded in-process cache of hot orders, read through from the order repository and written
+ * through on creation and status changes.
+ *
+ * Every cached copy carries the version of its row. A copy is checked against the version in
+ * the database before it is served, and status transitions only apply to the version they were
+ * read at, so an order changed by another replica is reloaded instead of being served or
+ * overwritten. A cache hit saves reading the whole row, not the version check. Setting
+ * verify-after-millis opts into serving copies checked less than that long ago unchecked, at
+ * the price of reads missing changes of other replicas for that long. Callers always get their
+ * own copy of an order. Orders put within a transaction are only cached once it committed.
+ *
+ * @author fdse
+ */
+@Component
+public class OrderCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderCache.class);
+
+    private static final int MAX_STATUS_ATTEMPTS = 3;
+
+    private static final Counter HITS = Metrics.counter("order.cache", "result", "hit");
+    private static final Counter MISSES = Metrics.counter("order.cache", "result", "miss");
+    private static final Counter STALE = Metrics.counter("order.cache", "result", "stale");
+    private static final Counter EVICTIONS = Metrics.counter("order.cache.evictions");
+
+    private final OrderRepository orderRepository;
+
+    private final long verifyAfterMillis;
+
+    /**
+     * runs each status update attempt, null to run it in the callers transaction
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * least recently used first; guarded by itself
+     */
+    private final Map<String, Entry> entries;
+
+    private static final class Entry {
+        final Order order;
+        volatile long verifiedAt;
+
+        Entry(Order order, long verifiedAt) {
+            this.order = order;
+            this.verifiedAt = verifiedAt;
+        }
+    }
+
+    public OrderCache(OrderRepository orderRepository, int maximumSize, long verifyAfterMillis) {
+        this(orderRepository, maximumSize, verifyAfterMillis, null);
+    }
+
+    @Autowired
+    public OrderCache(OrderRepository orderRepository,
+                      @Value("${order.cache.maximum-size:10000}") int maximumSize,
+                      @Value("${order.cache.verify-after-millis:0}") long verifyAfterMillis,
+                      PlatformTransactionManager transactionManager) {
+        this.orderRepository = orderRepository;
+        this.verifyAfterMillis = verifyAfterMillis;
+        this.transactionTemplate = transactionManager == null ? null : new TransactionTemplate(transactionManager);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maximumSize) {
+                    EVICTIONS.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        Metrics.gauge("order.cache.size", this, OrderCache::size);
+    }
+
+    /**
+     * The order, from the cache when the cached copy is still current, else from the repository.
+     */
+    public Optional<Order> find(String id) {
+        return find(id, true);
+    }
+
+    private Optional<Order> find(String id, boolean verify) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(id);
+        }
+        if (entry == null) {
+            MISSES.increment();
+        } else {
+            long now = System.currentTimeMillis();
+            if (!verify || verifyAfterMillis > 0 && now - entry.verifiedAt < verifyAfterMillis) {
+                HITS.increment();
+                return Optional.of(copy(entry.order));
+            }
+            Long version = orderRepository.findVersionById(id);
+            if (version != null && version == entry.order.getVersion()) {
+                entry.verifiedAt = now;
+                HITS.increment();
+                return Optional.of(copy(entry.order));
+            }
+            STALE.increment();
+            OrderCache.LOGGER.info("[find][Cached order is stale][OrderId: {}, cached version: {}, version: {}]",
+                    id, entry.order.getVersion(), version);
+            synchronized (entries) {
+                entries.remove(id, entry);
+            }
+            if (version == null) {
+                return Optional.empty();
+            }
+        }
+        Optional<Order> op = orderRepository.findById(id);
+        op.ifPresent(this::put);
+        return op;
+    }
+
+    /**
+     * Caches a copy of an order as just read from or written to the repository. A copy older
+     * than the cached one is ignored. Within a transaction the cached copy is evicted at once and
+     * the new one only cached after the commit, so a rolled back write is never served.
+     */
+    public void put(Order order) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Order committed = copy(order);
+            evict(order.getId());
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    store(committed);
+                }
+            });
+        } else {
+            store(order);
+        }
+    }
+
+    private void store(Order order) {
+        Entry entry = new Entry(copy(order), System.currentTimeMillis());
+        synchronized (entries) {
+            Entry cached = entries.get(order.getId());
+            if (cached == null || cached.order.getVersion() <= order.getVersion()) {
+                entries.put(order.getId(), entry);
+            }
+        }
+    }
+
+    public void evict(String id) {
+        synchronized (entries) {
+            entries.remove(id);
+        }
+    }
+
+    /**
+     * Sets the status of an order with a single conditional update of the version it was cached
+     * at; when another writer got there first the order is reloaded and the update retried.
+     *
+     * @return the updated order, empty if there is no such order
+     * @throws ObjectOptimisticLockingFailureException if the order kept changing under the update
+     */
+    public Optional<Order> updateStatus(String id, int status) {
+        return updateStatus(id, status, order -> { });
+    }
+
+    /**
+     * As {@link #updateStatus(String, int)}, calling onUpdated with the updated order in the
+     * transaction of the update; each attempt runs in a transaction of its own so a retry reads
+     * the order as last committed.
+     */
+    public Optional<Order> updateStatus(String id, int status, Consumer<Order> onUpdated) {
+        for (int attempt = 1; attempt <= MAX_STATUS_ATTEMPTS; attempt++) {
+            // the conditional update itself checks the version of the cached copy
+            Optional<Order> op = find(id, attempt > 1);
+            if (!op.isPresent()) {
+                return op;
+            }
+            Order order = op.get();
+            boolean updated = transactionTemplate == null
+                    ? applyStatus(order, status, onUpdated)
+                    : Boolean.TRUE.equals(transactionTemplate.execute(tx -> applyStatus(order, status, onUpdated)));
+            if (updated) {
+                return Optional.of(order);
+            }
+            STALE.increment();
+            OrderCache.LOGGER.info("[updateStatus][Order changed concurrently][OrderId: {}, version: {}, attempt: {}]",
+                    id, order.getVersion(), attempt);
+            evict(id);
+        }
+        throw new ObjectOptimisticLockingFailureException(Order.class, id);
+    }
+
+    private boolean applyStatus(Order order, int status, Consumer<Order> onUpdated) {
+        if (orderRepository.updateStatus(order.getId(), status, order.getVersion()) != 1) {
+            return false;
+        }
+        order.setStatus(status);
+        order.setVersion(order.getVersion() + 1);
+        onUpdated.accept(order);
+        put(order);
+        return true;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static Order copy(Order order) {
+        Order copy = new Order();
+        BeanUtils.copyProperties(order, copy);
+        return copy;
+    }
+}
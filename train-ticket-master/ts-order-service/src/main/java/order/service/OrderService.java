@@ -6,6 +6,7 @@ import order.entity.*;
 import org.springframework.http.HttpHeaders;
 
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -17,6 +18,8 @@ public interface OrderService {
 
     Response create(Order newOrder, HttpHeaders headers);
 
+    Response createBatch(List<Order> newOrders, HttpHeaders headers);
+
     Response saveChanges(Order order, HttpHeaders headers);
 
     Response cancelOrder(String accountId, String orderId, HttpHeaders headers);
@@ -31,6 +34,10 @@ public interface OrderService {
 
     Response getAllOrders(HttpHeaders headers);
 
+    Response getOrderPage(String cursor, int size, HttpHeaders headers);
+
+    Response queryOrderPage(OrderInfo qi, String accountId, String cursor, int size, HttpHeaders headers);
+
     Response modifyOrder(String orderId, int status, HttpHeaders headers);
 
     Response getOrderPrice(String orderId, HttpHeaders headers);
@@ -47,6 +54,8 @@ public interface OrderService {
 
     Response getSoldTickets(Seat seatRequest, HttpHeaders headers);
 
+    Response getSoldTicketsCompact(Seat seatRequest, Integer seatClass, HttpHeaders headers);
+
     Response addNewOrder(Order order, HttpHeaders headers);
 
     Response updateOrder(Order order, HttpHeaders headers);
@@ -1,6 +1,11 @@
 package order.service;
 
 import edu.fudan.common.entity.*;
+import edu.fudan.common.outbox.OrderOutbox;
+import edu.fudan.common.util.DateUtils;
+import edu.fudan.common.util.KeysetPage;
+import edu.fudan.common.util.OrderCursor;
+import edu.fudan.common.util.OrderPageRequest;
 import edu.fudan.common.util.Response;
 import edu.fudan.common.util.StringUtils;
 import order.controller.FaultController;
@@ -8,6 +13,7 @@ import order.entity.DemoUser;
 import order.entity.OrderAlterInfo;
 import order.entity.Order;
 import order.entity.OrderInfo;
+import order.entity.OutboxEvent;
 import order.repository.DemoUserRepository;
 import order.repository.OrderRepository;
 import org.slf4j.Logger;
@@ -23,6 +29,7 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
@@ -40,6 +47,12 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private DemoUserRepository demoUserRepository;
 
+    @Autowired
+    private OrderCache orderCache;
+
+    @Autowired
+    private OrderOutbox<OutboxEvent> orderOutbox;
+
     @Autowired
     private RestTemplate restTemplate;
 
@@ -59,6 +72,41 @@ public class OrderServiceImpl implements OrderService {
 
     @Override
     public Response getSoldTickets(Seat seatRequest, HttpHeaders headers) {
+        injectSoldTicketFaults(seatRequest);
+
+        ArrayList<Order> list = orderRepository.findByTravelDateAndTrainNumber(seatRequest.getTravelDate(),
+                seatRequest.getTrainNumber());
+        if (list != null && !list.isEmpty()) {
+            Set ticketSet = new HashSet();
+            for (Order tempOrder : list) {
+                ticketSet.add(new Ticket(tempOrder.getSeatNumber(),
+                        tempOrder.getFrom(), tempOrder.getTo(), tempOrder.getSeatClass()));
+            }
+            LeftTicketInfo leftTicketInfo = new LeftTicketInfo();
+            leftTicketInfo.setSoldTickets(ticketSet);
+            OrderServiceImpl.LOGGER.info("[getSoldTickets][Left ticket info][size: {}]", ticketSet.size());
+            return new Response<>(1, success, leftTicketInfo);
+        } else {
+            OrderServiceImpl.LOGGER.warn("[getSoldTickets][Seat][Left ticket info is empty][seat from date: {}, train number: {}]",seatRequest.getTravelDate(),seatRequest.getTrainNumber()); //warn级别，获取资源但资源为空
+            return new Response<>(0, "Order is Null.", null);
+        }
+    }
+
+    @Override
+    public Response getSoldTicketsCompact(Seat seatRequest, Integer seatClass, HttpHeaders headers) {
+        injectSoldTicketFaults(seatRequest);
+
+        List<Ticket> tickets = orderRepository.findSoldTickets(seatRequest.getTravelDate(),
+                seatRequest.getTrainNumber(), seatClass);
+        OrderServiceImpl.LOGGER.info("[getSoldTicketsCompact][Sold tickets][travelDate: {}, trainNumber: {}, seatClass: {}, size: {}]",
+                seatRequest.getTravelDate(), seatRequest.getTrainNumber(), seatClass, tickets.size());
+        return new Response<>(1, success, SoldTickets.of(tickets));
+    }
+
+    /**
+     * Fault injection of the sold ticket queries: slow demo_users reads and a third party call.
+     */
+    private void injectSoldTicketFaults(Seat seatRequest) {
         if (FaultController.isSlowSQLEnabled()){
             // 通过API调用获取demo_users表数据
             for (int i = 0; i < 3; i++) {
@@ -91,28 +139,11 @@ public class OrderServiceImpl implements OrderService {
                     });
             OrderServiceImpl.LOGGER.info("[aaa][Left ticket info][info is : {}]",  re3.getBody().getData().toString());
         }
-
-        ArrayList<Order> list = orderRepository.findByTravelDateAndTrainNumber(seatRequest.getTravelDate(),
-                seatRequest.getTrainNumber());
-        if (list != null && !list.isEmpty()) {
-            Set ticketSet = new HashSet();
-            for (Order tempOrder : list) {
-                ticketSet.add(new Ticket(tempOrder.getSeatNumber(),
-                        tempOrder.getFrom(), tempOrder.getTo()));
-            }
-            LeftTicketInfo leftTicketInfo = new LeftTicketInfo();
-            leftTicketInfo.setSoldTickets(ticketSet);
-            OrderServiceImpl.LOGGER.info("[getSoldTickets][Left ticket info][info is: {}]", leftTicketInfo.toString());
-            return new Response<>(1, success, leftTicketInfo);
-        } else {
-            OrderServiceImpl.LOGGER.warn("[getSoldTickets][Seat][Left ticket info is empty][seat from date: {}, train number: {}]",seatRequest.getTravelDate(),seatRequest.getTrainNumber()); //warn级别，获取资源但资源为空
-            return new Response<>(0, "Order is Null.", null);
-        }
     }
 
     @Override
     public Response findOrderById(String id, HttpHeaders headers) {
-        Optional<Order> op = orderRepository.findById(id);
+        Optional<Order> op = orderCache.find(id);
         if (!op.isPresent()) {
             OrderServiceImpl.LOGGER.warn("[findOrderById][Find Order By Id Fail][No content][id: {}] ",id);  //获取资源但资源为空
             return new Response<>(0, "No Content by this id", null);
@@ -124,6 +155,7 @@ public class OrderServiceImpl implements OrderService {
     }
 
     @Override
+    @Transactional
     public Response create(Order order, HttpHeaders headers) {
         OrderServiceImpl.LOGGER.info("[create][Create Order][Ready to Create Order]");
         
@@ -136,11 +168,47 @@ public class OrderServiceImpl implements OrderService {
         } else {
             order.setId(UUID.randomUUID().toString());
             order = orderRepository.save(order);
+            orderCache.put(order);
+            orderOutbox.record(OrderEventType.CREATED, order.getId(), order);
             OrderServiceImpl.LOGGER.info("[create][Order Create Success][Order Price][OrderId:{} , Price: {}]",order.getId(),order.getPrice());
             return new Response<>(1, success, order);
         }
     }
     
+    @Override
+    @Transactional
+    public Response createBatch(List<Order> orders, HttpHeaders headers) {
+        OrderServiceImpl.LOGGER.info("[createBatch][Create Orders][Ready to Create Orders][size: {}]", orders.size());
+
+        //the orders of a group share the account and trip, so a duplicate is a passenger booked twice
+        for (Order order : orders) {
+            if (checkDuplicateOrderOfContacts(order)) {
+                OrderServiceImpl.LOGGER.error("[createBatch][Orders Create Fail][Order already exists][ContactsDocumentNumber: {}]", order.getContactsDocumentNumber());
+                return new Response<>(0, "Order already exist", null);
+            }
+            order.setId(UUID.randomUUID().toString());
+        }
+        List<Order> saved = orderRepository.saveAll(orders);
+        for (Order order : saved) {
+            orderCache.put(order);
+            orderOutbox.record(OrderEventType.CREATED, order.getId(), order);
+        }
+        OrderServiceImpl.LOGGER.info("[createBatch][Orders Create Success][OrderIds: {}]",
+                saved.stream().map(Order::getId).collect(Collectors.toList()));
+        return new Response<>(1, success, saved);
+    }
+
+    private boolean checkDuplicateOrderOfContacts(Order order) {
+        return orderRepository.findByAccountIdAndTrainNumberAndTravelDate(
+            order.getAccountId(), order.getTrainNumber(), order.getTravelDate())
+            .stream()
+            .anyMatch(existingOrder ->
+                existingOrder.getFrom().equals(order.getFrom()) &&
+                existingOrder.getTo().equals(order.getTo()) &&
+                existingOrder.getSeatClass() == order.getSeatClass() &&
+                Objects.equals(existingOrder.getContactsDocumentNumber(), order.getContactsDocumentNumber()));
+    }
+
     // Helper method to check for duplicate orders
     private boolean checkDuplicateOrder(Order order) {
         // In a real implementation, you'd create a specific query in the repository
@@ -155,6 +223,7 @@ public class OrderServiceImpl implements OrderService {
     }
 
     @Override
+    @Transactional
     public Response alterOrder(OrderAlterInfo oai, HttpHeaders headers) {
 
         String oldOrderId = oai.getPreviousOrderId();
@@ -184,17 +253,13 @@ public class OrderServiceImpl implements OrderService {
         ArrayList<Order> result;
         
         if (qi.isEnableStateQuery() || qi.isEnableBoughtDateQuery() || qi.isEnableTravelDateQuery()) {
-            // Create targeted query based on filters
-            Date boughtDateStart = qi.isEnableBoughtDateQuery() ? StringUtils.String2Date(qi.getBoughtDateStart()) : null;
-            Date boughtDateEnd = qi.isEnableBoughtDateQuery() ? StringUtils.String2Date(qi.getBoughtDateEnd()) : null;
-            Date travelDateStart = qi.isEnableTravelDateQuery() ? StringUtils.String2Date(qi.getBoughtDateStart()) : null;
-            Date travelDateEnd = qi.isEnableTravelDateQuery() ? StringUtils.String2Date(qi.getTravelDateEnd()) : null;
-            
-            // This would need corresponding methods in the repository
-            result = findOrdersWithFilters(accountId, 
+            // the travel date range starts at the bought date start, as it always has
+            result = orderRepository.findOrdersWithFilters(accountId,
                 qi.isEnableStateQuery() ? qi.getState() : null,
-                boughtDateStart, boughtDateEnd,
-                travelDateStart, travelDateEnd);
+                qi.isEnableBoughtDateQuery() ? qi.getBoughtDateStart() : null,
+                qi.isEnableBoughtDateQuery() ? qi.getBoughtDateEnd() : null,
+                qi.isEnableTravelDateQuery() ? qi.getBoughtDateStart() : null,
+                qi.isEnableTravelDateQuery() ? qi.getTravelDateEnd() : null);
             
             OrderServiceImpl.LOGGER.info("[queryOrders][Get filtered orders][size:{}]", result.size());
         } else {
@@ -204,29 +269,6 @@ public class OrderServiceImpl implements OrderService {
         
         return new Response<>(1, "Get order num", result);
     }
-    
-    // Helper method to find orders with filters
-    private ArrayList<Order> findOrdersWithFilters(String accountId, Integer state, 
-            Date boughtDateStart, Date boughtDateEnd, 
-            Date travelDateStart, Date travelDateEnd) {
-        // For demonstration - in a real implementation, this would use repository methods
-        // that directly filter at the database level
-        ArrayList<Order> allOrders = orderRepository.findByAccountId(accountId);
-        
-        return allOrders.stream()
-            .filter(order -> state == null || order.getStatus() == state)
-            .filter(order -> {
-                if (boughtDateStart == null || boughtDateEnd == null) return true;
-                Date boughtDate = StringUtils.String2Date(order.getBoughtDate());
-                return boughtDate.after(boughtDateStart) && boughtDate.before(boughtDateEnd);
-            })
-            .filter(order -> {
-                if (travelDateStart == null || travelDateEnd == null) return true;
-                Date travelDate = StringUtils.String2Date(order.getTravelDate());
-                return travelDate.after(travelDateStart) && travelDate.before(travelDateEnd);
-            })
-            .collect(Collectors.toCollection(ArrayList::new));
-    }
 
     @Override
     public Response queryOrdersForRefresh(OrderInfo qi, String accountId, HttpHeaders headers) {
@@ -253,6 +295,7 @@ public class OrderServiceImpl implements OrderService {
     }
 
     @Override
+    @Transactional
     public Response saveChanges(Order order, HttpHeaders headers) {
         Optional<Order> op = orderRepository.findById(order.getId());
         if (!op.isPresent()) {
@@ -260,6 +303,7 @@ public class OrderServiceImpl implements OrderService {
             return new Response<>(0, orderNotFound, null);
         } else {
             Order oldOrder = op.get();
+            OrderEventType eventType = oldOrder.getStatus() == order.getStatus() ? OrderEventType.UPDATED : OrderEventType.STATUS_CHANGED;
             oldOrder.setAccountId(order.getAccountId());
             oldOrder.setBoughtDate(order.getBoughtDate());
             oldOrder.setTravelDate(order.getTravelDate());
@@ -275,7 +319,9 @@ public class OrderServiceImpl implements OrderService {
             oldOrder.setContactsName(order.getContactsName());
             oldOrder.setContactsDocumentNumber(order.getContactsDocumentNumber());
             oldOrder.setDocumentType(order.getDocumentType());
-            orderRepository.save(oldOrder);
+            oldOrder = orderRepository.save(oldOrder);
+            orderCache.put(oldOrder);
+            orderOutbox.record(eventType, oldOrder.getId(), oldOrder);
             OrderServiceImpl.LOGGER.info("[saveChanges][Modify Order Success][OrderId: {}]", order.getId());
             return new Response<>(1, success, oldOrder);
         }
@@ -283,14 +329,12 @@ public class OrderServiceImpl implements OrderService {
 
     @Override
     public Response cancelOrder(String accountId, String orderId, HttpHeaders headers) {
-        Optional<Order> op = orderRepository.findById(orderId);
+        Optional<Order> op = orderCache.updateStatus(orderId, OrderStatus.CANCEL.getCode(), this::recordStatusChange);
         if (!op.isPresent()) {
             OrderServiceImpl.LOGGER.error("[cancelOrder][Cancel Order Fail][Order not found][OrderId: {}]", orderId);
             return new Response<>(0, orderNotFound, null);
         } else {
             Order oldOrder = op.get();
-            oldOrder.setStatus(OrderStatus.CANCEL.getCode());
-            orderRepository.save(oldOrder);
             OrderServiceImpl.LOGGER.info("[cancelOrder][Cancel Order Success][OrderId: {}]", orderId);
             return new Response<>(1, success, oldOrder);
         }
@@ -351,16 +395,60 @@ public class OrderServiceImpl implements OrderService {
         }
     }
 
+    @Override
+    public Response getOrderPage(String cursor, int size, HttpHeaders headers) {
+        OrderPageRequest request;
+        try {
+            request = OrderPageRequest.of(cursor, size);
+        } catch (IllegalArgumentException e) {
+            OrderServiceImpl.LOGGER.warn("[getOrderPage][Find order page Fail][Invalid cursor: {}]", cursor);
+            return new Response<>(0, "Invalid cursor.", null);
+        }
+        List<Order> rows = orderRepository.findPageAfter(request.getAfterBoughtDate(),
+                request.getAfterId(), PageRequest.of(0, request.getSize() + 1));
+        KeysetPage<Order> page = KeysetPage.of(rows, request.getSize(), OrderServiceImpl::cursorOf);
+        OrderServiceImpl.LOGGER.info("[getOrderPage][Find order page][size: {}, last page: {}]",
+                page.getItems().size(), page.getNextCursor() == null);
+        return new Response<>(1, success, page);
+    }
+
+    @Override
+    public Response queryOrderPage(OrderInfo qi, String accountId, String cursor, int size, HttpHeaders headers) {
+        OrderPageRequest request;
+        try {
+            request = OrderPageRequest.of(cursor, size);
+        } catch (IllegalArgumentException e) {
+            OrderServiceImpl.LOGGER.warn("[queryOrderPage][Query order page Fail][Invalid cursor: {}]", cursor);
+            return new Response<>(0, "Invalid cursor.", null);
+        }
+        // same filters as queryOrders, a disabled filter is a null bound
+        List<Order> rows = orderRepository.findOrdersWithFiltersAfter(accountId,
+                qi.isEnableStateQuery() ? qi.getState() : null,
+                qi.isEnableBoughtDateQuery() ? qi.getBoughtDateStart() : null,
+                qi.isEnableBoughtDateQuery() ? qi.getBoughtDateEnd() : null,
+                qi.isEnableTravelDateQuery() ? qi.getBoughtDateStart() : null,
+                qi.isEnableTravelDateQuery() ? qi.getTravelDateEnd() : null,
+                request.getAfterBoughtDate(),
+                request.getAfterId(),
+                PageRequest.of(0, request.getSize() + 1));
+        KeysetPage<Order> page = KeysetPage.of(rows, request.getSize(), OrderServiceImpl::cursorOf);
+        OrderServiceImpl.LOGGER.info("[queryOrderPage][Query order page][accountId: {}, size: {}, last page: {}]",
+                accountId, page.getItems().size(), page.getNextCursor() == null);
+        return new Response<>(1, "Get order num", page);
+    }
+
+    private static String cursorOf(Order order) {
+        return new OrderCursor(order.getBoughtDate(), order.getId()).encode();
+    }
+
     @Override
     public Response modifyOrder(String orderId, int status, HttpHeaders headers) {
-        Optional<Order> op = orderRepository.findById(orderId);
+        Optional<Order> op = orderCache.updateStatus(orderId, status, this::recordStatusChange);
         if (!op.isPresent()) {
             OrderServiceImpl.LOGGER.error("[modifyOrder][Modify order Fail][Order not found][OrderId: {}]",orderId);
             return new Response<>(0, orderNotFound, null);
         } else {
             Order order = op.get();
-            order.setStatus(status);
-            orderRepository.save(order);
             OrderServiceImpl.LOGGER.info("[modifyOrder][Modify order Success][OrderId: {}]",orderId);
             return new Response<>(1, "Modify Order Success", order);
         }
@@ -368,7 +456,7 @@ public class OrderServiceImpl implements OrderService {
 
     @Override
     public Response getOrderPrice(String orderId, HttpHeaders headers) {
-        Optional<Order> op = orderRepository.findById(orderId);
+        Optional<Order> op = orderCache.find(orderId);
         if (!op.isPresent()) {
             OrderServiceImpl.LOGGER.error("[getOrderPrice][Get order price Fail][Order not found][OrderId: {}]",orderId);
             return new Response<>(0, orderNotFound, "-1.0");
@@ -381,14 +469,12 @@ public class OrderServiceImpl implements OrderService {
 
     @Override
     public Response payOrder(String orderId, HttpHeaders headers) {
-        Optional<Order> op = orderRepository.findById(orderId);
+        Optional<Order> op = orderCache.updateStatus(orderId, OrderStatus.PAID.getCode(), this::recordStatusChange);
         if (!op.isPresent()) {
             OrderServiceImpl.LOGGER.error("[payOrder][Pay order Fail][Order not found][OrderId: {}]",orderId);
             return new Response<>(0, orderNotFound, null);
         } else {
             Order order = op.get();
-            order.setStatus(OrderStatus.PAID.getCode());
-            orderRepository.save(order);
             OrderServiceImpl.LOGGER.info("[payOrder][Pay order Success][OrderId: {}]",orderId);
             return new Response<>(1, "Pay Order Success.", order);
         }
@@ -396,7 +482,7 @@ public class OrderServiceImpl implements OrderService {
 
     @Override
     public Response getOrderById(String orderId, HttpHeaders headers) {
-        Optional<Order> op = orderRepository.findById(orderId);
+        Optional<Order> op = orderCache.find(orderId);
         if (!op.isPresent()) {
             OrderServiceImpl.LOGGER.warn("[getOrderById][Get Order By ID Fail][Order not found][OrderId: {}]",orderId);
             return new Response<>(0, orderNotFound, null);
@@ -408,10 +494,13 @@ public class OrderServiceImpl implements OrderService {
     }
 
     @Override
+    @Transactional
     public void initOrder(Order order, HttpHeaders headers) {
         Optional<Order> op = orderRepository.findById(order.getId());
         if (!op.isPresent()) {
             Order newOrder = orderRepository.save(order);
+            orderCache.put(newOrder);
+            orderOutbox.record(OrderEventType.CREATED, newOrder.getId(), newOrder);
             OrderServiceImpl.LOGGER.info("[initOrder][Init Order Success][OrderId: {}]", newOrder.getId());
         } else {
             Order orderTemp = op.get();
@@ -429,34 +518,17 @@ public class OrderServiceImpl implements OrderService {
         ca.add(Calendar.HOUR_OF_DAY, -1);
         Date oneHourBefore = ca.getTime();
         
-        // These would need corresponding methods in the repository
-        int countOrderInOneHour = countOrdersAfterTime(accountId, oneHourBefore);
-        int countTotalValidOrder = countValidOrders(accountId);
+        int countOrderInOneHour = orderRepository.countOrdersAfterTime(accountId, DateUtils.format(oneHourBefore));
+        int countTotalValidOrder = orderRepository.countOrdersByAccountIdAndStatusIn(accountId, Arrays.asList(
+                OrderStatus.NOTPAID.getCode(), OrderStatus.PAID.getCode(), OrderStatus.COLLECTED.getCode()));
         
         result.setOrderNumInLastOneHour(countOrderInOneHour);
         result.setOrderNumOfValidOrder(countTotalValidOrder);
         return new Response<>(1, "Check Security Success.", result);
     }
-    
-    // Helper methods for counting
-    private int countOrdersAfterTime(String accountId, Date timeThreshold) {
-        // This would use a database query in real implementation
-        String timeThresholdStr = StringUtils.Date2String(timeThreshold);
-        return orderRepository.findByAccountId(accountId).stream()
-            .filter(order -> StringUtils.String2Date(order.getBoughtDate()).after(timeThreshold))
-            .collect(Collectors.toList()).size();
-    }
-    
-    private int countValidOrders(String accountId) {
-        // This would use a database query in real implementation
-        return orderRepository.findByAccountId(accountId).stream()
-            .filter(order -> order.getStatus() == OrderStatus.NOTPAID.getCode() ||
-                    order.getStatus() == OrderStatus.PAID.getCode() ||
-                    order.getStatus() == OrderStatus.COLLECTED.getCode())
-            .collect(Collectors.toList()).size();
-    }
 
     @Override
+    @Transactional
     public Response deleteOrder(String orderId, HttpHeaders headers) {
         String orderUuid = UUID.fromString(orderId).toString();
 
@@ -467,12 +539,15 @@ public class OrderServiceImpl implements OrderService {
         } else {
             Order order = op.get();
             orderRepository.deleteById(orderUuid);
+            orderCache.evict(orderUuid);
+            orderOutbox.record(OrderEventType.DELETED, order.getId(), order);
             OrderServiceImpl.LOGGER.info("[deleteOrder][Delete order Success][OrderId: {}]",orderId);
             return new Response<>(1, "Delete Order Success", order);
         }
     }
 
     @Override
+    @Transactional
     public Response addNewOrder(Order order, HttpHeaders headers) {
         OrderServiceImpl.LOGGER.info("[addNewOrder][Admin Add Order][Ready to Add Order]");
         
@@ -485,12 +560,15 @@ public class OrderServiceImpl implements OrderService {
         } else {
             order.setId(UUID.randomUUID().toString());
             Order newOrder = orderRepository.save(order);
+            orderCache.put(newOrder);
+            orderOutbox.record(OrderEventType.CREATED, newOrder.getId(), newOrder);
             OrderServiceImpl.LOGGER.info("[addNewOrder][Admin Add Order Success][OrderId: {} , Price: {}]",newOrder.getId() ,order.getPrice());
             return new Response<>(1, "Add new Order Success", newOrder);
         }
     }
 
     @Override
+    @Transactional
     public Response updateOrder(Order order, HttpHeaders headers) {
         LOGGER.info("[updateOrder][Admin Update Order][Order Info:{}] ", order.toString());
         Optional<Order> op = orderRepository.findById(order.getId());
@@ -499,6 +577,7 @@ public class OrderServiceImpl implements OrderService {
             return new Response<>(0, "Order Not Found, Can't update", null);
         } else {
             Order oldOrder = op.get();
+            OrderEventType eventType = oldOrder.getStatus() == order.getStatus() ? OrderEventType.UPDATED : OrderEventType.STATUS_CHANGED;
             //OrderServiceImpl.LOGGER.info("{}", oldOrder.toString());
             oldOrder.setAccountId(order.getAccountId());
             oldOrder.setBoughtDate(order.getBoughtDate());
@@ -515,10 +594,15 @@ public class OrderServiceImpl implements OrderService {
             oldOrder.setContactsName(order.getContactsName());
             oldOrder.setContactsDocumentNumber(order.getContactsDocumentNumber());
             oldOrder.setDocumentType(order.getDocumentType());
-            orderRepository.save(oldOrder);
+            oldOrder = orderRepository.save(oldOrder);
+            orderCache.put(oldOrder);
+            orderOutbox.record(eventType, oldOrder.getId(), oldOrder);
             OrderServiceImpl.LOGGER.info("[updateOrder][Admin Update Order Success][OrderId: {}]",order.getId());
             return new Response<>(1, "Admin Update Order Success", oldOrder);
         }
     }
-}
 
+    private void recordStatusChange(Order order) {
+        orderOutbox.record(OrderEventType.STATUS_CHANGED, order.getId(), order);
+    }
+}
@@ -0,0 +1,31 @@
+-- Tables as Hibernate created them with ddl-auto: update. Existing databases are
+-- baselined at version 0, so this is a no-op there.
+CREATE TABLE IF NOT EXISTS orders (
+    id                       VARCHAR(36)  NOT NULL,
+    account_id               VARCHAR(36),
+    bought_date              VARCHAR(255),
+    coach_number             INTEGER      NOT NULL,
+    contacts_document_number VARCHAR(255),
+    contacts_name            VARCHAR(255),
+    document_type            INTEGER      NOT NULL,
+    from_station             VARCHAR(255),
+    price                    VARCHAR(255),
+    seat_class               INTEGER      NOT NULL,
+    seat_number              INTEGER      NOT NULL,
+    status                   INTEGER      NOT NULL,
+    to_station               VARCHAR(255),
+    train_number             VARCHAR(255),
+    travel_date              VARCHAR(255),
+    travel_time              VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS demo_users (
+    id         INTEGER NOT NULL AUTO_INCREMENT,
+    age        INTEGER,
+    created_at DATETIME,
+    email      VARCHAR(100),
+    phone      VARCHAR(20),
+    username   VARCHAR(100),
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,7 @@
+-- Sold tickets of a train on a day: findByTravelDateAndTrainNumber and the seat class
+-- counts, called for every seat query.
+CREATE INDEX idx_orders_travel_date_train_number ON orders (travel_date, train_number);
+
+-- Orders of an account: findByAccountId for queryOrders and the security checks, and the
+-- bought date range of the filtered query and the last-hour count.
+CREATE INDEX idx_orders_account_id_bought_date ON orders (account_id, bought_date);
@@ -0,0 +1,24 @@
+-- bought_date and travel_time become DATETIME columns and travel_date a DATE column; the
+-- entity keeps its "yyyy-MM-dd HH:mm:ss" and "yyyy-MM-dd" string properties through
+-- DateTimeStringConverter and DateStringConverter.
+--
+-- Values are first rewritten zero padded, read as DateUtils reads them: longer than ten
+-- characters is a date-time, fields may have fewer digits and trailing text is ignored. Only
+-- values that cannot be read that way are cleared; everything is then converted in place and
+-- the indexes are rebuilt.
+UPDATE orders SET bought_date = CASE
+    WHEN CHAR_LENGTH(bought_date) > 10 THEN DATE_FORMAT(STR_TO_DATE(bought_date, '%Y-%m-%d %H:%i:%s'), '%Y-%m-%d %H:%i:%s')
+    ELSE DATE_FORMAT(STR_TO_DATE(bought_date, '%Y-%m-%d'), '%Y-%m-%d %H:%i:%s') END
+WHERE bought_date IS NOT NULL;
+UPDATE orders SET travel_date = CASE
+    WHEN CHAR_LENGTH(travel_date) > 10 THEN DATE_FORMAT(STR_TO_DATE(travel_date, '%Y-%m-%d %H:%i:%s'), '%Y-%m-%d')
+    ELSE DATE_FORMAT(STR_TO_DATE(travel_date, '%Y-%m-%d'), '%Y-%m-%d') END
+WHERE travel_date IS NOT NULL;
+UPDATE orders SET travel_time = CASE
+    WHEN CHAR_LENGTH(travel_time) > 10 THEN DATE_FORMAT(STR_TO_DATE(travel_time, '%Y-%m-%d %H:%i:%s'), '%Y-%m-%d %H:%i:%s')
+    ELSE DATE_FORMAT(STR_TO_DATE(travel_time, '%Y-%m-%d'), '%Y-%m-%d %H:%i:%s') END
+WHERE travel_time IS NOT NULL;
+
+ALTER TABLE orders MODIFY COLUMN bought_date DATETIME;
+ALTER TABLE orders MODIFY COLUMN travel_date DATE;
+ALTER TABLE orders MODIFY COLUMN travel_time DATETIME;
@@ -0,0 +1,3 @@
+-- Row version of the orders, bumped on every update: lets the in-process order cache of each
+-- replica detect orders changed elsewhere, and makes status transitions compare-and-set.
+ALTER TABLE orders ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
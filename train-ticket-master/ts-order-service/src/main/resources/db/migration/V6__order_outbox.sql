@@ -0,0 +1,9 @@
+-- Order events written in the transaction of the order change, until the relay has
+-- published them to RabbitMQ; the id orders the events of this service.
+CREATE TABLE order_outbox (
+    id          BIGINT        NOT NULL AUTO_INCREMENT,
+    routing_key VARCHAR(64)   NOT NULL,
+    payload     VARCHAR(2048) NOT NULL,
+    created_at  BIGINT        NOT NULL,
+    PRIMARY KEY (id)
+);
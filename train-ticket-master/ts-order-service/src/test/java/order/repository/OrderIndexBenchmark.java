@@ -0,0 +1,121 @@
+package order.repository;
+
+import org.flywaydb.core.Flyway;
+
+import java.sql.*;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Times the hot order lookups on a seeded in-memory database before and after the index
+ * and typed date migrations. Run main, optionally with the number of orders (default 1000000).
+ *
+ * @author fdse
+ */
+public class OrderIndexBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:orders;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final String HISTORY_TABLE = "flyway_schema_history_order";
+
+    private static final int ACCOUNTS = 100000;
+    private static final int TRAINS = 500;
+    private static final int DAYS = 60;
+    private static final int LOOKUPS = 200;
+
+    private interface Binder {
+        void bind(PreparedStatement statement, Random random) throws SQLException;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Flyway.configure().dataSource(URL, "sa", "").table(HISTORY_TABLE).target("1").load().migrate();
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "")) {
+            seed(connection, orders);
+            System.out.println("[seed][orders: " + orders + "]");
+            run(connection, "without indexes");
+            Flyway.configure().dataSource(URL, "sa", "").table(HISTORY_TABLE).load().migrate();
+            run(connection, "with indexes");
+        }
+    }
+
+    private static void seed(Connection connection, int orders) throws SQLException {
+        Random random = new Random(42);
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO orders (id, account_id, bought_date, "
+                + "coach_number, document_type, seat_class, seat_number, status, train_number, travel_date) "
+                + "VALUES (?, ?, ?, 5, 1, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < orders; i++) {
+                insert.setString(1, UUID.randomUUID().toString());
+                insert.setString(2, account(random.nextInt(ACCOUNTS)));
+                insert.setString(3, day(random.nextInt(DAYS)) + " 10:00:00");
+                insert.setInt(4, 2 + random.nextInt(2));
+                insert.setInt(5, 1 + random.nextInt(1000));
+                insert.setInt(6, random.nextInt(7));
+                insert.setString(7, train(random.nextInt(TRAINS)));
+                insert.setString(8, day(random.nextInt(DAYS)));
+                insert.addBatch();
+                if (i % 10000 == 9999) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+        connection.setAutoCommit(true);
+    }
+
+    private static void run(Connection connection, String label) throws SQLException {
+        time(connection, label, "findByTravelDateAndTrainNumber",
+                "SELECT * FROM orders WHERE travel_date = ? AND train_number = ?",
+                (statement, random) -> {
+                    statement.setString(1, day(random.nextInt(DAYS)));
+                    statement.setString(2, train(random.nextInt(TRAINS)));
+                });
+        time(connection, label, "countSeatClassesByTravelDateAndTrainNumber",
+                "SELECT seat_class, COUNT(*) FROM orders WHERE travel_date = ? AND train_number = ? AND status < 6 GROUP BY seat_class",
+                (statement, random) -> {
+                    statement.setString(1, day(random.nextInt(DAYS)));
+                    statement.setString(2, train(random.nextInt(TRAINS)));
+                });
+        time(connection, label, "findByAccountId",
+                "SELECT * FROM orders WHERE account_id = ?",
+                (statement, random) -> statement.setString(1, account(random.nextInt(ACCOUNTS))));
+        time(connection, label, "countOrdersAfterTime",
+                "SELECT COUNT(*) FROM orders WHERE account_id = ? AND bought_date > ?",
+                (statement, random) -> {
+                    statement.setString(1, account(random.nextInt(ACCOUNTS)));
+                    statement.setString(2, day(DAYS - 1) + " 09:00:00");
+                });
+    }
+
+    private static void time(Connection connection, String label, String name, String sql, Binder binder) throws SQLException {
+        Random random = new Random(7);
+        long rows = 0;
+        long start = System.nanoTime();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < LOOKUPS; i++) {
+                binder.bind(statement, random);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        rows++;
+                    }
+                }
+            }
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / LOOKUPS;
+        System.out.printf("[%s][%s][%.3f ms/query, %.1f rows/query]%n", label, name, millis, (double) rows / LOOKUPS);
+    }
+
+    private static String account(int n) {
+        return String.format("%036d", n);
+    }
+
+    private static String train(int n) {
+        return "G" + (1000 + n);
+    }
+
+    private static String day(int n) {
+        return String.format("2024-%02d-%02d", 1 + n / 28, 1 + n % 28);
+    }
+}
@@ -0,0 +1,126 @@
+package order.service;
+
+import edu.fudan.common.entity.OrderStatus;
+import order.entity.Order;
+import order.repository.OrderRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@RunWith(JUnit4.class)
+public class OrderCacheTest {
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    private OrderCache orderCache;
+
+    private Order order;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        orderCache = new OrderCache(orderRepository, 2, 0);
+        order = newOrder(3);
+    }
+
+    @Test
+    public void testFindReadsThrough() {
+        Mockito.when(orderRepository.findById(order.getId())).thenReturn(Optional.of(order));
+        Mockito.when(orderRepository.findVersionById(order.getId())).thenReturn(3L);
+        Assert.assertEquals(order.getId(), orderCache.find(order.getId()).get().getId());
+        Assert.assertEquals(order.getId(), orderCache.find(order.getId()).get().getId());
+        Mockito.verify(orderRepository, Mockito.times(1)).findById(order.getId());
+        Mockito.verify(orderRepository, Mockito.times(1)).findVersionById(order.getId());
+    }
+
+    @Test
+    public void testOptedInWindowHitSkipsRepository() {
+        orderCache = new OrderCache(orderRepository, 2, 60 * 1000L);
+        orderCache.put(order);
+        Assert.assertEquals(order.getId(), orderCache.find(order.getId()).get().getId());
+        Assert.assertEquals(order.getId(), orderCache.find(order.getId()).get().getId());
+        Mockito.verify(orderRepository, Mockito.never()).findVersionById(order.getId());
+        Mockito.verify(orderRepository, Mockito.never()).findById(order.getId());
+    }
+
+    @Test
+    public void testFindReloadsStaleOrder() {
+        orderCache.put(order);
+        Order changed = newOrder(4);
+        changed.setId(order.getId());
+        changed.setStatus(OrderStatus.CANCEL.getCode());
+        Mockito.when(orderRepository.findVersionById(order.getId())).thenReturn(4L);
+        Mockito.when(orderRepository.findById(order.getId())).thenReturn(Optional.of(changed));
+        Assert.assertEquals(OrderStatus.CANCEL.getCode(), orderCache.find(order.getId()).get().getStatus());
+    }
+
+    @Test
+    public void testFindDeletedOrder() {
+        orderCache.put(order);
+        Mockito.when(orderRepository.findVersionById(order.getId())).thenReturn(null);
+        Assert.assertFalse(orderCache.find(order.getId()).isPresent());
+        Assert.assertEquals(0, orderCache.size());
+    }
+
+    @Test
+    public void testFindReturnsCopies() {
+        orderCache.put(order);
+        Mockito.when(orderRepository.findVersionById(order.getId())).thenReturn(3L);
+        orderCache.find(order.getId()).get().setStatus(OrderStatus.CANCEL.getCode());
+        Assert.assertEquals(OrderStatus.NOTPAID.getCode(), orderCache.find(order.getId()).get().getStatus());
+    }
+
+    @Test
+    public void testUpdateStatusWritesThrough() {
+        orderCache.put(order);
+        Mockito.when(orderRepository.updateStatus(order.getId(), OrderStatus.PAID.getCode(), 3L)).thenReturn(1);
+        Order paid = orderCache.updateStatus(order.getId(), OrderStatus.PAID.getCode()).get();
+        Assert.assertEquals(OrderStatus.PAID.getCode(), paid.getStatus());
+        Assert.assertEquals(4L, paid.getVersion());
+        Mockito.when(orderRepository.findVersionById(order.getId())).thenReturn(4L);
+        Assert.assertEquals(OrderStatus.PAID.getCode(), orderCache.find(order.getId()).get().getStatus());
+        Mockito.verify(orderRepository, Mockito.never()).findById(order.getId());
+    }
+
+    @Test
+    public void testUpdateStatusRetriesChangedOrder() {
+        orderCache.put(order);
+        Order changed = newOrder(5);
+        changed.setId(order.getId());
+        Mockito.when(orderRepository.updateStatus(order.getId(), OrderStatus.PAID.getCode(), 3L)).thenReturn(0);
+        Mockito.when(orderRepository.findById(order.getId())).thenReturn(Optional.of(changed));
+        Mockito.when(orderRepository.updateStatus(order.getId(), OrderStatus.PAID.getCode(), 5L)).thenReturn(1);
+        Order paid = orderCache.updateStatus(order.getId(), OrderStatus.PAID.getCode()).get();
+        Assert.assertEquals(6L, paid.getVersion());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        Order second = newOrder(0);
+        Order third = newOrder(0);
+        orderCache.put(order);
+        orderCache.put(second);
+        orderCache.put(third);
+        Assert.assertEquals(2, orderCache.size());
+        Mockito.when(orderRepository.findById(order.getId())).thenReturn(Optional.empty());
+        Assert.assertFalse(orderCache.find(order.getId()).isPresent());
+        Mockito.verify(orderRepository, Mockito.never()).findVersionById(order.getId());
+    }
+
+    private Order newOrder(long version) {
+        Order newOrder = new Order();
+        newOrder.setId(UUID.randomUUID().toString());
+        newOrder.setStatus(OrderStatus.NOTPAID.getCode());
+        newOrder.setVersion(version);
+        return newOrder;
+    }
+}
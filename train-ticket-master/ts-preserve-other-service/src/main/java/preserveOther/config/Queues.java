@@ -1,6 +1,9 @@
 package preserveOther.config;
 
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageRecoverer;
+import org.springframework.amqp.rabbit.retry.RepublishMessageRecoverer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -9,8 +12,36 @@ public class Queues {
 
     public final static String queueName = "email";
 
+    /**
+     * bookings whose assurance, food, consign and notification are still to be done
+     */
+    public final static String bookingQueueName = "preserve_other_booking";
+
+    /**
+     * bookings whose steps still failed after all retries, with the failure in the x-exception headers
+     */
+    public final static String bookingCompensationQueueName = "preserve_other_booking_compensation";
+
     @Bean
     public Queue emailQueue() {
         return new Queue(queueName);
     }
+
+    @Bean
+    public Queue bookingQueue() {
+        return new Queue(bookingQueueName);
+    }
+
+    @Bean
+    public Queue bookingCompensationQueue() {
+        return new Queue(bookingCompensationQueueName);
+    }
+
+    /**
+     * Moves a booking out of the booking queue once the listener retries are exhausted.
+     */
+    @Bean
+    public MessageRecoverer bookingCompensation(RabbitTemplate rabbitTemplate) {
+        return new RepublishMessageRecoverer(rabbitTemplate, "", bookingCompensationQueueName);
+    }
 }
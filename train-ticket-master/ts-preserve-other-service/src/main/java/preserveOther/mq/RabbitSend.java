@@ -3,23 +3,39 @@ package preserveOther.mq;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import preserveOther.config.Queues;
 
-
 @Component
 public class RabbitSend {
 
     @Autowired
-    private AmqpTemplate rabbitTemplate;
+    private RabbitTemplate rabbitTemplate;
 
     private static final Logger logger = LoggerFactory.getLogger(RabbitSend.class);
 
+    @Value("${preserve-other.booking.confirm-timeout-millis:5000}")
+    private long confirmTimeoutMillis;
+
     public void send(String val) {
         logger.info("send info to mq:" + val);
         this.rabbitTemplate.convertAndSend(Queues.queueName, val);
     }
 
+    /**
+     * Publishes a completed booking, returning once the broker confirmed it has the message.
+     * No user token goes with it: the consumer calls with the service token.
+     */
+    public void sendBooking(String val) {
+        logger.info("send booking to mq:" + val);
+        this.rabbitTemplate.invoke(operations -> {
+            operations.convertAndSend(Queues.bookingQueueName, val);
+            operations.waitForConfirmsOrDie(confirmTimeoutMillis);
+            return null;
+        });
+    }
+
 }
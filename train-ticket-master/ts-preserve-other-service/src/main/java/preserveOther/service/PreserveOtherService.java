@@ -1,5 +1,6 @@
 package preserveOther.service;
 
+import edu.fudan.common.entity.BookingCompleted;
 import edu.fudan.common.entity.OrderTicketsInfo;
 import edu.fudan.common.util.Response;
 import org.springframework.http.HttpHeaders;
@@ -11,4 +12,12 @@ import org.springframework.http.HttpHeaders;
 public interface PreserveOtherService {
 
     Response preserve(OrderTicketsInfo oti, HttpHeaders headers);
+
+    /**
+     * Buys the assurance and food, adds the consign and sends the notification of a booking,
+     * skipping the steps already done for its order.
+     *
+     * @throws IllegalStateException if a step failed
+     */
+    void completeBooking(BookingCompleted booking, HttpHeaders headers);
 }
@@ -1,6 +1,7 @@
 package preserveOther.service;
 
 import edu.fudan.common.entity.*;
+import edu.fudan.common.util.IdempotentRequests;
 import edu.fudan.common.util.JsonUtils;
 import edu.fudan.common.util.Response;
 import edu.fudan.common.util.StringUtils;
@@ -16,9 +17,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import preserveOther.mq.RabbitSend;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * @author fdse
@@ -32,16 +35,40 @@ public class PreserveOtherServiceImpl implements PreserveOtherService {
     @Autowired
     private RabbitSend sendService;
 
+    @Autowired
+    private IdempotentRequests<Response> preserveRequests;
+
 
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PreserveOtherServiceImpl.class);
 
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private String getServiceUrl(String serviceName) {
         return "http://" + serviceName + ":8080";
     }
 
     @Override
     public Response preserve(OrderTicketsInfo oti, HttpHeaders httpHeaders) {
+        //a retried booking waits for or replays the first one instead of running all its steps again
+        String key = requestKey(oti, httpHeaders);
+        if (key == null) {
+            return book(oti, httpHeaders);
+        }
+        return preserveRequests.execute(key, () -> book(oti, httpHeaders), response -> response.getStatus() == 1);
+    }
+
+    /**
+     * The key of a booking request: the Idempotency-Key header the client sent with all attempts
+     * of the booking, or null without one. The request itself is no key, booking the same trip
+     * again after a cancel is a new booking.
+     */
+    private static String requestKey(OrderTicketsInfo oti, HttpHeaders httpHeaders) {
+        String idempotencyKey = httpHeaders.getFirst(IDEMPOTENCY_KEY_HEADER);
+        return idempotencyKey == null ? null : oti.getAccountId() + ":" + idempotencyKey;
+    }
+
+    private Response book(OrderTicketsInfo oti, HttpHeaders httpHeaders) {
 
         PreserveOtherServiceImpl.LOGGER.info("[preserve][Verify Login] Success");
         //1.detect ticket scalper
@@ -125,19 +152,16 @@ public class PreserveOtherServiceImpl implements PreserveOtherService {
         query.setDepartureTime(StringUtils.Date2String(new Date()));
 
 
-        HttpEntity requestEntity = new HttpEntity(query, httpHeaders);
-        String basic_service_url = getServiceUrl("ts-basic-service");
-        ResponseEntity<Response<TravelResult>> re = restTemplate.exchange(
-                basic_service_url + "/api/v1/basicservice/basic/travel",
-                HttpMethod.POST,
-                requestEntity,
-                new ParameterizedTypeReference<Response<TravelResult>>() {
-                });
-        if(re.getBody().getStatus() == 0){
-            PreserveOtherServiceImpl.LOGGER.info("[Preserve 3][Get basic travel response status is 0][response is: {}]", re.getBody());
-            return new Response<>(0, re.getBody().getMsg(), null);
+        //the trip detail carries the route, train type and prices it computed the tickets from;
+        //the basic service is only asked by travel services not returning them yet
+        Response<TravelResult> travelResponse = gtdr.getTravelResult() != null
+                ? new Response<>(1, "Success", gtdr.getTravelResult())
+                : getTravel(query, httpHeaders);
+        if(travelResponse.getStatus() == 0){
+            PreserveOtherServiceImpl.LOGGER.info("[Preserve 3][Get basic travel response status is 0][response is: {}]", travelResponse);
+            return new Response<>(0, travelResponse.getMsg(), null);
         }
-        TravelResult resultForTravel = re.getBody().getData();
+        TravelResult resultForTravel = travelResponse.getData();
 
         order.setSeatClass(oti.getSeatType());
         PreserveOtherServiceImpl.LOGGER.info("[preserve][Step 4][Do Order][Travel Date][Date is: {}]", oti.getDate().toString());
@@ -152,6 +176,10 @@ public class PreserveOtherServiceImpl implements PreserveOtherService {
                     dipatchSeat(oti.getDate(),
                             order.getTrainNumber(), fromStationName, toStationName,
                             SeatClass.FIRSTCLASS.getCode(), firstClassTotalNum, stationList, httpHeaders);
+            if (ticket == null) {
+                PreserveOtherServiceImpl.LOGGER.warn("[preserve][Step 4][Do Order][No seat available][TrainNumber: {}, SeatType: {}]", order.getTrainNumber(), oti.getSeatType());
+                return new Response<>(0, "No seat available", null);
+            }
             order.setSeatClass(SeatClass.FIRSTCLASS.getCode());
             order.setSeatNumber(ticket.getSeatNo());
             order.setPrice(resultForTravel.getPrices().get("confortClass"));
@@ -161,6 +189,10 @@ public class PreserveOtherServiceImpl implements PreserveOtherService {
                     dipatchSeat(oti.getDate(),
                             order.getTrainNumber(), fromStationName, toStationName,
                             SeatClass.SECONDCLASS.getCode(), secondClassTotalNum, stationList, httpHeaders);
+            if (ticket == null) {
+                PreserveOtherServiceImpl.LOGGER.warn("[preserve][Step 4][Do Order][No seat available][TrainNumber: {}, SeatType: {}]", order.getTrainNumber(), oti.getSeatType());
+                return new Response<>(0, "No seat available", null);
+            }
             order.setSeatClass(SeatClass.SECONDCLASS.getCode());
             order.setSeatNumber(ticket.getSeatNo());
 
@@ -175,24 +207,10 @@ public class PreserveOtherServiceImpl implements PreserveOtherService {
         }
 
         PreserveOtherServiceImpl.LOGGER.info("[preserve][Step 4][Do Order][Do Order Complete]");
-        Response returnResponse = new Response<>(1, "Success.", cor.getMsg());
-        //5.Check insurance options
-        if (oti.getAssurance() == 0) {
-            PreserveOtherServiceImpl.LOGGER.info("[preserve][Step 5][Buy Assurance][Do not need to buy assurance]");
-        } else {
-            Response<Assurance> addAssuranceResult = addAssuranceForOrder(
-                    oti.getAssurance(), cor.getData().getId().toString(), httpHeaders);
-            if (addAssuranceResult.getStatus() == 1) {
-                PreserveOtherServiceImpl.LOGGER.info("[preserve][Step 5][Buy Assurance][Preserve Buy Assurance Success]");
-            } else {
-                PreserveOtherServiceImpl.LOGGER.warn("[preserve][Step 5][Buy Assurance][Buy Assurance Fail][assurance: {}, OrderId: {}]", oti.getAssurance(),cor.getData().getId());
-                returnResponse.setMsg("Success.But Buy Assurance Fail.");
-            }
-        }
-
-        //6.Increase the food order
+        //Steps 5 to 8 only depend on the created order, so they are left to the booking consumer
+        FoodOrder foodOrder = null;
         if (oti.getFoodType() != 0) {
-            FoodOrder foodOrder = new FoodOrder();
+            foodOrder = new FoodOrder();
             foodOrder.setOrderId(cor.getData().getId());
             foodOrder.setFoodType(oti.getFoodType());
             foodOrder.setFoodName(oti.getFoodName());
@@ -201,20 +219,10 @@ public class PreserveOtherServiceImpl implements PreserveOtherService {
                 foodOrder.setStationName(oti.getStationName());
                 foodOrder.setStoreName(oti.getStoreName());
             }
-            Response afor = createFoodOrder(foodOrder, httpHeaders);
-            if (afor.getStatus() == 1) {
-                PreserveOtherServiceImpl.LOGGER.info("[preserve][Step 6][Buy Food][Buy Food Success]");
-            } else {
-                PreserveOtherServiceImpl.LOGGER.error("[preserve][Step 6][Buy Food][Buy Food Fail][OrderId: {}]",cor.getData().getId());
-                returnResponse.setMsg("Success.But Buy Food Fail.");
-            }
-        } else {
-            PreserveOtherServiceImpl.LOGGER.info("[preserve][Step 6][Buy Food][Do not need to buy food]");
         }
-
-        //7.add consign
+        Consign consignRequest = null;
         if (null != oti.getConsigneeName() && !"".equals(oti.getConsigneeName())) {
-            Consign consignRequest = new Consign();
+            consignRequest = new Consign();
             consignRequest.setOrderId(cor.getData().getId());
             consignRequest.setAccountId(cor.getData().getAccountId());
             consignRequest.setHandleDate(oti.getHandleDate());
@@ -226,38 +234,108 @@ public class PreserveOtherServiceImpl implements PreserveOtherService {
             consignRequest.setWeight(oti.getConsigneeWeight());
             consignRequest.setWithin(oti.isWithin());
             //LOGGER.info("CONSIGN INFO : " + consignRequest.toString());
-            Response icresult = createConsign(consignRequest, httpHeaders);
-            if (icresult.getStatus() == 1) {
-                PreserveOtherServiceImpl.LOGGER.info("[preserve][Step 7][Add Consign][Consign Success]");
-            } else {
-                PreserveOtherServiceImpl.LOGGER.error("[preserve][Step 7][Add Consign][Preserve Consign Fail][OrderId: {}]", cor.getData().getId());
-                returnResponse.setMsg("Consign Fail.");
+        }
+        BookingCompleted booking = new BookingCompleted(cor.getData(), oti.getAssurance(), foodOrder, consignRequest);
+
+        Response returnResponse = new Response<>(1, "Success.", cor.getMsg());
+        try {
+            sendService.sendBooking(JsonUtils.object2Json(booking));
+            PreserveOtherServiceImpl.LOGGER.info("[preserve][Step 5][Booking published][OrderId: {}]", cor.getData().getId());
+        } catch (RuntimeException e) {
+            //the order is committed, so the steps are done here rather than lost with the message
+            PreserveOtherServiceImpl.LOGGER.warn("[preserve][Step 5][Publish booking fail][complete it now][OrderId: {}, error: {}]", cor.getData().getId(), e.toString());
+            try {
+                completeBooking(booking, httpHeaders);
+            } catch (IllegalStateException stepFailure) {
+                returnResponse.setMsg("Success.But " + stepFailure.getMessage());
+            } catch (RuntimeException stepFailure) {
+                PreserveOtherServiceImpl.LOGGER.error("[preserve][Step 5][Complete booking fail][OrderId: {}, error: {}]", cor.getData().getId(), stepFailure.toString());
+                returnResponse.setMsg("Success.But Complete Booking Fail.");
             }
-        } else {
-            PreserveOtherServiceImpl.LOGGER.info("[preserve][Step 7][Add Consign][Do not need to consign]");
         }
 
-        //8.send notification
+        return returnResponse;
+    }
 
-        User getUser = getAccount(order.getAccountId().toString(), httpHeaders);
+    @Override
+    public void completeBooking(BookingCompleted booking, HttpHeaders headers) {
+        Order order = booking.getOrder();
+        //the steps do not depend on each other, so a failing one does not keep the others from running
+        List<String> failures = new ArrayList<>();
+        //5.Check insurance options
+        completeStep("Buy Assurance Fail.", () -> buyAssurance(booking, headers), order, failures);
+        //6.Increase the food order
+        completeStep("Buy Food Fail.", () -> buyFood(booking, headers), order, failures);
+        //7.add consign
+        completeStep("Consign Fail.", () -> addConsign(booking, headers), order, failures);
+        //8.send notification
+        completeStep("Send Notification Fail.", () -> sendNotification(order, headers), order, failures);
+        if (!failures.isEmpty()) {
+            PreserveOtherServiceImpl.LOGGER.error("[completeBooking][Steps failed][OrderId: {}, failures: {}]", order.getId(), failures);
+            throw new IllegalStateException(String.join(" ", failures));
+        }
+    }
 
-        NotifyInfo notifyInfo = new NotifyInfo();
-        notifyInfo.setDate(new Date().toString());
+    private static void completeStep(String failure, Supplier<Boolean> step, Order order, List<String> failures) {
+        try {
+            if (step.get()) {
+                return;
+            }
+        } catch (RuntimeException e) {
+            PreserveOtherServiceImpl.LOGGER.error("[completeStep][{}][OrderId: {}, error: {}]", failure, order.getId(), e.toString());
+        }
+        failures.add(failure);
+    }
 
-        notifyInfo.setEmail(getUser.getEmail());
-        notifyInfo.setStartPlace(order.getFrom());
-        notifyInfo.setEndPlace(order.getTo());
-        notifyInfo.setUsername(getUser.getUserName());
-        notifyInfo.setSeatNumber(order.getSeatNumber());
-        notifyInfo.setOrderNumber(order.getId().toString());
-        notifyInfo.setPrice(order.getPrice());
-        notifyInfo.setSeatClass(SeatClass.getNameByCode(order.getSeatClass()));
-        notifyInfo.setStartTime(order.getTravelTime().toString());
+    private boolean buyAssurance(BookingCompleted booking, HttpHeaders headers) {
+        Order order = booking.getOrder();
+        if (booking.getAssurance() == 0) {
+            PreserveOtherServiceImpl.LOGGER.info("[completeBooking][Step 5][Buy Assurance][Do not need to buy assurance]");
+        } else if (getAssuranceByOrderId(order.getId(), headers).getStatus() == 1) {
+            PreserveOtherServiceImpl.LOGGER.info("[completeBooking][Step 5][Buy Assurance][Assurance already bought][OrderId: {}]", order.getId());
+        } else {
+            Response<Assurance> addAssuranceResult = addAssuranceForOrder(booking.getAssurance(), order.getId(), headers);
+            if (addAssuranceResult.getStatus() != 1) {
+                PreserveOtherServiceImpl.LOGGER.warn("[completeBooking][Step 5][Buy Assurance][Buy Assurance Fail][assurance: {}, OrderId: {}]", booking.getAssurance(), order.getId());
+                return false;
+            }
+            PreserveOtherServiceImpl.LOGGER.info("[completeBooking][Step 5][Buy Assurance][Preserve Buy Assurance Success]");
+        }
+        return true;
+    }
 
-        // TODO: change to async message serivce
-        // sendEmail(notifyInfo, httpHeaders);
+    private boolean buyFood(BookingCompleted booking, HttpHeaders headers) {
+        Order order = booking.getOrder();
+        if (booking.getFoodOrder() == null) {
+            PreserveOtherServiceImpl.LOGGER.info("[completeBooking][Step 6][Buy Food][Do not need to buy food]");
+        } else if (getFoodOrderByOrderId(order.getId(), headers).getStatus() == 1) {
+            PreserveOtherServiceImpl.LOGGER.info("[completeBooking][Step 6][Buy Food][Food already bought][OrderId: {}]", order.getId());
+        } else {
+            Response afor = createFoodOrder(booking.getFoodOrder(), headers);
+            if (afor.getStatus() != 1) {
+                PreserveOtherServiceImpl.LOGGER.error("[completeBooking][Step 6][Buy Food][Buy Food Fail][OrderId: {}]", order.getId());
+                return false;
+            }
+            PreserveOtherServiceImpl.LOGGER.info("[completeBooking][Step 6][Buy Food][Buy Food Success]");
+        }
+        return true;
+    }
 
-        return returnResponse;
+    private boolean addConsign(BookingCompleted booking, HttpHeaders headers) {
+        Order order = booking.getOrder();
+        if (booking.getConsign() == null) {
+            PreserveOtherServiceImpl.LOGGER.info("[completeBooking][Step 7][Add Consign][Do not need to consign]");
+        } else if (getConsignByOrderId(order.getId(), headers).getStatus() == 1) {
+            PreserveOtherServiceImpl.LOGGER.info("[completeBooking][Step 7][Add Consign][Consign already added][OrderId: {}]", order.getId());
+        } else {
+            Response icresult = createConsign(booking.getConsign(), headers);
+            if (icresult.getStatus() != 1) {
+                PreserveOtherServiceImpl.LOGGER.error("[completeBooking][Step 7][Add Consign][Preserve Consign Fail][OrderId: {}]", order.getId());
+                return false;
+            }
+            PreserveOtherServiceImpl.LOGGER.info("[completeBooking][Step 7][Add Consign][Consign Success]");
+        }
+        return true;
     }
 
     public Ticket dipatchSeat(String date, String tripId, String startStationId, String endStataionId, int seatType, int totalNum, List<String> stationList, HttpHeaders httpHeaders) {
@@ -282,6 +360,40 @@ public class PreserveOtherServiceImpl implements PreserveOtherService {
         return reTicket.getBody().getData();
     }
 
+    private Response<TravelResult> getTravel(Travel query, HttpHeaders httpHeaders) {
+        HttpEntity requestEntity = new HttpEntity(query, httpHeaders);
+        String basic_service_url = getServiceUrl("ts-basic-service");
+        ResponseEntity<Response<TravelResult>> re = restTemplate.exchange(
+                basic_service_url + "/api/v1/basicservice/basic/travel",
+                HttpMethod.POST,
+                requestEntity,
+                new ParameterizedTypeReference<Response<TravelResult>>() {
+                });
+        return re.getBody();
+    }
+
+    /**
+     * Notifies the booking user of an order; the account is only fetched here, for its email and name.
+     */
+    public boolean sendNotification(Order order, HttpHeaders httpHeaders) {
+        User getUser = getAccount(order.getAccountId(), httpHeaders);
+
+        NotifyInfo notifyInfo = new NotifyInfo();
+        notifyInfo.setDate(new Date().toString());
+
+        notifyInfo.setEmail(getUser.getEmail());
+        notifyInfo.setStartPlace(order.getFrom());
+        notifyInfo.setEndPlace(order.getTo());
+        notifyInfo.setUsername(getUser.getUserName());
+        notifyInfo.setSeatNumber(order.getSeatNumber());
+        notifyInfo.setOrderNumber(order.getId().toString());
+        notifyInfo.setPrice(order.getPrice());
+        notifyInfo.setSeatClass(SeatClass.getNameByCode(order.getSeatClass()));
+        notifyInfo.setStartTime(order.getTravelTime().toString());
+
+        return sendEmail(notifyInfo, httpHeaders);
+    }
+
     public boolean sendEmail(NotifyInfo notifyInfo, HttpHeaders httpHeaders) {
         try {
             String infoJson = JsonUtils.object2Json(notifyInfo);
@@ -465,4 +577,40 @@ public class PreserveOtherServiceImpl implements PreserveOtherService {
 
         return reResultForTravel.getBody();
     }
+
+    private Response getAssuranceByOrderId(String orderId, HttpHeaders httpHeaders) {
+        PreserveOtherServiceImpl.LOGGER.info("[getAssuranceByOrderId][Preserve Other Service][Get Assurance By Order Id]");
+        HttpEntity requestEntity = new HttpEntity(httpHeaders);
+        String assurance_service_url = getServiceUrl("ts-assurance-service");
+        ResponseEntity<Response> re = restTemplate.exchange(
+                assurance_service_url + "/api/v1/assuranceservice/assurances/orderid/" + orderId,
+                HttpMethod.GET,
+                requestEntity,
+                Response.class);
+        return re.getBody();
+    }
+
+    private Response getFoodOrderByOrderId(String orderId, HttpHeaders httpHeaders) {
+        PreserveOtherServiceImpl.LOGGER.info("[getFoodOrderByOrderId][Preserve Other Service][Get Food Order By Order Id]");
+        HttpEntity requestEntity = new HttpEntity(httpHeaders);
+        String food_service_url = getServiceUrl("ts-food-service");
+        ResponseEntity<Response> re = restTemplate.exchange(
+                food_service_url + "/api/v1/foodservice/orders/" + orderId,
+                HttpMethod.GET,
+                requestEntity,
+                Response.class);
+        return re.getBody();
+    }
+
+    private Response getConsignByOrderId(String orderId, HttpHeaders httpHeaders) {
+        PreserveOtherServiceImpl.LOGGER.info("[getConsignByOrderId][Preserve Other Service][Get Consign By Order Id]");
+        HttpEntity requestEntity = new HttpEntity(httpHeaders);
+        String consign_service_url = getServiceUrl("ts-consign-service");
+        ResponseEntity<Response> re = restTemplate.exchange(
+                consign_service_url + "/api/v1/consignservice/consigns/order/" + orderId,
+                HttpMethod.GET,
+                requestEntity,
+                Response.class);
+        return re.getBody();
+    }
 }
@@ -0,0 +1,66 @@
+package preserveOther.mq;
+
+import edu.fudan.common.entity.BookingCompleted;
+import edu.fudan.common.entity.Order;
+import edu.fudan.common.security.jwt.ServiceToken;
+import edu.fudan.common.util.JsonUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import preserveOther.service.PreserveOtherService;
+
+import java.util.UUID;
+
+@RunWith(JUnit4.class)
+public class RabbitReceiveTest {
+
+    @InjectMocks
+    private RabbitReceive rabbitReceive;
+
+    @Mock
+    private PreserveOtherService preserveOtherService;
+
+    @Mock
+    private ServiceToken serviceToken;
+
+    private HttpHeaders serviceHeaders = new HttpHeaders();
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        serviceHeaders.set(HttpHeaders.AUTHORIZATION, "Bearer service_token");
+        Mockito.when(serviceToken.headers()).thenReturn(serviceHeaders);
+    }
+
+    @Test
+    public void testProcessCompletesBookingAsService() {
+        Order order = new Order();
+        order.setId(UUID.randomUUID().toString());
+        rabbitReceive.process(JsonUtils.object2Json(new BookingCompleted(order, 1, null, null)));
+        //the booking user's token may have expired, the steps run with the service token
+        Mockito.verify(preserveOtherService).completeBooking(
+                Mockito.argThat(booking -> order.getId().equals(booking.getOrder().getId())),
+                Mockito.same(serviceHeaders));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testProcessFailingStepIsRedelivered() {
+        Order order = new Order();
+        order.setId(UUID.randomUUID().toString());
+        Mockito.doThrow(new IllegalStateException("Buy Assurance Fail.")).when(preserveOtherService)
+                .completeBooking(Mockito.any(BookingCompleted.class), Mockito.any(HttpHeaders.class));
+        rabbitReceive.process(JsonUtils.object2Json(new BookingCompleted(order, 1, null, null)));
+    }
+
+    @Test
+    public void testProcessBookingWithoutOrderDropped() {
+        rabbitReceive.process(JsonUtils.object2Json(new BookingCompleted(null, 1, null, null)));
+        Mockito.verifyZeroInteractions(preserveOtherService);
+    }
+}
@@ -12,9 +12,13 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.amqp.AmqpException;
 import org.springframework.http.*;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 import edu.fudan.common.entity.*;
+import edu.fudan.common.util.IdempotentRequests;
+import preserveOther.mq.RabbitSend;
 
 import java.util.Date;
 import java.util.HashMap;
@@ -29,12 +33,16 @@ public class PreserveOtherServiceImplTest {
     @Mock
     private RestTemplate restTemplate;
 
+    @Mock
+    private RabbitSend sendService;
+
     private HttpHeaders headers = new HttpHeaders();
     private HttpEntity requestEntity = new HttpEntity(headers);
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(preserveOtherServiceImpl, "preserveRequests", new IdempotentRequests<Response>("preserve-other", 100, 60000));
     }
 
     @Test
@@ -67,12 +75,13 @@ public class PreserveOtherServiceImplTest {
         //response for sendEmail()
         ResponseEntity<Boolean> re10 = new ResponseEntity<>(true, HttpStatus.OK);
 
+        //responses are matched by url rather than by call order
         Mockito.when(restTemplate.exchange(
                 Mockito.anyString(),
                 Mockito.any(HttpMethod.class),
                 Mockito.any(HttpEntity.class),
                 Mockito.any(Class.class)))
-                .thenReturn(re1).thenReturn(re1).thenReturn(re1).thenReturn(re10);
+                .thenReturn(re1);
 
 
         //response for getContactsById()
@@ -98,7 +107,9 @@ public class PreserveOtherServiceImplTest {
         //response for travel result
         TravelResult travelResult = new TravelResult();
         travelResult.setPrices( new HashMap<String, String>(){{ put("confortClass", "1.0"); }} );
-        Response<TravelResult> response5 = new Response<>(null, null, travelResult);
+        travelResult.setRoute(new Route());
+        travelResult.setTrainType(new TrainType());
+        Response<TravelResult> response5 = new Response<>(1, null, travelResult);
         ResponseEntity<Response<TravelResult>> re5 = new ResponseEntity<>(response5, HttpStatus.OK);
 
         //response for dipatchSeat()
@@ -128,15 +139,218 @@ public class PreserveOtherServiceImplTest {
         Response<User> response9 = new Response<>(1, null, user);
         ResponseEntity<Response<User>> re9 = new ResponseEntity<>(response9, HttpStatus.OK);
 
+        mockExchange("ts-contacts-service", re2);
+        mockExchange("ts-travel2-service", re3);
+        mockExchange("ts-station-service", re4);
+        mockExchange("ts-basic-service", re5);
+        mockExchange("ts-seat-service", re6);
+        mockExchange("ts-order-other-service", re7);
+        mockExchange("ts-assurance-service", re8);
+        mockExchange("ts-user-service", re9);
+
+        Response result = preserveOtherServiceImpl.preserve(oti, headers);
+        Assert.assertEquals(new Response<>(1, "Success.", null), result);
+        //assurance, food and consign are left to the booking consumer
+        Mockito.verify(sendService).sendBooking(Mockito.contains(order.getId()));
+        Mockito.verify(restTemplate, Mockito.never()).exchange(
+                Mockito.startsWith("http://ts-assurance-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+        //the account is only needed by the notification, which is not sent
+        Mockito.verify(restTemplate, Mockito.never()).exchange(
+                Mockito.startsWith("http://ts-user-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    public void testPreserveReusesTravelResultOfTripDetail() {
+        OrderTicketsInfo oti = bookingRequest();
+        mockBooking(null);
+
+        Response result = preserveOtherServiceImpl.preserve(oti, headers);
+        Assert.assertEquals(new Response<>(0, "No seat available", null), result);
+        Mockito.verify(restTemplate, Mockito.never()).exchange(
+                Mockito.startsWith("http://ts-basic-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    public void testRepeatedPreserveIsReplayed() {
+        OrderTicketsInfo oti = bookingRequest();
+        Ticket ticket = new Ticket();
+        ticket.setSeatNo(1);
+        mockBooking(ticket);
+
+        HttpHeaders retried = new HttpHeaders();
+        retried.set(PreserveOtherServiceImpl.IDEMPOTENCY_KEY_HEADER, "booking_1");
+        Response first = preserveOtherServiceImpl.preserve(oti, retried);
+        Response second = preserveOtherServiceImpl.preserve(bookingRequest(oti), retried);
+        Assert.assertEquals(1, (int) first.getStatus());
+        Assert.assertSame(first, second);
+        Mockito.verify(restTemplate, Mockito.times(1)).exchange(
+                Mockito.startsWith("http://ts-order-other-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    public void testSamePreserveWithoutKeyIsBookedAgain() {
+        //booking the same trip again, e.g. after cancelling the first order, is a new booking
+        OrderTicketsInfo oti = bookingRequest();
+        Ticket ticket = new Ticket();
+        ticket.setSeatNo(1);
+        mockBooking(ticket);
+
+        Assert.assertEquals(1, (int) preserveOtherServiceImpl.preserve(oti, headers).getStatus());
+        Assert.assertEquals(1, (int) preserveOtherServiceImpl.preserve(bookingRequest(oti), headers).getStatus());
+        Mockito.verify(restTemplate, Mockito.times(2)).exchange(
+                Mockito.startsWith("http://ts-order-other-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    public void testFailedPreserveIsRetried() {
+        OrderTicketsInfo oti = bookingRequest();
+        mockBooking(null);
+
+        HttpHeaders retried = new HttpHeaders();
+        retried.set(PreserveOtherServiceImpl.IDEMPOTENCY_KEY_HEADER, "booking_1");
+        Assert.assertEquals(new Response<>(0, "No seat available", null), preserveOtherServiceImpl.preserve(oti, retried));
+        Assert.assertEquals(new Response<>(0, "No seat available", null), preserveOtherServiceImpl.preserve(oti, retried));
+        Mockito.verify(restTemplate, Mockito.times(2)).exchange(
+                Mockito.startsWith("http://ts-seat-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    public void testPreserveCompletesBookingWhenPublishFails() {
+        OrderTicketsInfo oti = bookingRequest();
+        Ticket ticket = new Ticket();
+        ticket.setSeatNo(1);
+        mockBooking(ticket);
+        mockAccount();
+        Mockito.doThrow(new AmqpException("broker down")).when(sendService).sendBooking(Mockito.anyString());
+
+        Response result = preserveOtherServiceImpl.preserve(oti, headers);
+        Assert.assertEquals(new Response<>(1, "Success.", "Success"), result);
+        //the booking is completed inline: no assurance, food or consign was asked for, the notification is sent
+        Mockito.verify(sendService).send(Mockito.anyString());
+    }
+
+    @Test
+    public void testPreserveReportsStepFailingInline() {
+        OrderTicketsInfo oti = OrderTicketsInfo.builder()
+                .accountId(UUID.randomUUID().toString())
+                .contactsId(UUID.randomUUID().toString())
+                .from("from_station")
+                .to("to_station")
+                .date(StringUtils.Date2String(new Date()))
+                .tripId("Z1234")
+                .seatType(2)
+                .assurance(1)
+                .build();
+        Ticket ticket = new Ticket();
+        ticket.setSeatNo(1);
+        mockBooking(ticket);
+        mockAccount();
+        mockExchange("ts-assurance-service", new ResponseEntity<>(new Response<>(0, null, null), HttpStatus.OK));
         Mockito.when(restTemplate.exchange(
-                Mockito.anyString(),
+                Mockito.startsWith("http://ts-assurance-service:"),
                 Mockito.any(HttpMethod.class),
                 Mockito.any(HttpEntity.class),
-                Mockito.any(ParameterizedTypeReference.class)))
-                .thenReturn(re2).thenReturn(re3).thenReturn(re4).thenReturn(re4).thenReturn(re5).thenReturn(re6).thenReturn(re7).thenReturn(re8).thenReturn(re9);
+                Mockito.eq(Response.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(0, null, null), HttpStatus.OK));
+        Mockito.doThrow(new AmqpException("broker down")).when(sendService).sendBooking(Mockito.anyString());
 
         Response result = preserveOtherServiceImpl.preserve(oti, headers);
-        Assert.assertEquals(new Response<>(1, "Success.", null), result);
+        //the order is booked, the failed step is reported
+        Assert.assertEquals(new Response<>(1, "Success.But Buy Assurance Fail.", "Success"), result);
+        Mockito.verify(sendService).send(Mockito.anyString());
+    }
+
+    @Test
+    public void testCompleteBookingSkipsStepsAlreadyDone() {
+        //the assurance, food order and consign of the order are found
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.eq(HttpMethod.GET),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(1, null, null), HttpStatus.OK));
+        mockAccount();
+
+        preserveOtherServiceImpl.completeBooking(booking(), headers);
+        Mockito.verify(restTemplate, Mockito.never()).exchange(
+                Mockito.anyString(),
+                Mockito.eq(HttpMethod.POST),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(Class.class));
+        Mockito.verify(restTemplate, Mockito.never()).exchange(
+                Mockito.startsWith("http://ts-assurance-service:8080/api/v1/assuranceservice/assurances/1/"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+        Mockito.verify(sendService).send(Mockito.anyString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCompleteBookingFailingStep() {
+        //nothing is found and nothing can be created
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(0, null, null), HttpStatus.OK));
+
+        preserveOtherServiceImpl.completeBooking(booking(), headers);
+    }
+
+    @Test
+    public void testCompleteBookingRunsEveryStep() {
+        //nothing is found and the assurance cannot be bought, the food order and consign can be created
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(0, null, null), HttpStatus.OK));
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.eq(HttpMethod.POST),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(1, null, null), HttpStatus.OK));
+        mockExchange("ts-assurance-service", new ResponseEntity<>(new Response<>(0, null, null), HttpStatus.OK));
+        mockAccount();
+
+        try {
+            preserveOtherServiceImpl.completeBooking(booking(), headers);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Buy Assurance Fail.", e.getMessage());
+        }
+        Mockito.verify(restTemplate).exchange(
+                Mockito.startsWith("http://ts-food-service:"),
+                Mockito.eq(HttpMethod.POST),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class));
+        Mockito.verify(restTemplate).exchange(
+                Mockito.startsWith("http://ts-consign-service:"),
+                Mockito.eq(HttpMethod.POST),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class));
+        Mockito.verify(sendService).send(Mockito.anyString());
     }
 
     @Test
@@ -184,4 +398,88 @@ public class PreserveOtherServiceImplTest {
         Assert.assertNull(result);
     }
 
+    private OrderTicketsInfo bookingRequest() {
+        return OrderTicketsInfo.builder()
+                .accountId(UUID.randomUUID().toString())
+                .contactsId(UUID.randomUUID().toString())
+                .from("from_station")
+                .to("to_station")
+                .date(StringUtils.Date2String(new Date()))
+                .tripId("Z1234")
+                .seatType(2)
+                .build();
+    }
+
+    /**
+     * a copy of a request, as a client retrying it sends it again
+     */
+    private OrderTicketsInfo bookingRequest(OrderTicketsInfo oti) {
+        return OrderTicketsInfo.builder()
+                .accountId(oti.getAccountId())
+                .contactsId(oti.getContactsId())
+                .from(oti.getFrom())
+                .to(oti.getTo())
+                .date(oti.getDate())
+                .tripId(oti.getTripId())
+                .seatType(oti.getSeatType())
+                .build();
+    }
+
+    /**
+     * the remote steps of a booking of a trip with seats, up to the created order
+     */
+    private void mockBooking(Ticket ticket) {
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(Class.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(1, null, null), HttpStatus.OK));
+        mockExchange("ts-contacts-service", new ResponseEntity<>(new Response<>(1, null, new Contacts()), HttpStatus.OK));
+        TripResponse tripResponse = new TripResponse();
+        tripResponse.setConfortClass(1);
+        tripResponse.setEconomyClass(10);
+        tripResponse.setStartTime(StringUtils.Date2String(new Date()));
+        TravelResult travelResult = new TravelResult();
+        travelResult.setRoute(new Route());
+        travelResult.setTrainType(new TrainType());
+        travelResult.setPrices(new HashMap<>());
+        TripAllDetail tripAllDetail = new TripAllDetail(true, "message", tripResponse, new Trip(), travelResult);
+        mockExchange("ts-travel2-service", new ResponseEntity<>(new Response<>(1, null, tripAllDetail), HttpStatus.OK));
+        mockExchange("ts-seat-service", new ResponseEntity<>(new Response<>(1, null, ticket), HttpStatus.OK));
+        Order order = new Order();
+        order.setId(UUID.randomUUID().toString());
+        order.setAccountId(UUID.randomUUID().toString());
+        order.setTravelDate(StringUtils.Date2String(new Date()));
+        order.setTravelTime(StringUtils.Date2String(new Date()));
+        mockExchange("ts-order-other-service", new ResponseEntity<>(new Response<>(1, "Success", order), HttpStatus.OK));
+    }
+
+    private void mockAccount() {
+        User user = new User();
+        user.setEmail("email");
+        user.setUserName("user_name");
+        mockExchange("ts-user-service", new ResponseEntity<>(new Response<>(1, null, user), HttpStatus.OK));
+    }
+
+    private BookingCompleted booking() {
+        Order order = new Order();
+        order.setId(UUID.randomUUID().toString());
+        order.setAccountId(UUID.randomUUID().toString());
+        order.setTravelTime(StringUtils.Date2String(new Date()));
+        FoodOrder foodOrder = new FoodOrder();
+        foodOrder.setOrderId(order.getId());
+        Consign consign = new Consign();
+        consign.setOrderId(order.getId());
+        return new BookingCompleted(order, 1, foodOrder, consign);
+    }
+
+    private void mockExchange(String service, ResponseEntity<?> response) {
+        Mockito.when(restTemplate.exchange(
+                Mockito.startsWith("http://" + service + ":"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class)))
+                .thenReturn((ResponseEntity) response);
+    }
 }
@@ -1,5 +1,9 @@
 package preserve;
 
+import edu.fudan.common.security.jwt.ServiceToken;
+import edu.fudan.common.util.IdempotentRequests;
+import edu.fudan.common.util.Response;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.client.RestTemplateBuilder;
@@ -31,4 +35,22 @@ public class PreserveApplication {
         return builder.build();
     }
 
+    /**
+     * preserve requests in flight and the successful ones of the last ttl-millis, by request key
+     */
+    @Bean
+    public IdempotentRequests<Response> preserveRequests(@Value("${preserve.idempotency.maximum-size:10000}") int maximumSize,
+                                                         @Value("${preserve.idempotency.ttl-millis:600000}") long ttlMillis) {
+        return new IdempotentRequests<>("preserve", maximumSize, ttlMillis);
+    }
+
+    /**
+     * the credential the booking consumer calls the assurance, food, consign and notification
+     * services with
+     */
+    @Bean
+    public ServiceToken serviceToken(@Value("${spring.application.name:ts-preserve-service}") String service) {
+        return new ServiceToken(service, "ROLE_USER");
+    }
+
 }
@@ -36,4 +36,12 @@ public class PreserveController {
         return ok(preserveService.preserve(oti, headers));
     }
 
+    @CrossOrigin(origins = "*")
+    @PostMapping(value = "/preserve/group")
+    public HttpEntity preserveGroup(@RequestBody GroupOrderTicketsInfo gti,
+                                    @RequestHeader HttpHeaders headers) {
+        PreserveController.LOGGER.info("[preserveGroup][Preserve Account group order][from {} to {} at {}, contacts: {}]", gti.getFrom(), gti.getTo(), gti.getDate(), gti.getContactsIds());
+        return ok(preserveService.preserveGroup(gti, headers));
+    }
+
 }
@@ -0,0 +1,44 @@
+package preserve.mq;
+
+import edu.fudan.common.entity.BookingCompleted;
+import edu.fudan.common.security.jwt.ServiceToken;
+import edu.fudan.common.util.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import preserve.config.Queues;
+import preserve.service.PreserveService;
+
+@Component
+public class RabbitReceive {
+
+    private static final Logger logger = LoggerFactory.getLogger(RabbitReceive.class);
+
+    @Autowired
+    private PreserveService preserveService;
+
+    @Autowired
+    private ServiceToken serviceToken;
+
+    /**
+     * A failing step throws, so the booking is delivered again with the listener retries and
+     * then moved to the compensation queue; steps already done are skipped on redelivery.
+     */
+    @RabbitListener(queues = Queues.bookingQueueName)
+    public void process(String payload) {
+        BookingCompleted booking = JsonUtils.json2Object(payload, BookingCompleted.class);
+
+        if (booking == null || booking.getOrder() == null) {
+            logger.error("[process][json2Object][Receive booking object is null error]");
+            return;
+        }
+        logger.info("[process][Receive booking object][OrderId: {}]", booking.getOrder().getId());
+
+        //the booking user's token may have expired by now, the steps are done as this service
+        HttpHeaders headers = serviceToken.headers();
+        preserveService.completeBooking(booking, headers);
+    }
+}
@@ -1,5 +1,7 @@
 package preserve.service;
 
+import edu.fudan.common.entity.BookingCompleted;
+import edu.fudan.common.entity.GroupOrderTicketsInfo;
 import edu.fudan.common.util.Response;
 import org.springframework.http.HttpHeaders;
 import edu.fudan.common.entity.OrderTicketsInfo;
@@ -10,4 +12,18 @@ import edu.fudan.common.entity.OrderTicketsInfo;
 public interface PreserveService {
 
     Response preserve(OrderTicketsInfo oti, HttpHeaders headers);
+
+    /**
+     * Books one trip for several contacts of an account: the shared lookups run once, the seats
+     * are dispatched and the orders created in one call each.
+     */
+    Response preserveGroup(GroupOrderTicketsInfo gti, HttpHeaders headers);
+
+    /**
+     * Buys the assurance and food, adds the consign and sends the notification of a booking,
+     * skipping the steps already done for its order.
+     *
+     * @throws IllegalStateException if a step failed
+     */
+    void completeBooking(BookingCompleted booking, HttpHeaders headers);
 }
@@ -1,8 +1,10 @@
 package preserve.service;
 
+import edu.fudan.common.util.IdempotentRequests;
 import edu.fudan.common.util.JsonUtils;
 import edu.fudan.common.util.Response;
 import edu.fudan.common.util.StringUtils;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,14 +14,15 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import edu.fudan.common.entity.*;
 import preserve.mq.RabbitSend;
 
-import java.util.Date;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 /**
  * @author fdse
@@ -33,20 +36,108 @@ public class PreserveServiceImpl implements PreserveService {
     @Autowired
     private RabbitSend sendService;
 
+    @Autowired
+    private IdempotentRequests<Response> preserveRequests;
+
 
 
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PreserveServiceImpl.class);
 
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    /**
+     * how long a booking may wait for its lookups, the steps before the seat dispatch
+     */
+    private static final long PRESERVE_DEADLINE = 10000;
+
+    /**
+     * most passengers of one group booking
+     */
+    static final int MAX_GROUP_SIZE = 10;
+
+    private static final ExecutorService executorService = new ThreadPoolExecutor(16, 16, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(512), new CustomizableThreadFactory("PreserveStepThreadPool-"), new ThreadPoolExecutor.CallerRunsPolicy());
+
     private String getServiceUrl(String serviceName) {
         return "http://" + serviceName + ":8080"; }
 
     @Override
     public Response preserve(OrderTicketsInfo oti, HttpHeaders headers) {
+        //a retried booking waits for or replays the first one instead of running all its steps again
+        String key = requestKey(oti.getAccountId(), headers);
+        if (key == null) {
+            return book(oti, headers);
+        }
+        return preserveRequests.execute(key, () -> book(oti, headers), response -> response.getStatus() == 1);
+    }
+
+    @Override
+    public Response preserveGroup(GroupOrderTicketsInfo gti, HttpHeaders headers) {
+        List<String> contactsIds = gti.getContactsIds();
+        if (contactsIds == null || contactsIds.isEmpty()) {
+            PreserveServiceImpl.LOGGER.warn("[preserveGroup][No contacts][AccountId: {}]", gti.getAccountId());
+            return new Response<>(0, "No Contacts", null);
+        }
+        if (contactsIds.size() > MAX_GROUP_SIZE) {
+            PreserveServiceImpl.LOGGER.warn("[preserveGroup][Too many contacts][AccountId: {}, size: {}]", gti.getAccountId(), contactsIds.size());
+            return new Response<>(0, "At most " + MAX_GROUP_SIZE + " Contacts", null);
+        }
+        if (new HashSet<>(contactsIds).size() != contactsIds.size()) {
+            PreserveServiceImpl.LOGGER.warn("[preserveGroup][Contacts repeated][AccountId: {}, contactsIds: {}]", gti.getAccountId(), contactsIds);
+            return new Response<>(0, "Contacts Repeated", null);
+        }
+        String key = requestKey(gti.getAccountId(), headers);
+        if (key == null) {
+            return bookGroup(gti, headers);
+        }
+        return preserveRequests.execute(key, () -> bookGroup(gti, headers), response -> response.getStatus() == 1);
+    }
+
+    /**
+     * The key of a booking request: the Idempotency-Key header the client sent with all attempts
+     * of the booking, or null without one. The request itself is no key, booking the same trip
+     * again after a cancel is a new booking.
+     */
+    private static String requestKey(String accountId, HttpHeaders headers) {
+        String idempotencyKey = headers.getFirst(IDEMPOTENCY_KEY_HEADER);
+        return idempotencyKey == null ? null : accountId + ":" + idempotencyKey;
+    }
+
+    private Response book(OrderTicketsInfo oti, HttpHeaders headers) {
+        long deadline = System.currentTimeMillis() + PRESERVE_DEADLINE;
+        Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        //Steps 1 to 3 only depend on the request, so they start at once
+        TripAllDetailInfo gtdi = new TripAllDetailInfo();
+        gtdi.setFrom(oti.getFrom());
+        gtdi.setTo(oti.getTo());
+        gtdi.setTravelDate(oti.getDate());
+        gtdi.setTripId(oti.getTripId());
+        Future<Response> security = step("checkSecurity", () -> checkSecurity(oti.getAccountId(), headers), timings);
+        Future<Response<Contacts>> contacts = step("getContacts", () -> getContactsById(oti.getContactsId(), headers), timings);
+        Future<Response<TripAllDetail>> tripDetail = step("getTripAllDetail", () -> getTripAllDetailInformation(gtdi, headers), timings);
+        try {
+            return preserve(oti, gtdi, headers, security, contacts, tripDetail, deadline, timings);
+        } catch (TimeoutException e) {
+            PreserveServiceImpl.LOGGER.warn("[preserve][Deadline exceeded][deadline: {}ms, finished steps: {}]", PRESERVE_DEADLINE, timings);
+            return new Response<>(0, "Preserve timed out", null);
+        } finally {
+            //lookups no longer needed are dropped if they have not started yet
+            for (Future<?> lookup : Arrays.asList(security, contacts, tripDetail)) {
+                lookup.cancel(false);
+            }
+            PreserveServiceImpl.LOGGER.info("[preserve][Step timings][AccountId: {}, timings: {}]", oti.getAccountId(), timings);
+        }
+    }
+
+    private Response preserve(OrderTicketsInfo oti, TripAllDetailInfo gtdi, HttpHeaders headers, Future<Response> security,
+                              Future<Response<Contacts>> contacts, Future<Response<TripAllDetail>> tripDetail,
+                              long deadline, Map<String, Long> timings) throws TimeoutException {
         //1.detect ticket scalper
         //PreserveServiceImpl.LOGGER.info("[Step 1] Check Security");
 
-        Response result = checkSecurity(oti.getAccountId(), headers);
+        Response result = await(security, deadline);
         if (result.getStatus() == 0) {
             PreserveServiceImpl.LOGGER.error("[preserve][Step 1][Check Security Fail][AccountId: {}]",oti.getAccountId());
             return new Response<>(0, result.getMsg(), null);
@@ -56,7 +147,7 @@ public class PreserveServiceImpl implements PreserveService {
         //PreserveServiceImpl.LOGGER.info("[Step 2] Find contacts");
         //PreserveServiceImpl.LOGGER.info("[Step 2] Contacts Id: {}", oti.getContactsId());
 
-        Response<Contacts> gcr = getContactsById(oti.getContactsId(), headers);
+        Response<Contacts> gcr = await(contacts, deadline);
         if (gcr.getStatus() == 0) {
             PreserveServiceImpl.LOGGER.error("[preserve][Step 2][Find Contacts Fail][ContactsId: {},message: {}]",oti.getContactsId(),gcr.getMsg());
             return new Response<>(0, gcr.getMsg(), null);
@@ -64,15 +155,8 @@ public class PreserveServiceImpl implements PreserveService {
         PreserveServiceImpl.LOGGER.info("[preserve][Step 2][Find contacts Complete][ContactsId: {}]",oti.getContactsId());
         //3.Check the info of train and the number of remaining tickets
         //PreserveServiceImpl.LOGGER.info("[Step 3] Check tickets num");
-        TripAllDetailInfo gtdi = new TripAllDetailInfo();
-
-        gtdi.setFrom(oti.getFrom());
-        gtdi.setTo(oti.getTo());
-
-        gtdi.setTravelDate(oti.getDate());
-        gtdi.setTripId(oti.getTripId());
         PreserveServiceImpl.LOGGER.info("[preserve][Step 3][Check tickets num][TripId: {}]", oti.getTripId());
-        Response<TripAllDetail> response = getTripAllDetailInformation(gtdi, headers);
+        Response<TripAllDetail> response = await(tripDetail, deadline);
         TripAllDetail gtdr = response.getData();
         //LOGGER.info("TripAllDetail:" + gtdr.toString());
         if (response.getStatus() == 0) {
@@ -97,7 +181,7 @@ public class PreserveServiceImpl implements PreserveService {
         PreserveServiceImpl.LOGGER.info("[preserve][Step 3][Check tickets num][Tickets Enough]");
         //4.send the order request and set the order information
         //PreserveServiceImpl.LOGGER.info("[Step 4] Do Order");
-        Contacts contacts = gcr.getData();
+        Contacts contact = gcr.getData();
         Order order = new Order();
         UUID orderId = UUID.randomUUID();
         order.setId(orderId.toString());
@@ -111,9 +195,9 @@ public class PreserveServiceImpl implements PreserveService {
         order.setTo(toStationName);
         order.setBoughtDate(StringUtils.Date2String(new Date()));
         order.setStatus(OrderStatus.NOTPAID.getCode());
-        order.setContactsDocumentNumber(contacts.getDocumentNumber());
-        order.setContactsName(contacts.getName());
-        order.setDocumentType(contacts.getDocumentType());
+        order.setContactsDocumentNumber(contact.getDocumentNumber());
+        order.setContactsName(contact.getName());
+        order.setDocumentType(contact.getDocumentType());
 
         Travel query = new Travel();
         query.setTrip(trip);
@@ -121,42 +205,47 @@ public class PreserveServiceImpl implements PreserveService {
         query.setEndPlace(oti.getTo());
         query.setDepartureTime(StringUtils.Date2String(new Date()));
 
-        HttpEntity requestEntity = new HttpEntity(query, headers);
-        String basic_service_url = getServiceUrl("ts-basic-service");
-        ResponseEntity<Response<TravelResult>> re = restTemplate.exchange(
-                basic_service_url + "/api/v1/basicservice/basic/travel",
-                HttpMethod.POST,
-                requestEntity,
-                new ParameterizedTypeReference<Response<TravelResult>>() {
-                });
-        if(re.getBody().getStatus() == 0){
-            PreserveServiceImpl.LOGGER.info("[Preserve 3][Get basic travel response status is 0][response is: {}]", re.getBody());
-            return new Response<>(0, re.getBody().getMsg(), null);
+        //the trip detail carries the route, train type and prices it computed the tickets from;
+        //the basic service is only asked by travel services not returning them yet
+        Response<TravelResult> travelResponse = gtdr.getTravelResult() != null
+                ? new Response<>(1, "Success", gtdr.getTravelResult())
+                : await(step("getTravel", () -> getTravel(query, headers), timings), deadline);
+        if(travelResponse.getStatus() == 0){
+            PreserveServiceImpl.LOGGER.info("[Preserve 3][Get basic travel response status is 0][response is: {}]", travelResponse);
+            return new Response<>(0, travelResponse.getMsg(), null);
         }
-        TravelResult resultForTravel = re.getBody().getData();
+        TravelResult resultForTravel = travelResponse.getData();
 
         order.setSeatClass(oti.getSeatType());
         PreserveServiceImpl.LOGGER.info("[preserve][Step 4][Do Order][Travel Date][Date is: {}]", oti.getDate().toString());
         order.setTravelDate(oti.getDate());
         order.setTravelTime(gtdr.getTripResponse().getStartTime());
 
-        //Dispatch the seat
+        //Dispatch the seat, without a deadline: giving up on it could leave a seat allocated to no order
         List<String> stationList = resultForTravel.getRoute().getStations();
         if (oti.getSeatType() == SeatClass.FIRSTCLASS.getCode()) {
             int firstClassTotalNum = resultForTravel.getTrainType().getConfortClass();
-            Ticket ticket =
+            Ticket ticket = timed("dispatchSeat", () ->
                     dipatchSeat(oti.getDate(),
                             order.getTrainNumber(), fromStationName, toStationName,
-                            SeatClass.FIRSTCLASS.getCode(), firstClassTotalNum, stationList, headers);
+                            SeatClass.FIRSTCLASS.getCode(), firstClassTotalNum, stationList, headers), timings);
+            if (ticket == null) {
+                PreserveServiceImpl.LOGGER.warn("[preserve][Step 4][Do Order][No seat available][TrainNumber: {}, SeatType: {}]", order.getTrainNumber(), oti.getSeatType());
+                return new Response<>(0, "No seat available", null);
+            }
             order.setSeatNumber( ticket.getSeatNo());
             order.setSeatClass(SeatClass.FIRSTCLASS.getCode());
             order.setPrice(resultForTravel.getPrices().get("confortClass"));
         } else {
             int secondClassTotalNum = resultForTravel.getTrainType().getEconomyClass();
-            Ticket ticket =
+            Ticket ticket = timed("dispatchSeat", () ->
                     dipatchSeat(oti.getDate(),
                             order.getTrainNumber(), fromStationName, toStationName,
-                            SeatClass.SECONDCLASS.getCode(), secondClassTotalNum, stationList, headers);
+                            SeatClass.SECONDCLASS.getCode(), secondClassTotalNum, stationList, headers), timings);
+            if (ticket == null) {
+                PreserveServiceImpl.LOGGER.warn("[preserve][Step 4][Do Order][No seat available][TrainNumber: {}, SeatType: {}]", order.getTrainNumber(), oti.getSeatType());
+                return new Response<>(0, "No seat available", null);
+            }
             order.setSeatClass(SeatClass.SECONDCLASS.getCode());
             order.setSeatNumber( ticket.getSeatNo());
             order.setPrice(resultForTravel.getPrices().get("economyClass"));
@@ -164,32 +253,19 @@ public class PreserveServiceImpl implements PreserveService {
 
         PreserveServiceImpl.LOGGER.info("[preserve][Step 4][Do Order][Order Price][Price is: {}]", order.getPrice());
 
-        Response<Order> cor = createOrder(order, headers);
+        //the order is created without a deadline: giving up on it could leave an order the user does not know of
+        Response<Order> cor = timed("createOrder", () -> createOrder(order, headers), timings);
         if (cor.getStatus() == 0) {
             PreserveServiceImpl.LOGGER.error("[preserve][Step 4][Do Order][Create Order Fail][OrderId: {},  Reason: {}]", order.getId(), cor.getMsg());
             return new Response<>(0, cor.getMsg(), null);
         }
         PreserveServiceImpl.LOGGER.info("[preserve][Step 4][Do Order][Do Order Complete]");
 
-        Response returnResponse = new Response<>(1, "Success.", cor.getMsg());
-        //5.Check insurance options
-        if (oti.getAssurance() == 0) {
-            PreserveServiceImpl.LOGGER.info("[preserve][Step 5][Buy Assurance][Do not need to buy assurance]");
-        } else {
-            Response addAssuranceResult = addAssuranceForOrder(
-                    oti.getAssurance(), cor.getData().getId().toString(), headers);
-            if (addAssuranceResult.getStatus() == 1) {
-                PreserveServiceImpl.LOGGER.info("[preserve][Step 5][Buy Assurance][Preserve Buy Assurance Success]");
-            } else {
-                PreserveServiceImpl.LOGGER.warn("[preserve][Step 5][Buy Assurance][Buy Assurance Fail][assurance: {}, OrderId: {}]", oti.getAssurance(),cor.getData().getId());
-                returnResponse.setMsg("Success.But Buy Assurance Fail.");
-            }
-        }
-
-        //6.Increase the food order
+        //Steps 5 to 8 only depend on the created order, so they are left to the booking consumer
+        FoodOrder foodOrder = null;
         if (oti.getFoodType() != 0) {
 
-            FoodOrder foodOrder = new FoodOrder();
+            foodOrder = new FoodOrder();
             foodOrder.setOrderId(cor.getData().getId());
             foodOrder.setFoodType(oti.getFoodType());
             foodOrder.setFoodName(oti.getFoodName());
@@ -200,21 +276,11 @@ public class PreserveServiceImpl implements PreserveService {
                 foodOrder.setStoreName(oti.getStoreName());
                 //PreserveServiceImpl.LOGGER.info("foodstore= {}   {}   {}", foodOrder.getFoodType(), foodOrder.getStationName(), foodOrder.getStoreName());
             }
-            Response afor = createFoodOrder(foodOrder, headers);
-            if (afor.getStatus() == 1) {
-                PreserveServiceImpl.LOGGER.info("[preserve][Step 6][Buy Food][Buy Food Success]");
-            } else {
-                PreserveServiceImpl.LOGGER.error("[preserve][Step 6][Buy Food][Buy Food Fail][OrderId: {}]",cor.getData().getId());
-                returnResponse.setMsg("Success.But Buy Food Fail.");
-            }
-        } else {
-            PreserveServiceImpl.LOGGER.info("[preserve][Step 6][Buy Food][Do not need to buy food]");
         }
-
-        //7.add consign
+        Consign consignRequest = null;
         if (null != oti.getConsigneeName() && !"".equals(oti.getConsigneeName())) {
 
-            Consign consignRequest = new Consign();
+            consignRequest = new Consign();
             consignRequest.setOrderId(cor.getData().getId());
             consignRequest.setAccountId(cor.getData().getAccountId());
             consignRequest.setHandleDate(oti.getHandleDate());
@@ -226,38 +292,303 @@ public class PreserveServiceImpl implements PreserveService {
             consignRequest.setWeight(oti.getConsigneeWeight());
             consignRequest.setWithin(oti.isWithin());
             LOGGER.info("CONSIGN INFO : " +consignRequest.toString());
-            Response icresult = createConsign(consignRequest, headers);
-            if (icresult.getStatus() == 1) {
-                PreserveServiceImpl.LOGGER.info("[preserve][Step 7][Add Consign][Consign Success]");
-            } else {
-                PreserveServiceImpl.LOGGER.error("[preserve][Step 7][Add Consign][Preserve Consign Fail][OrderId: {}]", cor.getData().getId());
-                returnResponse.setMsg("Consign Fail.");
+        }
+        BookingCompleted booking = new BookingCompleted(cor.getData(), oti.getAssurance(), foodOrder, consignRequest);
+
+        Response returnResponse = new Response<>(1, "Success.", cor.getMsg());
+        String stepFailure = publishBooking(booking, headers, timings);
+        if (stepFailure != null) {
+            returnResponse.setMsg("Success.But " + stepFailure);
+        }
+
+        return returnResponse;
+    }
+
+    private Response bookGroup(GroupOrderTicketsInfo gti, HttpHeaders headers) {
+        long deadline = System.currentTimeMillis() + PRESERVE_DEADLINE;
+        Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        //the security check and trip detail are shared by the group, only the contacts are looked up per passenger
+        TripAllDetailInfo gtdi = new TripAllDetailInfo();
+        gtdi.setFrom(gti.getFrom());
+        gtdi.setTo(gti.getTo());
+        gtdi.setTravelDate(gti.getDate());
+        gtdi.setTripId(gti.getTripId());
+        List<Future<?>> lookups = new ArrayList<>();
+        Future<Response> security = step("checkSecurity", () -> checkSecurity(gti.getAccountId(), gti.getContactsIds().size(), headers), timings);
+        lookups.add(security);
+        List<Future<Response<Contacts>>> contacts = new ArrayList<>();
+        for (String contactsId : gti.getContactsIds()) {
+            Future<Response<Contacts>> contact = step("getContacts", () -> getContactsById(contactsId, headers), timings);
+            contacts.add(contact);
+            lookups.add(contact);
+        }
+        Future<Response<TripAllDetail>> tripDetail = step("getTripAllDetail", () -> getTripAllDetailInformation(gtdi, headers), timings);
+        lookups.add(tripDetail);
+        try {
+            return preserveGroup(gti, headers, security, contacts, tripDetail, deadline, timings);
+        } catch (TimeoutException e) {
+            PreserveServiceImpl.LOGGER.warn("[preserveGroup][Deadline exceeded][deadline: {}ms, finished steps: {}]", PRESERVE_DEADLINE, timings);
+            return new Response<>(0, "Preserve timed out", null);
+        } finally {
+            for (Future<?> lookup : lookups) {
+                lookup.cancel(false);
             }
-        } else {
-            PreserveServiceImpl.LOGGER.info("[preserve][Step 7][Add Consign][Do not need to consign]");
+            PreserveServiceImpl.LOGGER.info("[preserveGroup][Step timings][AccountId: {}, timings: {}]", gti.getAccountId(), timings);
         }
+    }
 
+    private Response preserveGroup(GroupOrderTicketsInfo gti, HttpHeaders headers, Future<Response> security,
+                                   List<Future<Response<Contacts>>> contacts, Future<Response<TripAllDetail>> tripDetail,
+                                   long deadline, Map<String, Long> timings) throws TimeoutException {
+        int passengers = contacts.size();
+        //1.detect ticket scalper
+        Response result = await(security, deadline);
+        if (result.getStatus() == 0) {
+            PreserveServiceImpl.LOGGER.error("[preserveGroup][Step 1][Check Security Fail][AccountId: {}]", gti.getAccountId());
+            return new Response<>(0, result.getMsg(), null);
+        }
+        //2.Querying the contacts of every passenger
+        List<Contacts> passengerContacts = new ArrayList<>(passengers);
+        for (int i = 0; i < passengers; i++) {
+            Response<Contacts> gcr = await(contacts.get(i), deadline);
+            if (gcr.getStatus() == 0) {
+                PreserveServiceImpl.LOGGER.error("[preserveGroup][Step 2][Find Contacts Fail][ContactsId: {},message: {}]", gti.getContactsIds().get(i), gcr.getMsg());
+                return new Response<>(0, gcr.getMsg(), null);
+            }
+            passengerContacts.add(gcr.getData());
+        }
+        //3.Check the info of train and that enough tickets are left for the whole group
+        Response<TripAllDetail> response = await(tripDetail, deadline);
+        if (response.getStatus() == 0) {
+            PreserveServiceImpl.LOGGER.error("[preserveGroup][Step 3][Search For Trip Detail Information error][TripId: {}, message: {}]", gti.getTripId(), response.getMsg());
+            return new Response<>(0, response.getMsg(), null);
+        }
+        TripAllDetail gtdr = response.getData();
+        boolean firstClass = gti.getSeatType() == SeatClass.FIRSTCLASS.getCode();
+        TripResponse tripResponse = gtdr.getTripResponse();
+        if ((firstClass ? tripResponse.getConfortClass() : tripResponse.getEconomyClass()) < passengers) {
+            PreserveServiceImpl.LOGGER.warn("[preserveGroup][Step 3][Check seat is Not enough][TripId: {}, passengers: {}]", gti.getTripId(), passengers);
+            return new Response<>(0, "Seat Not Enough", null);
+        }
+        Travel query = new Travel();
+        query.setTrip(gtdr.getTrip());
+        query.setStartPlace(gti.getFrom());
+        query.setEndPlace(gti.getTo());
+        query.setDepartureTime(StringUtils.Date2String(new Date()));
+        Response<TravelResult> travelResponse = gtdr.getTravelResult() != null
+                ? new Response<>(1, "Success", gtdr.getTravelResult())
+                : await(step("getTravel", () -> getTravel(query, headers), timings), deadline);
+        if (travelResponse.getStatus() == 0) {
+            PreserveServiceImpl.LOGGER.info("[preserveGroup][Step 3][Get basic travel response status is 0][response is: {}]", travelResponse);
+            return new Response<>(0, travelResponse.getMsg(), null);
+        }
+        TravelResult resultForTravel = travelResponse.getData();
+
+        //4.Dispatch the seats of the group in one call, then create all its orders in one call
+        int seatClass = firstClass ? SeatClass.FIRSTCLASS.getCode() : SeatClass.SECONDCLASS.getCode();
+        int totalNum = firstClass ? resultForTravel.getTrainType().getConfortClass() : resultForTravel.getTrainType().getEconomyClass();
+        //without a deadline: giving up on the call could leave seats allocated to no order
+        List<Ticket> tickets = timed("dispatchSeats", () ->
+                dispatchSeats(gti.getDate(), gti.getTripId(), gti.getFrom(), gti.getTo(), seatClass, totalNum,
+                        resultForTravel.getRoute().getStations(), passengers, headers), timings);
+        if (tickets == null || tickets.size() != passengers) {
+            PreserveServiceImpl.LOGGER.warn("[preserveGroup][Step 4][No seats available][TrainNumber: {}, SeatType: {}, passengers: {}]", gti.getTripId(), seatClass, passengers);
+            return new Response<>(0, "No seat available", null);
+        }
+        String price = resultForTravel.getPrices().get(firstClass ? "confortClass" : "economyClass");
+        List<Order> orders = new ArrayList<>(passengers);
+        for (int i = 0; i < passengers; i++) {
+            Contacts contact = passengerContacts.get(i);
+            Order order = new Order();
+            order.setId(UUID.randomUUID().toString());
+            order.setTrainNumber(gti.getTripId());
+            order.setAccountId(gti.getAccountId());
+            order.setFrom(gti.getFrom());
+            order.setTo(gti.getTo());
+            order.setBoughtDate(StringUtils.Date2String(new Date()));
+            order.setStatus(OrderStatus.NOTPAID.getCode());
+            order.setContactsDocumentNumber(contact.getDocumentNumber());
+            order.setContactsName(contact.getName());
+            order.setDocumentType(contact.getDocumentType());
+            order.setTravelDate(gti.getDate());
+            order.setTravelTime(tripResponse.getStartTime());
+            order.setSeatClass(seatClass);
+            order.setSeatNumber(tickets.get(i).getSeatNo());
+            order.setPrice(price);
+            orders.add(order);
+        }
+        //the orders are created without a deadline: giving up on them could leave orders the user does not know of
+        Response<List<Order>> cor = timed("createOrders", () -> createOrders(orders, headers), timings);
+        if (cor.getStatus() == 0) {
+            PreserveServiceImpl.LOGGER.error("[preserveGroup][Step 4][Create Orders Fail][AccountId: {}, Reason: {}]", gti.getAccountId(), cor.getMsg());
+            return new Response<>(0, cor.getMsg(), null);
+        }
+        PreserveServiceImpl.LOGGER.info("[preserveGroup][Step 4][Do Orders Complete][passengers: {}]", passengers);
+
+        //Steps 5 to 8 of every order are left to the booking consumer
+        Response returnResponse = new Response<>(1, "Success.", cor.getData());
+        for (Order order : cor.getData()) {
+            String stepFailure = publishBooking(new BookingCompleted(order, gti.getAssurance(), null, null), headers, timings);
+            if (stepFailure != null && returnResponse.getMsg().equals("Success.")) {
+                returnResponse.setMsg("Success.But " + stepFailure);
+            }
+        }
+        return returnResponse;
+    }
+
+    /**
+     * Publishes a booking to the booking consumer, or completes it here when it cannot be
+     * published: its order is committed, so its steps must not be lost with the message.
+     *
+     * @return null, or what failed when the booking was completed here
+     */
+    private String publishBooking(BookingCompleted booking, HttpHeaders headers, Map<String, Long> timings) {
+        String orderId = booking.getOrder().getId();
+        try {
+            timed("publishBooking", () -> {
+                sendService.sendBooking(JsonUtils.object2Json(booking));
+                return null;
+            }, timings);
+            PreserveServiceImpl.LOGGER.info("[publishBooking][Step 5][Booking published][OrderId: {}]", orderId);
+            return null;
+        } catch (RuntimeException e) {
+            PreserveServiceImpl.LOGGER.warn("[publishBooking][Step 5][Publish booking fail][complete it now][OrderId: {}, error: {}]", orderId, e.toString());
+        }
+        try {
+            completeBooking(booking, headers);
+            return null;
+        } catch (IllegalStateException stepFailure) {
+            return stepFailure.getMessage();
+        } catch (RuntimeException stepFailure) {
+            PreserveServiceImpl.LOGGER.error("[publishBooking][Step 5][Complete booking fail][OrderId: {}, error: {}]", orderId, stepFailure.toString());
+            return "Complete Booking Fail.";
+        }
+    }
+
+    @Override
+    public void completeBooking(BookingCompleted booking, HttpHeaders headers) {
+        Order order = booking.getOrder();
+        //the steps do not depend on each other, so a failing one does not keep the others from running
+        List<String> failures = new ArrayList<>();
+        //5.Check insurance options
+        completeStep("Buy Assurance Fail.", () -> buyAssurance(booking, headers), order, failures);
+        //6.Increase the food order
+        completeStep("Buy Food Fail.", () -> buyFood(booking, headers), order, failures);
+        //7.add consign
+        completeStep("Consign Fail.", () -> addConsign(booking, headers), order, failures);
         //8.send notification
+        completeStep("Send Notification Fail.", () -> sendNotification(order, headers), order, failures);
+        if (!failures.isEmpty()) {
+            PreserveServiceImpl.LOGGER.error("[completeBooking][Steps failed][OrderId: {}, failures: {}]", order.getId(), failures);
+            throw new IllegalStateException(String.join(" ", failures));
+        }
+    }
 
-        User getUser = getAccount(order.getAccountId().toString(), headers);
+    private static void completeStep(String failure, Supplier<Boolean> step, Order order, List<String> failures) {
+        try {
+            if (step.get()) {
+                return;
+            }
+        } catch (RuntimeException e) {
+            PreserveServiceImpl.LOGGER.error("[completeStep][{}][OrderId: {}, error: {}]", failure, order.getId(), e.toString());
+        }
+        failures.add(failure);
+    }
 
-        NotifyInfo notifyInfo = new NotifyInfo();
-        notifyInfo.setDate(new Date().toString());
+    private boolean buyAssurance(BookingCompleted booking, HttpHeaders headers) {
+        Order order = booking.getOrder();
+        if (booking.getAssurance() == 0) {
+            PreserveServiceImpl.LOGGER.info("[completeBooking][Step 5][Buy Assurance][Do not need to buy assurance]");
+        } else if (getAssuranceByOrderId(order.getId(), headers).getStatus() == 1) {
+            PreserveServiceImpl.LOGGER.info("[completeBooking][Step 5][Buy Assurance][Assurance already bought][OrderId: {}]", order.getId());
+        } else {
+            Response addAssuranceResult = addAssuranceForOrder(booking.getAssurance(), order.getId(), headers);
+            if (addAssuranceResult.getStatus() != 1) {
+                PreserveServiceImpl.LOGGER.warn("[completeBooking][Step 5][Buy Assurance][Buy Assurance Fail][assurance: {}, OrderId: {}]", booking.getAssurance(), order.getId());
+                return false;
+            }
+            PreserveServiceImpl.LOGGER.info("[completeBooking][Step 5][Buy Assurance][Preserve Buy Assurance Success]");
+        }
+        return true;
+    }
 
-        notifyInfo.setEmail(getUser.getEmail());
-        notifyInfo.setStartPlace(order.getFrom());
-        notifyInfo.setEndPlace(order.getTo());
-        notifyInfo.setUsername(getUser.getUserName());
-        notifyInfo.setSeatNumber(order.getSeatNumber());
-        notifyInfo.setOrderNumber(order.getId().toString());
-        notifyInfo.setPrice(order.getPrice());
-        notifyInfo.setSeatClass(SeatClass.getNameByCode(order.getSeatClass()));
-        notifyInfo.setStartTime(order.getTravelTime().toString());
+    private boolean buyFood(BookingCompleted booking, HttpHeaders headers) {
+        Order order = booking.getOrder();
+        if (booking.getFoodOrder() == null) {
+            PreserveServiceImpl.LOGGER.info("[completeBooking][Step 6][Buy Food][Do not need to buy food]");
+        } else if (getFoodOrderByOrderId(order.getId(), headers).getStatus() == 1) {
+            PreserveServiceImpl.LOGGER.info("[completeBooking][Step 6][Buy Food][Food already bought][OrderId: {}]", order.getId());
+        } else {
+            Response afor = createFoodOrder(booking.getFoodOrder(), headers);
+            if (afor.getStatus() != 1) {
+                PreserveServiceImpl.LOGGER.error("[completeBooking][Step 6][Buy Food][Buy Food Fail][OrderId: {}]", order.getId());
+                return false;
+            }
+            PreserveServiceImpl.LOGGER.info("[completeBooking][Step 6][Buy Food][Buy Food Success]");
+        }
+        return true;
+    }
 
-        // TODO: change to async message serivce
-        // sendEmail(notifyInfo, headers);
+    private boolean addConsign(BookingCompleted booking, HttpHeaders headers) {
+        Order order = booking.getOrder();
+        if (booking.getConsign() == null) {
+            PreserveServiceImpl.LOGGER.info("[completeBooking][Step 7][Add Consign][Do not need to consign]");
+        } else if (getConsignByOrderId(order.getId(), headers).getStatus() == 1) {
+            PreserveServiceImpl.LOGGER.info("[completeBooking][Step 7][Add Consign][Consign already added][OrderId: {}]", order.getId());
+        } else {
+            Response icresult = createConsign(booking.getConsign(), headers);
+            if (icresult.getStatus() != 1) {
+                PreserveServiceImpl.LOGGER.error("[completeBooking][Step 7][Add Consign][Preserve Consign Fail][OrderId: {}]", order.getId());
+                return false;
+            }
+            PreserveServiceImpl.LOGGER.info("[completeBooking][Step 7][Add Consign][Consign Success]");
+        }
+        return true;
+    }
 
-        return returnResponse;
+    /**
+     * Runs a step on the step executor, reporting its time under the step name.
+     */
+    private <V> Future<V> step(String name, Supplier<V> call, Map<String, Long> timings) {
+        return executorService.submit(() -> timed(name, call, timings));
+    }
+
+    private <V> V timed(String name, Supplier<V> call, Map<String, Long> timings) {
+        long begin = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            long elapsed = System.nanoTime() - begin;
+            timings.put(name, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            Metrics.timer("preserve.step", "step", name).record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private <V> V await(Future<V> future, long deadline) throws TimeoutException {
+        try {
+            return future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Response<TravelResult> getTravel(Travel query, HttpHeaders headers) {
+        HttpEntity requestEntity = new HttpEntity(query, headers);
+        String basic_service_url = getServiceUrl("ts-basic-service");
+        ResponseEntity<Response<TravelResult>> re = restTemplate.exchange(
+                basic_service_url + "/api/v1/basicservice/basic/travel",
+                HttpMethod.POST,
+                requestEntity,
+                new ParameterizedTypeReference<Response<TravelResult>>() {
+                });
+        return re.getBody();
     }
 
     public Ticket dipatchSeat(String date, String tripId, String startStation, String endStataion, int seatType, int totalNum, List<String> stationList, HttpHeaders httpHeaders) {
@@ -282,6 +613,49 @@ public class PreserveServiceImpl implements PreserveService {
         return reTicket.getBody().getData();
     }
 
+    /**
+     * count seats of one interval from a single seat service call, adjacent where possible
+     *
+     * @return the tickets, or null when fewer than count seats are left
+     */
+    public List<Ticket> dispatchSeats(String date, String tripId, String startStation, String endStation, int seatType, int totalNum,
+                                      List<String> stationList, int count, HttpHeaders httpHeaders) {
+        Seat seatRequest = new Seat(date, tripId, startStation, endStation, seatType, totalNum, stationList);
+
+        HttpEntity requestEntityTicket = new HttpEntity(seatRequest, httpHeaders);
+        String seat_service_url = getServiceUrl("ts-seat-service");
+        ResponseEntity<Response<List<Ticket>>> reTickets = restTemplate.exchange(
+                seat_service_url + "/api/v1/seatservice/seats/batch?count=" + count,
+                HttpMethod.POST,
+                requestEntityTicket,
+                new ParameterizedTypeReference<Response<List<Ticket>>>() {
+                });
+
+        return reTickets.getBody().getData();
+    }
+
+    /**
+     * Notifies the booking user of an order; the account is only fetched here, for its email and name.
+     */
+    public boolean sendNotification(Order order, HttpHeaders httpHeaders) {
+        User getUser = getAccount(order.getAccountId(), httpHeaders);
+
+        NotifyInfo notifyInfo = new NotifyInfo();
+        notifyInfo.setDate(new Date().toString());
+
+        notifyInfo.setEmail(getUser.getEmail());
+        notifyInfo.setStartPlace(order.getFrom());
+        notifyInfo.setEndPlace(order.getTo());
+        notifyInfo.setUsername(getUser.getUserName());
+        notifyInfo.setSeatNumber(order.getSeatNumber());
+        notifyInfo.setOrderNumber(order.getId().toString());
+        notifyInfo.setPrice(order.getPrice());
+        notifyInfo.setSeatClass(SeatClass.getNameByCode(order.getSeatClass()));
+        notifyInfo.setStartTime(order.getTravelTime().toString());
+
+        return sendEmail(notifyInfo, httpHeaders);
+    }
+
     public boolean sendEmail(NotifyInfo notifyInfo, HttpHeaders httpHeaders) {
         try {
             String infoJson = JsonUtils.object2Json(notifyInfo);
@@ -373,12 +747,19 @@ public class PreserveServiceImpl implements PreserveService {
     }
 
     private Response checkSecurity(String accountId, HttpHeaders httpHeaders) {
-        PreserveServiceImpl.LOGGER.info("[checkSecurity][Preserve Other Service][Check Account Security]");
+        return checkSecurity(accountId, 1, httpHeaders);
+    }
+
+    /**
+     * The anti-scalper check for count orders of one booking, all of which must fit the limits.
+     */
+    private Response checkSecurity(String accountId, int count, HttpHeaders httpHeaders) {
+        PreserveServiceImpl.LOGGER.info("[checkSecurity][Preserve Other Service][Check Account Security][count: {}]", count);
 
         HttpEntity requestCheckResult = new HttpEntity(httpHeaders);
         String security_service_url = getServiceUrl("ts-security-service");
         ResponseEntity<Response> reCheckResult = restTemplate.exchange(
-                security_service_url + "/api/v1/securityservice/securityConfigs/" + accountId,
+                security_service_url + "/api/v1/securityservice/securityConfigs/" + accountId + "?count=" + count,
                 HttpMethod.GET,
                 requestCheckResult,
                 Response.class);
@@ -433,6 +814,21 @@ public class PreserveServiceImpl implements PreserveService {
         return reCreateOrderResult.getBody();
     }
 
+    private Response<List<Order>> createOrders(List<Order> orders, HttpHeaders httpHeaders) {
+        PreserveServiceImpl.LOGGER.info("[createOrders][Preserve Service][create orders][size: {}]", orders.size());
+
+        HttpEntity requestEntityCreateOrdersResult = new HttpEntity(orders, httpHeaders);
+        String order_service_url = getServiceUrl("ts-order-service");
+        ResponseEntity<Response<List<Order>>> reCreateOrdersResult = restTemplate.exchange(
+                order_service_url + "/api/v1/orderservice/order/batch",
+                HttpMethod.POST,
+                requestEntityCreateOrdersResult,
+                new ParameterizedTypeReference<Response<List<Order>>>() {
+                });
+
+        return reCreateOrdersResult.getBody();
+    }
+
     private Response createFoodOrder(FoodOrder afi, HttpHeaders httpHeaders) {
         PreserveServiceImpl.LOGGER.info("[createFoodOrder][Preserve Service][Add Preserve food Order]");
 
@@ -460,4 +856,39 @@ public class PreserveServiceImpl implements PreserveService {
         return reResultForTravel.getBody();
     }
 
+    private Response getAssuranceByOrderId(String orderId, HttpHeaders httpHeaders) {
+        PreserveServiceImpl.LOGGER.info("[getAssuranceByOrderId][Preserve Service][Get Assurance By Order Id]");
+        HttpEntity requestEntity = new HttpEntity(httpHeaders);
+        String assurance_service_url = getServiceUrl("ts-assurance-service");
+        ResponseEntity<Response> re = restTemplate.exchange(
+                assurance_service_url + "/api/v1/assuranceservice/assurances/orderid/" + orderId,
+                HttpMethod.GET,
+                requestEntity,
+                Response.class);
+        return re.getBody();
+    }
+
+    private Response getFoodOrderByOrderId(String orderId, HttpHeaders httpHeaders) {
+        PreserveServiceImpl.LOGGER.info("[getFoodOrderByOrderId][Preserve Service][Get Food Order By Order Id]");
+        HttpEntity requestEntity = new HttpEntity(httpHeaders);
+        String food_service_url = getServiceUrl("ts-food-service");
+        ResponseEntity<Response> re = restTemplate.exchange(
+                food_service_url + "/api/v1/foodservice/orders/" + orderId,
+                HttpMethod.GET,
+                requestEntity,
+                Response.class);
+        return re.getBody();
+    }
+
+    private Response getConsignByOrderId(String orderId, HttpHeaders httpHeaders) {
+        PreserveServiceImpl.LOGGER.info("[getConsignByOrderId][Preserve Service][Get Consign By Order Id]");
+        HttpEntity requestEntity = new HttpEntity(httpHeaders);
+        String consign_service_url = getServiceUrl("ts-consign-service");
+        ResponseEntity<Response> re = restTemplate.exchange(
+                consign_service_url + "/api/v1/consignservice/consigns/order/" + orderId,
+                HttpMethod.GET,
+                requestEntity,
+                Response.class);
+        return re.getBody();
+    }
 }
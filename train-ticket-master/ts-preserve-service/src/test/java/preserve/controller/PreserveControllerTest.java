@@ -16,6 +16,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import edu.fudan.common.entity.GroupOrderTicketsInfo;
 import edu.fudan.common.entity.OrderTicketsInfo;
 import preserve.service.PreserveService;
 
@@ -54,4 +55,15 @@ public class PreserveControllerTest {
         Assert.assertEquals(response, JSONObject.parseObject(result, Response.class));
     }
 
+    @Test
+    public void testPreserveGroup() throws Exception {
+        GroupOrderTicketsInfo gti = new GroupOrderTicketsInfo();
+        Mockito.when(preserveService.preserveGroup(Mockito.any(GroupOrderTicketsInfo.class), Mockito.any(HttpHeaders.class))).thenReturn(response);
+        String requestJson = JSONObject.toJSONString(gti);
+        String result = mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/preserveservice/preserve/group").contentType(MediaType.APPLICATION_JSON).content(requestJson))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        Assert.assertEquals(response, JSONObject.parseObject(result, Response.class));
+    }
+
 }
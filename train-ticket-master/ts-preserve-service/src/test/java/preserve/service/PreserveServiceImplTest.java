@@ -13,11 +13,16 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 import edu.fudan.common.entity.*;
+import edu.fudan.common.util.IdempotentRequests;
+import preserve.mq.RabbitSend;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.UUID;
 
 @RunWith(JUnit4.class)
@@ -29,12 +34,16 @@ public class PreserveServiceImplTest {
     @Mock
     private RestTemplate restTemplate;
 
+    @Mock
+    private RabbitSend sendService;
+
     private HttpHeaders headers = new HttpHeaders();
     private HttpEntity requestEntity = new HttpEntity(headers);
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(preserveServiceImpl, "preserveRequests", new IdempotentRequests<Response>("preserve", 100, 60000));
     }
 
     @Test
@@ -67,12 +76,13 @@ public class PreserveServiceImplTest {
         //response for sendEmail()
         ResponseEntity<Boolean> re10 = new ResponseEntity<>(true, HttpStatus.OK);
 
+        //the independent steps run concurrently, so responses are matched by url rather than by call order
         Mockito.when(restTemplate.exchange(
                 Mockito.anyString(),
                 Mockito.any(HttpMethod.class),
                 Mockito.any(HttpEntity.class),
                 Mockito.any(Class.class)))
-                .thenReturn(re1).thenReturn(re1).thenReturn(re1).thenReturn(re1).thenReturn(re10);
+                .thenReturn(re1);
 
 
         //response for getContactsById()
@@ -98,7 +108,9 @@ public class PreserveServiceImplTest {
         //response for travel result
         TravelResult travelResult = new TravelResult();
         travelResult.setPrices( new HashMap<String, String>(){{ put("confortClass", "1.0"); }} );
-        Response<TravelResult> response5 = new Response<>(null, null, travelResult);
+        travelResult.setRoute(new Route());
+        travelResult.setTrainType(new TrainType());
+        Response<TravelResult> response5 = new Response<>(1, null, travelResult);
         ResponseEntity<Response<TravelResult>> re5 = new ResponseEntity<>(response5, HttpStatus.OK);
 
         //response for dipatchSeat()
@@ -124,15 +136,258 @@ public class PreserveServiceImplTest {
         Response<User> response9 = new Response<>(1, null, user);
         ResponseEntity<Response<User>> re9 = new ResponseEntity<>(response9, HttpStatus.OK);
 
+        mockExchange("ts-contacts-service", re2);
+        mockExchange("ts-travel-service", re3);
+        mockExchange("ts-station-service", re4);
+        mockExchange("ts-basic-service", re5);
+        mockExchange("ts-seat-service", re6);
+        mockExchange("ts-order-service", re7);
+        mockExchange("ts-user-service", re9);
+
+        Response result = preserveServiceImpl.preserve(oti, headers);
+        Assert.assertEquals(new Response<>(1, "Success.", null), result);
+        //assurance, food and consign are left to the booking consumer
+        Mockito.verify(sendService).sendBooking(Mockito.contains(order.getId()));
+        Mockito.verify(restTemplate, Mockito.never()).exchange(
+                Mockito.startsWith("http://ts-assurance-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(Class.class));
+        //the account is only needed by the notification, which is not sent
+        Mockito.verify(restTemplate, Mockito.never()).exchange(
+                Mockito.startsWith("http://ts-user-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    public void testPreserveReusesTravelResultOfTripDetail() {
+        OrderTicketsInfo oti = OrderTicketsInfo.builder()
+                .accountId(UUID.randomUUID().toString())
+                .contactsId(UUID.randomUUID().toString())
+                .from("from_station")
+                .to("to_station")
+                .date(StringUtils.Date2String(new Date()))
+                .tripId("G1255")
+                .seatType(2)
+                .build();
         Mockito.when(restTemplate.exchange(
                 Mockito.anyString(),
                 Mockito.any(HttpMethod.class),
                 Mockito.any(HttpEntity.class),
-                Mockito.any(ParameterizedTypeReference.class)))
-                .thenReturn(re2).thenReturn(re3).thenReturn(re4).thenReturn(re4).thenReturn(re5).thenReturn(re6).thenReturn(re7).thenReturn(re9);
+                Mockito.any(Class.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(1, null, null), HttpStatus.OK));
+        mockExchange("ts-contacts-service", new ResponseEntity<>(new Response<>(1, null, new Contacts()), HttpStatus.OK));
+        TripResponse tripResponse = new TripResponse();
+        tripResponse.setConfortClass(1);
+        TravelResult travelResult = new TravelResult();
+        travelResult.setRoute(new Route());
+        travelResult.setTrainType(new TrainType());
+        TripAllDetail tripAllDetail = new TripAllDetail(true, "message", tripResponse, new Trip(), travelResult);
+        mockExchange("ts-travel-service", new ResponseEntity<>(new Response<>(1, null, tripAllDetail), HttpStatus.OK));
+        mockExchange("ts-seat-service", new ResponseEntity<>(new Response<>(1, null, null), HttpStatus.OK));
 
         Response result = preserveServiceImpl.preserve(oti, headers);
-        Assert.assertEquals(new Response<>(1, "Success.", null), result);
+        Assert.assertEquals(new Response<>(0, "No seat available", null), result);
+        Mockito.verify(restTemplate, Mockito.never()).exchange(
+                Mockito.startsWith("http://ts-basic-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    public void testRepeatedPreserveIsReplayed() {
+        OrderTicketsInfo oti = bookingRequest();
+        Ticket ticket = new Ticket();
+        ticket.setSeatNo(1);
+        mockBooking(ticket);
+
+        HttpHeaders retried = new HttpHeaders();
+        retried.set(PreserveServiceImpl.IDEMPOTENCY_KEY_HEADER, "booking_1");
+        Response first = preserveServiceImpl.preserve(oti, retried);
+        Response second = preserveServiceImpl.preserve(bookingRequest(oti), retried);
+        Assert.assertEquals(1, (int) first.getStatus());
+        Assert.assertSame(first, second);
+        Mockito.verify(restTemplate, Mockito.times(1)).exchange(
+                Mockito.startsWith("http://ts-order-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    public void testSamePreserveWithoutKeyIsBookedAgain() {
+        //booking the same trip again, e.g. after cancelling the first order, is a new booking
+        OrderTicketsInfo oti = bookingRequest();
+        Ticket ticket = new Ticket();
+        ticket.setSeatNo(1);
+        mockBooking(ticket);
+
+        Assert.assertEquals(1, (int) preserveServiceImpl.preserve(oti, headers).getStatus());
+        Assert.assertEquals(1, (int) preserveServiceImpl.preserve(bookingRequest(oti), headers).getStatus());
+        Mockito.verify(restTemplate, Mockito.times(2)).exchange(
+                Mockito.startsWith("http://ts-order-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    public void testFailedPreserveIsRetried() {
+        OrderTicketsInfo oti = bookingRequest();
+        mockBooking(null);
+
+        HttpHeaders retried = new HttpHeaders();
+        retried.set(PreserveServiceImpl.IDEMPOTENCY_KEY_HEADER, "booking_1");
+        Assert.assertEquals(new Response<>(0, "No seat available", null), preserveServiceImpl.preserve(oti, retried));
+        Assert.assertEquals(new Response<>(0, "No seat available", null), preserveServiceImpl.preserve(oti, retried));
+        Mockito.verify(restTemplate, Mockito.times(2)).exchange(
+                Mockito.startsWith("http://ts-seat-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    public void testPreserveGroup() {
+        GroupOrderTicketsInfo gti = GroupOrderTicketsInfo.builder()
+                .accountId(UUID.randomUUID().toString())
+                .contactsIds(Arrays.asList("contacts_1", "contacts_2"))
+                .from("from_station")
+                .to("to_station")
+                .date(StringUtils.Date2String(new Date()))
+                .tripId("G1255")
+                .seatType(SeatClass.SECONDCLASS.getCode())
+                .build();
+        mockBooking(null);
+        mockExchange("ts-seat-service", new ResponseEntity<>(new Response<>(1, null, Arrays.asList(
+                new Ticket(3, "from_station", "to_station"), new Ticket(4, "from_station", "to_station"))), HttpStatus.OK));
+        List<Order> orders = Arrays.asList(new Order(), new Order());
+        orders.forEach(order -> order.setId(UUID.randomUUID().toString()));
+        mockExchange("ts-order-service", new ResponseEntity<>(new Response<>(1, "Success", orders), HttpStatus.OK));
+
+        Response result = preserveServiceImpl.preserveGroup(gti, headers);
+        Assert.assertEquals(new Response<>(1, "Success.", orders), result);
+        //the trip and security lookups are shared, the contacts are looked up per passenger
+        Mockito.verify(restTemplate, Mockito.times(2)).exchange(
+                Mockito.startsWith("http://ts-contacts-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+        Mockito.verify(restTemplate, Mockito.times(1)).exchange(
+                Mockito.startsWith("http://ts-travel-service:"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+        Mockito.verify(restTemplate, Mockito.times(1)).exchange(
+                Mockito.eq("http://ts-seat-service:8080/api/v1/seatservice/seats/batch?count=2"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+        Mockito.verify(restTemplate, Mockito.times(1)).exchange(
+                Mockito.eq("http://ts-order-service:8080/api/v1/orderservice/order/batch"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+        Mockito.verify(sendService, Mockito.times(2)).sendBooking(Mockito.anyString());
+        //the limits are checked for both orders of the group
+        Mockito.verify(restTemplate, Mockito.times(1)).exchange(
+                Mockito.endsWith("/securityConfigs/" + gti.getAccountId() + "?count=2"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class));
+    }
+
+    @Test
+    public void testPreserveGroupRepeatedContacts() {
+        GroupOrderTicketsInfo gti = GroupOrderTicketsInfo.builder()
+                .accountId(UUID.randomUUID().toString())
+                .contactsIds(Arrays.asList("contacts_1", "contacts_1"))
+                .build();
+        Assert.assertEquals(new Response<>(0, "Contacts Repeated", null), preserveServiceImpl.preserveGroup(gti, headers));
+        Mockito.verifyZeroInteractions(restTemplate);
+    }
+
+    @Test
+    public void testCompleteBookingSkipsStepsAlreadyDone() {
+        //the assurance, food order and consign of the order are found
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.eq(HttpMethod.GET),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(1, null, null), HttpStatus.OK));
+        User user = new User();
+        user.setEmail("email");
+        user.setUserName("user_name");
+        mockExchange("ts-user-service", new ResponseEntity<>(new Response<>(1, null, user), HttpStatus.OK));
+
+        preserveServiceImpl.completeBooking(booking(), headers);
+        Mockito.verify(restTemplate, Mockito.never()).exchange(
+                Mockito.anyString(),
+                Mockito.eq(HttpMethod.POST),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(Class.class));
+        Mockito.verify(restTemplate, Mockito.never()).exchange(
+                Mockito.startsWith("http://ts-assurance-service:8080/api/v1/assuranceservice/assurances/1/"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(Class.class));
+        Mockito.verify(sendService).send(Mockito.anyString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCompleteBookingFailingStep() {
+        //nothing is found and nothing can be created
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(0, null, null), HttpStatus.OK));
+
+        preserveServiceImpl.completeBooking(booking(), headers);
+    }
+
+    @Test
+    public void testCompleteBookingRunsEveryStep() {
+        //nothing is found and the assurance cannot be bought, the food order and consign can be created
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(0, null, null), HttpStatus.OK));
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.eq(HttpMethod.POST),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(1, null, null), HttpStatus.OK));
+        User user = new User();
+        user.setEmail("email");
+        user.setUserName("user_name");
+        mockExchange("ts-user-service", new ResponseEntity<>(new Response<>(1, null, user), HttpStatus.OK));
+
+        try {
+            preserveServiceImpl.completeBooking(booking(), headers);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Buy Assurance Fail.", e.getMessage());
+        }
+        Mockito.verify(restTemplate).exchange(
+                Mockito.startsWith("http://ts-food-service:"),
+                Mockito.eq(HttpMethod.POST),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class));
+        Mockito.verify(restTemplate).exchange(
+                Mockito.startsWith("http://ts-consign-service:"),
+                Mockito.eq(HttpMethod.POST),
+                Mockito.any(HttpEntity.class),
+                Mockito.eq(Response.class));
+        Mockito.verify(sendService).send(Mockito.anyString());
     }
 
     @Test
@@ -180,4 +435,78 @@ public class PreserveServiceImplTest {
         Assert.assertNull(result);
     }
 
+    private OrderTicketsInfo bookingRequest() {
+        return OrderTicketsInfo.builder()
+                .accountId(UUID.randomUUID().toString())
+                .contactsId(UUID.randomUUID().toString())
+                .from("from_station")
+                .to("to_station")
+                .date(StringUtils.Date2String(new Date()))
+                .tripId("G1255")
+                .seatType(2)
+                .build();
+    }
+
+    /**
+     * a copy of a request, as a client retrying it sends it again
+     */
+    private OrderTicketsInfo bookingRequest(OrderTicketsInfo oti) {
+        return OrderTicketsInfo.builder()
+                .accountId(oti.getAccountId())
+                .contactsId(oti.getContactsId())
+                .from(oti.getFrom())
+                .to(oti.getTo())
+                .date(oti.getDate())
+                .tripId(oti.getTripId())
+                .seatType(oti.getSeatType())
+                .build();
+    }
+
+    /**
+     * the remote steps of a booking of a trip with seats, up to the created order
+     */
+    private void mockBooking(Ticket ticket) {
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(Class.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(1, null, null), HttpStatus.OK));
+        mockExchange("ts-contacts-service", new ResponseEntity<>(new Response<>(1, null, new Contacts()), HttpStatus.OK));
+        TripResponse tripResponse = new TripResponse();
+        tripResponse.setConfortClass(1);
+        tripResponse.setEconomyClass(10);
+        TravelResult travelResult = new TravelResult();
+        travelResult.setRoute(new Route());
+        travelResult.setTrainType(new TrainType());
+        travelResult.setPrices(new HashMap<>());
+        TripAllDetail tripAllDetail = new TripAllDetail(true, "message", tripResponse, new Trip(), travelResult);
+        mockExchange("ts-travel-service", new ResponseEntity<>(new Response<>(1, null, tripAllDetail), HttpStatus.OK));
+        mockExchange("ts-seat-service", new ResponseEntity<>(new Response<>(1, null, ticket), HttpStatus.OK));
+        Order order = new Order();
+        order.setId(UUID.randomUUID().toString());
+        order.setTravelDate(StringUtils.Date2String(new Date()));
+        mockExchange("ts-order-service", new ResponseEntity<>(new Response<>(1, "Success", order), HttpStatus.OK));
+    }
+
+    private BookingCompleted booking() {
+        Order order = new Order();
+        order.setId(UUID.randomUUID().toString());
+        order.setAccountId(UUID.randomUUID().toString());
+        order.setTravelTime(StringUtils.Date2String(new Date()));
+        FoodOrder foodOrder = new FoodOrder();
+        foodOrder.setOrderId(order.getId());
+        Consign consign = new Consign();
+        consign.setOrderId(order.getId());
+        return new BookingCompleted(order, 1, foodOrder, consign);
+    }
+
+    private void mockExchange(String service, ResponseEntity<?> response) {
+        Mockito.when(restTemplate.exchange(
+                Mockito.startsWith("http://" + service + ":"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class)))
+                .thenReturn((ResponseEntity) response);
+    }
 }
@@ -1,8 +1,8 @@
 package plan.service;
 
 import edu.fudan.common.entity.*;
+import edu.fudan.common.util.DateUtils;
 import edu.fudan.common.util.Response;
-import edu.fudan.common.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,7 +15,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 /**
@@ -112,6 +111,12 @@ public class RoutePlanServiceImpl implements RoutePlanService {
             finalResult.add(tr);
         }
 
+        // parse every trip once instead of once per selection round
+        ArrayList<Long> durations = new ArrayList<>(finalResult.size());
+        for (TripResponse tr : finalResult) {
+            durations.add(DateUtils.toEpochMilli(tr.getEndTime()) - DateUtils.toEpochMilli(tr.getStartTime()));
+        }
+
         long minTime;
         int minIndex = -1;
         int size = Math.min(finalResult.size(), 5);
@@ -120,16 +125,14 @@ public class RoutePlanServiceImpl implements RoutePlanService {
 
             minTime = Long.MAX_VALUE;
             for (int j = 0; j < finalResult.size(); j++) {
-                TripResponse thisRes = finalResult.get(j);
-                Date endTime = StringUtils.String2Date(thisRes.getEndTime());
-                Date startTime = StringUtils.String2Date(thisRes.getStartTime());
-                if (endTime.getTime() - startTime.getTime() < minTime) {
-                    minTime = endTime.getTime() - startTime.getTime();
+                if (durations.get(j) < minTime) {
+                    minTime = durations.get(j);
                     minIndex = j;
                 }
             }
             returnResult.add(finalResult.get(minIndex));
             finalResult.remove(minIndex);
+            durations.remove(minIndex);
 
         }
 
@@ -1,5 +1,6 @@
 package seat;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.client.RestTemplateBuilder;
@@ -10,6 +11,7 @@ import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.integration.annotation.IntegrationComponentScan;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.web.client.RestTemplate;
+import seat.service.SeatInventory;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
 /**
@@ -30,4 +32,13 @@ public class SeatApplication {
     public RestTemplate restTemplate(RestTemplateBuilder builder) {
         return builder.build();
     }
+
+    /**
+     * seat inventories are reloaded from the order services after max-age-millis, bounding the
+     * drift caused by orders that are cancelled or never saved
+     */
+    @Bean
+    public SeatInventory seatInventory(@Value("${seat.inventory.max-age-millis:60000}") long maxAgeMillis) {
+        return new SeatInventory(maxAgeMillis);
+    }
 }
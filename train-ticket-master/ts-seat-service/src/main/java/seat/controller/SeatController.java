@@ -9,6 +9,8 @@ import org.springframework.web.bind.annotation.*;
 import edu.fudan.common.entity.Seat;
 import seat.service.SeatService;
 
+import java.util.List;
+
 import static org.springframework.http.ResponseEntity.ok;
 
 /**
@@ -42,6 +44,22 @@ public class SeatController {
         return ok(seatService.distributeSeat(seatRequest, headers));
     }
 
+    /**
+     * Assign count seats of one interval by seat request, adjacent where possible
+     *
+     * @param seatRequest seat request
+     * @param count number of seats
+     * @param headers headers
+     * @return HttpEntity
+     */
+    @CrossOrigin(origins = "*")
+    @PostMapping(value = "/seats/batch")
+    public HttpEntity createBatch(@RequestBody Seat seatRequest, @RequestParam(value = "count") int count,
+                                  @RequestHeader HttpHeaders headers) {
+        SeatController.LOGGER.info("[distributeSeats][Create seats][TravelDate: {},TrainNumber: {},SeatType: {},Count: {}]",seatRequest.getTravelDate(),seatRequest.getTrainNumber(),seatRequest.getSeatType(),count);
+        return ok(seatService.distributeSeats(seatRequest, count, headers));
+    }
+
     /**
      * get left ticket of interval
      * query specific interval residual
@@ -58,4 +76,19 @@ public class SeatController {
         return ok(seatService.getLeftTicketOfInterval(seatRequest, headers));
     }
 
+    /**
+     * get left tickets of several intervals in one call,
+     * the result list keeps the order of the requests
+     *
+     * @param seatRequests seat requests
+     * @param headers headers
+     * @return HttpEntity
+     */
+    @CrossOrigin(origins = "*")
+    @PostMapping(value = "/seats/left_tickets/batch")
+    public HttpEntity getLeftTicketOfIntervals(@RequestBody List<Seat> seatRequests, @RequestHeader HttpHeaders headers) {
+        SeatController.LOGGER.info("[getLeftTicketOfIntervals][Get left tickets of intervals][Requests: {}]", seatRequests.size());
+        return ok(seatService.getLeftTicketOfIntervals(seatRequests, headers));
+    }
+
 }
@@ -0,0 +1,50 @@
+package seat.mq;
+
+import edu.fudan.common.entity.OrderEvent;
+import edu.fudan.common.entity.OrderEventType;
+import edu.fudan.common.entity.Ticket;
+import edu.fudan.common.util.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.listener.ListenerContainerConsumerFailedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import seat.service.SeatInventory;
+
+@Component
+public class RabbitReceive {
+
+    private static final Logger logger = LoggerFactory.getLogger(RabbitReceive.class);
+
+    @Autowired
+    private SeatInventory seatInventory;
+
+    /**
+     * Adds the seat of every order created or changed by any replica to the seat inventories.
+     */
+    @RabbitListener(queues = "#{orderEventsQueue.name}")
+    public void process(String payload) {
+        OrderEvent event = JsonUtils.json2Object(payload, OrderEvent.class);
+
+        if (event == null || event.getTrainNumber() == null) {
+            logger.error("[process][json2Object][Receive order event is null error]");
+            return;
+        }
+        if ((event.getType() == OrderEventType.CREATED || event.getType() == OrderEventType.UPDATED) && event.getSeatNumber() > 0) {
+            logger.debug("[process][Receive order event][type: {}, OrderId: {}, seat: {}]", event.getType(), event.getOrderId(), event.getSeatNumber());
+            seatInventory.sold(event.getTrainNumber(), event.getTravelDate(),
+                    new Ticket(event.getSeatNumber(), event.getFrom(), event.getTo(), event.getSeatClass()));
+        }
+    }
+
+    /**
+     * Sales may have been missed while the consumer was down, so the inventories are loaded again.
+     */
+    @EventListener
+    public void onConsumerFailed(ListenerContainerConsumerFailedEvent event) {
+        logger.warn("[onConsumerFailed][Order event consumer failed][seat inventories loaded again][{}]", event.getReason());
+        seatInventory.clear();
+    }
+}
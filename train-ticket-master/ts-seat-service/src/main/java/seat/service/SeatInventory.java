@@ -0,0 +1,356 @@
+package seat.service;
+
+import edu.fudan.common.entity.SeatClass;
+import edu.fudan.common.entity.Ticket;
+import edu.fudan.common.util.DateUtils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory seat inventory of every (train, date, seat class) seen by this service.
+ *
+ * Each inventory keeps one bitset per route segment (station i to station i + 1) over
+ * the seats, bit n - 1 set meaning seat n is taken on that segment. OR-ing the segments of
+ * an interval gives the seats that are taken somewhere inside it, so allocation is the
+ * first clear bit and the number of left tickets is the seat count minus its popcount.
+ *
+ * An inventory starts from the tickets sold when it is loaded. The seats allocated here and
+ * the sales of other replicas, learnt from the order events, are added to it as they happen
+ * and kept as recent sales of the train for maxAgeMillis, so that an inventory loaded from
+ * order stores that do not have them yet still gets them. Two replicas can still hand out the
+ * same seat when both allocate it before the order event of either arrives, and seats of
+ * bookings that failed stay taken until the inventory is reloaded.
+ *
+ * @author fdse
+ */
+public class SeatInventory {
+
+    public static class TrainSeats {
+        private final List<String> stations;
+        private final int totalNum;
+        private final BitSet[] segments;
+        private final long loadedAt;
+
+        TrainSeats(List<String> stations, int totalNum) {
+            this.stations = new ArrayList<>(stations);
+            this.totalNum = totalNum;
+            this.segments = new BitSet[Math.max(stations.size() - 1, 0)];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = new BitSet(totalNum);
+            }
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        boolean matches(List<String> stations, int totalNum) {
+            return this.totalNum == totalNum && this.stations.equals(stations);
+        }
+
+        boolean isExpired(long maxAgeMillis) {
+            return System.currentTimeMillis() - loadedAt > maxAgeMillis;
+        }
+
+        /**
+         * Mark a sold ticket; stations not on the route make it block the whole route.
+         */
+        synchronized void occupy(Ticket ticket) {
+            int seat = ticket.getSeatNo() - 1;
+            if (seat < 0 || seat >= totalNum) {
+                return;
+            }
+            int from = stations.indexOf(ticket.getStartStation());
+            int to = stations.indexOf(ticket.getDestStation());
+            if (from < 0 || to < 0 || from >= to) {
+                from = 0;
+                to = segments.length;
+            }
+            for (int i = from; i < to; i++) {
+                segments[i].set(seat);
+            }
+        }
+
+        /**
+         * Mark the sold tickets of the seat class and those without a seat class.
+         */
+        synchronized void occupy(Collection<Ticket> soldTickets, int seatClass) {
+            for (Ticket ticket : soldTickets) {
+                if (ticket.getSeatClass() == SeatClass.NONE.getCode() || ticket.getSeatClass() == seatClass) {
+                    occupy(ticket);
+                }
+            }
+        }
+
+        /**
+         * Take the lowest seat free on every segment between the two stations.
+         *
+         * @return the seat number, or 0 when the interval is sold out
+         */
+        public synchronized int allocate(String startStation, String destStation) {
+            int from = stations.indexOf(startStation);
+            int to = stations.indexOf(destStation);
+            if (from < 0 || to <= from) {
+                return 0;
+            }
+            int seat = taken(from, to).nextClearBit(0);
+            if (seat >= totalNum) {
+                return 0;
+            }
+            for (int i = from; i < to; i++) {
+                segments[i].set(seat);
+            }
+            return seat + 1;
+        }
+
+        /**
+         * Take count seats free on every segment between the two stations: the lowest run of
+         * adjacent free seats when there is one, else the lowest free seats. Nothing is taken
+         * unless all count seats are free.
+         *
+         * @return the seat numbers, or an empty array when fewer than count seats are left
+         */
+        public synchronized int[] allocate(String startStation, String destStation, int count) {
+            int from = stations.indexOf(startStation);
+            int to = stations.indexOf(destStation);
+            if (from < 0 || to <= from || count <= 0) {
+                return new int[0];
+            }
+            BitSet taken = taken(from, to);
+            if (totalNum - taken.cardinality() < count) {
+                return new int[0];
+            }
+            int[] seats = new int[count];
+            int run = adjacentRun(taken, count);
+            for (int i = 0, seat = run; i < count; i++, seat++) {
+                if (run < 0) {
+                    seat = taken.nextClearBit(i == 0 ? 0 : seats[i - 1]);
+                }
+                seats[i] = seat + 1;
+                for (int segment = from; segment < to; segment++) {
+                    segments[segment].set(seat);
+                }
+            }
+            return seats;
+        }
+
+        /**
+         * The first seat of the lowest run of count free seats, or -1 when there is none.
+         */
+        private int adjacentRun(BitSet taken, int count) {
+            int start = taken.nextClearBit(0);
+            while (start + count <= totalNum) {
+                int end = taken.nextSetBit(start);
+                if (end < 0 || end - start >= count) {
+                    return start;
+                }
+                start = taken.nextClearBit(end);
+            }
+            return -1;
+        }
+
+        public synchronized int countLeft(String startStation, String destStation) {
+            int from = stations.indexOf(startStation);
+            int to = stations.indexOf(destStation);
+            if (from < 0 || to <= from) {
+                return 0;
+            }
+            return totalNum - taken(from, to).cardinality();
+        }
+
+        private BitSet taken(int from, int to) {
+            BitSet taken = new BitSet(totalNum);
+            for (int i = from; i < to; i++) {
+                taken.or(segments[i]);
+            }
+            return taken;
+        }
+    }
+
+    private static final class Sale {
+        final Ticket ticket;
+        final long at;
+
+        Sale(Ticket ticket, long at) {
+            this.ticket = ticket;
+            this.at = at;
+        }
+    }
+
+    private final long maxAgeMillis;
+
+    private final Map<String, TrainSeats> inventories = new ConcurrentHashMap<>();
+
+    /**
+     * tickets sold in the last maxAgeMillis by train key, oldest first; guarded by the lock of
+     * the train key
+     */
+    private final Map<String, List<Sale>> recentSales = new ConcurrentHashMap<>();
+
+    private final Object[] locks = new Object[64];
+
+    /**
+     * @param maxAgeMillis how long an inventory is used before it is loaded again
+     */
+    public SeatInventory(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public static String key(String trainNumber, String travelDate, int seatClass) {
+        return trainKey(trainNumber, travelDate) + ":" + seatClass;
+    }
+
+    /**
+     * Key of the inventories of every seat class of a train and date; dates are keyed by day,
+     * however the order or the request wrote them.
+     */
+    static String trainKey(String trainNumber, String travelDate) {
+        Long time = travelDate == null ? null : DateUtils.toEpochMilliOrNull(travelDate);
+        return trainNumber + ":" + (time == null ? travelDate : DateUtils.format(time).substring(0, 10));
+    }
+
+    private static String trainKeyOf(String key) {
+        return key.substring(0, key.lastIndexOf(':'));
+    }
+
+    /**
+     * Lock held while installing an inventory, allocating from it or adding a sale of its train,
+     * so that no allocation or sale is lost to an inventory loaded at the same time. It is never
+     * held across a remote call.
+     */
+    private Object lockFor(String trainKey) {
+        return locks[(trainKey.hashCode() & 0x7fffffff) % locks.length];
+    }
+
+    /**
+     * The inventory for key, or null when it was never loaded, is older than maxAgeMillis
+     * or was loaded for another route or seat count.
+     */
+    public TrainSeats get(String key, List<String> stations, int totalNum) {
+        TrainSeats seats = inventories.get(key);
+        if (seats == null || seats.isExpired(maxAgeMillis) || !seats.matches(stations, totalNum)) {
+            return null;
+        }
+        return seats;
+    }
+
+    /**
+     * Builds the inventory for key from the tickets sold so far and the recent sales of its
+     * train, unless another request installed a current one since the sold tickets were read.
+     * Tickets of another seat class are skipped, tickets without a seat class are counted for
+     * every class.
+     */
+    public TrainSeats load(String key, List<String> stations, int totalNum, int seatClass, Collection<Ticket> soldTickets) {
+        String trainKey = trainKeyOf(key);
+        TrainSeats seats;
+        synchronized (lockFor(trainKey)) {
+            seats = get(key, stations, totalNum);
+            if (seats != null) {
+                return seats;
+            }
+            seats = new TrainSeats(stations, totalNum);
+            if (soldTickets != null) {
+                seats.occupy(soldTickets, seatClass);
+            }
+            for (Sale sale : recentSales.getOrDefault(trainKey, Collections.emptyList())) {
+                seats.occupy(Collections.singletonList(sale.ticket), seatClass);
+            }
+            inventories.put(key, seats);
+        }
+        evictExpired();
+        return seats;
+    }
+
+    /**
+     * Takes the lowest seat free between the two stations from the current inventory for key,
+     * or seats when there is none, and keeps it as a recent sale.
+     *
+     * @return the seat number, or 0 when the interval is sold out
+     */
+    public int allocate(String key, TrainSeats seats, int seatClass, String startStation, String destStation) {
+        int[] allocated = allocate(key, seats, seatClass, startStation, destStation, 1);
+        return allocated.length == 0 ? 0 : allocated[0];
+    }
+
+    /**
+     * Takes count seats free between the two stations as TrainSeats.allocate does, from the
+     * current inventory for key, or seats when there is none, and keeps them as recent sales.
+     *
+     * @return the seat numbers, or an empty array when fewer than count seats are left
+     */
+    public int[] allocate(String key, TrainSeats seats, int seatClass, String startStation, String destStation, int count) {
+        String trainKey = trainKeyOf(key);
+        synchronized (lockFor(trainKey)) {
+            TrainSeats current = inventories.getOrDefault(key, seats);
+            int[] allocated = count == 1
+                    ? single(current.allocate(startStation, destStation))
+                    : current.allocate(startStation, destStation, count);
+            for (int seat : allocated) {
+                addSale(trainKey, new Ticket(seat, startStation, destStation, seatClass));
+            }
+            return allocated;
+        }
+    }
+
+    private static int[] single(int seat) {
+        return seat == 0 ? new int[0] : new int[]{seat};
+    }
+
+    /**
+     * Adds a ticket sold by any replica to the inventories of its train and keeps it as a recent
+     * sale for the inventories loaded next.
+     */
+    public void sold(String trainNumber, String travelDate, Ticket ticket) {
+        String trainKey = trainKey(trainNumber, travelDate);
+        synchronized (lockFor(trainKey)) {
+            addSale(trainKey, ticket);
+            for (SeatClass seatClass : SeatClass.values()) {
+                TrainSeats seats = inventories.get(trainKey + ":" + seatClass.getCode());
+                if (seats != null) {
+                    seats.occupy(Collections.singletonList(ticket), seatClass.getCode());
+                }
+            }
+        }
+    }
+
+    private void addSale(String trainKey, Ticket ticket) {
+        long now = System.currentTimeMillis();
+        List<Sale> sales = recentSales.computeIfAbsent(trainKey, k -> new ArrayList<>());
+        sales.removeIf(sale -> sale.at <= now - maxAgeMillis);
+        sales.add(new Sale(ticket, now));
+    }
+
+    /**
+     * Drops every inventory, for when sales may have been missed; they are loaded again from the
+     * order stores on their next use.
+     */
+    public void clear() {
+        inventories.clear();
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        inventories.entrySet().removeIf(entry -> entry.getValue().isExpired(maxAgeMillis));
+        for (String trainKey : recentSales.keySet()) {
+            synchronized (lockFor(trainKey)) {
+                List<Sale> sales = recentSales.get(trainKey);
+                if (sales != null) {
+                    sales.removeIf(sale -> sale.at <= now - maxAgeMillis);
+                    if (sales.isEmpty()) {
+                        recentSales.remove(trainKey);
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return inventories.size();
+    }
+}
@@ -4,11 +4,15 @@ import edu.fudan.common.util.Response;
 import org.springframework.http.HttpHeaders;
 import edu.fudan.common.entity.Seat;
 
+import java.util.List;
+
 /**
  * @author fdse
  */
 public interface SeatService {
 
     Response distributeSeat(Seat seatRequest, HttpHeaders headers);
+    Response distributeSeats(Seat seatRequest, int count, HttpHeaders headers);
     Response getLeftTicketOfInterval(Seat seatRequest, HttpHeaders headers);
+    Response getLeftTicketOfIntervals(List<Seat> seatRequests, HttpHeaders headers);
 }
@@ -1,5 +1,7 @@
 package seat.service;
 
+import edu.fudan.common.order.OrderShard;
+import edu.fudan.common.order.OrderShardClient;
 import edu.fudan.common.util.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,9 +16,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import edu.fudan.common.entity.*;
 
-import java.util.List;
-import java.util.Random;
-import java.util.Set;
+import java.util.*;
 
 /**
  * @author fdse
@@ -26,192 +26,127 @@ public class SeatServiceImpl implements SeatService {
     @Autowired
     RestTemplate restTemplate;
 
+    @Autowired
+    private OrderShardClient orderShardClient;
 
+    @Autowired
+    private SeatInventory seatInventory;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SeatServiceImpl.class);
 
-    private String getServiceUrl(String serviceName) {
-        return "http://" + serviceName + ":8080";
-    }
-
     @Override
     public Response distributeSeat(Seat seatRequest, HttpHeaders headers) {
-        Response<Route> routeResult;
-
-        LeftTicketInfo leftTicketInfo;
-        TrainType trainTypeResult = null;
-        ResponseEntity<Response<Route>> re;
-        ResponseEntity<Response<TrainType>> re2;
-        ResponseEntity<Response<LeftTicketInfo>> re3;
-
-        //Distinguish G\D from other trains
-        String trainNumber = seatRequest.getTrainNumber();
-
-        if (trainNumber.startsWith("G") || trainNumber.startsWith("D")) {
-            SeatServiceImpl.LOGGER.info("[distributeSeat][TrainNumber start][G or D]");
-
-            HttpEntity requestEntity = new HttpEntity(null);
-            //Call the microservice to query for residual Ticket information: the set of the Ticket sold for the specified seat type
-            requestEntity = new HttpEntity(seatRequest, null);
-            String order_service_url=getServiceUrl("ts-order-service");
-            re3 = restTemplate.exchange(
-                    order_service_url + "/api/v1/orderservice/order/tickets",
-                    HttpMethod.POST,
-                    requestEntity,
-                    new ParameterizedTypeReference<Response<LeftTicketInfo>>() {
-                    });
-            SeatServiceImpl.LOGGER.info("[distributeSeat][Left ticket info][info is : {}]", re3.getBody().toString());
-            leftTicketInfo = re3.getBody().getData();
-        } else {
-            SeatServiceImpl.LOGGER.info("[distributeSeat][TrainNumber start][Other Capital Except D and G]");
-            //Call the microservice to query for residual Ticket information: the set of the Ticket sold for the specified seat type
-            HttpEntity requestEntity = new HttpEntity(seatRequest, null);
-            String order_other_service_url=getServiceUrl("ts-order-other-service");
-            re3 = restTemplate.exchange(
-                    order_other_service_url + "/api/v1/orderOtherService/orderOther/tickets",
-                    HttpMethod.POST,
-                    requestEntity,
-                    new ParameterizedTypeReference<Response<LeftTicketInfo>>() {
-                    });
-            SeatServiceImpl.LOGGER.info("[distributeSeat][Left ticket info][info is : {}]", re3.getBody().toString());
-            leftTicketInfo = re3.getBody().getData();
-        }
-
-        //Assign seats
-        List<String> stationList = seatRequest.getStations();
-
-        int seatTotalNum = seatRequest.getTotalNum();
         String startStation = seatRequest.getStartStation();
         Ticket ticket = new Ticket();
         ticket.setStartStation(startStation);
         ticket.setDestStation(seatRequest.getDestStation());
-
-        //Assign new tickets
-        Random rand = new Random();
-        int range = seatTotalNum;
-        int seat = rand.nextInt(range) + 1;
-
-        if(leftTicketInfo != null) {
-            Set<Ticket> soldTickets = leftTicketInfo.getSoldTickets();
-            //Give priority to tickets already sold
-            for (Ticket soldTicket : soldTickets) {
-                String soldTicketDestStation = soldTicket.getDestStation();
-                //Tickets can be allocated if the sold ticket's end station before the start station of the request
-                if (stationList.indexOf(soldTicketDestStation) < stationList.indexOf(startStation)) {
-                    ticket.setSeatNo(soldTicket.getSeatNo());
-                    SeatServiceImpl.LOGGER.info("[distributeSeat][Assign new tickets][Use the previous distributed seat number][seat number:{}]", soldTicket.getSeatNo());
-                    return new Response<>(1, "Use the previous distributed seat number!", ticket);
-                }
-            }
-            while (isContained(soldTickets, seat)) {
-                seat = rand.nextInt(range) + 1;
-            }
+        ticket.setSeatClass(seatRequest.getSeatType());
+
+        //Assign the lowest seat that is free on every segment of the interval
+        SeatInventory.TrainSeats trainSeats = getTrainSeats(seatRequest, new HashMap<>(), true, headers);
+        int seat = seatInventory.allocate(inventoryKey(seatRequest), trainSeats, seatRequest.getSeatType(),
+                startStation, seatRequest.getDestStation());
+        if (seat == 0) {
+            SeatServiceImpl.LOGGER.warn("[distributeSeat][Assign new tickets][No seat available][trainNumber: {}, travelDate: {}, seatType: {}]",
+                    seatRequest.getTrainNumber(), seatRequest.getTravelDate(), seatRequest.getSeatType());
+            return new Response<>(0, "No seat available", null);
         }
         ticket.setSeatNo(seat);
         SeatServiceImpl.LOGGER.info("[distributeSeat][Assign new tickets][Use a new seat number][seat number:{}]", seat);
         return new Response<>(1, "Use a new seat number!", ticket);
     }
 
-    private boolean isContained(Set<Ticket> soldTickets, int seat) {
-        //Check that the seat number has been used
-        boolean result = false;
-        for (Ticket soldTicket : soldTickets) {
-            if (soldTicket.getSeatNo() == seat) {
-                return true;
-            }
+    @Override
+    public Response distributeSeats(Seat seatRequest, int count, HttpHeaders headers) {
+        //Assign all the seats of a group under one inventory lock, next to each other where possible
+        SeatInventory.TrainSeats trainSeats = getTrainSeats(seatRequest, new HashMap<>(), true, headers);
+        int[] seats = seatInventory.allocate(inventoryKey(seatRequest), trainSeats, seatRequest.getSeatType(),
+                seatRequest.getStartStation(), seatRequest.getDestStation(), count);
+        if (seats.length == 0) {
+            SeatServiceImpl.LOGGER.warn("[distributeSeats][Assign new tickets][No seats available][trainNumber: {}, travelDate: {}, seatType: {}, count: {}]",
+                    seatRequest.getTrainNumber(), seatRequest.getTravelDate(), seatRequest.getSeatType(), count);
+            return new Response<>(0, "No seat available", null);
+        }
+        List<Ticket> tickets = new ArrayList<>(seats.length);
+        for (int seat : seats) {
+            tickets.add(new Ticket(seat, seatRequest.getStartStation(), seatRequest.getDestStation(), seatRequest.getSeatType()));
         }
-        return result;
+        SeatServiceImpl.LOGGER.info("[distributeSeats][Assign new tickets][Use new seat numbers][seat numbers:{}]", Arrays.toString(seats));
+        return new Response<>(1, "Use new seat numbers!", tickets);
     }
 
     @Override
     public Response getLeftTicketOfInterval(Seat seatRequest, HttpHeaders headers) {
-        int numOfLeftTicket = 0;
-        LeftTicketInfo leftTicketInfo;
-        ResponseEntity<Response<LeftTicketInfo>> re3;
-
-        //Distinguish G\D from other trains
-        String trainNumber = seatRequest.getTrainNumber();
         SeatServiceImpl.LOGGER.info("[getLeftTicketOfInterval][Seat request][request:{}]", seatRequest.toString());
-        if (trainNumber.startsWith("G") || trainNumber.startsWith("D")) {
-            SeatServiceImpl.LOGGER.info("[getLeftTicketOfInterval][TrainNumber start with G|D][trainNumber:{}]", trainNumber);
-
-            //Call the micro service to query all the station information for the trains
-            HttpEntity requestEntity = new HttpEntity(seatRequest, null);
-            String order_service_url=getServiceUrl("ts-order-service");
-            re3 = restTemplate.exchange(
-                    order_service_url + "/api/v1/orderservice/order/tickets",
-                    HttpMethod.POST,
-                    requestEntity,
-                    new ParameterizedTypeReference<Response<LeftTicketInfo>>() {
-                    });
-
-            SeatServiceImpl.LOGGER.info("[getLeftTicketOfInterval][Get Order tickets result][result is {}]", re3);
-            leftTicketInfo = re3.getBody().getData();
-        } else {
-            SeatServiceImpl.LOGGER.info("[getLeftTicketOfInterval][TrainNumber start with other capital][trainNumber:{}]", trainNumber);
-            //Call the micro service to query all the station information for the trains
-            HttpEntity requestEntity = new HttpEntity(null);
-            //Call the micro service to query for residual Ticket information: the set of the Ticket sold for the specified seat type
-            requestEntity = new HttpEntity(seatRequest, null);
-            String order_other_service_url=getServiceUrl("ts-order-other-service");
-            re3 = restTemplate.exchange(
-                    order_other_service_url + "/api/v1/orderOtherService/orderOther/tickets",
-                    HttpMethod.POST,
-                    requestEntity,
-                    new ParameterizedTypeReference<Response<LeftTicketInfo>>() {
-                    });
-            SeatServiceImpl.LOGGER.info("[getLeftTicketOfInterval][Get Order tickets result][result is {}]", re3);
-            leftTicketInfo = re3.getBody().getData();
-        }
+        int numOfLeftTicket = countLeftTickets(seatRequest, new HashMap<>(), true, headers);
+        return new Response<>(1, "Get Left Ticket of Internal Success", numOfLeftTicket);
+    }
 
-        //Counting the seats remaining in certain sections
-        List<String> stationList = seatRequest.getStations();
-        int seatTotalNum = seatRequest.getTotalNum();
-        int solidTicketSize = 0;
-        if (leftTicketInfo != null) {
-            String startStation = seatRequest.getStartStation();
-            Set<Ticket> soldTickets = leftTicketInfo.getSoldTickets();
-            solidTicketSize = soldTickets.size();
-            //To find out if tickets already sold are available
-            for (Ticket soldTicket : soldTickets) {
-                String soldTicketDestStation = soldTicket.getDestStation();
-                //Tickets can be allocated if the sold ticket's end station before the start station of the request
-                if (stationList.indexOf(soldTicketDestStation) < stationList.indexOf(startStation)) {
-                    SeatServiceImpl.LOGGER.info("[getLeftTicketOfInterval][Ticket available or sold][The previous distributed seat number is usable][{}]", soldTicket.getSeatNo());
-                    numOfLeftTicket++;
-                }
-            }
+    @Override
+    public Response getLeftTicketOfIntervals(List<Seat> seatRequests, HttpHeaders headers) {
+        SeatServiceImpl.LOGGER.info("[getLeftTicketOfIntervals][Seat requests][size:{}]", seatRequests.size());
+        List<Integer> result = new ArrayList<>(seatRequests.size());
+        //Sold tickets of every seat class come in one order query, so fetch them at most once per train and date
+        Map<String, SoldTickets> soldTicketsOfTrain = new HashMap<>();
+        for (Seat seatRequest : seatRequests) {
+            result.add(countLeftTickets(seatRequest, soldTicketsOfTrain, false, headers));
         }
-        //Count the unsold tickets
-
-        double direstPart = getDirectProportion(headers);
+        return new Response<>(1, "Get Left Ticket of Internal Success", result);
+    }
 
-        if (stationList.get(0).equals(seatRequest.getStartStation()) &&
-                stationList.get(stationList.size() - 1).equals(seatRequest.getDestStation())) {
-            //do nothing
-        } else {
-            direstPart = 1.0 - direstPart;
-        }
+    private int countLeftTickets(Seat seatRequest, Map<String, SoldTickets> soldTicketsOfTrain, boolean singleClass, HttpHeaders headers) {
+        return getTrainSeats(seatRequest, soldTicketsOfTrain, singleClass, headers)
+                .countLeft(seatRequest.getStartStation(), seatRequest.getDestStation());
+    }
 
-        int unusedNum = (int) (seatTotalNum * direstPart) - solidTicketSize;
-        numOfLeftTicket += unusedNum;
+    private String inventoryKey(Seat seatRequest) {
+        return SeatInventory.key(seatRequest.getTrainNumber(), seatRequest.getTravelDate(), seatRequest.getSeatType());
+    }
 
-        return new Response<>(1, "Get Left Ticket of Internal Success", numOfLeftTicket);
+    /**
+     * The seat inventory of the requested train, date and seat class, (re)loaded from the
+     * sold tickets of the order service when missing, expired or built for another route; no
+     * lock is held while the sold tickets are read. With singleClass only the sold tickets
+     * of the requested seat class are fetched, otherwise those of every class are fetched once
+     * per train and date and shared through soldTicketsOfTrain.
+     */
+    private SeatInventory.TrainSeats getTrainSeats(Seat seatRequest, Map<String, SoldTickets> soldTicketsOfTrain,
+                                                   boolean singleClass, HttpHeaders headers) {
+        String key = inventoryKey(seatRequest);
+        List<String> stations = seatRequest.getStations() == null ? Collections.emptyList() : seatRequest.getStations();
+        SeatInventory.TrainSeats seats = seatInventory.get(key, stations, seatRequest.getTotalNum());
+        if (seats == null) {
+            Integer seatClass = singleClass ? seatRequest.getSeatType() : null;
+            String trainKey = seatRequest.getTrainNumber() + ":" + seatRequest.getTravelDate() + ":" + seatClass;
+            if (!soldTicketsOfTrain.containsKey(trainKey)) {
+                soldTicketsOfTrain.put(trainKey, getSoldTickets(seatRequest, seatClass, headers));
+            }
+            SoldTickets soldTickets = soldTicketsOfTrain.get(trainKey);
+            SeatServiceImpl.LOGGER.info("[getTrainSeats][Load seat inventory][key: {}]", key);
+            seats = seatInventory.load(key, stations, seatRequest.getTotalNum(), seatRequest.getSeatType(),
+                    soldTickets == null ? null : soldTickets.toTickets());
+        }
+        return seats;
     }
 
-    private double getDirectProportion(HttpHeaders headers) {
+    private SoldTickets getSoldTickets(Seat seatRequest, Integer seatClass, HttpHeaders headers) {
+        ResponseEntity<Response<SoldTickets>> re3;
+        String query = seatClass == null ? "" : "?seatClass=" + seatClass;
 
-        String configName = "DirectTicketAllocationProportion";
-        HttpEntity requestEntity = new HttpEntity(null);
-        String config_service_url = getServiceUrl("ts-config-service");
-        ResponseEntity<Response<Config>> re = restTemplate.exchange(
-                config_service_url + "/api/v1/configservice/configs/" + configName,
-                HttpMethod.GET,
+        //The order shard holding the train has its sold tickets
+        String trainNumber = seatRequest.getTrainNumber();
+        OrderShard shard = orderShardClient.route(trainNumber);
+        SeatServiceImpl.LOGGER.info("[getSoldTickets][Query order shard][trainNumber: {}, shard: {}]", trainNumber, shard);
+        HttpEntity requestEntity = new HttpEntity(seatRequest, null);
+        re3 = restTemplate.exchange(
+                shard.url("/tickets/compact" + query),
+                HttpMethod.POST,
                 requestEntity,
-                new ParameterizedTypeReference<Response<Config>>() {
+                new ParameterizedTypeReference<Response<SoldTickets>>() {
                 });
-        Response<Config> configValue = re.getBody();
-        SeatServiceImpl.LOGGER.info("[getDirectProportion][Configs is : {}]", configValue.getData().toString());
-        return Double.parseDouble(configValue.getData().getValue());
+        SoldTickets soldTickets = re3.getBody().getData();
+        SeatServiceImpl.LOGGER.info("[getSoldTickets][Get Order tickets result][trainNumber: {}, seatClass: {}, size: {}]",
+                trainNumber, seatClass, soldTickets == null ? 0 : soldTickets.size());
+        return soldTickets;
     }
-}
\ No newline at end of file
+}
@@ -19,6 +19,9 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import edu.fudan.common.entity.Seat;
 import seat.service.SeatService;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @RunWith(JUnit4.class)
 public class SeatControllerTest {
 
@@ -65,4 +68,16 @@ public class SeatControllerTest {
         Assert.assertEquals(response, JSONObject.parseObject(result, Response.class));
     }
 
+    @Test
+    public void testGetLeftTicketOfIntervals() throws Exception {
+        List<Seat> seatRequests = new ArrayList<>();
+        seatRequests.add(new Seat());
+        Mockito.when(seatService.getLeftTicketOfIntervals(Mockito.anyList(), Mockito.any(HttpHeaders.class))).thenReturn(response);
+        String requestJson = JSONObject.toJSONString(seatRequests);
+        String result = mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/seatservice/seats/left_tickets/batch").contentType(MediaType.APPLICATION_JSON).content(requestJson))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        Assert.assertEquals(response, JSONObject.parseObject(result, Response.class));
+    }
+
 }
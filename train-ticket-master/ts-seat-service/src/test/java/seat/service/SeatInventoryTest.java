@@ -0,0 +1,113 @@
+package seat.service;
+
+import edu.fudan.common.entity.SeatClass;
+import edu.fudan.common.entity.Ticket;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class SeatInventoryTest {
+
+    private static final long MAX_AGE = 60 * 1000L;
+
+    private SeatInventory inventory;
+
+    private List<String> stations = Arrays.asList("shanghai", "suzhou", "wuxi", "nanjing");
+
+    private String key = SeatInventory.key("G1234", "2013-05-04", SeatClass.FIRSTCLASS.getCode());
+
+    @Before
+    public void setUp() {
+        inventory = new SeatInventory(MAX_AGE);
+    }
+
+    @Test
+    public void testLoadAndCount() {
+        SeatInventory.TrainSeats seats = inventory.load(key, stations, 3, SeatClass.FIRSTCLASS.getCode(), Arrays.asList(
+                new Ticket(1, "shanghai", "suzhou", SeatClass.FIRSTCLASS.getCode()),
+                new Ticket(2, "wuxi", "nanjing", SeatClass.NONE.getCode()),
+                new Ticket(3, "shanghai", "nanjing", SeatClass.SECONDCLASS.getCode())));
+        Assert.assertEquals(1, seats.countLeft("shanghai", "nanjing"));
+        Assert.assertEquals(3, seats.countLeft("suzhou", "wuxi"));
+        Assert.assertEquals(2, seats.countLeft("shanghai", "suzhou"));
+        Assert.assertEquals(0, seats.countLeft("nanjing", "shanghai"));
+        Assert.assertSame(seats, inventory.get(key, stations, 3));
+        Assert.assertNull(inventory.get(key, stations, 4));
+    }
+
+    @Test
+    public void testAllocate() {
+        SeatInventory.TrainSeats seats = inventory.load(key, stations, 2, SeatClass.FIRSTCLASS.getCode(), Arrays.asList(
+                new Ticket(1, "shanghai", "suzhou", SeatClass.FIRSTCLASS.getCode())));
+        //seat 1 is free again after suzhou
+        Assert.assertEquals(1, seats.allocate("suzhou", "nanjing"));
+        Assert.assertEquals(2, seats.allocate("shanghai", "wuxi"));
+        Assert.assertEquals(0, seats.allocate("shanghai", "suzhou"));
+        Assert.assertEquals(0, seats.countLeft("suzhou", "wuxi"));
+    }
+
+    @Test
+    public void testAllocateAdjacentSeats() {
+        SeatInventory.TrainSeats seats = inventory.load(key, stations, 6, SeatClass.FIRSTCLASS.getCode(), Arrays.asList(
+                new Ticket(2, "shanghai", "suzhou", SeatClass.FIRSTCLASS.getCode()),
+                new Ticket(4, "wuxi", "nanjing", SeatClass.FIRSTCLASS.getCode())));
+        //seats 1 and 3 are free but apart, 5 and 6 are next to each other
+        Assert.assertArrayEquals(new int[]{5, 6}, seats.allocate("shanghai", "nanjing", 2));
+        //no run of two is left, so the lowest free seats are taken
+        Assert.assertArrayEquals(new int[]{1, 3}, seats.allocate("shanghai", "nanjing", 2));
+        Assert.assertEquals(0, seats.countLeft("shanghai", "nanjing"));
+    }
+
+    @Test
+    public void testAllocateTakesNothingWhenSeatsNotEnough() {
+        SeatInventory.TrainSeats seats = inventory.load(key, stations, 3, SeatClass.FIRSTCLASS.getCode(), Arrays.asList(
+                new Ticket(1, "shanghai", "nanjing", SeatClass.FIRSTCLASS.getCode())));
+        Assert.assertEquals(0, seats.allocate("shanghai", "wuxi", 3).length);
+        Assert.assertEquals(2, seats.countLeft("shanghai", "wuxi"));
+    }
+
+    @Test
+    public void testUnknownStationBlocksWholeRoute() {
+        SeatInventory.TrainSeats seats = inventory.load(key, stations, 2, SeatClass.FIRSTCLASS.getCode(), Arrays.asList(
+                new Ticket(1, "beijing", "suzhou", SeatClass.FIRSTCLASS.getCode())));
+        Assert.assertEquals(1, seats.countLeft("wuxi", "nanjing"));
+    }
+
+    @Test
+    public void testSaleAddedToInventory() {
+        SeatInventory.TrainSeats seats = inventory.load(key, stations, 2, SeatClass.FIRSTCLASS.getCode(), null);
+        //sold by another replica, and a sale of another class
+        inventory.sold("G1234", "2013-05-04", new Ticket(1, "shanghai", "nanjing", SeatClass.FIRSTCLASS.getCode()));
+        inventory.sold("G1234", "2013-05-04", new Ticket(2, "shanghai", "nanjing", SeatClass.SECONDCLASS.getCode()));
+        Assert.assertEquals(2, inventory.allocate(key, seats, SeatClass.FIRSTCLASS.getCode(), "shanghai", "wuxi"));
+        Assert.assertEquals(0, seats.countLeft("shanghai", "wuxi"));
+    }
+
+    @Test
+    public void testRecentSalesKeptAcrossReload() {
+        SeatInventory.TrainSeats seats = inventory.load(key, stations, 3, SeatClass.FIRSTCLASS.getCode(), null);
+        Assert.assertEquals(1, inventory.allocate(key, seats, SeatClass.FIRSTCLASS.getCode(), "shanghai", "nanjing"));
+        //dates are keyed by day
+        inventory.sold("G1234", "2013-05-04 00:00:00", new Ticket(2, "suzhou", "wuxi", SeatClass.NONE.getCode()));
+        inventory.clear();
+        //neither sale is in the order stores yet
+        SeatInventory.TrainSeats reloaded = inventory.load(key, stations, 3, SeatClass.FIRSTCLASS.getCode(), null);
+        Assert.assertNotSame(seats, reloaded);
+        Assert.assertEquals(1, reloaded.countLeft("shanghai", "nanjing"));
+        Assert.assertEquals(2, reloaded.countLeft("shanghai", "suzhou"));
+    }
+
+    @Test
+    public void testLoadKeepsCurrentInventory() {
+        SeatInventory.TrainSeats seats = inventory.load(key, stations, 3, SeatClass.FIRSTCLASS.getCode(), null);
+        Assert.assertSame(seats, inventory.load(key, stations, 3, SeatClass.FIRSTCLASS.getCode(), Arrays.asList(
+                new Ticket(1, "shanghai", "nanjing", SeatClass.FIRSTCLASS.getCode()))));
+        Assert.assertNotSame(seats, inventory.load(key, stations, 4, SeatClass.FIRSTCLASS.getCode(), null));
+    }
+}
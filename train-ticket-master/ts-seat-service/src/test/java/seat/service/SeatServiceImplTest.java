@@ -1,5 +1,7 @@
 package seat.service;
 
+import edu.fudan.common.config.OrderShardProperties;
+import edu.fudan.common.order.OrderShardClient;
 import edu.fudan.common.util.Response;
 import org.junit.Assert;
 import org.junit.Before;
@@ -12,10 +14,13 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 import edu.fudan.common.entity.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 @RunWith(JUnit4.class)
 public class SeatServiceImplTest {
@@ -26,11 +31,15 @@ public class SeatServiceImplTest {
     @Mock
     private RestTemplate restTemplate;
 
+    private SeatInventory seatInventory = new SeatInventory(60 * 1000L);
+
     private HttpHeaders headers = new HttpHeaders();
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(seatServiceImpl, "orderShardClient", new OrderShardClient(restTemplate, new OrderShardProperties()));
+        ReflectionTestUtils.setField(seatServiceImpl, "seatInventory", seatInventory);
     }
 
     @Test
@@ -46,8 +55,8 @@ public class SeatServiceImplTest {
         Response<Route> response1 = new Response<>(null, null, route);
         ResponseEntity<Response<Route>> re1 = new ResponseEntity<>(response1, HttpStatus.OK);
 
-        Response<LeftTicketInfo> response2 = new Response<>();
-        ResponseEntity<Response<LeftTicketInfo>> re2 = new ResponseEntity<>(response2, HttpStatus.OK);
+        Response<SoldTickets> response2 = new Response<>();
+        ResponseEntity<Response<SoldTickets>> re2 = new ResponseEntity<>(response2, HttpStatus.OK);
 
         TrainType trainType = new TrainType();
         trainType.setConfortClass(1);
@@ -76,8 +85,8 @@ public class SeatServiceImplTest {
         Response<Route> response1 = new Response<>(null, null, route);
         ResponseEntity<Response<Route>> re1 = new ResponseEntity<>(response1, HttpStatus.OK);
 
-        Response<LeftTicketInfo> response2 = new Response<>();
-        ResponseEntity<Response<LeftTicketInfo>> re2 = new ResponseEntity<>(response2, HttpStatus.OK);
+        Response<SoldTickets> response2 = new Response<>();
+        ResponseEntity<Response<SoldTickets>> re2 = new ResponseEntity<>(response2, HttpStatus.OK);
 
         TrainType trainType = new TrainType();
         trainType.setEconomyClass(1);
@@ -106,8 +115,8 @@ public class SeatServiceImplTest {
         Response<Route> response1 = new Response<>(null, null, route);
         ResponseEntity<Response<Route>> re1 = new ResponseEntity<>(response1, HttpStatus.OK);
 
-        Response<LeftTicketInfo> response2 = new Response<>();
-        ResponseEntity<Response<LeftTicketInfo>> re2 = new ResponseEntity<>(response2, HttpStatus.OK);
+        Response<SoldTickets> response2 = new Response<>();
+        ResponseEntity<Response<SoldTickets>> re2 = new ResponseEntity<>(response2, HttpStatus.OK);
 
         TrainType trainType = new TrainType();
         trainType.setConfortClass(1);
@@ -141,8 +150,8 @@ public class SeatServiceImplTest {
         Response<Route> response1 = new Response<>(null, null, route);
         ResponseEntity<Response<Route>> re1 = new ResponseEntity<>(response1, HttpStatus.OK);
 
-        Response<LeftTicketInfo> response2 = new Response<>();
-        ResponseEntity<Response<LeftTicketInfo>> re2 = new ResponseEntity<>(response2, HttpStatus.OK);
+        Response<SoldTickets> response2 = new Response<>();
+        ResponseEntity<Response<SoldTickets>> re2 = new ResponseEntity<>(response2, HttpStatus.OK);
 
         TrainType trainType = new TrainType();
         trainType.setEconomyClass(1);
@@ -163,4 +172,79 @@ public class SeatServiceImplTest {
         Assert.assertEquals(new Response<>(1, "Get Left Ticket of Internal Success", 1), result);
     }
 
+    @Test
+    public void testDistributeSeats() {
+        List<String> stations = Arrays.asList("start_station", "middle_station", "dest_station");
+        Seat seat = new Seat("2013-05-04", "G1234", "start_station", "dest_station", SeatClass.FIRSTCLASS.getCode(), 4, stations);
+
+        SoldTickets soldTickets = SoldTickets.of(Arrays.asList(
+                new Ticket(2, "start_station", "middle_station", SeatClass.FIRSTCLASS.getCode())));
+        ResponseEntity<Response<SoldTickets>> re = new ResponseEntity<>(new Response<>(1, null, soldTickets), HttpStatus.OK);
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class)))
+                .thenReturn(re);
+        Response result = seatServiceImpl.distributeSeats(seat, 2, headers);
+        Assert.assertEquals(new Response<>(1, "Use new seat numbers!", Arrays.asList(
+                new Ticket(3, "start_station", "dest_station", SeatClass.FIRSTCLASS.getCode()),
+                new Ticket(4, "start_station", "dest_station", SeatClass.FIRSTCLASS.getCode()))), result);
+        Assert.assertEquals(new Response<>(0, "No seat available", null), seatServiceImpl.distributeSeats(seat, 2, headers));
+    }
+
+    @Test
+    public void testDistributeSeatSoldByAnotherReplica() {
+        List<String> stations = Arrays.asList("start_station", "middle_station", "dest_station");
+        Seat seat = new Seat("2013-05-04", "G1234", "start_station", "dest_station", SeatClass.FIRSTCLASS.getCode(), 4, stations);
+
+        SoldTickets loaded = SoldTickets.of(Arrays.asList(
+                new Ticket(1, "start_station", "dest_station", SeatClass.FIRSTCLASS.getCode())));
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class)))
+                .thenReturn(new ResponseEntity<>(new Response<>(1, null, loaded), HttpStatus.OK));
+        Assert.assertEquals(2, ((Ticket) seatServiceImpl.distributeSeat(seat, headers).getData()).getSeatNo());
+        //the order event of seat 3 sold by another replica
+        seatInventory.sold("G1234", "2013-05-04", new Ticket(3, "middle_station", "dest_station", SeatClass.FIRSTCLASS.getCode()));
+        Assert.assertEquals(4, ((Ticket) seatServiceImpl.distributeSeat(seat, headers).getData()).getSeatNo());
+        Assert.assertEquals(new Response<>(0, "No seat available", null), seatServiceImpl.distributeSeat(seat, headers));
+        //the sold tickets are only read to load the inventory
+        Mockito.verify(restTemplate, Mockito.times(1)).exchange(
+                Mockito.anyString(),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    public void testGetLeftTicketOfIntervals() {
+        List<String> stations = Arrays.asList("start_station", "middle_station", "dest_station");
+        Seat first = new Seat("2013-05-04", "G1234", "start_station", "dest_station", SeatClass.FIRSTCLASS.getCode(), 10, stations);
+        Seat second = new Seat("2013-05-04", "G1234", "start_station", "dest_station", SeatClass.SECONDCLASS.getCode(), 20, stations);
+
+        SoldTickets soldTickets = SoldTickets.of(Arrays.asList(
+                new Ticket(1, "start_station", "middle_station", SeatClass.FIRSTCLASS.getCode()),
+                new Ticket(2, "middle_station", "dest_station")));
+        Response<SoldTickets> response = new Response<>(1, null, soldTickets);
+        ResponseEntity<Response<SoldTickets>> re = new ResponseEntity<>(response, HttpStatus.OK);
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class)))
+                .thenReturn(re);
+        Response result = seatServiceImpl.getLeftTicketOfIntervals(Arrays.asList(first, second), headers);
+        //the ticket without seat class is counted for both classes
+        Assert.assertEquals(new Response<>(1, "Get Left Ticket of Internal Success", Arrays.asList(8, 19)), result);
+        //one order call shared by both seat classes
+        Mockito.verify(restTemplate, Mockito.times(1)).exchange(
+                Mockito.eq("http://ts-order-service:8080/api/v1/orderservice/order/tickets/compact"),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class));
+    }
+
 }
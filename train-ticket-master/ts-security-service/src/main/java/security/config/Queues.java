@@ -0,0 +1,33 @@
+package security.config;
+
+import edu.fudan.common.entity.OrderEvent;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class Queues {
+
+    @Bean
+    public TopicExchange orderEventsExchange() {
+        return new TopicExchange(OrderEvent.EXCHANGE);
+    }
+
+    /**
+     * order events of every order service for the counters of this instance; the queue lives
+     * as long as the instance, what came before it is read from the order stores
+     */
+    @Bean
+    public Queue orderEventsQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding orderEventsBinding(Queue orderEventsQueue, TopicExchange orderEventsExchange) {
+        return BindingBuilder.bind(orderEventsQueue).to(orderEventsExchange).with("order.#");
+    }
+}
@@ -58,9 +58,11 @@ public class SecurityController {
 
     @CrossOrigin(origins = "*")
     @GetMapping(path = "/securityConfigs/{accountId}")
-    public HttpEntity check(@PathVariable String accountId, @RequestHeader HttpHeaders headers) {
-        SecurityController.LOGGER.info("[check][Check Security][Check Account Id: {}]", accountId);
-        return ok(securityService.check(accountId, headers));
+    public HttpEntity check(@PathVariable String accountId,
+                            @RequestParam(value = "count", defaultValue = "1") int count,
+                            @RequestHeader HttpHeaders headers) {
+        SecurityController.LOGGER.info("[check][Check Security][Check Account Id: {}, count: {}]", accountId, count);
+        return ok(securityService.check(accountId, count, headers));
     }
 
 }
@@ -0,0 +1,33 @@
+package security.mq;
+
+import edu.fudan.common.entity.OrderEvent;
+import edu.fudan.common.util.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+import security.service.OrderCounters;
+
+@Component
+public class RabbitReceive {
+
+    private static final Logger logger = LoggerFactory.getLogger(RabbitReceive.class);
+
+    @Autowired
+    private OrderCounters orderCounters;
+
+    @RabbitListener(queues = "#{orderEventsQueue.name}")
+    public void process(String payload, @Header(name = AmqpHeaders.MESSAGE_ID, required = false) String messageId) {
+        OrderEvent event = JsonUtils.json2Object(payload, OrderEvent.class);
+
+        if (event == null || event.getOrderId() == null || event.getAccountId() == null) {
+            logger.error("[process][json2Object][Receive order event is null error]");
+            return;
+        }
+        logger.debug("[process][Receive order event][type: {}, OrderId: {}]", event.getType(), event.getOrderId());
+        orderCounters.apply(event, messageId);
+    }
+}
@@ -0,0 +1,249 @@
+package security.service;
+
+import edu.fudan.common.entity.Order;
+import edu.fudan.common.entity.OrderEvent;
+import edu.fudan.common.entity.OrderEventType;
+import edu.fudan.common.entity.OrderSecurity;
+import edu.fudan.common.entity.OrderStatus;
+import edu.fudan.common.order.OrderShardClient;
+import edu.fudan.common.util.DateUtils;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.ListenerContainerConsumerFailedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per account counts of the orders bought in the last hour and of the valid orders, the two
+ * numbers the anti-scalper check compares with its thresholds.
+ *
+ * The counts are kept from the order events of every order service and built from the order
+ * stores when the service starts. Until that build is done, or after the event consumer failed
+ * and events may have been missed, counts returns null and the check asks the order services;
+ * the build is retried until it succeeds.
+ *
+ * Only the orders that still count are kept: those bought in the last hour and the valid ones.
+ *
+ * @author fdse
+ */
+@Component
+public class OrderCounters {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderCounters.class);
+
+    static final long WINDOW_MILLIS = 60 * 60 * 1000L;
+
+    private static final class OrderEntry {
+        /**
+         * 0 when the order is only known from events after its creation
+         */
+        long boughtAt;
+        boolean valid;
+
+        OrderEntry(long boughtAt, boolean valid) {
+            this.boughtAt = boughtAt;
+            this.valid = valid;
+        }
+    }
+
+    /**
+     * orders of one account by id; guarded by itself
+     */
+    private static final class AccountOrders {
+        final Map<String, OrderEntry> orders = new HashMap<>();
+    }
+
+    private final OrderShardClient orderShardClient;
+
+    private volatile Map<String, AccountOrders> accounts = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    /**
+     * account of every order changed by an event while a build is running, null otherwise;
+     * guarded by this
+     */
+    private Map<String, String> changedDuringBuild;
+
+    /**
+     * events kept in the seen set of message ids
+     */
+    static final int SEEN_EVENTS = 10000;
+
+    /**
+     * message ids of the last events applied, least recently seen first, to drop the events the
+     * relays published again; guarded by itself. The sequences of a source are not in commit
+     * order, so an event with a lower sequence than one already applied is not a repeat.
+     */
+    private final Map<String, Boolean> seenMessageIds = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > SEEN_EVENTS;
+        }
+    };
+
+    @Autowired
+    public OrderCounters(OrderShardClient orderShardClient) {
+        this.orderShardClient = orderShardClient;
+        Metrics.gauge("security.order.counters.accounts", this, counters -> counters.accounts.size());
+    }
+
+    /**
+     * Orders of an account bought in the hour before now and its valid orders, or null while
+     * the counters are not built.
+     */
+    public OrderSecurity counts(String accountId, long now) {
+        if (!ready) {
+            return null;
+        }
+        AccountOrders account = accounts.get(accountId);
+        OrderSecurity counts = new OrderSecurity(0, 0);
+        if (account == null) {
+            return counts;
+        }
+        synchronized (account) {
+            for (OrderEntry entry : account.orders.values()) {
+                if (entry.boughtAt > now - WINDOW_MILLIS) {
+                    counts.setOrderNumInLastOneHour(counts.getOrderNumInLastOneHour() + 1);
+                }
+                if (entry.valid) {
+                    counts.setOrderNumOfValidOrder(counts.getOrderNumOfValidOrder() + 1);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Applies an order event; an event whose message id was applied already is a repeat and
+     * dropped. Applying sets the state of the order, so a repeat past the seen set is harmless.
+     */
+    public void apply(OrderEvent event, String messageId) {
+        if (messageId != null) {
+            synchronized (seenMessageIds) {
+                if (seenMessageIds.put(messageId, Boolean.TRUE) != null) {
+                    OrderCounters.LOGGER.info("[apply][Repeated order event][messageId: {}]", messageId);
+                    return;
+                }
+            }
+        }
+        synchronized (this) {
+            if (changedDuringBuild != null) {
+                changedDuringBuild.put(event.getOrderId(), event.getAccountId());
+            }
+            AccountOrders account = accounts.computeIfAbsent(event.getAccountId(), id -> new AccountOrders());
+            synchronized (account) {
+                OrderEntry entry = account.orders.get(event.getOrderId());
+                if (event.getType() == OrderEventType.DELETED) {
+                    account.orders.remove(event.getOrderId());
+                } else if (entry == null) {
+                    long boughtAt = event.getType() == OrderEventType.CREATED ? event.getOccurredAt() : 0;
+                    account.orders.put(event.getOrderId(), new OrderEntry(boughtAt, isValid(event.getStatus())));
+                } else {
+                    entry.valid = isValid(event.getStatus());
+                }
+                //while building, an order only known from events waits for its bought time
+                if (changedDuringBuild == null) {
+                    prune(account, System.currentTimeMillis());
+                }
+                if (account.orders.isEmpty()) {
+                    accounts.remove(event.getAccountId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the counters from the order stores, keeping what the events applied meanwhile say
+     * about the orders they changed. Fails when a shard does not answer, as counters without its
+     * orders would understate the counts.
+     */
+    public void build() {
+        synchronized (this) {
+            changedDuringBuild = new HashMap<>();
+        }
+        List<Order> orders;
+        try {
+            orders = orderShardClient.requireAllOrders(null);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                changedDuringBuild = null;
+            }
+            throw e;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Map<String, AccountOrders> built = new ConcurrentHashMap<>();
+            Map<String, Long> boughtAt = new HashMap<>();
+            for (Order order : orders) {
+                long bought = DateUtils.toEpochMilli(order.getBoughtDate());
+                boughtAt.put(order.getId(), bought);
+                if (!changedDuringBuild.containsKey(order.getId())) {
+                    built.computeIfAbsent(order.getAccountId(), id -> new AccountOrders())
+                            .orders.put(order.getId(), new OrderEntry(bought, isValid(order.getStatus())));
+                }
+            }
+            for (Map.Entry<String, String> changed : changedDuringBuild.entrySet()) {
+                AccountOrders account = accounts.get(changed.getValue());
+                OrderEntry entry = account == null ? null : account.orders.get(changed.getKey());
+                if (entry != null) {
+                    if (entry.boughtAt == 0) {
+                        entry.boughtAt = boughtAt.getOrDefault(changed.getKey(), 0L);
+                    }
+                    built.computeIfAbsent(changed.getValue(), id -> new AccountOrders()).orders.put(changed.getKey(), entry);
+                }
+            }
+            built.values().forEach(account -> prune(account, now));
+            built.values().removeIf(account -> account.orders.isEmpty());
+            accounts = built;
+            changedDuringBuild = null;
+            ready = true;
+        }
+        OrderCounters.LOGGER.info("[build][Order counters built][orders: {}, accounts: {}]", orders.size(), accounts.size());
+    }
+
+    @Scheduled(fixedDelayString = "${security.order-counters.build-retry-millis:10000}")
+    public void buildIfNotReady() {
+        if (ready) {
+            return;
+        }
+        try {
+            build();
+        } catch (RuntimeException e) {
+            OrderCounters.LOGGER.warn("[buildIfNotReady][Build order counters fail][retry later][{}]", e.toString());
+        }
+    }
+
+    /**
+     * Events may have been lost while the consumer was down, so the counters are built again.
+     */
+    @EventListener
+    public void onConsumerFailed(ListenerContainerConsumerFailedEvent event) {
+        if (ready) {
+            OrderCounters.LOGGER.warn("[onConsumerFailed][Order event consumer failed][counters built again][{}]", event.getReason());
+            ready = false;
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    private static boolean isValid(int status) {
+        return status == OrderStatus.NOTPAID.getCode() || status == OrderStatus.PAID.getCode()
+                || status == OrderStatus.COLLECTED.getCode();
+    }
+
+    private static void prune(AccountOrders account, long now) {
+        account.orders.values().removeIf(entry -> !entry.valid && entry.boughtAt <= now - WINDOW_MILLIS);
+    }
+}
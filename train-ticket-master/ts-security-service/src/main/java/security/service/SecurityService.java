@@ -19,4 +19,10 @@ public interface SecurityService {
 
     Response check(String accountId, HttpHeaders headers);
 
+    /**
+     * Whether an account may book count orders at once: the limits must still hold with the
+     * orders before the last of them.
+     */
+    Response check(String accountId, int count, HttpHeaders headers);
+
 }
@@ -1,19 +1,15 @@
 package security.service;
 
 import edu.fudan.common.entity.OrderSecurity;
+import edu.fudan.common.order.OrderShardClient;
 import edu.fudan.common.util.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
 import security.entity.SecurityConfig;
 import security.repository.SecurityRepository;
 
@@ -33,16 +29,33 @@ public class SecurityServiceImpl implements SecurityService {
     private SecurityRepository securityRepository;
 
     @Autowired
-    RestTemplate restTemplate;
+    private OrderShardClient orderShardClient;
 
+    @Autowired
+    private OrderCounters orderCounters;
 
+    @Value("${security.config.cache-millis:60000}")
+    private long configCacheMillis;
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(SecurityServiceImpl.class);
+    /**
+     * thresholds of the check with the time they were read, null until read or after a change
+     */
+    private volatile Thresholds thresholds;
+
+    private static final class Thresholds {
+        final int oneHourLine;
+        final int totalValidLine;
+        final long readAt;
 
-    private String getServiceUrl(String serviceName) {
-        return "http://" + serviceName + ":8080";
+        Thresholds(int oneHourLine, int totalValidLine, long readAt) {
+            this.oneHourLine = oneHourLine;
+            this.totalValidLine = totalValidLine;
+            this.readAt = readAt;
+        }
     }
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecurityServiceImpl.class);
+
     String success = "Success";
 
     @Override
@@ -68,6 +81,7 @@ public class SecurityServiceImpl implements SecurityService {
             config.setValue(info.getValue());
             config.setDescription(info.getDescription());
             SecurityConfig newConfig = securityRepository.save(config);
+            thresholds = null;
             return new Response<>(1, success, newConfig);
         }
     }
@@ -83,6 +97,7 @@ public class SecurityServiceImpl implements SecurityService {
             sc.setValue(info.getValue());
             sc.setDescription(info.getDescription());
             securityRepository.save(sc);
+            thresholds = null;
             return new Response<>(1, success, sc);
         }
     }
@@ -91,6 +106,7 @@ public class SecurityServiceImpl implements SecurityService {
     @Override
     public Response deleteSecurityConfig(String id, HttpHeaders headers) {
         securityRepository.deleteById(id);
+        thresholds = null;
         SecurityConfig sc = securityRepository.findById(id).orElse(null);
         if (sc == null) {
             return new Response<>(1, success, id);
@@ -102,55 +118,50 @@ public class SecurityServiceImpl implements SecurityService {
 
     @Override
     public Response check(String accountId, HttpHeaders headers) {
+        return check(accountId, 1, headers);
+    }
+
+    @Override
+    public Response check(String accountId, int count, HttpHeaders headers) {
         //1.Get the orders in the past one hour and the total effective votes
         SecurityServiceImpl.LOGGER.debug("[check][Get Order Num Info]");
-        OrderSecurity orderResult = getSecurityOrderInfoFromOrder(new Date(), accountId, headers);
-        OrderSecurity orderOtherResult = getSecurityOrderOtherInfoFromOrder(new Date(), accountId, headers);
-        int orderInOneHour = orderOtherResult.getOrderNumInLastOneHour() + orderResult.getOrderNumInLastOneHour();
-        int totalValidOrder = orderOtherResult.getOrderNumOfValidOrder() + orderResult.getOrderNumOfValidOrder();
+        //kept from the order events; both counts summed over all order shards, queried in parallel, until they are built
+        Date now = new Date();
+        OrderSecurity orderResult = orderCounters.counts(accountId, now.getTime());
+        if (orderResult == null) {
+            try {
+                orderResult = orderShardClient.getSecurityInfo(now, accountId, headers);
+            } catch (RuntimeException e) {
+                SecurityServiceImpl.LOGGER.error("[check][Get Order Num Info fail][AccountId: {}, error: {}]", accountId, e.toString());
+                return new Response<>(0, "Check security fail, order info unavailable", accountId);
+            }
+        }
+        //the orders of the same booking before the last one count as well
+        int booked = Math.max(count, 1) - 1;
+        int orderInOneHour = orderResult.getOrderNumInLastOneHour() + booked;
+        int totalValidOrder = orderResult.getOrderNumOfValidOrder() + booked;
         //2. get critical configuration information
         SecurityServiceImpl.LOGGER.debug("[check][Get Security Config Info]");
-        SecurityConfig configMaxInHour = securityRepository.findByName("max_order_1_hour");
-        SecurityConfig configMaxNotUse = securityRepository.findByName("max_order_not_use");
-        SecurityServiceImpl.LOGGER.info("[check][Max][Max In One Hour: {}  Max Not Use: {}]", configMaxInHour.getValue(), configMaxNotUse.getValue());
-        int oneHourLine = Integer.parseInt(configMaxInHour.getValue());
-        int totalValidLine = Integer.parseInt(configMaxNotUse.getValue());
-        if (orderInOneHour > oneHourLine || totalValidOrder > totalValidLine) {
-            SecurityServiceImpl.LOGGER.warn("[check][Check Security config warn][Too much order in last one hour or too much valid order][AccountId: {}]",accountId);
+        Thresholds lines = thresholds(now.getTime());
+        if (orderInOneHour > lines.oneHourLine || totalValidOrder > lines.totalValidLine) {
+            SecurityServiceImpl.LOGGER.warn("[check][Check Security config warn][Too much order in last one hour or too much valid order][AccountId: {}, count: {}]",accountId, count);
             return new Response<>(0, "Too much order in last one hour or too much valid order", accountId);
         } else {
             return new Response<>(1, "Success.r", accountId);
         }
     }
 
-    private OrderSecurity getSecurityOrderInfoFromOrder(Date checkDate, String accountId, HttpHeaders headers) {
-        HttpEntity requestEntity = new HttpEntity(null);
-        String order_service_url = getServiceUrl("ts-order-service");
-        ResponseEntity<Response<OrderSecurity>> re = restTemplate.exchange(
-                order_service_url + "/api/v1/orderservice/order/security/" + checkDate + "/" + accountId,
-                HttpMethod.GET,
-                requestEntity,
-                new ParameterizedTypeReference<Response<OrderSecurity>>() {
-                });
-        Response<OrderSecurity> response = re.getBody();
-        OrderSecurity result =  response.getData();
-        SecurityServiceImpl.LOGGER.info("[getSecurityOrderInfoFromOrder][Get Order Info For Security][Last One Hour: {}  Total Valid Order: {}]", result.getOrderNumInLastOneHour(), result.getOrderNumOfValidOrder());
-        return result;
-    }
-
-    private OrderSecurity getSecurityOrderOtherInfoFromOrder(Date checkDate, String accountId, HttpHeaders headers) {
-        HttpEntity requestEntity = new HttpEntity(null);
-        String order_other_service_url = getServiceUrl("ts-order-other-service");
-        ResponseEntity<Response<OrderSecurity>> re = restTemplate.exchange(
-                order_other_service_url + "/api/v1/orderOtherService/orderOther/security/" + checkDate + "/" + accountId,
-                HttpMethod.GET,
-                requestEntity,
-                new ParameterizedTypeReference<Response<OrderSecurity>>() {
-                });
-        Response<OrderSecurity> response = re.getBody();
-        OrderSecurity result =  response.getData();
-        SecurityServiceImpl.LOGGER.info("[getSecurityOrderOtherInfoFromOrder][Get Order Other Info For Security][Last One Hour: {}  Total Valid Order: {}]", result.getOrderNumInLastOneHour(), result.getOrderNumOfValidOrder());
-        return result;
+    private Thresholds thresholds(long now) {
+        Thresholds current = thresholds;
+        if (current != null && now - current.readAt < configCacheMillis) {
+            return current;
+        }
+        SecurityConfig configMaxInHour = securityRepository.findByName("max_order_1_hour");
+        SecurityConfig configMaxNotUse = securityRepository.findByName("max_order_not_use");
+        SecurityServiceImpl.LOGGER.info("[thresholds][Max][Max In One Hour: {}  Max Not Use: {}]", configMaxInHour.getValue(), configMaxNotUse.getValue());
+        current = new Thresholds(Integer.parseInt(configMaxInHour.getValue()), Integer.parseInt(configMaxNotUse.getValue()), now);
+        thresholds = current;
+        return current;
     }
 
 }
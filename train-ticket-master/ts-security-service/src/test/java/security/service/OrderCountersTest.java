@@ -0,0 +1,133 @@
+package security.service;
+
+import edu.fudan.common.entity.Order;
+import edu.fudan.common.entity.OrderEvent;
+import edu.fudan.common.entity.OrderEventType;
+import edu.fudan.common.entity.OrderSecurity;
+import edu.fudan.common.entity.OrderStatus;
+import edu.fudan.common.order.OrderShardClient;
+import edu.fudan.common.util.StringUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+@RunWith(JUnit4.class)
+public class OrderCountersTest {
+
+    @Mock
+    private OrderShardClient orderShardClient;
+
+    private OrderCounters orderCounters;
+
+    private long now;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        orderCounters = new OrderCounters(orderShardClient);
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    public void testCountsNullUntilBuilt() {
+        Assert.assertNull(orderCounters.counts("account_id", now));
+        Mockito.when(orderShardClient.requireAllOrders(null)).thenThrow(new IllegalStateException("order service down"));
+        orderCounters.buildIfNotReady();
+        Assert.assertNull(orderCounters.counts("account_id", now));
+    }
+
+    @Test
+    public void testBuildCountsWindowAndValidOrders() {
+        Mockito.when(orderShardClient.requireAllOrders(null)).thenReturn(Arrays.asList(
+                order("recent_paid", now - 60 * 1000L, OrderStatus.PAID),
+                order("recent_cancelled", now - 60 * 1000L, OrderStatus.CANCEL),
+                order("old_not_paid", now - 2 * OrderCounters.WINDOW_MILLIS, OrderStatus.NOTPAID),
+                order("old_used", now - 2 * OrderCounters.WINDOW_MILLIS, OrderStatus.USED)));
+        orderCounters.buildIfNotReady();
+
+        Assert.assertEquals(new OrderSecurity(2, 2), orderCounters.counts("account_id", now));
+        Assert.assertEquals(new OrderSecurity(0, 0), orderCounters.counts("other_account_id", now));
+        //the recent orders leave the window an hour after they were bought
+        Assert.assertEquals(new OrderSecurity(0, 2), orderCounters.counts("account_id", now + OrderCounters.WINDOW_MILLIS));
+    }
+
+    @Test
+    public void testApplyEvents() {
+        Mockito.when(orderShardClient.requireAllOrders(null)).thenReturn(new ArrayList<>());
+        orderCounters.build();
+
+        orderCounters.apply(event(OrderEventType.CREATED, "order_id", OrderStatus.NOTPAID), "ts-order-service-1");
+        Assert.assertEquals(new OrderSecurity(1, 1), orderCounters.counts("account_id", now));
+        orderCounters.apply(event(OrderEventType.STATUS_CHANGED, "order_id", OrderStatus.CANCEL), "ts-order-service-2");
+        Assert.assertEquals(new OrderSecurity(1, 0), orderCounters.counts("account_id", now));
+        orderCounters.apply(event(OrderEventType.DELETED, "order_id", OrderStatus.CANCEL), "ts-order-service-3");
+        Assert.assertEquals(new OrderSecurity(0, 0), orderCounters.counts("account_id", now));
+    }
+
+    @Test
+    public void testRepeatedEventIgnored() {
+        Mockito.when(orderShardClient.requireAllOrders(null)).thenReturn(new ArrayList<>());
+        orderCounters.build();
+
+        orderCounters.apply(event(OrderEventType.CREATED, "order_id", OrderStatus.NOTPAID), "ts-order-service-5");
+        orderCounters.apply(event(OrderEventType.STATUS_CHANGED, "order_id", OrderStatus.CANCEL), "ts-order-service-6");
+        //the creation published again must not make the cancelled order valid
+        orderCounters.apply(event(OrderEventType.CREATED, "order_id", OrderStatus.NOTPAID), "ts-order-service-5");
+        Assert.assertEquals(new OrderSecurity(1, 0), orderCounters.counts("account_id", now));
+    }
+
+    @Test
+    public void testEventsOutOfSequenceApplied() {
+        Mockito.when(orderShardClient.requireAllOrders(null)).thenReturn(new ArrayList<>());
+        orderCounters.build();
+
+        //sequence 51 committed and was published before sequence 50
+        orderCounters.apply(event(OrderEventType.CREATED, "order_id_2", OrderStatus.NOTPAID), "ts-order-service-51");
+        orderCounters.apply(event(OrderEventType.CREATED, "order_id", OrderStatus.NOTPAID), "ts-order-service-50");
+        orderCounters.apply(event(OrderEventType.STATUS_CHANGED, "order_id", OrderStatus.CANCEL), "ts-order-service-49");
+        Assert.assertEquals(new OrderSecurity(2, 1), orderCounters.counts("account_id", now));
+    }
+
+    @Test
+    public void testBuildKeepsOrdersChangedMeanwhile() {
+        //the order is cancelled while the stores are read, after its row was read as paid
+        Mockito.when(orderShardClient.requireAllOrders(null)).thenAnswer(invocation -> {
+            orderCounters.apply(event(OrderEventType.STATUS_CHANGED, "order_id", OrderStatus.CANCEL), "ts-order-service-1");
+            return Collections.singletonList(order("order_id", now - 60 * 1000L, OrderStatus.PAID));
+        });
+        orderCounters.build();
+
+        Assert.assertTrue(orderCounters.isReady());
+        Assert.assertEquals(new OrderSecurity(1, 0), orderCounters.counts("account_id", now));
+    }
+
+    private static Order order(String id, long boughtAt, OrderStatus status) {
+        Order order = new Order();
+        order.setId(id);
+        order.setAccountId("account_id");
+        order.setBoughtDate(StringUtils.Date2String(new Date(boughtAt)));
+        order.setStatus(status.getCode());
+        return order;
+    }
+
+    private OrderEvent event(OrderEventType type, String orderId, OrderStatus status) {
+        OrderEvent event = new OrderEvent();
+        event.setType(type);
+        event.setSource("ts-order-service");
+        event.setOrderId(orderId);
+        event.setAccountId("account_id");
+        event.setStatus(status.getCode());
+        event.setOccurredAt(now);
+        return event;
+    }
+}
@@ -1,5 +1,7 @@
 package security.service;
 
+import edu.fudan.common.config.OrderShardProperties;
+import edu.fudan.common.order.OrderShardClient;
 import edu.fudan.common.entity.OrderSecurity;
 import edu.fudan.common.util.Response;
 import org.junit.Assert;
@@ -13,6 +15,7 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 import security.entity.SecurityConfig;
 import security.repository.SecurityRepository;
@@ -33,11 +36,15 @@ public class SecurityServiceImplTest {
     @Mock
     private RestTemplate restTemplate;
 
+    @Mock
+    private OrderCounters orderCounters;
+
     private HttpHeaders headers = new HttpHeaders();
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(securityServiceImpl, "orderShardClient", new OrderShardClient(restTemplate, new OrderShardProperties()));
     }
 
     @Test
@@ -129,4 +136,30 @@ public class SecurityServiceImplTest {
         Assert.assertEquals(new Response<>(1, "Success.r", "account_id"), result);
     }
 
+    @Test
+    public void testCheckCountsOrdersOfTheBooking() {
+        Mockito.when(orderCounters.counts(Mockito.eq("account_id"), Mockito.anyLong())).thenReturn(new OrderSecurity(1, 1));
+        SecurityConfig securityConfig = new SecurityConfig();
+        securityConfig.setValue("2");
+        Mockito.when(securityRepository.findByName(Mockito.anyString())).thenReturn(securityConfig);
+
+        Assert.assertEquals(new Response<>(1, "Success.r", "account_id"), securityServiceImpl.check("account_id", 2, headers));
+        Assert.assertEquals(0, (int) securityServiceImpl.check("account_id", 3, headers).getStatus());
+    }
+
+    @Test
+    public void testCheckOrderInfoUnavailable() {
+        //the counters are not built and the order shard answers with a failure
+        ResponseEntity<Response<OrderSecurity>> re = new ResponseEntity<>(new Response<>(0, "error", null), HttpStatus.OK);
+        Mockito.when(restTemplate.exchange(
+                Mockito.anyString(),
+                Mockito.any(HttpMethod.class),
+                Mockito.any(HttpEntity.class),
+                Mockito.any(ParameterizedTypeReference.class)))
+                .thenReturn(re);
+
+        Response result = securityServiceImpl.check("account_id", headers);
+        Assert.assertEquals(new Response<>(0, "Check security fail, order info unavailable", "account_id"), result);
+    }
+
 }
@@ -92,6 +92,7 @@ public class TravelPlanServiceImpl implements TravelPlanService {
 
         if (!routePlanResultUnits.isEmpty()) {
             ArrayList<TravelAdvanceResultUnit> lists = new ArrayList<>();
+            List<Seat> seatRequests = new ArrayList<>();
             for (int i = 0; i < routePlanResultUnits.size(); i++) {
                 RoutePlanResultUnit tempUnit = routePlanResultUnits.get(i);
                 TravelAdvanceResultUnit newUnit = new TravelAdvanceResultUnit();
@@ -111,15 +112,13 @@ public class TravelPlanServiceImpl implements TravelPlanService {
                 int firstClassTotalNum = trainType.getConfortClass();
                 int secondClassTotalNum = trainType.getEconomyClass();
 
-                int first = getRestTicketNumber(info.getDepartureTime(), tempUnit.getTripId(),
-                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.FIRSTCLASS.getCode(), firstClassTotalNum, tempUnit.getStopStations(), headers);
-
-                int second = getRestTicketNumber(info.getDepartureTime(), tempUnit.getTripId(),
-                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.SECONDCLASS.getCode(), secondClassTotalNum, tempUnit.getStopStations(), headers);
-                newUnit.setNumberOfRestTicketFirstClass(first);
-                newUnit.setNumberOfRestTicketSecondClass(second);
+                seatRequests.add(buildSeatRequest(info.getDepartureTime(), tempUnit.getTripId(),
+                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.FIRSTCLASS.getCode(), firstClassTotalNum, tempUnit.getStopStations()));
+                seatRequests.add(buildSeatRequest(info.getDepartureTime(), tempUnit.getTripId(),
+                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.SECONDCLASS.getCode(), secondClassTotalNum, tempUnit.getStopStations()));
                 lists.add(newUnit);
             }
+            setRestTicketNumbers(lists, seatRequests, headers);
 
             return new Response<>(1, success, lists);
         } else {
@@ -141,6 +140,7 @@ public class TravelPlanServiceImpl implements TravelPlanService {
         if (!routePlanResultUnits.isEmpty()) {
 
             ArrayList<TravelAdvanceResultUnit> lists = new ArrayList<>();
+            List<Seat> seatRequests = new ArrayList<>();
             for (int i = 0; i < routePlanResultUnits.size(); i++) {
                 RoutePlanResultUnit tempUnit = routePlanResultUnits.get(i);
                 TravelAdvanceResultUnit newUnit = new TravelAdvanceResultUnit();
@@ -160,15 +160,13 @@ public class TravelPlanServiceImpl implements TravelPlanService {
                 TrainType trainType = queryTrainTypeByName(tempUnit.getTrainTypeName(), headers);
                 int firstClassTotalNum = trainType.getConfortClass();
                 int secondClassTotalNum = trainType.getEconomyClass();
-                int first = getRestTicketNumber(info.getDepartureTime(), tempUnit.getTripId(),
-                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.FIRSTCLASS.getCode(), firstClassTotalNum, tempUnit.getStopStations(), headers);
-
-                int second = getRestTicketNumber(info.getDepartureTime(), tempUnit.getTripId(),
-                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.SECONDCLASS.getCode(), secondClassTotalNum, tempUnit.getStopStations(),headers);
-                newUnit.setNumberOfRestTicketFirstClass(first);
-                newUnit.setNumberOfRestTicketSecondClass(second);
+                seatRequests.add(buildSeatRequest(info.getDepartureTime(), tempUnit.getTripId(),
+                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.FIRSTCLASS.getCode(), firstClassTotalNum, tempUnit.getStopStations()));
+                seatRequests.add(buildSeatRequest(info.getDepartureTime(), tempUnit.getTripId(),
+                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.SECONDCLASS.getCode(), secondClassTotalNum, tempUnit.getStopStations()));
                 lists.add(newUnit);
             }
+            setRestTicketNumbers(lists, seatRequests, headers);
             return new Response<>(1, success, lists);
         } else {
             TravelPlanServiceImpl.LOGGER.warn("[getQuickest][Get quickest trip warn][Route Plan Result Units: {}]","No Content");
@@ -188,6 +186,7 @@ public class TravelPlanServiceImpl implements TravelPlanService {
         if (!routePlanResultUnits.isEmpty()) {
 
             ArrayList<TravelAdvanceResultUnit> lists = new ArrayList<>();
+            List<Seat> seatRequests = new ArrayList<>();
             for (int i = 0; i < routePlanResultUnits.size(); i++) {
                 RoutePlanResultUnit tempUnit = routePlanResultUnits.get(i);
                 TravelAdvanceResultUnit newUnit = new TravelAdvanceResultUnit();
@@ -208,15 +207,13 @@ public class TravelPlanServiceImpl implements TravelPlanService {
                 int firstClassTotalNum = trainType.getConfortClass();
                 int secondClassTotalNum = trainType.getEconomyClass();
 
-                int first = getRestTicketNumber(info.getDepartureTime(), tempUnit.getTripId(),
-                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.FIRSTCLASS.getCode(), firstClassTotalNum, tempUnit.getStopStations(), headers);
-
-                int second = getRestTicketNumber(info.getDepartureTime(), tempUnit.getTripId(),
-                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.SECONDCLASS.getCode(), secondClassTotalNum, tempUnit.getStopStations(), headers);
-                newUnit.setNumberOfRestTicketFirstClass(first);
-                newUnit.setNumberOfRestTicketSecondClass(second);
+                seatRequests.add(buildSeatRequest(info.getDepartureTime(), tempUnit.getTripId(),
+                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.FIRSTCLASS.getCode(), firstClassTotalNum, tempUnit.getStopStations()));
+                seatRequests.add(buildSeatRequest(info.getDepartureTime(), tempUnit.getTripId(),
+                        tempUnit.getStartStation(), tempUnit.getEndStation(), SeatClass.SECONDCLASS.getCode(), secondClassTotalNum, tempUnit.getStopStations()));
                 lists.add(newUnit);
             }
+            setRestTicketNumbers(lists, seatRequests, headers);
             return new Response<>(1, success, lists);
         } else {
             TravelPlanServiceImpl.LOGGER.warn("[getMinStation][Get min stations trip warn][Route Plan Result Units: {}]","No Content");
@@ -224,7 +221,7 @@ public class TravelPlanServiceImpl implements TravelPlanService {
         }
     }
 
-    private int getRestTicketNumber(String travelDate, String trainNumber, String startStationName, String endStationName, int seatType, int totalNum, List<String> stations, HttpHeaders headers) {
+    private Seat buildSeatRequest(String travelDate, String trainNumber, String startStationName, String endStationName, int seatType, int totalNum, List<String> stations) {
         Seat seatRequest = new Seat();
 
         seatRequest.setDestStation(startStationName);
@@ -234,18 +231,29 @@ public class TravelPlanServiceImpl implements TravelPlanService {
         seatRequest.setSeatType(seatType);
         seatRequest.setStations(stations);
         seatRequest.setTotalNum(totalNum);
+        return seatRequest;
+    }
 
-        TravelPlanServiceImpl.LOGGER.info("[getRestTicketNumber][Seat Request][Seat Request is: {}]", seatRequest.toString());
-        HttpEntity requestEntity = new HttpEntity(seatRequest, null);
+    /**
+     * Fill in the rest tickets of all units with one seat service call,
+     * seatRequests holds the first and second class request of each unit in order
+     */
+    private void setRestTicketNumbers(List<TravelAdvanceResultUnit> units, List<Seat> seatRequests, HttpHeaders headers) {
+        TravelPlanServiceImpl.LOGGER.info("[setRestTicketNumbers][Seat Requests][size: {}]", seatRequests.size());
+        HttpEntity requestEntity = new HttpEntity(seatRequests, null);
         String seat_service_url = getServiceUrl("ts-seat-service");
-        ResponseEntity<Response<Integer>> re = restTemplate.exchange(
-                seat_service_url + "/api/v1/seatservice/seats/left_tickets",
+        ResponseEntity<Response<List<Integer>>> re = restTemplate.exchange(
+                seat_service_url + "/api/v1/seatservice/seats/left_tickets/batch",
                 HttpMethod.POST,
                 requestEntity,
-                new ParameterizedTypeReference<Response<Integer>>() {
+                new ParameterizedTypeReference<Response<List<Integer>>>() {
                 });
 
-        return re.getBody().getData();
+        List<Integer> restTickets = re.getBody().getData();
+        for (int i = 0; i < units.size(); i++) {
+            units.get(i).setNumberOfRestTicketFirstClass(restTickets.get(2 * i));
+            units.get(i).setNumberOfRestTicketSecondClass(restTickets.get(2 * i + 1));
+        }
     }
 
     private ArrayList<RoutePlanResultUnit> getRoutePlanResultCheapest(RoutePlanInfo info, HttpHeaders headers) {
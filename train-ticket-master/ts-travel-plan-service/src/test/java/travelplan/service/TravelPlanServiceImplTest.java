@@ -17,6 +17,7 @@ import edu.fudan.common.entity.*;
 import travelplan.entity.TransferTravelInfo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -73,9 +74,9 @@ public class TravelPlanServiceImplTest {
         Response<String> response3 = new Response<>(null, null, "");
         ResponseEntity<Response<String>> re3 = new ResponseEntity<>(response3, HttpStatus.OK);
 
-        //response for getRestTicketNumber()
-        Response<Integer> response4 = new Response<>(null, null, 0);
-        ResponseEntity<Response<Integer>> re4 = new ResponseEntity<>(response4, HttpStatus.OK);
+        //response for setRestTicketNumbers()
+        Response<List<Integer>> response4 = new Response<>(null, null, Arrays.asList(0, 0));
+        ResponseEntity<Response<List<Integer>>> re4 = new ResponseEntity<>(response4, HttpStatus.OK);
         Mockito.when(restTemplate.exchange(
                 Mockito.anyString(),
                 Mockito.any(HttpMethod.class),
@@ -109,9 +110,9 @@ public class TravelPlanServiceImplTest {
         Response<String> response3 = new Response<>(null, null, "");
         ResponseEntity<Response<String>> re3 = new ResponseEntity<>(response3, HttpStatus.OK);
 
-        //response for getRestTicketNumber()
-        Response<Integer> response4 = new Response<>(null, null, 0);
-        ResponseEntity<Response<Integer>> re4 = new ResponseEntity<>(response4, HttpStatus.OK);
+        //response for setRestTicketNumbers()
+        Response<List<Integer>> response4 = new Response<>(null, null, Arrays.asList(0, 0));
+        ResponseEntity<Response<List<Integer>>> re4 = new ResponseEntity<>(response4, HttpStatus.OK);
         Mockito.when(restTemplate.exchange(
                 Mockito.anyString(),
                 Mockito.any(HttpMethod.class),
@@ -145,9 +146,9 @@ public class TravelPlanServiceImplTest {
         Response<String> response3 = new Response<>(null, null, "");
         ResponseEntity<Response<String>> re3 = new ResponseEntity<>(response3, HttpStatus.OK);
 
-        //response for getRestTicketNumber()
-        Response<Integer> response4 = new Response<>(null, null, 0);
-        ResponseEntity<Response<Integer>> re4 = new ResponseEntity<>(response4, HttpStatus.OK);
+        //response for setRestTicketNumbers()
+        Response<List<Integer>> response4 = new Response<>(null, null, Arrays.asList(0, 0));
+        ResponseEntity<Response<List<Integer>>> re4 = new ResponseEntity<>(response4, HttpStatus.OK);
         Mockito.when(restTemplate.exchange(
                 Mockito.anyString(),
                 Mockito.any(HttpMethod.class),
@@ -1,10 +1,9 @@
 package travel.entity;
 
+import edu.fudan.common.entity.TravelResult;
 import edu.fudan.common.entity.TripResponse;
 import lombok.Data;
 
-import edu.fudan.common.entity.TripResponse;
-
 /**
  * @author fdse
  */
@@ -14,6 +13,11 @@ public class TripAllDetail {
 
     private Trip trip;
 
+    /**
+     * route, train type and prices of the trip the tickets were computed from
+     */
+    private TravelResult travelResult;
+
     public TripAllDetail() {
     }
 
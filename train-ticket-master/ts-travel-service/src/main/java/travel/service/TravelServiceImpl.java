@@ -1,9 +1,9 @@
 package travel.service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.fudan.common.entity.*;
 import edu.fudan.common.util.JsonUtils;
+import edu.fudan.common.util.DateUtils;
 import edu.fudan.common.util.Response;
 import edu.fudan.common.util.StringUtils;
 import org.apache.skywalking.apm.toolkit.trace.TraceCrossThread;
@@ -15,6 +15,7 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
@@ -46,6 +47,8 @@ public class TravelServiceImpl implements TravelService {
 
     private static final ExecutorService executorService = Executors.newFixedThreadPool(20, new CustomizableThreadFactory("HttpClientThreadPool-"));
 
+    private final TripSearchIndex tripIndex = new TripSearchIndex();
+
     private String getServiceUrl(String serviceName) {
         return "http://" + serviceName + ":8080";
     }
@@ -61,6 +64,7 @@ public class TravelServiceImpl implements TravelService {
                     info.getStationsName(), info.getTerminalStationName(), info.getStartTime(), info.getEndTime());
             trip.setRouteId(info.getRouteId());
             Trip newTrip = repository.save(trip);
+            indexTrip(newTrip, headers);
             return new Response<>(1, "Create trip:" + ti.toString() + ".", newTrip);
         } else {
             TravelServiceImpl.LOGGER.error("[create][Create trip error][Trip already exists][TripId: {}]", info.getTripId());
@@ -150,6 +154,7 @@ public class TravelServiceImpl implements TravelService {
             t.setEndTime(info.getEndTime());
             t.setRouteId(info.getRouteId());
             repository.save(t);
+            indexTrip(t, headers);
             return new Response<>(1, "Update trip:" + ti.toString(), t);
         } else {
             TravelServiceImpl.LOGGER.error("[update][Update trip error][Trip not found][TripId: {}]", info.getTripId());
@@ -163,6 +168,7 @@ public class TravelServiceImpl implements TravelService {
         TripId ti = new TripId(tripId);
         if (repository.findByTripId(ti) != null) {
             repository.deleteByTripId(ti);
+            tripIndex.remove(tripId);
             return new Response<>(1, "Delete trip:" + tripId + ".", tripId);
         } else {
             TravelServiceImpl.LOGGER.error("[delete][Delete trip error][Trip not found][TripId: {}]", tripId);
@@ -180,19 +186,27 @@ public class TravelServiceImpl implements TravelService {
         //This is the final result
         List<TripResponse> list = new ArrayList<>();
 
-        //Check all train info
-        List<Trip> allTripList = repository.findAll();
-        if(allTripList != null) {
-            for (Trip tempTrip : allTripList) {
-                //Get the detailed route list of this train
-                TripResponse response = getTickets(tempTrip, null, startPlaceName, endPlaceName, info.getDepartureTime(), headers);
-                if (response == null) {
-                    TravelServiceImpl.LOGGER.warn("[query][Query trip error][Tickets not found][start: {},end: {},time: {}]", startPlaceName, endPlaceName, info.getDepartureTime());
-                }else{
-                    list.add(response);
-                }
+        //Determine if the date checked is the same day and after
+        if (!afterToday(info.getDepartureTime())) {
+            TravelServiceImpl.LOGGER.info("[query][depaturetime not vailid][departuretime: {}]", info.getDepartureTime());
+            return new Response<>(1, success, list);
+        }
+
+        //Check only the trips whose route serves this station pair
+        List<Trip> candidateTrips = findCandidateTrips(startPlaceName, endPlaceName);
+        List<Trip> trips = new ArrayList<>();
+        List<TravelResult> travelResults = new ArrayList<>();
+        for (Trip tempTrip : candidateTrips) {
+            //Get the detailed route list of this train
+            TravelResult tr = getTravelResult(tempTrip, startPlaceName, endPlaceName, info.getDepartureTime());
+            if (tr == null) {
+                TravelServiceImpl.LOGGER.warn("[query][Query trip error][Tickets not found][start: {},end: {},time: {}]", startPlaceName, endPlaceName, info.getDepartureTime());
+            }else{
+                trips.add(tempTrip);
+                travelResults.add(tr);
             }
         }
+        list = setResponses(trips, travelResults, startPlaceName, endPlaceName, info.getDepartureTime(), headers);
         return new Response<>(1, success, list);
     }
 
@@ -208,9 +222,11 @@ public class TravelServiceImpl implements TravelService {
         //This is the final result
         List<TripResponse> list = new ArrayList<>();
 
-        //Check all train info
-        List<Trip> allTripList = repository.findAll();
-        list = getTicketsByBatch(allTripList, startPlaceName, endPlaceName, info.getDepartureTime(), headers);
+        //Check only the trips whose route serves this station pair
+        List<Trip> candidateTrips = findCandidateTrips(startPlaceName, endPlaceName);
+        if (!candidateTrips.isEmpty()) {
+            list = getTicketsByBatch(candidateTrips, startPlaceName, endPlaceName, info.getDepartureTime(), headers);
+        }
         return new Response<>(1, success, list);
     }
 
@@ -260,16 +276,14 @@ public class TravelServiceImpl implements TravelService {
         //This is the final result
         List<TripResponse> list = new ArrayList<>();
 
-        //Check all train info
-        List<Trip> allTripList = repository.findAll();
+        //Check only the trips whose route serves this station pair
+        List<Trip> candidateTrips = findCandidateTrips(startPlaceName, endPlaceName);
         List<Future<TripResponse>> futureList = new ArrayList<>();
 
-        if(allTripList != null ){
-            for (Trip tempTrip : allTripList) {
-                MyCallable callable = new MyCallable(info, startPlaceName, endPlaceName, tempTrip, headers);
-                Future<TripResponse> future = executorService.submit(callable);
-                futureList.add(future);
-            }
+        for (Trip tempTrip : candidateTrips) {
+            MyCallable callable = new MyCallable(info, startPlaceName, endPlaceName, tempTrip, headers);
+            Future<TripResponse> future = executorService.submit(callable);
+            futureList.add(future);
         }
 
         for (Future<TripResponse> future : futureList) {
@@ -303,7 +317,8 @@ public class TravelServiceImpl implements TravelService {
         } else {
             String startPlaceName = gtdi.getFrom();
             String endPlaceName = gtdi.getTo();
-            TripResponse tripResponse = getTickets(trip, null, startPlaceName, endPlaceName, gtdi.getTravelDate(), headers);
+            TravelResult travelResult = getBookableTravelResult(trip, startPlaceName, endPlaceName, gtdi.getTravelDate());
+            TripResponse tripResponse = travelResult == null ? null : toTripResponse(trip, travelResult, startPlaceName, endPlaceName, gtdi.getTravelDate(), headers);
             if (tripResponse == null) {
                 gtdr.setTripResponse(null);
                 gtdr.setTrip(null);
@@ -311,12 +326,81 @@ public class TravelServiceImpl implements TravelService {
                 return new Response<>(0, "getTickets failed", gtdr);
             } else {
                 gtdr.setTripResponse(tripResponse);
-                gtdr.setTrip(repository.findByTripId(new TripId(gtdi.getTripId())));
+                gtdr.setTrip(trip);
+                //returned so that callers need not ask the basic service for the same trip again
+                gtdr.setTravelResult(travelResult);
             }
         }
         return new Response<>(1, success, gtdr);
     }
 
+    /**
+     * Trips that may serve startPlaceName -> endPlaceName: the indexed matches plus any trip
+     * whose route could not be resolved when the index was built. Until the index is first
+     * built every trip is checked.
+     */
+    private List<Trip> findCandidateTrips(String startPlaceName, String endPlaceName) {
+        if (!tripIndex.isBuilt()) {
+            List<Trip> all = repository.findAll();
+            return all != null ? all : new ArrayList<>();
+        }
+        List<TripSearchIndex.Candidate> candidates = tripIndex.lookup(startPlaceName, endPlaceName);
+        List<Trip> unresolved = tripIndex.unresolvedTrips();
+        List<Trip> trips = new ArrayList<>(candidates.size() + unresolved.size());
+        for (TripSearchIndex.Candidate candidate : candidates) {
+            trips.add(candidate.getTrip());
+        }
+        trips.addAll(unresolved);
+        TravelServiceImpl.LOGGER.debug("[findCandidateTrips][start: {}, end: {}][candidates: {}, unresolved: {}]", startPlaceName, endPlaceName, candidates.size(), unresolved.size());
+        return trips;
+    }
+
+    /**
+     * Routes live in ts-route-service and may change without notice, so the trip index is
+     * rebuilt from scratch in the background, the routes fetched in parallel; searches keep
+     * using the previous index meanwhile.
+     */
+    @Scheduled(fixedDelayString = "${travel.trip-index.refresh-millis:300000}")
+    public void rebuildTripIndex() {
+        try {
+            tripIndex.beginRebuild();
+            List<Trip> trips = repository.findAll();
+            Map<String, Future<List<String>>> routes = new HashMap<>();
+            if (trips != null) {
+                for (Trip trip : trips) {
+                    routes.computeIfAbsent(trip.getRouteId(),
+                            routeId -> executorService.submit(() -> getRouteStations(routeId, null)));
+                }
+            }
+            Map<String, List<String>> routeStations = new HashMap<>();
+            for (Map.Entry<String, Future<List<String>>> route : routes.entrySet()) {
+                routeStations.put(route.getKey(), route.getValue().get());
+            }
+            tripIndex.rebuild(trips, routeStations);
+            TravelServiceImpl.LOGGER.info("[rebuildTripIndex][Trip index rebuilt][trips: {}, routes: {}]", tripIndex.size(), routeStations.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            TravelServiceImpl.LOGGER.warn("[rebuildTripIndex][Trip index not rebuilt][retry later][{}]", e.toString());
+        }
+    }
+
+    private void indexTrip(Trip trip, HttpHeaders headers) {
+        if (trip == null || trip.getTripId() == null) {
+            return;
+        }
+        tripIndex.put(trip, getRouteStations(trip.getRouteId(), headers));
+    }
+
+    private List<String> getRouteStations(String routeId, HttpHeaders headers) {
+        try {
+            return getRouteByRouteId(routeId, headers).getStations();
+        } catch (Exception e) {
+            TravelServiceImpl.LOGGER.warn("[getRouteStations][Route not resolved for trip index][RouteId: {}, error: {}]", routeId, e.getMessage());
+            return null;
+        }
+    }
+
     private List<TripResponse> getTicketsByBatch(List<Trip> trips, String startPlaceName, String endPlaceName, String departureTime, HttpHeaders headers) {
         List<TripResponse> responses = new ArrayList<>();
         //Determine if the date checked is the same day and after
@@ -353,35 +437,50 @@ public class TravelServiceImpl implements TravelService {
             TravelServiceImpl.LOGGER.info("[getTicketsByBatch][Ts-basic-service response status is 0][response is: {}]", r);
             return responses;
         }
-        Map<String, TravelResult> trMap;
-        ObjectMapper mapper = new ObjectMapper();
-        try{
-            trMap = mapper.readValue(JsonUtils.object2Json(r.getData()), new TypeReference<Map<String, TravelResult>>(){});
-        }catch(Exception e) {
-            TravelServiceImpl.LOGGER.warn("[getTicketsByBatch][Ts-basic-service convert data failed][Fail msg: {}]", e.getMessage());
+        Map<String, TravelResult> trMap = JsonUtils.conveterObject(r.getData(), new TypeReference<Map<String, TravelResult>>(){});
+        if(trMap == null) {
+            TravelServiceImpl.LOGGER.warn("[getTicketsByBatch][Ts-basic-service convert data failed][data: {}]", r.getData());
             return responses;
         }
 
+        List<Trip> matchedTrips = new ArrayList<>();
+        List<TravelResult> travelResults = new ArrayList<>();
         for(Map.Entry<String, TravelResult> trEntry: trMap.entrySet()){
-            //Set the returned ticket information
-            String tripNumber = trEntry.getKey();
-            TravelResult tr = trEntry.getValue();
-            Trip trip = tripMap.get(tripNumber);
-
-            TripResponse response = setResponse(trip, tr, startPlaceName, endPlaceName, departureTime, headers);
-            responses.add(response);
+            matchedTrips.add(tripMap.get(trEntry.getKey()));
+            travelResults.add(trEntry.getValue());
         }
-        return responses;
+        //Set the returned ticket information
+        return setResponses(matchedTrips, travelResults, startPlaceName, endPlaceName, departureTime, headers);
     }
 
     private TripResponse getTickets(Trip trip, Route route1, String startPlaceName, String endPlaceName, String departureTime, HttpHeaders headers) {
+        TravelResult resultForTravel = getBookableTravelResult(trip, startPlaceName, endPlaceName, departureTime);
+        if (resultForTravel == null) {
+            return null;
+        }
+        return toTripResponse(trip, resultForTravel, startPlaceName, endPlaceName, departureTime, headers);
+    }
 
+    private TripResponse toTripResponse(Trip trip, TravelResult resultForTravel, String startPlaceName, String endPlaceName, String departureTime, HttpHeaders headers) {
+        //Set the returned ticket information
+        return setResponses(Collections.singletonList(trip), Collections.singletonList(resultForTravel),
+                startPlaceName, endPlaceName, departureTime, headers).get(0);
+    }
+
+    /**
+     * Route, train type and prices of a trip, or null if the departure time has passed or the
+     * basic service has none.
+     */
+    private TravelResult getBookableTravelResult(Trip trip, String startPlaceName, String endPlaceName, String departureTime) {
         //Determine if the date checked is the same day and after
         if (!afterToday(departureTime)) {
             TravelServiceImpl.LOGGER.info("[getTickets][depaturetime not vailid][departuretime: {}]", departureTime);
             return null;
         }
+        return getTravelResult(trip, startPlaceName, endPlaceName, departureTime);
+    }
 
+    private TravelResult getTravelResult(Trip trip, String startPlaceName, String endPlaceName, String departureTime) {
         Travel query = new Travel();
         query.setTrip(trip);
         query.setStartPlace(startPlaceName);
@@ -403,29 +502,41 @@ public class TravelServiceImpl implements TravelService {
             return null;
         }
 
-        TravelResult resultForTravel = JsonUtils.conveterObject(re.getBody().getData(), TravelResult.class);
+        return JsonUtils.conveterObject(re.getBody().getData(), TravelResult.class);
+    }
 
-        //Set the returned ticket information
-        return setResponse(trip, resultForTravel, startPlaceName, endPlaceName, departureTime, headers);
+    /**
+     * Build the responses of several trips, asking the seat service for the rest tickets of
+     * both seat classes of all trips in a single call.
+     */
+    private List<TripResponse> setResponses(List<Trip> trips, List<TravelResult> travelResults, String startPlaceName, String endPlaceName, String departureTime, HttpHeaders headers) {
+        List<TripResponse> responses = new ArrayList<>();
+        if (trips.isEmpty()) {
+            return responses;
+        }
+        List<Seat> seatRequests = new ArrayList<>();
+        for (int i = 0; i < trips.size(); i++) {
+            Trip trip = trips.get(i);
+            TravelResult tr = travelResults.get(i);
+            List<String> stationList = tr.getRoute().getStations();
+            seatRequests.add(buildSeatRequest(departureTime, trip.getTripId().toString(), startPlaceName, endPlaceName,
+                    SeatClass.FIRSTCLASS.getCode(), tr.getTrainType().getConfortClass(), stationList));
+            seatRequests.add(buildSeatRequest(departureTime, trip.getTripId().toString(), startPlaceName, endPlaceName,
+                    SeatClass.SECONDCLASS.getCode(), tr.getTrainType().getEconomyClass(), stationList));
+        }
+        List<Integer> restTickets = getRestTicketNumbers(seatRequests, headers);
+        for (int i = 0; i < trips.size(); i++) {
+            responses.add(setResponse(trips.get(i), travelResults.get(i), startPlaceName, endPlaceName,
+                    restTickets.get(2 * i), restTickets.get(2 * i + 1)));
+        }
+        return responses;
     }
 
-    private TripResponse setResponse(Trip trip, TravelResult tr, String startPlaceName, String endPlaceName, String departureTime, HttpHeaders headers){
+    private TripResponse setResponse(Trip trip, TravelResult tr, String startPlaceName, String endPlaceName, int first, int second){
         //Set the returned ticket information
         TripResponse response = new TripResponse();
-        response.setConfortClass(50);
-        response.setEconomyClass(50);
-
         Route route = tr.getRoute();
-        List<String> stationList = route.getStations();
-
-        int firstClassTotalNum = tr.getTrainType().getConfortClass();
-        int secondClassTotalNum = tr.getTrainType().getEconomyClass();
 
-        int first = getRestTicketNumber(departureTime, trip.getTripId().toString(),
-                startPlaceName, endPlaceName, SeatClass.FIRSTCLASS.getCode(), firstClassTotalNum, stationList, headers);
-
-        int second = getRestTicketNumber(departureTime, trip.getTripId().toString(),
-                startPlaceName, endPlaceName, SeatClass.SECONDCLASS.getCode(), secondClassTotalNum, stationList, headers);
         response.setConfortClass(first);
         response.setEconomyClass(second);
 
@@ -474,29 +585,8 @@ public class TravelServiceImpl implements TravelService {
     }
 
     private static boolean afterToday(String date) {
-        Calendar calDateA = Calendar.getInstance();
-        Date today = new Date();
-        calDateA.setTime(today);
-
-        Calendar calDateB = Calendar.getInstance();
-        calDateB.setTime(StringUtils.String2Date(date));
-
-        TravelServiceImpl.LOGGER.info("[today date][y: {}][m:{}][d: {}]",calDateA.get(Calendar.YEAR), calDateA.get(Calendar.MONTH), calDateA.get(Calendar.DATE));
-        TravelServiceImpl.LOGGER.info("[departrue date][y: {}][m:{}][d: {}]",calDateB.get(Calendar.YEAR), calDateB.get(Calendar.MONTH), calDateB.get(Calendar.DATE));
-
-        if (calDateA.get(Calendar.YEAR) > calDateB.get(Calendar.YEAR)) {
-            return false;
-        } else if (calDateA.get(Calendar.YEAR) == calDateB.get(Calendar.YEAR)) {
-            if (calDateA.get(Calendar.MONTH) > calDateB.get(Calendar.MONTH)) {
-                return false;
-            } else if (calDateA.get(Calendar.MONTH) == calDateB.get(Calendar.MONTH)) {
-                return calDateA.get(Calendar.DAY_OF_MONTH) <= calDateB.get(Calendar.DAY_OF_MONTH);
-            } else {
-                return true;
-            }
-        } else {
-            return true;
-        }
+        TravelServiceImpl.LOGGER.info("[afterToday][departure date][date: {}]", date);
+        return DateUtils.isTodayOrLater(date);
     }
 
     private TrainType getTrainTypeByName(String trainTypeName, HttpHeaders headers) {
@@ -532,7 +622,7 @@ public class TravelServiceImpl implements TravelService {
         return route1;
     }
 
-    private int getRestTicketNumber(String travelDate, String trainNumber, String startStationName, String endStationName, int seatType, int totalNum, List<String> stationList, HttpHeaders headers) {
+    private Seat buildSeatRequest(String travelDate, String trainNumber, String startStationName, String endStationName, int seatType, int totalNum, List<String> stationList) {
         Seat seatRequest = new Seat();
 
         seatRequest.setDestStation(endStationName);
@@ -542,18 +632,21 @@ public class TravelServiceImpl implements TravelService {
         seatRequest.setSeatType(seatType);
         seatRequest.setTotalNum(totalNum);
         seatRequest.setStations(stationList);
+        return seatRequest;
+    }
 
-        TravelServiceImpl.LOGGER.info("[getRestTicketNumber][Seat request][request: {}]", seatRequest.toString());
+    private List<Integer> getRestTicketNumbers(List<Seat> seatRequests, HttpHeaders headers) {
+        TravelServiceImpl.LOGGER.info("[getRestTicketNumbers][Seat requests][size: {}]", seatRequests.size());
 
-        HttpEntity requestEntity = new HttpEntity(seatRequest, null);
+        HttpEntity requestEntity = new HttpEntity(seatRequests, null);
         String seat_service_url = getServiceUrl("ts-seat-service");
-        ResponseEntity<Response<Integer>> re = restTemplate.exchange(
-                seat_service_url + "/api/v1/seatservice/seats/left_tickets",
+        ResponseEntity<Response<List<Integer>>> re = restTemplate.exchange(
+                seat_service_url + "/api/v1/seatservice/seats/left_tickets/batch",
                 HttpMethod.POST,
                 requestEntity,
-                new ParameterizedTypeReference<Response<Integer>>() {
+                new ParameterizedTypeReference<Response<List<Integer>>>() {
                 });
-        TravelServiceImpl.LOGGER.info("[getRestTicketNumber][Get Rest tickets num][num is: {}]", re.getBody().toString());
+        TravelServiceImpl.LOGGER.info("[getRestTicketNumbers][Get Rest tickets num][num is: {}]", re.getBody().toString());
 
         return re.getBody().getData();
     }
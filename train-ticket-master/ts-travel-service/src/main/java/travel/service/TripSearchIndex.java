@@ -0,0 +1,229 @@
+package travel.service;
+
+import travel.entity.Trip;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index from a (startStation, endStation) pair to the trips whose route
+ * passes through both stations in that order.
+ *
+ * Writes are rare (trip create/update/delete and periodic rebuilds) so each pair keeps an
+ * immutable candidate list that is replaced on change, and a rebuild swaps in a whole new
+ * index; lookups never lock.
+ *
+ * @author fdse
+ */
+public class TripSearchIndex {
+
+    /**
+     * A trip that can serve a station pair, with the offsets of both stations in its route.
+     */
+    public static class Candidate {
+        private final Trip trip;
+        private final int startOffset;
+        private final int endOffset;
+
+        Candidate(Trip trip, int startOffset, int endOffset) {
+            this.trip = trip;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        public Trip getTrip() {
+            return trip;
+        }
+
+        public int getStartOffset() {
+            return startOffset;
+        }
+
+        public int getEndOffset() {
+            return endOffset;
+        }
+    }
+
+    /**
+     * The maps of one build; a rebuild fills a fresh State and publishes it at once, so a
+     * lookup sees either the old or the new index, never a partial one.
+     */
+    private static final class State {
+        final Map<String, Map<String, List<Candidate>>> pairs = new ConcurrentHashMap<>();
+
+        /**
+         * tripId -> stations of the route the trip is indexed under, needed to unlink it again
+         */
+        final Map<String, List<String>> tripStations = new ConcurrentHashMap<>();
+
+        /**
+         * tripId -> trip of every trip with resolved stations
+         */
+        final Map<String, Trip> trips = new ConcurrentHashMap<>();
+
+        /**
+         * trips whose route could not be resolved; they are returned for every pair so the
+         * caller falls back to the full downstream check instead of dropping them
+         */
+        final Map<String, Trip> unresolved = new ConcurrentHashMap<>();
+    }
+
+    private volatile State state = new State();
+
+    /**
+     * ids of the trips put or removed since {@link #beginRebuild()}, null when no rebuild is
+     * running; guarded by this
+     */
+    private Set<String> changedDuringRebuild;
+
+    private volatile long builtAt = 0;
+
+    public boolean isBuilt() {
+        return builtAt != 0;
+    }
+
+    /**
+     * Marks the start of a rebuild: the trips put or removed from now on are taken over from the
+     * current index by {@link #rebuild}, as the trips it gets were read before them.
+     */
+    public synchronized void beginRebuild() {
+        changedDuringRebuild = new HashSet<>();
+    }
+
+    /**
+     * Replace the whole index. Trips whose route id has no entry in {@code routeStations}
+     * are kept as unresolved.
+     */
+    public synchronized void rebuild(List<Trip> trips, Map<String, List<String>> routeStations) {
+        State built = new State();
+        if (trips != null) {
+            for (Trip trip : trips) {
+                if (trip.getTripId() != null) {
+                    index(built, trip, routeStations.get(trip.getRouteId()));
+                }
+            }
+        }
+        if (changedDuringRebuild != null) {
+            State current = state;
+            for (String tripId : changedDuringRebuild) {
+                unlink(built, tripId);
+                if (current.tripStations.containsKey(tripId)) {
+                    index(built, current.trips.get(tripId), current.tripStations.get(tripId));
+                } else if (current.unresolved.containsKey(tripId)) {
+                    index(built, current.unresolved.get(tripId), null);
+                }
+            }
+            changedDuringRebuild = null;
+        }
+        state = built;
+        builtAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Index (or re-index) a trip under the given route stations; {@code null} stations mark
+     * the trip as unresolved.
+     */
+    public synchronized void put(Trip trip, List<String> stations) {
+        String tripId = trip.getTripId().toString();
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.add(tripId);
+        }
+        unlink(state, tripId);
+        index(state, trip, stations);
+    }
+
+    public synchronized void remove(String tripId) {
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.add(tripId);
+        }
+        unlink(state, tripId);
+    }
+
+    private static void index(State state, Trip trip, List<String> stations) {
+        String tripId = trip.getTripId().toString();
+        if (stations == null) {
+            state.unresolved.put(tripId, trip);
+            return;
+        }
+        List<String> copy = new ArrayList<>(stations);
+        // a route visiting a station twice is served from its first occurrence, like indexOf
+        boolean[] first = new boolean[copy.size()];
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < copy.size(); i++) {
+            first[i] = seen.add(copy.get(i));
+        }
+        for (int i = 0; i < copy.size(); i++) {
+            for (int j = i + 1; j < copy.size(); j++) {
+                if (!first[i] || !first[j]) {
+                    continue;
+                }
+                Map<String, List<Candidate>> ends = state.pairs.computeIfAbsent(copy.get(i), k -> new ConcurrentHashMap<>());
+                List<Candidate> old = ends.getOrDefault(copy.get(j), Collections.emptyList());
+                List<Candidate> updated = new ArrayList<>(old.size() + 1);
+                updated.addAll(old);
+                updated.add(new Candidate(trip, i, j));
+                ends.put(copy.get(j), Collections.unmodifiableList(updated));
+            }
+        }
+        state.tripStations.put(tripId, copy);
+        state.trips.put(tripId, trip);
+    }
+
+    private static void unlink(State state, String tripId) {
+        state.unresolved.remove(tripId);
+        state.trips.remove(tripId);
+        List<String> stations = state.tripStations.remove(tripId);
+        if (stations == null) {
+            return;
+        }
+        for (int i = 0; i < stations.size(); i++) {
+            Map<String, List<Candidate>> ends = state.pairs.get(stations.get(i));
+            if (ends == null) {
+                continue;
+            }
+            for (int j = i + 1; j < stations.size(); j++) {
+                List<Candidate> old = ends.get(stations.get(j));
+                if (old == null) {
+                    continue;
+                }
+                List<Candidate> updated = new ArrayList<>(old.size());
+                for (Candidate c : old) {
+                    if (!c.getTrip().getTripId().toString().equals(tripId)) {
+                        updated.add(c);
+                    }
+                }
+                if (updated.isEmpty()) {
+                    ends.remove(stations.get(j));
+                } else {
+                    ends.put(stations.get(j), Collections.unmodifiableList(updated));
+                }
+            }
+            if (ends.isEmpty()) {
+                state.pairs.remove(stations.get(i));
+            }
+        }
+    }
+
+    /**
+     * Trips whose route serves {@code start} before {@code end}.
+     */
+    public List<Candidate> lookup(String start, String end) {
+        Map<String, List<Candidate>> ends = state.pairs.get(start);
+        if (ends == null) {
+            return Collections.emptyList();
+        }
+        return ends.getOrDefault(end, Collections.emptyList());
+    }
+
+    /**
+     * Trips that could not be indexed and must be checked against the basic service.
+     */
+    public List<Trip> unresolvedTrips() {
+        return new ArrayList<>(state.unresolved.values());
+    }
+
+    public int size() {
+        State current = state;
+        return current.tripStations.size() + current.unresolved.size();
+    }
+}
@@ -0,0 +1,93 @@
+package travel.service;
+
+import edu.fudan.common.entity.TripId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import travel.entity.Trip;
+
+import java.util.*;
+
+@RunWith(JUnit4.class)
+public class TripSearchIndexTest {
+
+    private TripSearchIndex index;
+
+    private Trip g1234 = new Trip(new TripId("G1234"), "GaoTieOne", "route_1");
+    private Trip d1345 = new Trip(new TripId("D1345"), "DongCheOne", "route_2");
+
+    @Before
+    public void setUp() {
+        index = new TripSearchIndex();
+        Map<String, List<String>> routeStations = new HashMap<>();
+        routeStations.put("route_1", Arrays.asList("shanghai", "suzhou", "nanjing"));
+        routeStations.put("route_2", Arrays.asList("nanjing", "suzhou", "shanghai"));
+        index.rebuild(Arrays.asList(g1234, d1345), routeStations);
+    }
+
+    @Test
+    public void testLookup() {
+        List<TripSearchIndex.Candidate> result = index.lookup("shanghai", "nanjing");
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(g1234, result.get(0).getTrip());
+        Assert.assertEquals(0, result.get(0).getStartOffset());
+        Assert.assertEquals(2, result.get(0).getEndOffset());
+        Assert.assertEquals(d1345, index.lookup("suzhou", "shanghai").get(0).getTrip());
+        Assert.assertTrue(index.lookup("shanghai", "beijing").isEmpty());
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        index.put(d1345, Arrays.asList("shanghai", "nanjing"));
+        Assert.assertEquals(2, index.lookup("shanghai", "nanjing").size());
+        Assert.assertTrue(index.lookup("suzhou", "shanghai").isEmpty());
+
+        index.remove("G1234");
+        Assert.assertEquals(1, index.lookup("shanghai", "nanjing").size());
+        Assert.assertTrue(index.lookup("shanghai", "suzhou").isEmpty());
+        Assert.assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testUnresolvedRoute() {
+        Trip k1255 = new Trip(new TripId("K1255"), "KuaiSu", "route_3");
+        index.put(k1255, null);
+        Assert.assertEquals(Collections.singletonList(k1255), index.unresolvedTrips());
+        index.remove("K1255");
+        Assert.assertTrue(index.unresolvedTrips().isEmpty());
+    }
+
+    @Test
+    public void testRebuildReplacesIndex() {
+        List<TripSearchIndex.Candidate> before = index.lookup("shanghai", "nanjing");
+        Map<String, List<String>> routeStations = new HashMap<>();
+        routeStations.put("route_1", Arrays.asList("beijing", "tianjin"));
+        index.rebuild(Collections.singletonList(g1234), routeStations);
+
+        //a lookup that started before keeps the old candidates
+        Assert.assertEquals(1, before.size());
+        Assert.assertTrue(index.lookup("shanghai", "nanjing").isEmpty());
+        Assert.assertEquals(g1234, index.lookup("beijing", "tianjin").get(0).getTrip());
+        Assert.assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testRebuildKeepsChangesMadeMeanwhile() {
+        Trip k1255 = new Trip(new TripId("K1255"), "KuaiSu", "route_3");
+        index.beginRebuild();
+        //trips read before these changes
+        List<Trip> trips = Arrays.asList(g1234, d1345);
+        index.put(k1255, Arrays.asList("shanghai", "hangzhou"));
+        index.remove("D1345");
+        Map<String, List<String>> routeStations = new HashMap<>();
+        routeStations.put("route_1", Arrays.asList("shanghai", "suzhou", "nanjing"));
+        routeStations.put("route_2", Arrays.asList("nanjing", "suzhou", "shanghai"));
+        index.rebuild(trips, routeStations);
+
+        Assert.assertEquals(k1255, index.lookup("shanghai", "hangzhou").get(0).getTrip());
+        Assert.assertTrue(index.lookup("suzhou", "shanghai").isEmpty());
+        Assert.assertEquals(2, index.size());
+    }
+}
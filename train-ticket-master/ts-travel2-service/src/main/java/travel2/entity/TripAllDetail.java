@@ -1,5 +1,6 @@
 package travel2.entity;
 
+import edu.fudan.common.entity.TravelResult;
 import edu.fudan.common.entity.TripResponse;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -21,4 +22,9 @@ public class TripAllDetail {
 
     private Trip trip;
 
+    /**
+     * route, train type and prices of the trip the tickets were computed from
+     */
+    private TravelResult travelResult;
+
 }
@@ -1,9 +1,9 @@
 package travel2.service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.fudan.common.entity.*;
 import edu.fudan.common.util.JsonUtils;
+import edu.fudan.common.util.DateUtils;
 import edu.fudan.common.util.Response;
 import edu.fudan.common.util.StringUtils;
 import org.slf4j.Logger;
@@ -191,19 +191,28 @@ public class TravelServiceImpl implements TravelService {
         //This is the final result
         ArrayList<TripResponse> list = new ArrayList<>();
 
+        //Determine if the date checked is the same day and after
+        if (!afterToday(info.getDepartureTime())) {
+            return new Response<>(1, "Success Query", list);
+        }
+
         //Check all train info
         ArrayList<Trip> allTripList = repository.findAll();
+        List<Trip> trips = new ArrayList<>();
+        List<TravelResult> travelResults = new ArrayList<>();
         if(allTripList != null){
             for (Trip tempTrip : allTripList) {
                 //Get the detailed route list of this train
-                TripResponse response = getTickets(tempTrip, null, StartPlaceName, endPlaceName, info.getDepartureTime(), headers);
-                if (response == null) {
+                TravelResult tr = getTravelResult(tempTrip, StartPlaceName, endPlaceName, info.getDepartureTime());
+                if (tr == null) {
                     TravelServiceImpl.LOGGER.warn("[query][Query trip error][Tickets not found][start: {},end: {},time: {}]", StartPlaceName, endPlaceName, info.getDepartureTime());
                 }else{
-                    list.add(response);
+                    trips.add(tempTrip);
+                    travelResults.add(tr);
                 }
             }
         }
+        list.addAll(setResponses(trips, travelResults, StartPlaceName, endPlaceName, info.getDepartureTime(), headers));
         return new Response<>(1, "Success Query", list);
     }
 
@@ -220,7 +229,8 @@ public class TravelServiceImpl implements TravelService {
         } else {
             String endPlaceName = gtdi.getTo();
             String StartPlaceName = gtdi.getFrom();
-            TripResponse tripResponse = getTickets(trip, null, gtdi.getFrom(), gtdi.getTo(), gtdi.getTravelDate(), headers);
+            TravelResult travelResult = getBookableTravelResult(trip, gtdi.getFrom(), gtdi.getTo(), gtdi.getTravelDate());
+            TripResponse tripResponse = travelResult == null ? null : toTripResponse(trip, travelResult, gtdi.getFrom(), gtdi.getTo(), gtdi.getTravelDate(), headers);
             if (tripResponse == null) {
                 gtdr.setTrip(null);
                 gtdr.setTripResponse(null);
@@ -228,7 +238,9 @@ public class TravelServiceImpl implements TravelService {
                 return new Response<>(0, "getTickets failed", gtdr);
             } else {
                 gtdr.setTripResponse(tripResponse);
-                gtdr.setTrip(repository.findByTripId(new TripId(gtdi.getTripId())));
+                gtdr.setTrip(trip);
+                //returned so that callers need not ask the basic service for the same trip again
+                gtdr.setTravelResult(travelResult);
             }
         }
         return new Response<>(1, success, gtdr);
@@ -270,35 +282,42 @@ public class TravelServiceImpl implements TravelService {
             TravelServiceImpl.LOGGER.info("[getTicketsByBatch][Ts-basic-service response status is 0][response is: {}]", r);
             return responses;
         }
-        Map<String, TravelResult> trMap;
-        ObjectMapper mapper = new ObjectMapper();
-        try{
-            trMap = mapper.readValue(JsonUtils.object2Json(r.getData()), new TypeReference<Map<String, TravelResult>>(){});
-        }catch(Exception e) {
-            TravelServiceImpl.LOGGER.warn("[getTicketsByBatch][Ts-basic-service convert data failed][Fail msg: {}]", e.getMessage());
+        Map<String, TravelResult> trMap = JsonUtils.conveterObject(r.getData(), new TypeReference<Map<String, TravelResult>>(){});
+        if(trMap == null) {
+            TravelServiceImpl.LOGGER.warn("[getTicketsByBatch][Ts-basic-service convert data failed][data: {}]", r.getData());
             return responses;
         }
 
+        List<Trip> matchedTrips = new ArrayList<>();
+        List<TravelResult> travelResults = new ArrayList<>();
         for(Map.Entry<String, TravelResult> trEntry: trMap.entrySet()){
-            //Set the returned ticket information
-            String tripNumber = trEntry.getKey();
-            TravelResult tr = trEntry.getValue();
-            Trip trip = tripMap.get(tripNumber);
-
-            TripResponse response = setResponse(trip, tr, startPlaceName, endPlaceName, departureTime, headers);
-            responses.add(response);
+            matchedTrips.add(tripMap.get(trEntry.getKey()));
+            travelResults.add(trEntry.getValue());
         }
-        return responses;
+        //Set the returned ticket information
+        return setResponses(matchedTrips, travelResults, startPlaceName, endPlaceName, departureTime, headers);
     }
 
 
-    private TripResponse getTickets(Trip trip, Route route1, String startPlaceName, String endPlaceName, String departureTime, HttpHeaders headers) {
+    private TripResponse toTripResponse(Trip trip, TravelResult resultForTravel, String startPlaceName, String endPlaceName, String departureTime, HttpHeaders headers) {
+        //Set the returned ticket information
+        return setResponses(Collections.singletonList(trip), Collections.singletonList(resultForTravel),
+                startPlaceName, endPlaceName, departureTime, headers).get(0);
+    }
 
+    /**
+     * Route, train type and prices of a trip, or null if the departure time has passed or the
+     * basic service has none.
+     */
+    private TravelResult getBookableTravelResult(Trip trip, String startPlaceName, String endPlaceName, String departureTime) {
         //Determine if the date checked is the same day and after
         if (!afterToday(departureTime)) {
             return null;
         }
+        return getTravelResult(trip, startPlaceName, endPlaceName, departureTime);
+    }
 
+    private TravelResult getTravelResult(Trip trip, String startPlaceName, String endPlaceName, String departureTime) {
         Travel query = new Travel();
         query.setTrip(trip);
         query.setStartPlace(startPlaceName);
@@ -318,29 +337,41 @@ public class TravelServiceImpl implements TravelService {
             TravelServiceImpl.LOGGER.info("[getTickets][Ts-basic-service response status is 0][response is: {}]", r);
             return null;
         }
-        TravelResult resultForTravel =  re.getBody().getData();
+        return re.getBody().getData();
+    }
 
-        //Set the returned ticket information
-        return setResponse(trip, resultForTravel, startPlaceName, endPlaceName, departureTime, headers);
+    /**
+     * Build the responses of several trips, asking the seat service for the rest tickets of
+     * both seat classes of all trips in a single call.
+     */
+    private List<TripResponse> setResponses(List<Trip> trips, List<TravelResult> travelResults, String startPlaceName, String endPlaceName, String departureTime, HttpHeaders headers) {
+        List<TripResponse> responses = new ArrayList<>();
+        if (trips.isEmpty()) {
+            return responses;
+        }
+        List<Seat> seatRequests = new ArrayList<>();
+        for (int i = 0; i < trips.size(); i++) {
+            Trip trip = trips.get(i);
+            TravelResult tr = travelResults.get(i);
+            List<String> stationList = tr.getRoute().getStations();
+            seatRequests.add(buildSeatRequest(departureTime, trip.getTripId().toString(), startPlaceName, endPlaceName,
+                    SeatClass.FIRSTCLASS.getCode(), tr.getTrainType().getConfortClass(), stationList));
+            seatRequests.add(buildSeatRequest(departureTime, trip.getTripId().toString(), startPlaceName, endPlaceName,
+                    SeatClass.SECONDCLASS.getCode(), tr.getTrainType().getEconomyClass(), stationList));
+        }
+        List<Integer> restTickets = getRestTicketNumbers(seatRequests, headers);
+        for (int i = 0; i < trips.size(); i++) {
+            responses.add(setResponse(trips.get(i), travelResults.get(i), startPlaceName, endPlaceName,
+                    restTickets.get(2 * i), restTickets.get(2 * i + 1)));
+        }
+        return responses;
     }
 
-    private TripResponse setResponse(Trip trip, TravelResult tr, String startPlaceName, String endPlaceName, String departureTime, HttpHeaders headers){
+    private TripResponse setResponse(Trip trip, TravelResult tr, String startPlaceName, String endPlaceName, int first, int second){
         //Set the returned ticket information
         TripResponse response = new TripResponse();
-        response.setConfortClass(50);
-        response.setEconomyClass(50);
-
         Route route = tr.getRoute();
-        List<String> stationList = route.getStations();
-
-        int firstClassTotalNum = tr.getTrainType().getConfortClass();
-        int secondClassTotalNum = tr.getTrainType().getEconomyClass();
 
-        int first = getRestTicketNumber(departureTime, trip.getTripId().toString(),
-                startPlaceName, endPlaceName, SeatClass.FIRSTCLASS.getCode(), firstClassTotalNum, stationList, headers);
-
-        int second = getRestTicketNumber(departureTime, trip.getTripId().toString(),
-                startPlaceName, endPlaceName, SeatClass.SECONDCLASS.getCode(), secondClassTotalNum, stationList, headers);
         response.setConfortClass(first);
         response.setEconomyClass(second);
 
@@ -388,26 +419,7 @@ public class TravelServiceImpl implements TravelService {
     }
 
     private static boolean afterToday(String date) {
-        Calendar calDateA = Calendar.getInstance();
-        Date today = new Date();
-        calDateA.setTime(today);
-
-        Calendar calDateB = Calendar.getInstance();
-        calDateB.setTime(StringUtils.String2Date(date));
-
-        if (calDateA.get(Calendar.YEAR) > calDateB.get(Calendar.YEAR)) {
-            return false;
-        } else if (calDateA.get(Calendar.YEAR) == calDateB.get(Calendar.YEAR)) {
-            if (calDateA.get(Calendar.MONTH) > calDateB.get(Calendar.MONTH)) {
-                return false;
-            } else if (calDateA.get(Calendar.MONTH) == calDateB.get(Calendar.MONTH)) {
-                return calDateA.get(Calendar.DAY_OF_MONTH) <= calDateB.get(Calendar.DAY_OF_MONTH);
-            } else {
-                return true;
-            }
-        } else {
-            return true;
-        }
+        return DateUtils.isTodayOrLater(date);
     }
 
     private TrainType getTrainTypeByName(String trainTypeName, HttpHeaders headers) {
@@ -443,7 +455,7 @@ public class TravelServiceImpl implements TravelService {
         }
     }
 
-    private int getRestTicketNumber(String travelDate, String trainNumber, String startStationName, String endStationName, int seatType, int totalNum, List<String> stationList, HttpHeaders headers) {
+    private Seat buildSeatRequest(String travelDate, String trainNumber, String startStationName, String endStationName, int seatType, int totalNum, List<String> stationList) {
         Seat seatRequest = new Seat();
 
         seatRequest.setDestStation(endStationName);
@@ -453,18 +465,21 @@ public class TravelServiceImpl implements TravelService {
         seatRequest.setSeatType(seatType);
         seatRequest.setTotalNum(totalNum);
         seatRequest.setStations(stationList);
+        return seatRequest;
+    }
 
-        TravelServiceImpl.LOGGER.info("[getRestTicketNumber][Seat request][request: {}]", seatRequest.toString());
+    private List<Integer> getRestTicketNumbers(List<Seat> seatRequests, HttpHeaders headers) {
+        TravelServiceImpl.LOGGER.info("[getRestTicketNumbers][Seat requests][size: {}]", seatRequests.size());
 
-        HttpEntity requestEntity = new HttpEntity(seatRequest, null);
+        HttpEntity requestEntity = new HttpEntity(seatRequests, null);
         String seat_service_url = getServiceUrl("ts-seat-service");
-        ResponseEntity<Response<Integer>> re = restTemplate.exchange(
-                seat_service_url + "/api/v1/seatservice/seats/left_tickets",
+        ResponseEntity<Response<List<Integer>>> re = restTemplate.exchange(
+                seat_service_url + "/api/v1/seatservice/seats/left_tickets/batch",
                 HttpMethod.POST,
                 requestEntity,
-                new ParameterizedTypeReference<Response<Integer>>() {
+                new ParameterizedTypeReference<Response<List<Integer>>>() {
                 });
-        TravelServiceImpl.LOGGER.info("[getRestTicketNumber][Get Rest tickets num][num is: {}]", re.getBody().toString());
+        TravelServiceImpl.LOGGER.info("[getRestTicketNumbers][Get Rest tickets num][num is: {}]", re.getBody().toString());
 
         return re.getBody().getData();
     }
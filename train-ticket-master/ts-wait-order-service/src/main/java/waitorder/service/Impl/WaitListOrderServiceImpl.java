@@ -160,7 +160,7 @@ public class WaitListOrderServiceImpl implements WaitListOrderService {
     private Response triggerThread(WaitListOrder orderPO,WaitListOrderVO orderVO,HttpHeaders headers){
         PollThread pollThread;
         try{
-            pollThread =new PollThread(orderPO.getWaitUtilTime(),this,orderVO,restTemplate, headers);
+            pollThread =new PollThread(orderPO.getWaitUtilTime(),this,orderPO.getId(),orderVO,restTemplate, headers);
             pollThread.start();
         } catch (Exception e){
             return new Response<>(0, "Fail To Run A New Thread", null);
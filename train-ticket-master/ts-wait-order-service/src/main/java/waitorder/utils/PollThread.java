@@ -1,8 +1,6 @@
 package waitorder.utils;
 
-import edu.fudan.common.entity.Contacts;
 import edu.fudan.common.util.Response;
-import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -29,9 +27,16 @@ public class PollThread extends Thread{
 
     final static Integer INTERVAL_MINUTES=5;
 
-    public PollThread(Date waitUntilTime,WaitListOrderService service, WaitListOrderVO order, RestTemplate template, HttpHeaders headers){
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    public PollThread(Date waitUntilTime,WaitListOrderService service, String waitListOrderId, WaitListOrderVO order, RestTemplate template, HttpHeaders headers){
         restTemplate=template;
-        httpHeaders=headers;
+        // every poll of a wait list order is an attempt of the same booking
+        httpHeaders=new HttpHeaders();
+        if (headers != null) {
+            httpHeaders.putAll(headers);
+        }
+        httpHeaders.set(IDEMPOTENCY_KEY_HEADER, "wait-list-" + waitListOrderId);
         waitListOrderVO=order;
         waitListOrderService =service;
         waitUntil=waitUntilTime;
@@ -72,12 +77,12 @@ public class PollThread extends Thread{
     }
 
     private Response doPreserve(String url, HttpEntity requestParam){
-        ResponseEntity<Response<Contacts>> rePostPreserveResult = restTemplate.exchange(
-                url + "/api/v1/contactservice/preserve",
+        // the same Idempotency-Key on every poll, so a poll repeating one that timed out after booking gets its result
+        ResponseEntity<Response> rePostPreserveResult = restTemplate.exchange(
+                url + "/api/v1/preserveservice/preserve",
                 HttpMethod.POST,
                 requestParam,
-                new ParameterizedTypeReference<Response<Contacts>>() {
-                });
+                Response.class);
         return rePostPreserveResult.getBody();
     }
 